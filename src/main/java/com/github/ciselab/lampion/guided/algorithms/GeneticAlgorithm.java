@@ -8,12 +8,26 @@ import org.apache.logging.log4j.Logger;
 
 import java.util.*;
 import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
 
 /**
  * The metamorphic algorithm performs the evolution of the metamorphic populations.
+ * <p>
+ * The parents are either selected in tournaments on the weighted fitness,
+ * or NSGA-II style on the weighted metrics as separate objectives: the last two generations are sorted into
+ * Pareto fronts, the best individuals by front and crowding distance survive and the tournaments run on them.
+ * Both work on the metrics the individuals already have, neither needs any further inference.
  */
 public class GeneticAlgorithm {
 
+    /**
+     * How the parents of the next generation are selected.
+     */
+    public enum Selection {
+        FITNESS,
+        NSGA2
+    }
+
     GeneticConfiguration config;
 
     private RandomGenerator randomGenerator;
@@ -21,6 +35,11 @@ public class GeneticAlgorithm {
     private final ParetoFront paretoFront;
     private final Logger logger = LogManager.getLogger(GeneticAlgorithm.class);
     private int currentGeneration;
+    private PopulationEvaluator populationEvaluator = new PopulationEvaluator(1);
+    // The individuals that survived the last NSGA-II selection, they compete with the next generation
+    private List<MetamorphicIndividual> survivors = new ArrayList<>();
+    // The population indices drawn for the current tournament, reused for all tournaments
+    private int[] drawn = new int[0];
 
     /**
      * Constructor for this class.
@@ -36,24 +55,54 @@ public class GeneticAlgorithm {
         currentGeneration = 0;
     }
 
+    public void setPopulationEvaluator(PopulationEvaluator populationEvaluator) {
+        this.populationEvaluator = populationEvaluator;
+    }
+
     /**
-     * This method creates the next population with crossover and mutation.
+     * Evaluates all individuals of the population that have no fitness yet, possibly in parallel.
+     *
+     * @param pop the population to evaluate.
+     */
+    public void evaluate(MetamorphicPopulation pop) {
+        populationEvaluator.evaluate(pop);
+    }
+
+    /**
+     * This method creates the next population with elitism, crossover and mutation.
+     * The current population is evaluated as a whole before the selection starts.
+     * The elites are carried over unchanged with their evaluation, the rest of the population are new children.
      *
      * @param pop the current population.
      * @return the new metamorphic population
      */
     public MetamorphicPopulation evolvePopulation(MetamorphicPopulation pop) {
         logger.debug("Getting next Generation from Genetic Algorithm");
+        evaluate(pop);
         currentGeneration += 1;
         MetamorphicPopulation newPopulation =
                 new MetamorphicPopulation(genotypeSupport, currentGeneration);
 
+        MetamorphicPopulation parents = pop;
+        NonDominatedSorting.Ranking ranking = null;
+        if (config.getSelection() == Selection.NSGA2) {
+            parents = selectSurvivors(pop);
+            ranking = rank(parents);
+        }
+
+        List<MetamorphicIndividual> elites = selectElites(parents, ranking);
+        elites.forEach(newPopulation::saveIndividual);
+
         // Loop over the population size and create new individuals with
         // crossover
-        int index = 0;
+        int index = elites.size();
         while (index < config.getPopSize()) {
-            MetamorphicIndividual individual1 = tournamentSelection(pop, randomGenerator).get();
-            MetamorphicIndividual individual2 = tournamentSelection(pop, randomGenerator).get();
+            MetamorphicIndividual individual1 = ranking == null
+                    ? tournamentSelection(parents, randomGenerator).get()
+                    : crowdedTournamentSelection(parents, ranking, randomGenerator).get();
+            MetamorphicIndividual individual2 = ranking == null
+                    ? tournamentSelection(parents, randomGenerator).get()
+                    : crowdedTournamentSelection(parents, ranking, randomGenerator).get();
             List<MetamorphicIndividual> newIndividuals = crossover(individual1, individual2, randomGenerator);
             // Set parents for new individuals
             for (MetamorphicIndividual individual : newIndividuals) {
@@ -67,22 +116,57 @@ public class GeneticAlgorithm {
             }
         }
 
-        // Mutate population
-        for (int i = 0; i < newPopulation.size(); i++) {
-            if (Math.random() <= config.getMutationRate())
+        // Mutate population, except for the elites
+        for (int i = elites.size(); i < newPopulation.size(); i++) {
+            if (randomGenerator.nextDouble() <= config.getMutationRate())
                 mutate(newPopulation.getIndividual(i).get());
         }
 
         return newPopulation;
     }
 
+    /**
+     * Picks the elites of the population, the best elitism rate share of the population size,
+     * and copies them into the next generation with their evaluation.
+     * The best are the fittest, or with NSGA-II the best by Pareto front and crowding distance.
+     * Individuals with the same genotype are only picked once.
+     *
+     * @param pop     the current, evaluated population.
+     * @param ranking the NSGA-II ranking of the population, null if the fitness is used.
+     * @return the copies of the elites, for the next generation.
+     */
+    protected List<MetamorphicIndividual> selectElites(MetamorphicPopulation pop, NonDominatedSorting.Ranking ranking) {
+        int eliteCount = Math.min((int) (config.getElitismRate() * config.getPopSize()), pop.size());
+        if (eliteCount == 0)
+            return List.of();
+
+        int[] order;
+        if (ranking != null) {
+            order = ranking.order();
+        } else {
+            order = IntStream.range(0, pop.size()).boxed()
+                    .sorted((a, b) -> pop.isFitter(a, b) ? -1 : (pop.isFitter(b, a) ? 1 : 0))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        Set<MetamorphicIndividual> picked = new LinkedHashSet<>();
+        for (int i = 0; i < order.length && picked.size() < eliteCount; i++)
+            picked.add(pop.getIndividual(order[i]).get());
+
+        List<MetamorphicIndividual> elites = new ArrayList<>();
+        for (MetamorphicIndividual elite : picked)
+            elites.add(elite.copyInto(currentGeneration));
+        logger.debug("Carrying over " + elites.size() + " elites into generation " + currentGeneration);
+        return elites;
+    }
+
     /**
      * Mutate the current individual
      *
      * @param individual The individual to increase or decrease the size of.
      */
     protected void mutate(MetamorphicIndividual individual) {
-        if (individual.getLength() >= config.getMaxGeneLength() || Math.random() > config.getIncreaseSizeRate())
+        if (individual.getLength() >= config.getMaxGeneLength() || randomGenerator.nextDouble() > config.getIncreaseSizeRate())
             individual.decrease(randomGenerator);
         else {
             int counter = 0;
@@ -159,30 +243,126 @@ public class GeneticAlgorithm {
      */
     protected Optional<MetamorphicIndividual> tournamentSelection(MetamorphicPopulation pop, RandomGenerator random) {
         // Exit early on empty Pops
-        if (pop.getIndividuals().isEmpty())
+        if (pop.size() == 0)
             return Optional.empty();
 
-        // Create a tournament population
-        MetamorphicPopulation tournament = new MetamorphicPopulation(genotypeSupport, currentGeneration);
-        Collection<MetamorphicIndividual> pool = config.doTournamentPutBack() ? new ArrayList<>() : new HashSet<>();
-
         // ShortCut: We do not draw elements double, and we draw more than pop
         // Just return the fittest of elements
-        if (!config.doTournamentPutBack() && config.getTournamentSize() >= pop.size()){
-               pop.getIndividuals().stream().forEach(tournament::saveIndividual);
-               return tournament.getFittest();
+        if (!config.doTournamentPutBack() && config.getTournamentSize() >= pop.size())
+            return pop.getFittest();
+
+        int drawnCount = drawTournament(pop.size(), random);
+        int best = drawn[0];
+        for (int i = 1; i < drawnCount; i++) {
+            if (pop.isFitter(drawn[i], best))
+                best = drawn[i];
+        }
+        return pop.getIndividual(best);
+    }
+
+    /**
+     * Draws the population indices of a tournament into {@link #drawn}.
+     * Without put back, every index is drawn at most once, so the tournament must be smaller than the population.
+     *
+     * @param popSize the size of the population.
+     * @param random  the random generator used in this run.
+     * @return how many indices were drawn, the tournament size.
+     */
+    private int drawTournament(int popSize, RandomGenerator random) {
+        int tournamentSize = config.getTournamentSize();
+        if (drawn.length < tournamentSize)
+            drawn = new int[tournamentSize];
+        int count = 0;
+        while (count < tournamentSize) {
+            int candidate = random.nextInt(popSize);
+            if (!config.doTournamentPutBack() && isDrawn(candidate, count))
+                continue;
+            drawn[count++] = candidate;
         }
+        return count;
+    }
 
-        // For each place in the tournament get a random individual
-        while (pool.size() < config.getTournamentSize()){
-            var candidate = pop.getIndividual(random.nextInt(pop.size())).get();
-            pool.add(candidate);
+    private boolean isDrawn(int index, int count) {
+        for (int i = 0; i < count; i++) {
+            if (drawn[i] == index)
+                return true;
         }
-        pool.forEach(tournament::saveIndividual);
+        return false;
+    }
+
+    /**
+     * The environmental selection of NSGA-II: the current population competes with the survivors of the last
+     * selection, and the best of them by Pareto front and crowding distance survive.
+     * Individuals with the same genotype compete only once.
+     *
+     * @param pop the current, evaluated population.
+     * @return the survivors, at most as many as the population size.
+     */
+    protected MetamorphicPopulation selectSurvivors(MetamorphicPopulation pop) {
+        Set<MetamorphicIndividual> candidateSet = new LinkedHashSet<>(pop.getIndividuals());
+        candidateSet.addAll(survivors);
+        List<MetamorphicIndividual> candidates = new ArrayList<>(candidateSet);
+        List<MetamorphicIndividual> selected = new ArrayList<>();
+        if (candidates.size() <= config.getPopSize()) {
+            selected.addAll(candidates);
+        } else {
+            int[] order = rank(candidates).order();
+            for (int i = 0; i < config.getPopSize(); i++)
+                selected.add(candidates.get(order[i]));
+        }
+        survivors = selected;
+
+        MetamorphicPopulation survivorPopulation = new MetamorphicPopulation(genotypeSupport, currentGeneration);
+        selected.forEach(survivorPopulation::saveIndividual);
+        return survivorPopulation;
+    }
 
-        return tournament.getFittest();
+    NonDominatedSorting.Ranking rank(MetamorphicPopulation pop) {
+        return rank(pop.getIndividuals());
     }
 
+    private NonDominatedSorting.Ranking rank(List<MetamorphicIndividual> individuals) {
+        var cache = genotypeSupport.getMetricCache();
+        double[][] objectives = new double[individuals.size()][];
+        for (int i = 0; i < objectives.length; i++)
+            objectives[i] = cache.objectives(individuals.get(i).getMetricVector());
+        return NonDominatedSorting.sort(objectives);
+    }
+
+    /**
+     * The tournament selection of NSGA-II, the best individual of the tournament is the one in the better
+     * Pareto front, or within the same front the one in the less crowded region.
+     * Needed config Variable: config.tournamentSize
+     *
+     * @param pop     the population to select from.
+     * @param ranking the front and crowding distance of every individual of the population.
+     * @param random  the random generator used in this run.
+     * @return the winner of the tournament, empty if the population is empty.
+     */
+    protected Optional<MetamorphicIndividual> crowdedTournamentSelection(MetamorphicPopulation pop,
+                                                                         NonDominatedSorting.Ranking ranking,
+                                                                         RandomGenerator random) {
+        // Exit early on empty Pops
+        if (pop.size() == 0)
+            return Optional.empty();
+
+        int best = 0;
+        if (!config.doTournamentPutBack() && config.getTournamentSize() >= pop.size()) {
+            // ShortCut: Everyone takes part
+            for (int i = 1; i < pop.size(); i++) {
+                if (ranking.better(i, best))
+                    best = i;
+            }
+        } else {
+            int drawnCount = drawTournament(pop.size(), random);
+            best = drawn[0];
+            for (int i = 1; i < drawnCount; i++) {
+                if (ranking.better(drawn[i], best))
+                    best = drawn[i];
+            }
+        }
+        return pop.getIndividual(best);
+    }
 
     /**
      * Check population against the current Pareto set.
@@ -190,6 +370,7 @@ public class GeneticAlgorithm {
      * @param population the population
      */
     public void checkPareto(MetamorphicPopulation population) {
+        evaluate(population);
         // This has to be an iteration, as the Pareto Front is maybe altered in during the run.
         // Hence, it has to be done step by step otherwise you get a concurrentModificationException
         for (int i = 0; i < population.size(); i++) {
@@ -2,7 +2,10 @@ package com.github.ciselab.lampion.guided.algorithms;
 
 import com.github.ciselab.lampion.core.transformations.Transformer;
 import com.github.ciselab.lampion.core.transformations.transformers.BaseTransformer;
+import com.github.ciselab.lampion.guided.inference.InferenceException;
 import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.MetricVector;
+import com.github.ciselab.lampion.guided.metric.ParsedResults;
 import com.github.ciselab.lampion.guided.support.GenotypeSupport;
 import com.github.ciselab.lampion.guided.support.MetricCache;
 
@@ -10,9 +13,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
-import java.util.function.Function;
 import java.util.random.RandomGenerator;
-import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -28,6 +29,9 @@ import org.json.simple.parser.ParseException;
 public class MetamorphicIndividual {
 
     private final Logger logger = LogManager.getLogger(MetamorphicIndividual.class);
+
+    // The fitness of an individual whose inference failed, the lowest the metrics can give, so it is not selected
+    public static final double PENALTY_FITNESS = 0.0;
     private GenotypeSupport genotypeSupport;
     private MetricCache metricCache;
 
@@ -40,7 +44,11 @@ public class MetamorphicIndividual {
 
     private List<Transformer> transformers = new ArrayList<>();
     private Optional<Double> fitness = Optional.empty(); // Empty while not calculated or reset
-    private Map<Metric, Double> metrics;
+    // Whether the fitness is the penalty of a failed inference, there are no result files then
+    private boolean inferenceFailed = false;
+    // Counts the changes of the transformers, e.g. for populations that keep the fitness of their individuals
+    private int genotypeVersion = 0;
+    private MetricVector metrics;
     private List<MetamorphicIndividual> parents = new ArrayList<>();
     private int generation;
 
@@ -53,7 +61,7 @@ public class MetamorphicIndividual {
     public MetamorphicIndividual(GenotypeSupport gen, int generation) {
         genotypeSupport = gen;
         metricCache = gen.getMetricCache();
-        metrics = new HashMap<>();
+        metrics = new MetricVector();
         this.generation = generation;
     }
 
@@ -66,7 +74,8 @@ public class MetamorphicIndividual {
      */
     public void populateIndividual(RandomGenerator randomGenerator, int length) {
         transformers.clear();
-        metrics = new HashMap<>();
+        genotypeVersion++;
+        metrics = new MetricVector();
         for (int i = 0; i < length; i++) {
             transformers.add(genotypeSupport.createRandomTransformer(randomGenerator));
         }
@@ -153,7 +162,9 @@ public class MetamorphicIndividual {
      */
     public void setGene(int index, BaseTransformer gene) {
         transformers.set(index, gene);
+        genotypeVersion++;
         fitness = Optional.empty();
+        inferenceFailed = false;
     }
 
     /**
@@ -163,11 +174,14 @@ public class MetamorphicIndividual {
      */
     public void addGene(Transformer gene) {
         transformers.add(gene);
+        genotypeVersion++;
         fitness = Optional.empty();
+        inferenceFailed = false;
     }
 
     /**
      * If the length is not max, increase the length of this metamorphic individual by one.
+     * The individual is not evaluated here, see getFitness().
      *
      * @param maxGeneLength the max length for the transformer list.
      * @param randomGen     the random generator used for this run.
@@ -175,20 +189,13 @@ public class MetamorphicIndividual {
     public void increase(int maxGeneLength, RandomGenerator randomGen) {
         if (getLength() < maxGeneLength) {
             Transformer newTransformer = genotypeSupport.createRandomTransformer(randomGen);
+            // The transformed code of the current genes is re-used from the transformation cache when evaluated
+            transformers.add(newTransformer);
+            genotypeVersion++;
             fitness = Optional.empty();
-            if (metricCache.getDir(transformers).isPresent()) {
-                List<Transformer> t = new ArrayList<>();
-                t.add(newTransformer);
-                String oldDir = metricCache.getDir(transformers).get() + "/test";
-                String name = genotypeSupport.runTransformations(this, oldDir);
-                this.setJavaPath(name);
-                inferMetrics();
-
-                transformers.add(newTransformer);
-                metricCache.storeFiles(this, name, metrics);
-            } else {
-                transformers.add(newTransformer);
-            }
+            inferenceFailed = false;
+            javaPath = Optional.empty();
+            resultPath = Optional.empty();
             logger.trace("The gene " + this.hashCode() + " has increased its size to " + this.getLength());
         }
     }
@@ -197,33 +204,39 @@ public class MetamorphicIndividual {
      * Sets the Metrics of this Individual.
      * This includes running Code2Vec, if there is no existing results-file.
      * If there are result-files, the metrics are re-applied on the result files.
+     * All metrics are applied, including the secondary ones, so that e.g. the Pareto front
+     * can compare individuals on their metrics without applying them again.
      * <p>
-     * As a side-effect, the Result-Path is set and the metrics are filled for this individual.
+     * The individual is only evaluated as far as the active metrics need (see {@link MetricCache#getRequirement()}),
+     * e.g. it is not transformed at all if only the number of transformations is weighted.
+     * Metrics that need more than that are left out of the metrics.
+     * <p>
+     * As a side-effect, the Java- and Result-Path are set (as far as needed) and the metrics are filled for this individual.
      */
-    protected Map<Metric, Double> inferMetrics() {
-        Map<Metric, Double> intermediateMetrics;
-        if (javaPath.isEmpty()) {
+    protected MetricVector inferMetrics() {
+        Metric.Requirement requirement = metricCache.getRequirement();
+        if (requirement.includes(Metric.Requirement.SOURCES) && javaPath.isEmpty()) {
             String jPath = genotypeSupport.runTransformations(this, genotypeSupport.getInitialDataset());
             this.setJavaPath(jPath);
         }
-        if (this.resultPath.isEmpty()) {
+        if (requirement.includes(Metric.Requirement.INFERENCE) && this.resultPath.isEmpty()) {
             if (this.javaPath.isEmpty())
                 setJavaPath(genotypeSupport.runTransformations(this, genotypeSupport.getInitialDataset()));
             String destination = javaPath.get() + "/results/";
 
-            logger.info("Starting Code2Vec Inference for " + this.hexHash());
+            logger.info("Starting Inference for " + this.hexHash());
             String resultDirectory =
-                    genotypeSupport.runCode2vec(this.javaPath.get(), destination);
+                    genotypeSupport.runInference(this.javaPath.get(), destination);
             this.setResultPath(resultDirectory);
-            intermediateMetrics =
-                    metricCache.getMetrics().stream()
-                            .filter(m -> !m.isSecondary())
-                            .collect(Collectors.toMap(Function.identity(), m -> m.apply(this)));
-        } else {
-            intermediateMetrics =
-                    metricCache.getMetrics().stream()
-                            .filter(m -> !m.isSecondary())
-                            .collect(Collectors.toMap(Function.identity(), m -> m.apply(this)));
+        }
+        // The result files are read once, all metrics are calculated from them
+        Optional<ParsedResults> results = requirement.includes(Metric.Requirement.INFERENCE)
+                ? resultPath.map(ParsedResults::read)
+                : Optional.empty();
+        MetricVector intermediateMetrics = metricCache.newMetricVector();
+        for (Metric m : metricCache.getMetrics()) {
+            if (requirement.includes(m.getRequirement()))
+                intermediateMetrics.set(metricCache.slotOf(m), m.apply(this, results));
         }
 
         setMetrics(intermediateMetrics);
@@ -231,8 +244,32 @@ public class MetamorphicIndividual {
         return intermediateMetrics;
     }
 
+    /**
+     * Transforms this individual, if that did not happen yet, and prepares its inference.
+     * Used for evaluating a whole population in one batch, see {@link PopulationEvaluator}.
+     * Afterwards the inference is run for all individuals at once, which sets their result paths.
+     */
+    void prepareInference() {
+        if (javaPath.isEmpty())
+            setJavaPath(genotypeSupport.runTransformations(this, genotypeSupport.getInitialDataset()));
+        genotypeSupport.prepareInference(javaPath.get());
+    }
+
+    /**
+     * @return how often the transformers of this individual changed, a value kept for its fitness is outdated
+     * once this changes.
+     */
+    int getGenotypeVersion() {
+        return genotypeVersion;
+    }
+
+    GenotypeSupport getGenotypeSupport() {
+        return genotypeSupport;
+    }
+
     /**
      * Decrease the amount of transformers for this metamorphic individual.
+     * The individual is not evaluated here, see getFitness().
      *
      * @param randomGen the random generator used for this run.
      */
@@ -240,6 +277,11 @@ public class MetamorphicIndividual {
         if (getLength() > 1) {
             int drop = randomGen.nextInt(0, getLength());
             transformers.remove(drop);
+            genotypeVersion++;
+            fitness = Optional.empty();
+            inferenceFailed = false;
+            javaPath = Optional.empty();
+            resultPath = Optional.empty();
             logger.debug("The gene " + hexHash() + " has decreased its size to " + this.getLength());
         }
     }
@@ -259,24 +301,31 @@ public class MetamorphicIndividual {
         1.) Fitness is already known to individual - return it.
         2.) Fitness is not known to Individual, but to cache. Return it.
         3.) Fitness needs to be read from FileSystem
-        3a.) Java Files are not created - create them first
+        3a.) Java Files are not created - create them first, if the metrics need them
         3b.) Java Files are there, but Result Files are not read
+        3c.) The inference failed - the individual gets the penalty fitness
          */
         if (fitness.isPresent()) {
             return this.fitness.get();
         }
-        if (fetchFitness().isPresent()) {
-            fitness = fetchFitness();
+        Optional<MetricVector> cached = metricCache.getMetricVector(this);
+        if (cached.isPresent()) {
+            metrics = cached.get().copy();
+            fitness = Optional.of(calculateFitness(metrics));
             return fitness.get();
         }
         logger.trace("The gene " + hexHash() + " needs to calculate its fitness");
-        if (javaPath.isEmpty()) {
-            String name = genotypeSupport.runTransformations(this, genotypeSupport.getInitialDataset());
-            setJavaPath(name);
+        try {
+            inferMetrics();
+        } catch (InferenceException e) {
+            // The failure is not cached, so another individual with this genotype tries again
+            logger.error("The inference of the gene " + hexHash() + " failed, it gets the penalty fitness", e);
+            metrics = new MetricVector();
+            fitness = Optional.of(PENALTY_FITNESS);
+            inferenceFailed = true;
+            return fitness.get();
         }
-        inferMetrics();
         metricCache.storeMetricResults(this, metrics);
-        inferFitness();
 
         logger.debug("The gene " + hexHash() + " has calculated its fitness, it is: " + fitness.get());
         return fitness.get();
@@ -284,67 +333,91 @@ public class MetamorphicIndividual {
 
 
     /**
-     * Set the metrics of this metamorphic individual.
+     * Whether the fitness of this individual is already known, either to the individual or to the cache.
+     * If not, getFitness() will run the transformations and inference.
      *
-     * @param results the metrics to set.
+     * @return true if the fitness is available without evaluation.
      */
-    public void setMetrics(Map<Metric, Double> results) {
-        this.metrics = results;
-        fitness = Optional.of(calculateFitness(results));
+    public boolean isEvaluated() {
+        return fitness.isPresent() || metricCache.getMetricVector(this).isPresent();
     }
 
     /**
-     * Calculate the global fitness of the metrics with the weights for each metric.
-     * Note: Metrics that can be bigger than 1 are ignored for Fitness Calculation, as they would scew the results.
-     * Note: Applying the Metrics likely runs in the file system, looking for result files.
+     * Whether the fitness of this individual is the penalty fitness, as its inference failed.
      *
-     * @return The global fitness.
+     * @return true if the inference of this individual failed.
      */
-    private double inferFitness() {
-        var results = new HashMap<Metric, Double>();
-        for (Metric m : metricCache.getActiveMetrics()) {
-            results.put(m, m.apply(this));
+    public boolean hasFailedInference() {
+        return inferenceFailed;
+    }
+
+    /**
+     * Takes over the evaluation of another individual with the same genotype,
+     * so that duplicates in a population do not have to be transformed and inferred again.
+     *
+     * @param evaluated an evaluated individual with the same transformers.
+     */
+    void adoptEvaluation(MetamorphicIndividual evaluated) {
+        if (!this.equals(evaluated)) {
+            throw new IllegalArgumentException("Only individuals with the same genotype can share their evaluation");
         }
-        ;
+        this.javaPath = evaluated.javaPath;
+        this.resultPath = evaluated.resultPath;
+        this.fitness = Optional.of(evaluated.getFitness());
+        this.inferenceFailed = evaluated.inferenceFailed;
+        this.metrics = evaluated.metrics.copy();
+    }
 
-        metricCache.putMetricResults(this, results);
+    /**
+     * Copies this evaluated individual into a later generation, e.g. as an elite.
+     * The copy takes over the paths and metrics of this individual, so it needs no transformation or inference.
+     * Unlike a duplicate adopting the evaluation, the copy is the same individual living on,
+     * so it also takes over the JSON file, whose age goes up whenever the copy is written.
+     *
+     * @param generation the generation of the copy.
+     * @return a copy of this individual, with the same parents.
+     */
+    MetamorphicIndividual copyInto(int generation) {
+        MetamorphicIndividual copy = new MetamorphicIndividual(genotypeSupport, generation);
+        transformers.forEach(copy::addGene);
+        copy.parents = new ArrayList<>(parents);
+        copy.adoptEvaluation(this);
+        copy.jsonPath = jsonPath;
+        return copy;
+    }
 
-        return calculateFitness(results);
+    /**
+     * Get the metrics of this metamorphic individual, as they were calculated when it was evaluated.
+     * If it is not evaluated yet, this evaluates it, see {@link #getFitness()}.
+     * The slots of the metrics are handed out by the {@link MetricCache}.
+     *
+     * @return the metrics of this individual, empty if its inference failed.
+     */
+    public MetricVector getMetricVector() {
+        getFitness();
+        return metrics;
     }
 
     /**
-     * Tries to calculate Fitness from the cache,
-     * if this individual was not stored in the cache return empty.
+     * Set the metrics of this metamorphic individual.
      *
-     * @return the calculated metrics from cache, if possible. Empty otherwise.
+     * @param results the metrics to set.
      */
-    private Optional<Double> fetchFitness() {
-        var cached = metricCache.getMetricResults(this);
-        if (cached.isPresent()) {
-            Map<Metric, Double> cachedResults = cached.get();
-            return Optional.of(calculateFitness(cachedResults));
-        } else
-            return Optional.empty();
-    }
-
-
-    private double calculateFitness(Map<Metric, Double> entries) {
-        Double fitness = 0.0;
-        for (Map.Entry<Metric, Double> entry : entries.entrySet()) {
-            boolean isActiveMetric = metricCache.getActiveMetrics().contains(entry.getKey());
-            if (!entry.getKey().canBeBiggerThanOne() && isActiveMetric) {
-                // If the Weight is negative, we are trying to maximize:
-                // We "flip" the value to 1-value (Turns 0 to 1, and 1 to 0)
-                var value = entry.getKey().getWeight() < 0 ? 1 - entry.getValue() : entry.getValue();
-                fitness += value * Math.abs(entry.getKey().getWeight());
-            }
-        }
+    public void setMetrics(MetricVector results) {
+        this.metrics = results;
+        fitness = Optional.of(calculateFitness(results));
+    }
 
-        return fitness;
+    private double calculateFitness(MetricVector entries) {
+        return metricCache.fitness(entries);
     }
 
     /**
      * Put current individual in the json object or adjust current object and write to file.
+     * The individual is not evaluated any further for this, the file is put next to what its evaluation produced
+     * (see {@link #newJSONPath()}). E.g. an individual whose inference failed has no result files,
+     * it is written next to its java files with its penalty fitness,
+     * and an individual found in the fitness store is written with the stored metrics.
      */
     public void writeIndividualJSON() {
         JSONObject jsonIndividual = new JSONObject();
@@ -355,9 +428,10 @@ public class MetamorphicIndividual {
             if (jsonIndividual.isEmpty())
                 return;
         } else {
-            if (!resultPath.isPresent()) // Should be able to do this with the javaPath
-                this.inferMetrics();
-            jsonPath = Optional.of(resultPath.get() + ".json");
+            // Takes the metrics of an individual found in the cache or fitness store, without evaluating it
+            if (fitness.isEmpty() && isEvaluated())
+                getFitness();
+            jsonPath = Optional.of(newJSONPath());
 
             //Write JSON file
             jsonIndividual = createNewJSON();
@@ -371,6 +445,22 @@ public class MetamorphicIndividual {
         }
     }
 
+    /**
+     * The JSON file of an individual is named after the furthest step of its evaluation:
+     * its result files if it was inferred, its java files if it was only transformed
+     * (e.g. for metrics on the sources, or if its inference failed),
+     * otherwise a file named by its hash in the folder of its generation.
+     *
+     * @return the path of the new JSON file.
+     */
+    private String newJSONPath() {
+        if (resultPath.isPresent())
+            return resultPath.get() + ".json";
+        if (javaPath.isPresent())
+            return javaPath.get() + ".json";
+        return genotypeSupport.reserveGenotypeFile(this).toString();
+    }
+
     /**
      * Get current JSON object and increase the age attribute by one.
      *
@@ -382,8 +472,9 @@ public class MetamorphicIndividual {
 
         try (FileReader reader = new FileReader(fileName)) {
             JSONObject jsonIndividual = (JSONObject) jsonParser.parse(reader);
-            int age = (int) jsonIndividual.get("age");
-            jsonIndividual.replace("age", age, age + 1);
+            // The parser reads all numbers as long
+            long age = ((Number) jsonIndividual.get("age")).longValue();
+            jsonIndividual.put("age", age + 1);
             return jsonIndividual;
         } catch (IOException | ParseException e) {
             e.printStackTrace();
@@ -398,7 +489,11 @@ public class MetamorphicIndividual {
      */
     public JSONObject createNewJSON() {
         JSONObject jsonIndividual = new JSONObject();
-        metrics.forEach((key, value) -> jsonIndividual.put(key.getName(), value));
+        metricCache.toMap(metrics).forEach((key, value) -> jsonIndividual.put(key.getName(), value));
+        if (inferenceFailed) {
+            jsonIndividual.put("inference_failed", true);
+            jsonIndividual.put("fitness", PENALTY_FITNESS);
+        }
         jsonIndividual.put("age", 1);
         jsonIndividual.put("introduced_generation", getGeneration());
         List<MetamorphicIndividual> parents = getParents();
@@ -2,25 +2,42 @@ package com.github.ciselab.lampion.guided.algorithms;
 
 import com.github.ciselab.lampion.guided.support.GenotypeSupport;
 
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.RandomAccess;
 import java.util.random.RandomGenerator;
 
+/**
+ * A population of metamorphic individuals, kept in an array for constant time access by index.
+ * <p>
+ * Next to the individuals, the population keeps their fitness in a column of doubles,
+ * together with the genotype version it was taken at, so that comparing individuals (e.g. in tournaments)
+ * only reads the column. The fittest individual is kept as well, until an individual is added or changed.
+ */
 public class MetamorphicPopulation {
 
-    private List<MetamorphicIndividual> individuals;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private MetamorphicIndividual[] individuals = new MetamorphicIndividual[INITIAL_CAPACITY];
+    // The fitness of every individual, NaN if it is not known yet
+    private double[] fitness = new double[INITIAL_CAPACITY];
+    // The genotype version of every individual when its fitness was taken
+    private int[] fitnessVersions = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    // The index of the fittest individual, -1 if it has to be searched
+    private int fittest = -1;
+    private final List<MetamorphicIndividual> view = new IndividualsView();
     private final int generation;
     private GenotypeSupport genotypeSupport;
 
     public MetamorphicPopulation(GenotypeSupport gen, int generation) {
         genotypeSupport = gen;
-        individuals = new LinkedList<>();
         this.generation = generation;
     }
     public MetamorphicPopulation(GenotypeSupport gen) {
         genotypeSupport = gen;
-        individuals = new LinkedList<>();
         this.generation = 0;
     }
 
@@ -62,7 +79,7 @@ public class MetamorphicPopulation {
      * @return the average size.
      */
     public double getAverageSize() {
-        return individuals.stream()
+        return view.stream()
                 .mapToDouble(MetamorphicIndividual::getLength)
                 .average().orElse(0.0);
     }
@@ -74,8 +91,8 @@ public class MetamorphicPopulation {
      * @return the metamorphic individual.
      */
     public Optional<MetamorphicIndividual> getIndividual(int index) {
-        if (individuals.size() > index) {
-            return Optional.of(individuals.get(index));
+        if (index >= 0 && index < size) {
+            return Optional.of(individuals[index]);
         } else {
             return Optional.empty();
         }
@@ -87,7 +104,51 @@ public class MetamorphicPopulation {
      * @param individual the metamorphic individual.
      */
     public void saveIndividual(MetamorphicIndividual individual) {
-        individuals.add(individual);
+        if (size == individuals.length) {
+            int capacity = individuals.length * 2;
+            individuals = Arrays.copyOf(individuals, capacity);
+            fitness = Arrays.copyOf(fitness, capacity);
+            fitnessVersions = Arrays.copyOf(fitnessVersions, capacity);
+        }
+        individuals[size] = individual;
+        fitness[size] = Double.NaN;
+        size++;
+        fittest = -1;
+    }
+
+    /**
+     * Get the fitness of the individual at an index, from the fitness column if it is known and still valid.
+     * Otherwise, the fitness is calculated, see {@link MetamorphicIndividual#getFitness()}.
+     *
+     * @param index the population index.
+     * @return the fitness of the individual.
+     */
+    public double getFitness(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("There is no individual " + index + " in a population of " + size);
+        MetamorphicIndividual individual = individuals[index];
+        if (Double.isNaN(fitness[index]) || fitnessVersions[index] != individual.getGenotypeVersion()) {
+            fitnessVersions[index] = individual.getGenotypeVersion();
+            fitness[index] = individual.getFitness();
+            fittest = -1;
+        }
+        return fitness[index];
+    }
+
+    /**
+     * Whether the individual at index a is fitter than the one at index b.
+     * If they are the same fit, the shorter one is fitter.
+     *
+     * @param a a population index.
+     * @param b a population index.
+     * @return true if a is fitter than b.
+     */
+    public boolean isFitter(int a, int b) {
+        double aFitness = getFitness(a);
+        double bFitness = getFitness(b);
+        if (aFitness != bFitness)
+            return aFitness > bFitness;
+        return individuals[a].getLength() < individuals[b].getLength();
     }
 
     /**
@@ -97,20 +158,22 @@ public class MetamorphicPopulation {
      * @return the fittest metamorphic individual.
      */
     public Optional<MetamorphicIndividual> getFittest() {
-        Optional<MetamorphicIndividual> fittest = individuals.stream().findFirst();
         // Exit Early in case of empty individuals
-        if (fittest.isEmpty())
+        if (size == 0)
             return Optional.empty();
-
-        for (MetamorphicIndividual individual : individuals) {
-            // Case 1: The Individual is fitter - set it as new fittest
-            fittest = individual.getFitness() > fittest.get().getFitness() ? Optional.of(individual) : fittest;
-            // Case 2: They are same fit, but one is shorter - pick shorter
-            if (fittest.get().getFitness() == individual.getFitness())
-                fittest = individual.getLength() < fittest.get().getLength() ? Optional.of(individual) : fittest;
-            // Case 3: Fittest is fittest - do nothing
+        // Checks that the fitness of every individual is known and still valid, which can forget the fittest
+        for (int i = 0; i < size; i++)
+            getFitness(i);
+        if (fittest < 0) {
+            int best = 0;
+            // The fitter one, or if they are the same fit the shorter one
+            for (int i = 1; i < size; i++) {
+                if (isFitter(i, best))
+                    best = i;
+            }
+            fittest = best;
         }
-        return fittest;
+        return Optional.of(individuals[fittest]);
     }
 
     /**
@@ -119,13 +182,13 @@ public class MetamorphicPopulation {
      * @return the size of the population.
      */
     public int size() {
-        return individuals.size();
+        return size;
     }
 
     @Override
     public String toString() {
         String output = "MetamorphicPopulation{";
-        for (MetamorphicIndividual indiv : individuals)
+        for (MetamorphicIndividual indiv : view)
             output += indiv.toString() + ", ";
         if (!output.equals("MetamorphicPopulation{"))
             return output.substring(0, output.length() - 2) + "}";
@@ -133,11 +196,32 @@ public class MetamorphicPopulation {
             return output;
     }
 
+    /**
+     * @return the individuals of this population, as an unmodifiable view. Use saveIndividual to add individuals.
+     */
     public List<MetamorphicIndividual> getIndividuals() {
-        return this.individuals;
+        return this.view;
     }
 
     public int getGeneration() {
         return this.generation;
     }
+
+    /**
+     * A read-only view on the individuals, without copying them.
+     */
+    private final class IndividualsView extends AbstractList<MetamorphicIndividual> implements RandomAccess {
+
+        @Override
+        public MetamorphicIndividual get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("There is no individual " + index + " in a population of " + size);
+            return individuals[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
 }
@@ -0,0 +1,245 @@
+package com.github.ciselab.lampion.guided.algorithms;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * This class implements the fast non-dominated sorting and the crowding distance of NSGA-II,
+ * see Deb et al. "A fast and elitist multiobjective genetic algorithm: NSGA-II" (2002).
+ * <p>
+ * It works on the plain values of the objectives, one array per point, and bigger is better for every objective.
+ * NaN values (e.g. of a metric that was not calculated) are not compared.
+ */
+public final class NonDominatedSorting {
+
+    // Double Equality is difficult, so values closer than this are considered equal
+    private static final double EPSILON = 0.00001;
+
+    private NonDominatedSorting() {
+    }
+
+    /**
+     * The result of sorting points: the front (rank) of every point and its crowding distance within that front.
+     *
+     * @param ranks    the front of every point, 0 for the non-dominated ones.
+     * @param crowding the crowding distance of every point within its front.
+     */
+    public record Ranking(int[] ranks, double[] crowding) {
+
+        /**
+         * The crowded comparison of NSGA-II: the point in the better front is better,
+         * within the same front the point in the less crowded region is better.
+         *
+         * @return whether the point a is better than the point b.
+         */
+        public boolean better(int a, int b) {
+            if (ranks[a] != ranks[b])
+                return ranks[a] < ranks[b];
+            return crowding[a] > crowding[b];
+        }
+
+        /**
+         * @return the indices of all points, the best first according to {@link #better(int, int)}.
+         */
+        public int[] order() {
+            Integer[] order = new Integer[ranks.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, Comparator.<Integer>comparingInt(i -> ranks[i])
+                    .thenComparing(i -> crowding[i], Comparator.reverseOrder()));
+            return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Check if a is Pareto dominant over b.
+     * Pareto Dominance is the case if for any objective a is better than b, if a is not worse in any other objective.
+     *
+     * @param a the objectives of a point.
+     * @param b the objectives of a point, as many as of a.
+     * @return whether a is pareto dominant over b.
+     */
+    public static boolean dominates(double[] a, double[] b) {
+        boolean allEqual = true;
+        for (int i = 0; i < a.length; i++) {
+            double aVal = a[i];
+            double bVal = b[i];
+            if (Double.isNaN(aVal) || Double.isNaN(bVal))
+                continue;
+            // Is worse in any?
+            if (aVal < bVal)
+                return false;
+            allEqual = allEqual && (aVal == bVal || Math.abs(aVal - bVal) < EPSILON);
+        }
+        // All "as good" is no dominance
+        return !allEqual;
+    }
+
+    /**
+     * Compares two points in both directions at once, the same as {@link #dominates(double[], double[])}.
+     *
+     * @param values     the values of all points, one after the other.
+     * @param a          the offset of the first point in the values.
+     * @param b          the offset of the second point in the values.
+     * @param objectives the number of values per point.
+     * @return 1 if a dominates b, -1 if b dominates a, 0 if neither dominates the other.
+     */
+    private static int compare(double[] values, int a, int b, int objectives) {
+        boolean aWorse = false;
+        boolean bWorse = false;
+        boolean allEqual = true;
+        for (int i = 0; i < objectives; i++) {
+            double aVal = values[a + i];
+            double bVal = values[b + i];
+            if (aVal < bVal)
+                aWorse = true;
+            else if (bVal < aVal)
+                bWorse = true;
+            else
+                continue;
+            if (aWorse && bWorse)
+                return 0;
+            // NaN never gets here, it is neither smaller nor bigger
+            allEqual = allEqual && Math.abs(aVal - bVal) < EPSILON;
+        }
+        if (allEqual)
+            return 0;
+        return aWorse ? -1 : (bWorse ? 1 : 0);
+    }
+
+    /**
+     * Sorts the points into fronts and calculates their crowding distance within their front.
+     *
+     * @param points the objectives per point, all with the same number of objectives.
+     * @return the front and crowding distance of every point.
+     */
+    public static Ranking sort(double[][] points) {
+        int[] ranks = ranks(points);
+        double[] crowding = new double[points.length];
+        // The points ordered by their front, by counting how many points are in each front
+        int fronts = Arrays.stream(ranks).max().orElse(-1) + 1;
+        int[] frontStarts = new int[fronts + 1];
+        for (int rank : ranks)
+            frontStarts[rank + 1]++;
+        for (int front = 0; front < fronts; front++)
+            frontStarts[front + 1] += frontStarts[front];
+        int[] byFront = new int[points.length];
+        int[] filled = Arrays.copyOf(frontStarts, fronts);
+        for (int i = 0; i < ranks.length; i++)
+            byFront[filled[ranks[i]]++] = i;
+
+        for (int front = 0; front < fronts; front++) {
+            int size = frontStarts[front + 1] - frontStarts[front];
+            double[][] frontPoints = new double[size][];
+            for (int i = 0; i < size; i++)
+                frontPoints[i] = points[byFront[frontStarts[front] + i]];
+            double[] frontCrowding = crowdingDistances(frontPoints);
+            for (int i = 0; i < size; i++)
+                crowding[byFront[frontStarts[front] + i]] = frontCrowding[i];
+        }
+        return new Ranking(ranks, crowding);
+    }
+
+    /**
+     * The fast non-dominated sorting: every point is compared with every other point once,
+     * then the fronts are peeled off by counting down how many points dominate each point.
+     *
+     * @param points the objectives per point, all with the same number of objectives.
+     * @return the front of every point, 0 for the non-dominated ones.
+     */
+    public static int[] ranks(double[][] points) {
+        int n = points.length;
+        int m = n == 0 ? 0 : points[0].length;
+        // All values in one array, so that comparing all pairs runs through memory in order
+        double[] values = new double[n * m];
+        for (int i = 0; i < n; i++)
+            System.arraycopy(points[i], 0, values, i * m, m);
+        // Which points each point dominates, and by how many points each point is dominated
+        int[][] dominated = new int[n][];
+        int[] dominatedSizes = new int[n];
+        int[] dominatorCounts = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                int comparison = compare(values, i * m, j * m, m);
+                if (comparison > 0) {
+                    dominated[i] = append(dominated[i], dominatedSizes[i]++, j);
+                    dominatorCounts[j]++;
+                } else if (comparison < 0) {
+                    dominated[j] = append(dominated[j], dominatedSizes[j]++, i);
+                    dominatorCounts[i]++;
+                }
+            }
+        }
+
+        int[] ranks = new int[n];
+        int[] current = new int[n];
+        int currentSize = 0;
+        for (int i = 0; i < n; i++) {
+            if (dominatorCounts[i] == 0)
+                current[currentSize++] = i;
+        }
+        int[] next = new int[n];
+        int rank = 0;
+        while (currentSize > 0) {
+            int nextSize = 0;
+            for (int c = 0; c < currentSize; c++) {
+                int point = current[c];
+                ranks[point] = rank;
+                for (int d = 0; d < dominatedSizes[point]; d++) {
+                    int other = dominated[point][d];
+                    if (--dominatorCounts[other] == 0)
+                        next[nextSize++] = other;
+                }
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            currentSize = nextSize;
+            rank++;
+        }
+        return ranks;
+    }
+
+    /**
+     * The crowding distance of a point is the sum over all objectives of the distance between its two neighbours,
+     * relative to the range of the objective. The points with the smallest and biggest value of an objective
+     * have an infinite distance, so the extremes are kept. Values that are not finite are not considered.
+     *
+     * @param points the objectives per point, all with the same number of objectives.
+     * @return the crowding distance of every point.
+     */
+    public static double[] crowdingDistances(double[][] points) {
+        double[] distances = new double[points.length];
+        int objectives = points.length == 0 ? 0 : points[0].length;
+        Integer[] order = new Integer[points.length];
+        for (int objective = 0; objective < objectives; objective++) {
+            final int o = objective;
+            int valued = 0;
+            for (int i = 0; i < points.length; i++) {
+                if (Double.isFinite(points[i][o]))
+                    order[valued++] = i;
+            }
+            if (valued == 0)
+                continue;
+            Arrays.sort(order, 0, valued, Comparator.comparingDouble(i -> points[i][o]));
+            double min = points[order[0]][o];
+            double max = points[order[valued - 1]][o];
+            distances[order[0]] = Double.POSITIVE_INFINITY;
+            distances[order[valued - 1]] = Double.POSITIVE_INFINITY;
+            if (max == min)
+                continue;
+            for (int i = 1; i < valued - 1; i++)
+                distances[order[i]] += (points[order[i + 1]][o] - points[order[i - 1]][o]) / (max - min);
+        }
+        return distances;
+    }
+
+    private static int[] append(int[] values, int size, int value) {
+        if (values == null)
+            values = new int[4];
+        else if (size == values.length)
+            values = Arrays.copyOf(values, size * 2);
+        values[size] = value;
+        return values;
+    }
+}
@@ -0,0 +1,181 @@
+package com.github.ciselab.lampion.guided.algorithms;
+
+import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.support.MetricCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * This class evaluates all individuals of a population at once, before any selection happens.
+ * Every unevaluated individual is transformed, run through inference and measured on a bounded pool of threads.
+ * <p>
+ * Individuals with the same genotype are evaluated only once, the others receive the same results.
+ * As every evaluation only depends on the genotype (and not on what was evaluated before), the results
+ * are the same no matter how many threads are used or in which order the individuals finish.
+ * <p>
+ * In batched mode, all individuals are first transformed and prepared on the threads,
+ * then the inference runs once for all of them, which lets code2vec fill its batches with the methods of
+ * the whole population instead of the few of a single individual.
+ */
+public class PopulationEvaluator implements AutoCloseable {
+
+    private final Logger logger = LogManager.getLogger(PopulationEvaluator.class);
+
+    private final int threads;
+    private final boolean batched;
+    private ExecutorService pool;
+
+    /**
+     * @param threads how many individuals are evaluated at once, must be at least 1.
+     */
+    public PopulationEvaluator(int threads) {
+        this(threads, false);
+    }
+
+    /**
+     * @param threads how many individuals are transformed (and, if not batched, inferred) at once, must be at least 1.
+     * @param batched whether the inference runs once for all individuals, instead of once per individual.
+     */
+    public PopulationEvaluator(int threads, boolean batched) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("There must be at least one thread for evaluation");
+        }
+        this.threads = threads;
+        this.batched = batched;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isBatched() {
+        return batched;
+    }
+
+    /**
+     * Evaluates every individual of the population that does not have a fitness yet.
+     * Returns once all of them are evaluated.
+     *
+     * @param population the population to evaluate.
+     * @return how many evaluations were run, duplicates and already evaluated individuals are not counted.
+     */
+    public int evaluate(MetamorphicPopulation population) {
+        return evaluate(population.getIndividuals());
+    }
+
+    /**
+     * Evaluates every individual that does not have a fitness yet.
+     * Returns once all of them are evaluated.
+     *
+     * @param individuals the individuals to evaluate.
+     * @return how many evaluations were run, duplicates and already evaluated individuals are not counted.
+     */
+    public int evaluate(List<MetamorphicIndividual> individuals) {
+        // Group all unevaluated individuals by genotype, the first of each group is evaluated
+        Map<MetamorphicIndividual, List<MetamorphicIndividual>> unevaluated = new LinkedHashMap<>();
+        for (MetamorphicIndividual individual : individuals) {
+            if (!individual.isEvaluated()) {
+                unevaluated.computeIfAbsent(individual, k -> new ArrayList<>()).add(individual);
+            }
+        }
+        if (unevaluated.isEmpty()) {
+            return 0;
+        }
+        logger.debug("Evaluating " + unevaluated.size() + " distinct individuals on " + threads + " threads");
+
+        if (batched && unevaluated.size() > 1) {
+            evaluateBatched(new ArrayList<>(unevaluated.keySet()));
+        } else {
+            runAll(unevaluated.keySet(), MetamorphicIndividual::getFitness);
+        }
+
+        for (List<MetamorphicIndividual> duplicates : unevaluated.values()) {
+            MetamorphicIndividual evaluated = duplicates.get(0);
+            for (int i = 1; i < duplicates.size(); i++) {
+                duplicates.get(i).adoptEvaluation(evaluated);
+            }
+        }
+        return unevaluated.size();
+    }
+
+    /**
+     * Transforms and prepares all individuals on the pool, runs a single inference for all of them,
+     * and then reads their metrics from their result files.
+     */
+    private void evaluateBatched(List<MetamorphicIndividual> individuals) {
+        // Without a metric that needs the inference, there is nothing to batch
+        MetricCache cache = individuals.get(0).getGenotypeSupport().getMetricCache();
+        if (!cache.getRequirement().includes(Metric.Requirement.INFERENCE)) {
+            runAll(individuals, MetamorphicIndividual::getFitness);
+            return;
+        }
+        List<MetamorphicIndividual> pending = individuals.stream()
+                .filter(i -> i.getResultPath().isEmpty())
+                .toList();
+        if (!pending.isEmpty()) {
+            runAll(pending, MetamorphicIndividual::prepareInference);
+            pending.get(0).getGenotypeSupport().runInference(pending);
+        }
+        individuals.forEach(MetamorphicIndividual::getFitness);
+    }
+
+    /**
+     * Runs the action for every individual on the pool and waits for all of them.
+     */
+    private void runAll(Collection<MetamorphicIndividual> individuals, Consumer<MetamorphicIndividual> action) {
+        if (threads == 1 || individuals.size() == 1) {
+            individuals.forEach(action);
+            return;
+        }
+        List<Future<?>> running = new ArrayList<>();
+        for (MetamorphicIndividual individual : individuals) {
+            running.add(getPool().submit(() -> action.accept(individual)));
+        }
+        for (Future<?> future : running) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while evaluating population", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Evaluation of an individual failed", e.getCause());
+            }
+        }
+    }
+
+    private synchronized ExecutorService getPool() {
+        if (pool == null) {
+            AtomicInteger count = new AtomicInteger();
+            pool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "evaluation-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Stops the threads of this evaluator.
+     */
+    @Override
+    public synchronized void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+}
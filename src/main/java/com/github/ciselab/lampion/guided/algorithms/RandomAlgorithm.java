@@ -1,7 +1,6 @@
 package com.github.ciselab.lampion.guided.algorithms;
 
 import com.github.ciselab.lampion.guided.support.GenotypeSupport;
-import com.github.ciselab.lampion.guided.support.MetricCache;
 import com.github.ciselab.lampion.guided.support.ParetoFront;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,6 +15,7 @@ public class RandomAlgorithm {
     private final GenotypeSupport genotypeSupport;
     private final ParetoFront paretoFront;
     private final Logger logger = LogManager.getLogger(RandomAlgorithm.class);
+    private PopulationEvaluator populationEvaluator = new PopulationEvaluator(1);
 
 
     public void initializeParameters(RandomGenerator randomGenerator) {
@@ -29,6 +29,19 @@ public class RandomAlgorithm {
         currentGeneration = 0;
     }
 
+    public void setPopulationEvaluator(PopulationEvaluator populationEvaluator) {
+        this.populationEvaluator = populationEvaluator;
+    }
+
+    /**
+     * Evaluates all individuals of the population that have no fitness yet, possibly in parallel.
+     *
+     * @param pop the population to evaluate.
+     */
+    public void evaluate(MetamorphicPopulation pop) {
+        populationEvaluator.evaluate(pop);
+    }
+
     public MetamorphicPopulation nextGeneration(MetamorphicPopulation pop) {
         currentGeneration += 1;
         logger.debug("Creating a new population of length " + currentGeneration + " through the random algorithm.");
@@ -45,6 +58,7 @@ public class RandomAlgorithm {
      * @param population the population
      */
     public void checkPareto(MetamorphicPopulation population) {
+        evaluate(population);
         // This has to be an iteration, as the Pareto Front is maybe altered in during the run.
         // Hence, it has to be done step by step otherwise you get a concurrentmodificationexception
         population.getIndividuals().forEach(x -> paretoFront.addToParetoOptimum(x));
@@ -1,6 +1,9 @@
 package com.github.ciselab.lampion.guided.configuration;
 
 import com.github.ciselab.lampion.core.program.Engine.TransformationScope;
+import com.github.ciselab.lampion.guided.algorithms.GeneticAlgorithm;
+import com.github.ciselab.lampion.guided.inference.InferenceBackend;
+import com.github.ciselab.lampion.guided.inference.PathContextExtractor;
 import com.github.ciselab.lampion.guided.metric.Metric;
 import com.github.ciselab.lampion.guided.metric.metrics.EditDistance;
 import com.github.ciselab.lampion.guided.metric.metrics.F1;
@@ -45,8 +48,38 @@ public class ConfigManagement {
             config.program.setUseGA(Boolean.parseBoolean(prop.get("useGA").toString()));
         if (prop.get("bash") != null)
             config.program.setBashPath((String) prop.get("bash"));
+        if (prop.get("bashretries") != null)
+            config.program.setBashRetries(Integer.parseInt(prop.get("bashretries").toString()));
+        if (prop.get("bashtimeout") != null)
+            config.program.setBashTimeout(Integer.parseInt(prop.get("bashtimeout").toString()));
         if (prop.get("maxtime") != null)
             config.program.setMaxTimeInMin(Integer.parseInt(prop.get("maxtime").toString()));
+        if (prop.get("inferenceworker") != null)
+            config.program.setUseInferenceWorker(Boolean.parseBoolean(prop.get("inferenceworker").toString()));
+        if (prop.get("evaluationthreads") != null)
+            config.program.setEvaluationThreads(Integer.parseInt(prop.get("evaluationthreads").toString()));
+        if (prop.get("batchinference") != null)
+            config.program.setUseBatchInference(Boolean.parseBoolean(prop.get("batchinference").toString()));
+        if (prop.get("prefixcachesize") != null)
+            config.program.setPrefixCacheSize(Integer.parseInt(prop.get("prefixcachesize").toString()));
+        if (prop.get("printthreads") != null)
+            config.program.setPrintThreads(Integer.parseInt(prop.get("printthreads").toString()));
+        if (prop.get("extractorthreads") != null)
+            config.program.setExtractorThreads(Integer.parseInt(prop.get("extractorthreads").toString()));
+        if (prop.get("pathcontextcachesize") != null)
+            config.program.setPathContextCacheSize(Integer.parseInt(prop.get("pathcontextcachesize").toString()));
+        if (prop.get("predictioncachesize") != null)
+            config.program.setPredictionCacheSize(Integer.parseInt(prop.get("predictioncachesize").toString()));
+        if (prop.get("paretocapacity") != null)
+            config.program.setParetoCapacity(Integer.parseInt(prop.get("paretocapacity").toString()));
+        if (prop.get("fitnessstore") != null)
+            config.program.setFitnessStore(prop.get("fitnessstore").toString());
+        if (prop.get("inferencebackend") != null)
+            config.program.setInferenceBackend(
+                    InferenceBackend.Kind.valueOf(prop.getProperty("inferencebackend").trim().toUpperCase()));
+        if (prop.get("extractor") != null)
+            config.program.setExtractor(
+                    PathContextExtractor.Kind.valueOf(prop.getProperty("extractor").trim().toUpperCase()));
         // Data, model and other paths are passed to the program by args
 
         if (prop.get("seed") != null) {
@@ -88,6 +121,10 @@ public class ConfigManagement {
         if (prop.get("maxsteadygenerations") != null) {
             config.genetic.setMaxSteadyGenerations(Integer.parseInt(prop.get("maxsteadygenerations").toString()));
         }
+        if (prop.get("selection") != null) {
+            config.genetic.setSelection(
+                    GeneticAlgorithm.Selection.valueOf(prop.getProperty("selection").trim().toUpperCase()));
+        }
 
         /*
         ==================== Lampion Attributes ============================
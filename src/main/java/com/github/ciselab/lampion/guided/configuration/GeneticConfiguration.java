@@ -1,5 +1,7 @@
 package com.github.ciselab.lampion.guided.configuration;
 
+import com.github.ciselab.lampion.guided.algorithms.GeneticAlgorithm;
+
 public class GeneticConfiguration {
 
     private double crossoverRate = 0.7;
@@ -17,6 +19,8 @@ public class GeneticConfiguration {
 
     private int maxSteadyGenerations = 35;
 
+    private GeneticAlgorithm.Selection selection = GeneticAlgorithm.Selection.FITNESS;
+
 
     public double getCrossoverRate() {
         return crossoverRate;
@@ -46,13 +50,20 @@ public class GeneticConfiguration {
         this.mutationRate = mutationRate;
     }
 
+    /**
+     * Which share of the population size is taken over by the fittest individuals of the last generation.
+     * The elites keep their evaluation, so they need no transformation or inference.
+     * Value is between 0 (no elitism) and 1 (exclusive).
+     *
+     * @return the elitism rate, between 0 and 1
+     */
     public double getElitismRate() {
         return elitismRate;
     }
 
     public void setElitismRate(double elitismRate) {
-        if (elitismRate <= 0 || elitismRate > 1) {
-            throw new IllegalArgumentException("Elitism-Rate must be between 0 and 1");
+        if (elitismRate < 0 || elitismRate >= 1) {
+            throw new IllegalArgumentException("Elitism-Rate must be between 0 and 1 (exclusive)");
         }
         this.elitismRate = elitismRate;
     }
@@ -170,4 +181,23 @@ public class GeneticConfiguration {
     public void setTournamentPutBack(boolean tournamentPutBack) {
         this.tournamentPutBack = tournamentPutBack;
     }
+
+    /**
+     * How the parents of the next generation are selected.
+     * FITNESS runs tournaments on the weighted fitness,
+     * NSGA2 keeps the best individuals of the last two generations by their Pareto front and crowding distance
+     * on the weighted metrics, and runs tournaments on these.
+     *
+     * @return the kind of selection.
+     */
+    public GeneticAlgorithm.Selection getSelection() {
+        return selection;
+    }
+
+    public void setSelection(GeneticAlgorithm.Selection selection) {
+        if (selection == null) {
+            throw new IllegalArgumentException("Selection cannot be null");
+        }
+        this.selection = selection;
+    }
 }
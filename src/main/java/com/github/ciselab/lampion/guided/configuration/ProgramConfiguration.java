@@ -1,9 +1,12 @@
 package com.github.ciselab.lampion.guided.configuration;
 
+import com.github.ciselab.lampion.guided.inference.InferenceBackend;
+import com.github.ciselab.lampion.guided.inference.PathContextExtractor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.nio.file.Path;
+import java.util.Optional;
 
 /**
  * This class covers the general program configurations of the Guided-MT-Program.
@@ -26,6 +29,19 @@ public class ProgramConfiguration {
     private Path code2vecDirectory = Path.of(directoryPath.toString(), "code2vec");
     private String modelPath = "models/java14_model/saved_model_iter8.release";
     private Integer bashRetries = 3;
+    private int bashTimeout = 0;
+    private boolean useInferenceWorker = true;
+    private InferenceBackend.Kind inferenceBackend = InferenceBackend.Kind.CODE2VEC;
+    private int evaluationThreads = 1;
+    private boolean useBatchInference = false;
+    private int prefixCacheSize = 0;
+    private int printThreads = 1;
+    private int extractorThreads = 1;
+    private int pathContextCacheSize = 0;
+    private int predictionCacheSize = 0;
+    private int paretoCapacity = 0;
+    private Path fitnessStore = null;
+    private PathContextExtractor.Kind extractor = PathContextExtractor.Kind.PREPROCESS;
 
     public void setModelPath(String arg) {
         if (arg == null || arg.isEmpty() || arg.isBlank()) {
@@ -95,8 +111,8 @@ public class ProgramConfiguration {
 
     /**
      * The path to the codevec/data directory.
-     * This is the primary working directory. Any element needs to be put here before Code2Vec can run inference on it.
-     * As files in this directory are overwritten, we copy the results per individual to the individuals path.
+     * This is the primary working directory, holding the initial dataset and a folder per generation.
+     * Every individual gets its own folder in here, in which Code2Vec is run and the results are stored.
      *
      * @return the path pointing to Code2Vec data for inference
      */
@@ -130,8 +146,10 @@ public class ProgramConfiguration {
     }
 
     /**
-     * The general seed used for engine-setup.
+     * The general seed used for the search, e.g. for creating and mutating the transformers.
      * The seed is only used in these java-parts and does not affect Code2Vec.
+     * With a fitness store, the transformed code only depends on the transformers (and their seeds), not on this seed,
+     * so that runs with other seeds can re-use the stored results.
      *
      * @return seed used for data creation
      */
@@ -143,10 +161,235 @@ public class ProgramConfiguration {
         this.seed = seed;
     }
 
+    /**
+     * How often a failed bash command is retried, waiting twice as long before every retry.
+     *
+     * @return the number of retries, at least 0
+     */
     public Integer getBashRetries() {
         return this.bashRetries;
     }
 
+    public void setBashRetries(int bashRetries) {
+        if (bashRetries < 0)
+            throw new IllegalArgumentException("The number of bash retries cannot be negative");
+        this.bashRetries = bashRetries;
+    }
+
+    /**
+     * How long a single bash command may run before it is killed and counts as failed, e.g. a hanging code2vec.
+     * 0 means the commands can run forever.
+     *
+     * @return the timeout of a command in seconds, at least 0
+     */
+    public int getBashTimeout() {
+        return bashTimeout;
+    }
+
+    public void setBashTimeout(int bashTimeout) {
+        if (bashTimeout < 0)
+            throw new IllegalArgumentException("The bash timeout cannot be negative");
+        this.bashTimeout = bashTimeout;
+    }
+
+    /**
+     * Whether code2vec is kept running as a worker process that loads the model only once,
+     * instead of starting python and loading the model again for every individual.
+     *
+     * @return true if the long-lived inference worker is used
+     */
+    public boolean useInferenceWorker() {
+        return useInferenceWorker;
+    }
+
+    public void setUseInferenceWorker(boolean useInferenceWorker) {
+        this.useInferenceWorker = useInferenceWorker;
+    }
+
+    /**
+     * How many individuals of a population are evaluated at the same time.
+     * Every thread transforms, preprocesses and infers on its own, so with the inference worker
+     * every thread can hold its own code2vec model in memory.
+     *
+     * @return the number of threads used for evaluation, at least 1
+     */
+    public int getEvaluationThreads() {
+        return evaluationThreads;
+    }
+
+    public void setEvaluationThreads(int evaluationThreads) {
+        if (evaluationThreads < 1)
+            throw new IllegalArgumentException("There must be at least one evaluation thread");
+        this.evaluationThreads = evaluationThreads;
+    }
+
+    /**
+     * Whether the inference runs once for all individuals of a population, instead of once per individual.
+     * The individuals are still transformed and preprocessed on the evaluation threads,
+     * then their path contexts are evaluated in a single test run of code2vec and split back per individual.
+     *
+     * @return true if the inference is batched over populations
+     */
+    public boolean useBatchInference() {
+        return useBatchInference;
+    }
+
+    public void setUseBatchInference(boolean useBatchInference) {
+        this.useBatchInference = useBatchInference;
+    }
+
+    /**
+     * How many transformed models of genotype prefixes are kept, so that individuals sharing their first genes
+     * with an evaluated individual only apply their remaining genes.
+     * Every kept model is about as big as the parsed initial dataset, 0 disables the cache.
+     *
+     * @return the maximum number of kept prefix models, at least 0
+     */
+    public int getPrefixCacheSize() {
+        return prefixCacheSize;
+    }
+
+    public void setPrefixCacheSize(int prefixCacheSize) {
+        if (prefixCacheSize < 0)
+            throw new IllegalArgumentException("The prefix cache size cannot be negative");
+        this.prefixCacheSize = prefixCacheSize;
+    }
+
+    /**
+     * How many threads pretty-print the altered types of one individual.
+     * Only altered types are printed, so this mostly pays off for transformations touching many classes.
+     *
+     * @return the number of threads printing the java files of an individual, at least 1
+     */
+    public int getPrintThreads() {
+        return printThreads;
+    }
+
+    public void setPrintThreads(int printThreads) {
+        if (printThreads < 1)
+            throw new IllegalArgumentException("There must be at least one thread for printing");
+        this.printThreads = printThreads;
+    }
+
+    /**
+     * How many threads run the in-process JavaExtractor on the files of the individuals.
+     * The threads are shared by all individuals evaluated at the same time.
+     *
+     * @return the number of threads extracting path contexts, at least 1
+     */
+    public int getExtractorThreads() {
+        return extractorThreads;
+    }
+
+    public void setExtractorThreads(int extractorThreads) {
+        if (extractorThreads < 1)
+            throw new IllegalArgumentException("There must be at least one thread for extracting");
+        this.extractorThreads = extractorThreads;
+    }
+
+    /**
+     * How many files the path contexts are kept for, so that unaltered files (or files printed the same way before)
+     * are not extracted again. Only used when the path contexts are extracted in java (javaextractor).
+     * Every kept file takes about as much memory as its lines in the .c2v file, 0 disables the cache.
+     *
+     * @return the maximum number of files with kept path contexts, at least 0
+     */
+    public int getPathContextCacheSize() {
+        return pathContextCacheSize;
+    }
+
+    public void setPathContextCacheSize(int pathContextCacheSize) {
+        if (pathContextCacheSize < 0)
+            throw new IllegalArgumentException("The path context cache size cannot be negative");
+        this.pathContextCacheSize = pathContextCacheSize;
+    }
+
+    /**
+     * How many methods the predictions of code2vec are kept for, keyed by their path contexts,
+     * so that only the methods altered by a transformation are predicted again.
+     * With the cache, the F1 log of every individual is calculated from its predictions instead of by code2vec.
+     * 0 disables the cache.
+     *
+     * @return the maximum number of methods with kept predictions, at least 0
+     */
+    public int getPredictionCacheSize() {
+        return predictionCacheSize;
+    }
+
+    public void setPredictionCacheSize(int predictionCacheSize) {
+        if (predictionCacheSize < 0)
+            throw new IllegalArgumentException("The prediction cache size cannot be negative");
+        this.predictionCacheSize = predictionCacheSize;
+    }
+
+    /**
+     * How many individuals the Pareto front holds at most.
+     * Once it is full, the most crowded individual of the front is dropped, so that the front keeps its spread.
+     * 0 means the front is not bounded.
+     *
+     * @return the capacity of the Pareto front, at least 0
+     */
+    public int getParetoCapacity() {
+        return paretoCapacity;
+    }
+
+    public void setParetoCapacity(int paretoCapacity) {
+        if (paretoCapacity < 0)
+            throw new IllegalArgumentException("The capacity of the Pareto front cannot be negative");
+        this.paretoCapacity = paretoCapacity;
+    }
+
+    /**
+     * The file in which the metric results of evaluated genotypes are kept across runs.
+     * A run with the same dataset, model and settings re-uses them instead of evaluating a genotype again.
+     * Several runs can share the file at the same time.
+     *
+     * @return the file of the fitness store, empty if the results are not kept
+     */
+    public Optional<Path> getFitnessStore() {
+        return Optional.ofNullable(fitnessStore);
+    }
+
+    public void setFitnessStore(String fitnessStore) {
+        if (fitnessStore == null || fitnessStore.isBlank())
+            throw new IllegalArgumentException("The file of the fitness store cannot be null or empty");
+        this.fitnessStore = Path.of(fitnessStore.trim());
+    }
+
+    /**
+     * Which backend predicts the method names.
+     * CODE2VEC runs the python code2vec project,
+     * FAKE creates deterministic predictions in java, e.g. for benchmarks without python.
+     *
+     * @return the kind of inference backend
+     */
+    public InferenceBackend.Kind getInferenceBackend() {
+        return inferenceBackend;
+    }
+
+    public void setInferenceBackend(InferenceBackend.Kind inferenceBackend) {
+        if (inferenceBackend == null)
+            throw new IllegalArgumentException("Inference Backend cannot be null");
+        this.inferenceBackend = inferenceBackend;
+    }
+
+    /**
+     * Where the path contexts for code2vec come from.
+     * PREPROCESS runs the preprocessing of the code2vec project on the written files,
+     * JAVAEXTRACTOR runs the JavaExtractor of code2vec inside this JVM on the written files.
+     *
+     * @return the kind of path context extraction
+     */
+    public PathContextExtractor.Kind getExtractor() {
+        return extractor;
+    }
+
+    public void setExtractor(PathContextExtractor.Kind extractor) {
+        if (extractor == null)
+            throw new IllegalArgumentException("Extractor cannot be null");
+        this.extractor = extractor;
+    }
+
     /**
      * Path to the Code2Vec Directory.
      *
@@ -0,0 +1,427 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.stream.Stream;
+
+import com.github.ciselab.lampion.guided.configuration.Configuration;
+import com.github.ciselab.lampion.guided.support.BashRunner;
+import com.github.ciselab.lampion.guided.support.CommandFailedException;
+import com.github.ciselab.lampion.guided.support.FileManagement;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The inference backend running the scripts of the code2vec project.
+ * This includes first preprocessing the code files and then evaluating the model.
+ * <p>
+ * Code2Vec writes all its intermediate and result files into its working directory.
+ * To not share these files between evaluations, every evaluation gets its own scratch directory ("work")
+ * inside the dataset, which links to the code2vec project. The preprocessed files are written straight
+ * to the dataset, the result files straight to the destination. Hence, several evaluations can run at once.
+ * <p>
+ * If the path contexts are extracted in java (by the JavaExtractor in-process),
+ * the [data].test.c2v file is already in the dataset and the preprocessing is skipped.
+ * <p>
+ * Several datasets can be evaluated in a single run of code2vec, which only loads the test data once
+ * and fills the batches of the model with the methods of all datasets.
+ * With the prediction cache, only methods whose path contexts were not predicted before are sent to code2vec.
+ */
+public class Code2VecBackend implements InferenceBackend {
+
+    private final Logger logger = LogManager.getLogger(Code2VecBackend.class);
+
+    static final String WORKSPACE = "work";
+    static final String BATCH_PREFIX = "batch-";
+    // Entries of the code2vec directory that every evaluation needs for itself
+    static final Set<String> NOT_SHARED = Set.of("data", ResultFiles.RESULTS, ResultFiles.PREDICTED_WORDS,
+            ResultFiles.F1_LOG, "log.txt", "eval_log.txt", "worker_log.txt");
+
+    private final Configuration config;
+    private final BashRunner bashRunner;
+    private final PredictionCache predictionCache;
+    // One worker per evaluation thread at most, each of them holds its own model
+    private final List<Code2VecWorker> workers = new ArrayList<>();
+    private final BlockingDeque<Code2VecWorker> idleWorkers = new LinkedBlockingDeque<>();
+
+    public Code2VecBackend(Configuration config, BashRunner bashRunner) {
+        this.config = config;
+        this.bashRunner = bashRunner;
+        this.predictionCache = new PredictionCache(config.program.getPredictionCacheSize());
+    }
+
+    /**
+     * Run all scripts from the code2vec project.
+     *
+     * @param dataset     The name of the dataset
+     * @param destination the path to where the results will be stored
+     * @return the path to the directory containing the result-files
+     */
+    @Override
+    public String runInference(String dataset, String destination) {
+        Path path = Path.of(dataset).toAbsolutePath();
+        Path resolvedDestination = Path.of(destination).toAbsolutePath();
+        try {
+            Files.createDirectories(resolvedDestination);
+        } catch (IOException e) {
+            logger.error("Could not create the result directory for " + dataset, e);
+            return path.toString();
+        }
+        Path testDataPath = prepareDataset(path);
+
+        if (predictionCache.isEnabled()) {
+            try {
+                evaluateMethods(List.of(testDataPath), List.of(resolvedDestination), path.getParent());
+                return path.toString();
+            } catch (IOException e) {
+                logger.warn("Could not evaluate the methods of " + dataset + " separately, evaluating the whole file", e);
+            }
+        }
+        // Evaluating code2vec model with preprocessed files, which writes the result files to the destination.
+        evaluateModel(testDataPath, resolvedDestination);
+        logger.debug("Wrote results from code2vec to " + resolvedDestination);
+        return path.toString();
+    }
+
+    @Override
+    public void prepare(String dataset) {
+        prepareDataset(Path.of(dataset).toAbsolutePath());
+    }
+
+    public PredictionCache getPredictionCache() {
+        return predictionCache;
+    }
+
+    /**
+     * Evaluates all datasets in a single run of code2vec.
+     * The methods of all their .c2v files are predicted at once, see {@link #evaluateMethods(List, List, Path)}.
+     * If the batch fails or cannot be split, the datasets are evaluated one by one.
+     *
+     * @param datasets     the paths to the dataset directories.
+     * @param destinations the paths to where the result files will be stored, in the order of the datasets.
+     * @return the paths to the dataset directories.
+     */
+    @Override
+    public List<String> runInference(List<String> datasets, List<String> destinations) {
+        if (datasets.size() != destinations.size()) {
+            throw new IllegalArgumentException("Every dataset needs exactly one destination");
+        }
+        if (datasets.size() < 2) {
+            return InferenceBackend.super.runInference(datasets, destinations);
+        }
+        try {
+            List<Path> paths = datasets.stream().map(d -> Path.of(d).toAbsolutePath()).toList();
+            List<Path> testFiles = new ArrayList<>();
+            for (Path dataset : paths) {
+                Path testDataPath = testDataPath(dataset);
+                // Prepared datasets already have their .c2v file
+                if (!Files.isRegularFile(testDataPath))
+                    testDataPath = prepareDataset(dataset);
+                if (!Files.isRegularFile(testDataPath))
+                    throw new IOException("There are no path contexts for " + dataset);
+                testFiles.add(testDataPath);
+            }
+            evaluateMethods(testFiles, destinations.stream().map(d -> Path.of(d).toAbsolutePath()).toList(),
+                    paths.get(0).getParent());
+            return paths.stream().map(Path::toString).toList();
+        } catch (IOException e) {
+            logger.warn("Could not evaluate " + datasets.size() + " datasets in one batch, evaluating them one by one", e);
+            return InferenceBackend.super.runInference(datasets, destinations);
+        }
+    }
+
+    /**
+     * Evaluates the methods of several .c2v files and writes the result files of every file to its destination.
+     * Methods with a known prediction are taken from the prediction cache, all other (distinct) methods are
+     * predicted in a single run of code2vec in a scratch directory. The result files are put together from the
+     * lines of code2vec for every method, and an F1 log calculated from them (see {@link ResultFiles}).
+     *
+     * @param testFiles     the .c2v files to evaluate.
+     * @param destinations  the directories to write the result files to, in the order of the test files.
+     * @param scratchParent the directory to create the scratch directory ("batch-...") in.
+     * @throws IOException if a file could not be read or written, or the predictions did not match the methods.
+     */
+    private void evaluateMethods(List<Path> testFiles, List<Path> destinations, Path scratchParent) throws IOException {
+        List<List<String>> keys = new ArrayList<>();
+        Map<String, List<ResultFiles.Entry>> known = new HashMap<>();
+        // The methods to predict, by their key, without duplicates
+        Map<String, String> unknown = new LinkedHashMap<>();
+        for (Path testFile : testFiles) {
+            List<String> fileKeys = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(testFile)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank())
+                        continue;
+                    String key = PredictionCache.key(line);
+                    fileKeys.add(key);
+                    if (known.containsKey(key) || unknown.containsKey(key))
+                        continue;
+                    Optional<List<ResultFiles.Entry>> cached = predictionCache.get(key);
+                    if (cached.isPresent())
+                        known.put(key, cached.get());
+                    else
+                        unknown.put(key, line);
+                }
+            }
+            keys.add(fileKeys);
+        }
+        logger.debug("Predicting " + unknown.size() + " of " + (known.size() + unknown.size())
+                + " distinct methods of " + testFiles.size() + " datasets");
+        if (!unknown.isEmpty())
+            known.putAll(predict(unknown, scratchParent));
+
+        for (int i = 0; i < destinations.size(); i++) {
+            List<ResultFiles.Entry> entries = new ArrayList<>();
+            keys.get(i).forEach(key -> entries.addAll(known.get(key)));
+            ResultFiles.writeEntries(destinations.get(i), entries);
+        }
+    }
+
+    /**
+     * Predicts the methods in a single run of code2vec and keeps their predictions in the cache.
+     * <p>
+     * Code2Vec skips methods without any known path context, so the predictions are matched to the methods
+     * by their names, in order, see {@link #matchEntries(List, List)}.
+     * The results of code2vec only name the label of a method, so a method cannot be tagged without changing its
+     * prediction and rank. Batches with an ambiguous match fail instead, nothing of them is cached.
+     *
+     * @return the entries of the methods by their keys, none for skipped methods.
+     * @throws IOException if code2vec failed, or its predictions did not match the methods unambiguously.
+     */
+    private Map<String, List<ResultFiles.Entry>> predict(Map<String, String> methods, Path scratchParent)
+            throws IOException {
+        Path batch = Files.createTempDirectory(scratchParent, BATCH_PREFIX);
+        try {
+            Path batchFile = batch.resolve("batch.test.c2v");
+            Files.write(batchFile, methods.values());
+            evaluateModel(batchFile, batch);
+
+            List<String> keys = new ArrayList<>(methods.keySet());
+            List<String> names = methods.values().stream().map(line -> {
+                int nameEnd = line.indexOf(' ');
+                return nameEnd < 0 ? line : line.substring(0, nameEnd);
+            }).toList();
+            List<ResultFiles.Entry> entries = ResultFiles.read(batch);
+            if (entries.size() > names.size())
+                throw new IOException("The predictions of " + batch + " do not match the methods of the batch");
+            int[] lines = new int[entries.size()];
+            if (entries.size() < names.size())
+                lines = matchEntries(names, entries.stream().map(entry -> entry.prediction().original()).toList());
+            else
+                Arrays.setAll(lines, i -> i);
+
+            Map<String, List<ResultFiles.Entry>> predicted = new HashMap<>();
+            keys.forEach(key -> predicted.put(key, List.of()));
+            for (int i = 0; i < entries.size(); i++)
+                predicted.put(keys.get(lines[i]), List.of(entries.get(i)));
+            predicted.forEach(predictionCache::put);
+            return predicted;
+        } finally {
+            try {
+                FileManagement.removeDirectory(batch);
+            } catch (IOException e) {
+                logger.warn("Could not remove the batch directory " + batch, e);
+            }
+        }
+    }
+
+    /**
+     * Matches the predictions of code2vec to the methods they were made for.
+     * Every prediction belongs to a later method than the one before, with the same name.
+     * If a skipped method has the same name as a predicted one, the prediction could belong to either of them;
+     * the match is then ambiguous, as the earliest and the latest possible methods of a prediction differ.
+     *
+     * @param names     the names of the methods, in the order of the test file.
+     * @param originals the original names of the predictions, in the order of the results.
+     * @return the index of the method of every prediction.
+     * @throws IOException if a prediction matches no method, or more than one.
+     */
+    static int[] matchEntries(List<String> names, List<String> originals) throws IOException {
+        int[] earliest = new int[originals.size()];
+        int line = 0;
+        for (int i = 0; i < originals.size(); i++) {
+            while (line < names.size() && !names.get(line).equals(originals.get(i)))
+                line++;
+            if (line >= names.size())
+                throw new IOException("There is no method for the prediction of " + originals.get(i));
+            earliest[i] = line++;
+        }
+        line = names.size() - 1;
+        for (int i = originals.size() - 1; i >= 0; i--) {
+            while (!names.get(line).equals(originals.get(i)))
+                line--;
+            if (line != earliest[i])
+                throw new IOException("The prediction of " + originals.get(i) + " matches several methods");
+            line--;
+        }
+        return earliest;
+    }
+
+    /**
+     * Creates the folders code2vec expects next to the test folder and preprocesses the java files, unless the path
+     * contexts were already extracted in java.
+     * The java files stay in their folders by package, as written by the engine, the JavaExtractor walks them
+     * recursively.
+     *
+     * @return the path to the [data].test.c2v file of the dataset.
+     */
+    private Path prepareDataset(Path path) {
+        logger.debug("Creating directory at " + path);
+        try {
+            FileManagement.createDirs(path);
+        } catch (IOException e) {
+            logger.error("Could not create the code2vec directories of " + path, e);
+        }
+
+        Path testDataPath = testDataPath(path);
+        if (config.program.getExtractor() != PathContextExtractor.Kind.PREPROCESS && Files.isRegularFile(testDataPath)) {
+            logger.debug("Using the path contexts extracted in java at " + testDataPath);
+        } else {
+            preprocess(path, path.getFileName().toString());
+        }
+        return testDataPath;
+    }
+
+    private static Path testDataPath(Path dataset) {
+        return dataset.resolve(dataset.getFileName() + ".test.c2v");
+    }
+
+    /**
+     * Runs the preprocessing of code2vec in a scratch directory, which writes [data].test.c2v to the dataset.
+     */
+    private void preprocess(Path dataset, String data) {
+        Path workspace = dataset.resolve(WORKSPACE);
+        try {
+            prepareWorkspace(workspace, dataset, data);
+        } catch (IOException e) {
+            logger.error("Could not create the working directory for " + dataset, e);
+            return;
+        }
+
+        // Preprocessing file, the results are written to data/<data> of the workspace, which links to the dataset.
+        String preprocess = "source preprocess.sh " + dataset + " " + data;
+        try {
+            bashRunner.runCommand(preprocess, workspace);
+            collectPreprocessedFiles(workspace.resolve("data").resolve(data), dataset);
+        } catch (CommandFailedException e) {
+            // Without its .c2v file, the evaluation of the dataset fails as well
+            logger.error("Could not preprocess " + dataset + ", last output: " + e.getOutputTail(), e);
+        }
+
+        try {
+            FileManagement.removeDirectory(workspace);
+        } catch (IOException e) {
+            logger.warn("Could not remove the working directory " + workspace, e);
+        }
+    }
+
+    /**
+     * Creates the scratch directory for one evaluation.
+     * It links to everything in the code2vec directory, except for data and result files.
+     * Its data/[data] entry links to the dataset itself, so the preprocessing writes there directly.
+     */
+    private void prepareWorkspace(Path workspace, Path dataset, String data) throws IOException {
+        FileManagement.createLinkedDirectory(config.program.getCode2vecDirectory().toAbsolutePath(), workspace, NOT_SHARED);
+        Path dataDirectory = workspace.resolve("data");
+        Files.createDirectories(dataDirectory);
+        Path output = dataDirectory.resolve(data);
+        if (!Files.exists(output, LinkOption.NOFOLLOW_LINKS))
+            Files.createSymbolicLink(output, dataset);
+    }
+
+    /**
+     * If the preprocessing replaced the link to the dataset by a real directory, its files are moved to the dataset.
+     */
+    private void collectPreprocessedFiles(Path output, Path dataset) {
+        if (Files.isSymbolicLink(output) || !Files.isDirectory(output))
+            return;
+        try (Stream<Path> files = Files.list(output)) {
+            for (Path file : files.toList()) {
+                FileManagement.moveFile(file, dataset.resolve(file.getFileName()));
+            }
+        } catch (IOException e) {
+            logger.error("Could not move the preprocessed files from " + output + " to " + dataset, e);
+        }
+    }
+
+    /**
+     * Evaluates the code2vec model on the given .c2v file, writing the result files to the destination.
+     * If enabled, this is done by a long-lived worker, which keeps the model loaded.
+     * If the worker fails, the evaluation falls back to a single python run.
+     *
+     * @param testDataPath the preprocessed .c2v file to evaluate.
+     * @param destination  the directory to write the result files to.
+     * @throws InferenceException if the python run failed in all its tries, or if waiting for a worker was interrupted.
+     */
+    private void evaluateModel(Path testDataPath, Path destination) {
+        if (config.program.useInferenceWorker()) {
+            try {
+                Code2VecWorker worker = acquireWorker();
+                try {
+                    worker.evaluate(testDataPath, destination);
+                    return;
+                } finally {
+                    idleWorkers.offerFirst(worker);
+                }
+            } catch (IOException e) {
+                logger.warn("Code2Vec worker could not evaluate " + testDataPath + " - falling back to a single python run", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // There are no result files, which must not be read as an evaluation
+                throw new InferenceException("Interrupted while waiting for a Code2Vec worker for " + testDataPath, e);
+            }
+        }
+        Path code2vecDirectory = config.program.getCode2vecDirectory().toAbsolutePath();
+        String eval = "python3 " + code2vecDirectory.resolve("code2vec.py")
+                + " --load " + code2vecDirectory.resolve(config.program.getModelPath())
+                + " --test " + testDataPath + " --logs-path eval_log.txt";
+        try {
+            bashRunner.runCommand(eval, destination);
+        } catch (CommandFailedException e) {
+            throw new InferenceException("Code2Vec could not evaluate " + testDataPath
+                    + ", last output: " + e.getOutputTail(), e);
+        }
+    }
+
+    /**
+     * Takes an idle worker, or starts a new one if all are busy and there are less workers than evaluation threads.
+     * Otherwise, waits for a worker to become idle.
+     */
+    private Code2VecWorker acquireWorker() throws InterruptedException {
+        synchronized (this) {
+            Code2VecWorker idle = idleWorkers.pollFirst();
+            if (idle != null)
+                return idle;
+            if (workers.size() < config.program.getEvaluationThreads()) {
+                Code2VecWorker worker = new Code2VecWorker(config.program);
+                workers.add(worker);
+                return worker;
+            }
+        }
+        return idleWorkers.takeFirst();
+    }
+
+    /**
+     * Stops all code2vec workers.
+     */
+    @Override
+    public synchronized void close() {
+        workers.forEach(Code2VecWorker::close);
+        workers.clear();
+        idleWorkers.clear();
+    }
+}
@@ -0,0 +1,267 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.github.ciselab.lampion.guided.configuration.ProgramConfiguration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * This class keeps a single code2vec process alive for the whole run.
+ * The process loads the model once, and is then asked to evaluate one .c2v file after another.
+ * This saves the python start-up and the model loading for every individual.
+ * <p>
+ * The communication is line based over stdin/stdout, see code2vec_worker.py in the resources for the protocol.
+ * A watchdog restarts the worker if it dies, requests that fail due to a crash are retried on the fresh worker.
+ */
+public class Code2VecWorker implements AutoCloseable {
+
+    static final String MARKER = "@@GUIDED-MT@@";
+    static final String WORKER_SCRIPT = "code2vec_worker.py";
+
+    private final Logger logger = LogManager.getLogger(Code2VecWorker.class);
+
+    private final ProgramConfiguration config;
+    private final List<String> command;
+
+    private Path workerDirectory;
+    private Process process;
+    private BufferedWriter toWorker;
+    private BufferedReader fromWorker;
+    private int restarts = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a worker that runs the code2vec_worker.py with the model from the program configuration.
+     * The process is started lazily with the first evaluation.
+     *
+     * @param config the program configuration, used for the code2vec directory, model path and retries.
+     */
+    public Code2VecWorker(ProgramConfiguration config) {
+        this(config, null);
+    }
+
+    /**
+     * Creates a worker that runs the given command instead of the python worker.
+     * The command must behave like the code2vec_worker.py, this is mostly meant for testing.
+     *
+     * @param config  the program configuration, used for the code2vec directory and retries.
+     * @param command the command to start the worker with, null to use the python worker.
+     */
+    Code2VecWorker(ProgramConfiguration config, List<String> command) {
+        this.config = config;
+        this.command = command;
+    }
+
+    /**
+     * Evaluate the given .c2v file with the loaded model.
+     * The result files (results.txt, predicted_words.txt, F1_score_log.txt) are written to the working directory.
+     * If the worker crashed during the request, it is restarted and the request is retried.
+     *
+     * @param testFile         the .c2v file to evaluate.
+     * @param workingDirectory the directory in which code2vec writes its result files.
+     * @throws IOException if the evaluation failed, or the worker could not be (re-)started often enough.
+     */
+    public synchronized void evaluate(Path testFile, Path workingDirectory) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The code2vec worker has already been closed");
+        }
+        IOException lastIssue = null;
+        for (int attempt = 0; attempt <= config.getBashRetries(); attempt++) {
+            try {
+                ensureRunning();
+                send("EVAL\t" + testFile.toAbsolutePath() + "\t" + workingDirectory.toAbsolutePath());
+                String answer = awaitAnswer();
+                if (answer.startsWith("OK")) {
+                    return;
+                }
+                // The worker is alive but could not evaluate the file, retrying would not change anything.
+                throw new IOException("Code2Vec worker failed to evaluate " + testFile + ": " + answer);
+            } catch (WorkerDiedException e) {
+                lastIssue = e;
+                logger.warn("Code2Vec worker died while evaluating " + testFile + ", restarting it (attempt "
+                        + (attempt + 1) + ")");
+                stopProcess();
+                restarts++;
+            }
+        }
+        throw new IOException("Code2Vec worker did not succeed after " + config.getBashRetries() + " retries", lastIssue);
+    }
+
+    /**
+     * @return how often the worker had to be restarted after a crash.
+     */
+    public synchronized int getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * @return whether there is currently a live worker process.
+     */
+    public synchronized boolean isRunning() {
+        return process != null && process.isAlive();
+    }
+
+    /**
+     * Stops the worker process. Further evaluations are not possible.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (process != null && process.isAlive()) {
+            try {
+                send("QUIT");
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    logger.debug("Code2Vec worker did not stop in time, destroying it");
+                }
+            } catch (IOException e) {
+                logger.debug("Could not send QUIT to Code2Vec worker: " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        stopProcess();
+    }
+
+    private void ensureRunning() throws IOException {
+        if (process != null && process.isAlive()) {
+            return;
+        }
+        if (process != null) {
+            restarts++;
+            stopProcess();
+        }
+        start();
+    }
+
+    private void start() throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command == null ? pythonWorkerCommand() : command);
+        processBuilder.directory(config.getCode2vecDirectory().toAbsolutePath().toFile());
+        processBuilder.environment().put("PYTHONPATH", config.getCode2vecDirectory().toAbsolutePath().toString());
+        // Tensorflow is very chatty on stderr - it goes to a file so it can never block the worker.
+        processBuilder.redirectError(ProcessBuilder.Redirect.appendTo(
+                config.getCode2vecDirectory().resolve("worker_log.txt").toFile()));
+        logger.info("Starting Code2Vec worker with model " + config.getModelPath());
+        long start = System.currentTimeMillis();
+
+        Process started = processBuilder.start();
+        process = started;
+        toWorker = new BufferedWriter(new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8));
+        fromWorker = new BufferedReader(new InputStreamReader(started.getInputStream(), StandardCharsets.UTF_8));
+        // Watchdog: a worker that dies between requests is restarted right away,
+        // so that the next individual does not pay the model loading.
+        started.onExit().thenRun(() -> restartAfterCrash(started));
+
+        String answer = awaitAnswer();
+        if (!answer.startsWith("READY")) {
+            throw new IOException("Code2Vec worker did not start properly: " + answer);
+        }
+        logger.info("Code2Vec worker is ready after " + (System.currentTimeMillis() - start) / 1000 + " seconds");
+    }
+
+    private synchronized void restartAfterCrash(Process crashed) {
+        if (closed || crashed != process) {
+            return;
+        }
+        logger.warn("Code2Vec worker exited unexpectedly with code " + crashed.exitValue() + ", restarting it");
+        try {
+            ensureRunning();
+        } catch (IOException e) {
+            // The next evaluation tries again and reports the issue, nothing else to do here.
+            logger.error("Could not restart Code2Vec worker", e);
+            stopProcess();
+        }
+    }
+
+    private void send(String request) throws IOException {
+        try {
+            toWorker.write(request);
+            toWorker.newLine();
+            toWorker.flush();
+        } catch (IOException e) {
+            throw new WorkerDiedException("Could not send request to Code2Vec worker", e);
+        }
+    }
+
+    /**
+     * Reads the output of the worker until the next protocol answer.
+     * All other lines are the normal code2vec output, which is only logged.
+     *
+     * @return the answer of the worker, without the marker.
+     * @throws WorkerDiedException if the worker stopped before answering.
+     */
+    private String awaitAnswer() throws IOException {
+        String line;
+        try {
+            while ((line = fromWorker.readLine()) != null) {
+                if (line.startsWith(MARKER)) {
+                    return line.substring(MARKER.length()).trim();
+                }
+                logger.debug(line);
+            }
+        } catch (IOException e) {
+            throw new WorkerDiedException("Lost connection to Code2Vec worker", e);
+        }
+        throw new WorkerDiedException("Code2Vec worker stopped without answering", null);
+    }
+
+    private void stopProcess() {
+        if (process != null) {
+            process.destroy();
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        process = null;
+        toWorker = null;
+        fromWorker = null;
+    }
+
+    private List<String> pythonWorkerCommand() throws IOException {
+        if (workerDirectory == null) {
+            workerDirectory = Files.createTempDirectory("guided-mt-worker");
+            workerDirectory.toFile().deleteOnExit();
+            try (InputStream script = Code2VecWorker.class.getClassLoader().getResourceAsStream(WORKER_SCRIPT)) {
+                if (script == null) {
+                    throw new IOException("Could not find " + WORKER_SCRIPT + " in the resources");
+                }
+                Files.copy(script, workerDirectory.resolve(WORKER_SCRIPT), StandardCopyOption.REPLACE_EXISTING);
+            }
+            // Code2Vec requires a test file on startup, the worker copies every request to this file.
+            Files.createFile(workerDirectory.resolve("mailbox.test.c2v"));
+            workerDirectory.resolve(WORKER_SCRIPT).toFile().deleteOnExit();
+            workerDirectory.resolve("mailbox.test.c2v").toFile().deleteOnExit();
+        }
+        return List.of("python3", "-u", workerDirectory.resolve(WORKER_SCRIPT).toString(),
+                "--load", config.getModelPath(),
+                "--test", workerDirectory.resolve("mailbox.test.c2v").toString(),
+                "--logs-path", "eval_log.txt");
+    }
+
+    /**
+     * Signals that the worker process is gone, in contrast to a worker that answered with an error.
+     */
+    private static class WorkerDiedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        WorkerDiedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A deterministic stand-in for code2vec, that needs neither python nor a model.
+ * It finds the methods in the transformed java files and "predicts" their names,
+ * producing result files in the same format as code2vec (see {@link ResultFiles}).
+ * <p>
+ * The prediction only depends on the method's name and body:
+ * The same code always gets the same prediction, and any transformation of a method re-rolls its prediction.
+ * Longer methods (e.g. with added variables or neutral elements) are predicted correctly less often,
+ * so that the search has something to optimize.
+ * This is meant to profile and test the java side of the pipeline, the numbers have no meaning beyond that.
+ */
+public class FakeInferenceBackend implements InferenceBackend {
+
+    private final Logger logger = LogManager.getLogger(FakeInferenceBackend.class);
+
+    // A method declaration as pretty-printed by spoon, e.g. "public static int foo(int a) throws Exception {"
+    private static final Pattern METHOD = Pattern.compile(
+            "(?m)^[ \\t]*(?:[\\w<>\\[\\],.?@]+[ \\t]+)+([a-z_$][\\w$]*)[ \\t]*\\(([^()]*)\\)[ \\t]*(?:throws[ \\t]+[\\w.,\\s]+)?\\{");
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][\\w$]*");
+    private static final Set<String> KEYWORDS = Set.of(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "continue",
+            "default", "do", "double", "else", "enum", "extends", "false", "final", "finally", "float", "for",
+            "if", "implements", "import", "instanceof", "int", "interface", "long", "new", "null", "package",
+            "private", "protected", "public", "return", "short", "static", "super", "switch", "synchronized",
+            "this", "throw", "throws", "true", "try", "var", "void", "volatile", "while");
+
+    @Override
+    public String runInference(String dataset, String destination) {
+        Path path = Path.of(dataset).toAbsolutePath();
+        List<ResultFiles.Prediction> predictions = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(path.resolve("test"))) {
+            List<Path> javaFiles = walk
+                    .filter(p -> p.toString().endsWith(".java"))
+                    .sorted()
+                    .toList();
+            for (Path javaFile : javaFiles) {
+                predictions.addAll(predict(Files.readString(javaFile)));
+            }
+            ResultFiles.write(Path.of(destination), predictions);
+        } catch (IOException e) {
+            throw new InferenceException("Could not create fake predictions for " + dataset, e);
+        }
+        logger.debug("Fake inference predicted " + predictions.size() + " methods of " + dataset);
+        return path.toString();
+    }
+
+    /**
+     * Predicts the names of all methods in a java source.
+     *
+     * @param source the content of a java file.
+     * @return one prediction per method, in order of their appearance.
+     */
+    List<ResultFiles.Prediction> predict(String source) {
+        List<ResultFiles.Prediction> predictions = new ArrayList<>();
+        Matcher matcher = METHOD.matcher(source);
+        int searchFrom = 0;
+        while (searchFrom < source.length() && matcher.find(searchFrom)) {
+            String name = matcher.group(1);
+            if (KEYWORDS.contains(name)) {
+                searchFrom = matcher.end();
+                continue;
+            }
+            int bodyEnd = findClosingBrace(source, matcher.end() - 1);
+            String body = source.substring(matcher.end(), bodyEnd);
+            predictions.add(predict(name, body));
+            // Methods in local or anonymous classes are skipped, they belong to the surrounding method
+            searchFrom = bodyEnd;
+        }
+        return predictions;
+    }
+
+    private ResultFiles.Prediction predict(String methodName, String body) {
+        String original = String.join("|", subtokens(methodName));
+        List<String> identifiers = new ArrayList<>();
+        Matcher matcher = IDENTIFIER.matcher(body);
+        while (matcher.find()) {
+            if (!KEYWORDS.contains(matcher.group())) {
+                identifiers.add(matcher.group());
+            }
+        }
+        long hash = mix(fnv(original + '\n' + body.replaceAll("\\s+", " ").trim()));
+        double roll = (hash >>> 11) * 0x1.0p-53;
+        double quality = 1.0 / (1.0 + identifiers.size() / 100.0);
+        double score = 5 + Math.floorMod(hash >>> 20, 3000) / 100.0;
+
+        if (roll < 0.6 * quality) {
+            return new ResultFiles.Prediction(original, original, 1, score);
+        }
+        int rank = roll < 0.8 * quality ? 2 + (int) Math.floorMod(hash, 9L) : 0;
+        return new ResultFiles.Prediction(original, wrongPrediction(original, identifiers, hash), rank, score / Math.max(rank, 1));
+    }
+
+    /**
+     * A wrong prediction is made from the body's identifiers, sometimes keeping the first subtoken of the real name,
+     * so that precision and recall are not always zero for wrong predictions.
+     */
+    private static String wrongPrediction(String original, List<String> identifiers, long hash) {
+        List<String> predicted = new ArrayList<>();
+        if ((hash & 1) == 0) {
+            predicted.add(original.split("\\|")[0]);
+        }
+        if (identifiers.isEmpty()) {
+            predicted.add("get");
+        } else {
+            String picked = identifiers.get((int) Math.floorMod(hash >>> 7, (long) identifiers.size()));
+            subtokens(picked).stream().limit(3).forEach(predicted::add);
+        }
+        String result = String.join("|", predicted);
+        // A wrong prediction must not accidentally be right
+        return result.equals(original) ? result + "|value" : result;
+    }
+
+    /**
+     * Splits a name into its lower-case subtokens, the same way the code2vec JavaExtractor does.
+     */
+    static List<String> subtokens(String name) {
+        return Arrays.stream(name.trim().split("(?<=[a-z])(?=[A-Z])|_|[0-9]|(?<=[A-Z])(?=[A-Z][a-z])|\\s+"))
+                .filter(s -> !s.isEmpty())
+                .map(s -> s.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toList());
+    }
+
+    private static int findClosingBrace(String source, int openingBrace) {
+        int depth = 0;
+        for (int i = openingBrace; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '"' || c == '\'') {
+                // skip literals, they might contain braces
+                i++;
+                while (i < source.length() && source.charAt(i) != c) {
+                    if (source.charAt(i) == '\\')
+                        i++;
+                    i++;
+                }
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0)
+                    return i;
+            }
+        }
+        return source.length();
+    }
+
+    private static long fnv(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
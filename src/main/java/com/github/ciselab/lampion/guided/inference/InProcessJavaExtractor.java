@@ -0,0 +1,259 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * This class runs the JavaExtractor of code2vec inside this JVM, instead of through preprocess.sh.
+ * The jar is loaded once into a classloader of its own, so its dependencies (e.g. its JavaParser)
+ * do not mix with the ones of this project. Every file is extracted by a task of the JavaExtractor on a thread pool,
+ * whose output to System.out is captured per thread and written to the .c2v file.
+ * <p>
+ * As preprocess.py would, the lines are padded or sampled to the maximum number of contexts
+ * (see {@link PathContextExtractor#pad(String)}).
+ * Files with a content that was extracted before are taken from the {@link PathContextCache}.
+ */
+public class InProcessJavaExtractor implements AutoCloseable {
+
+    private final Logger logger = LogManager.getLogger(InProcessJavaExtractor.class);
+
+    // Where preprocess.sh expects the jar, relative to the code2vec directory
+    public static final Path JAR = Path.of("JavaExtractor", "JPredict", "target", "JavaExtractor-0.0.1-SNAPSHOT.jar");
+    static final String ARGUMENTS_CLASS = "JavaExtractor.Common.CommandLineValues";
+    static final String TASK_CLASS = "JavaExtractor.ExtractFeaturesTask";
+
+    // The output of the threads extracting a file, all other threads print to the original System.out
+    private static final ThreadLocal<ByteArrayOutputStream> capturedOutput = new ThreadLocal<>();
+    private static boolean captureInstalled = false;
+
+    private final URLClassLoader classLoader;
+    private final Constructor<?> arguments;
+    private final Constructor<?> task;
+    private final Method processFile;
+    private final PathContextExtractor padding;
+    private final PathContextCache cache;
+    // Everything besides a file that its lines depend on
+    private final String settings;
+    private final ExecutorService pool;
+
+    /**
+     * Loads the JavaExtractor.
+     *
+     * @param jar     the jar of the JavaExtractor, including its dependencies.
+     * @param threads how many files are extracted at the same time, at least 1.
+     * @param seed    the seed for sampling the paths of large methods.
+     * @throws IOException if the JavaExtractor could not be loaded from the jar.
+     */
+    public InProcessJavaExtractor(Path jar, int threads, long seed) throws IOException {
+        this(jar, threads, seed, new PathContextCache(0));
+    }
+
+    /**
+     * Loads the JavaExtractor, which takes the lines of files it extracted before from the cache.
+     *
+     * @param jar     the jar of the JavaExtractor, including its dependencies.
+     * @param threads how many files are extracted at the same time, at least 1.
+     * @param seed    the seed for sampling the paths of large methods.
+     * @param cache   the lines of already extracted files, shared with other extractors.
+     * @throws IOException if the JavaExtractor could not be loaded from the jar.
+     */
+    public InProcessJavaExtractor(Path jar, int threads, long seed, PathContextCache cache) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("There must be at least one thread for extracting");
+        }
+        if (!Files.exists(jar)) {
+            throw new IOException("There is no JavaExtractor at " + jar.toAbsolutePath());
+        }
+        classLoader = new URLClassLoader(new URL[]{jar.toAbsolutePath().toUri().toURL()},
+                ClassLoader.getPlatformClassLoader());
+        try {
+            Class<?> argumentsClass = Class.forName(ARGUMENTS_CLASS, true, classLoader);
+            arguments = argumentsClass.getConstructor(String[].class);
+            Class<?> taskClass = Class.forName(TASK_CLASS, true, classLoader);
+            // The task is package-private, App.main is not used as it keeps the arguments in a static field
+            task = taskClass.getDeclaredConstructor(argumentsClass, Path.class);
+            task.setAccessible(true);
+            processFile = taskClass.getDeclaredMethod("processFile");
+            processFile.setAccessible(true);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            classLoader.close();
+            throw new IOException("Could not load the JavaExtractor from " + jar.toAbsolutePath(), e);
+        }
+        padding = new PathContextExtractor(seed);
+        this.cache = cache;
+        settings = "javaextractor," + jar.toAbsolutePath() + "," + Files.getLastModifiedTime(jar) + ","
+                + PathContextExtractor.MAX_PATH_LENGTH + "," + PathContextExtractor.MAX_PATH_WIDTH + ","
+                + PathContextExtractor.MAX_CONTEXTS + "," + seed;
+        AtomicInteger created = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "java-extractor-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        });
+        installCapture();
+        logger.info("Loaded the JavaExtractor from " + jar.toAbsolutePath() + " with " + threads + " threads");
+    }
+
+    /**
+     * Writes the path contexts of all java files in the directory, in the format of code2vec's [data].test.c2v file.
+     *
+     * @param directory the directory with the (transformed) java files, searched recursively.
+     * @param c2vFile   the file to write.
+     * @throws IOException if the files could not be read or the c2v file could not be written.
+     */
+    public void write(Path directory, Path c2vFile) throws IOException {
+        long start = System.currentTimeMillis();
+        List<String> lines = extract(directory);
+        Files.write(c2vFile, lines);
+        logger.debug("Extracted " + lines.size() + " methods to " + c2vFile + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Extracts the path contexts of all java files in the directory, ordered by file.
+     *
+     * @param directory the directory with the java files, searched recursively.
+     * @return one line per method with at least one path.
+     * @throws IOException if the files could not be read.
+     */
+    public List<String> extract(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(p -> p.toString().endsWith(".java") && Files.isRegularFile(p)).sorted().toList();
+        }
+        Object values;
+        try {
+            // The same arguments as in preprocess.sh
+            values = arguments.newInstance((Object) new String[]{
+                    "--max_path_length", String.valueOf(PathContextExtractor.MAX_PATH_LENGTH),
+                    "--max_path_width", String.valueOf(PathContextExtractor.MAX_PATH_WIDTH),
+                    "--dir", directory.toAbsolutePath().toString()});
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Could not create the arguments of the JavaExtractor", e);
+        }
+
+        // Files that were extracted before are taken from the cache, all others are extracted on the pool
+        List<String> keys = new ArrayList<>();
+        List<Future<String>> outputs = new ArrayList<>();
+        List<List<String>> cached = new ArrayList<>();
+        for (Path file : files) {
+            String key = cache.isEnabled() ? PathContextCache.key(settings, Files.readAllBytes(file)) : null;
+            List<String> known = key == null ? null : cache.get(key).orElse(null);
+            keys.add(key);
+            cached.add(known);
+            outputs.add(known != null ? null : pool.submit(() -> extractFile(values, file)));
+        }
+        List<String> lines = new ArrayList<>();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                if (cached.get(i) != null) {
+                    lines.addAll(cached.get(i));
+                    continue;
+                }
+                List<String> fileLines = new ArrayList<>();
+                for (String extracted : outputs.get(i).get().split("\\R")) {
+                    String line = extracted.isBlank() ? null : padding.pad(extracted);
+                    if (line != null)
+                        fileLines.add(line);
+                }
+                if (keys.get(i) != null)
+                    cache.put(keys.get(i), fileLines);
+                lines.addAll(fileLines);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting " + directory, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not extract " + directory, e.getCause());
+        }
+        return lines;
+    }
+
+    /**
+     * Runs the task of the JavaExtractor on one file.
+     * A file the JavaExtractor fails on is skipped, as in preprocess.sh.
+     *
+     * @return everything the task printed.
+     */
+    private String extractFile(Object values, Path file) throws ReflectiveOperationException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        capturedOutput.set(output);
+        try {
+            processFile.invoke(task.newInstance(values, file));
+        } catch (InvocationTargetException e) {
+            logger.warn("The JavaExtractor failed on " + file + ", skipping it", e.getCause());
+        } finally {
+            capturedOutput.remove();
+        }
+        return output.toString(Charset.defaultCharset());
+    }
+
+    /**
+     * Replaces System.out once by a stream, which writes to the captured output of the current thread if there is one.
+     */
+    private static synchronized void installCapture() {
+        if (captureInstalled)
+            return;
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                ByteArrayOutputStream captured = capturedOutput.get();
+                if (captured != null)
+                    captured.write(b);
+                else
+                    original.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                ByteArrayOutputStream captured = capturedOutput.get();
+                if (captured != null)
+                    captured.write(b, off, len);
+                else
+                    original.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                if (capturedOutput.get() == null)
+                    original.flush();
+            }
+        }, true, Charset.defaultCharset()));
+        captureInstalled = true;
+    }
+
+    /**
+     * Stops the threads and closes the classloader of the JavaExtractor.
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+            logger.warn("Could not close the classloader of the JavaExtractor", e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An inference backend predicts the method names of a (transformed) dataset and produces the result files
+ * the metrics are read from (results.txt, predicted_words.txt and F1_score_log.txt, see {@link ResultFiles}).
+ * <p>
+ * The default backend is {@link Code2VecBackend}, which runs the python code2vec project.
+ * The {@link FakeInferenceBackend} produces the same files without python, e.g. for benchmarking the java side.
+ */
+public interface InferenceBackend extends AutoCloseable {
+
+    /**
+     * The available backends, to be chosen in the configuration.
+     */
+    enum Kind {
+        CODE2VEC,
+        FAKE
+    }
+
+    /**
+     * Runs the inference on the java files of a dataset.
+     * The java files are expected in the "test" folder of the dataset.
+     *
+     * @param dataset     the path to the dataset directory.
+     * @param destination the path to where the result files will be stored.
+     * @return the path that is used as result path of the individual.
+     * @throws InferenceException if the dataset could not be predicted.
+     */
+    String runInference(String dataset, String destination);
+
+    /**
+     * Prepares the inference of a dataset, e.g. its preprocessing, so that a batch only has to predict.
+     * Does nothing by default.
+     *
+     * @param dataset the path to the dataset directory.
+     */
+    default void prepare(String dataset) {
+    }
+
+    /**
+     * Runs the inference on several datasets, e.g. on all individuals of a population.
+     * By default, the datasets are run one after another,
+     * backends can predict them all at once instead, as long as every destination gets its own result files.
+     *
+     * @param datasets     the paths to the dataset directories.
+     * @param destinations the paths to where the result files will be stored, in the order of the datasets.
+     * @return the paths that are used as result paths of the individuals, in the order of the datasets.
+     * @throws InferenceException if a dataset could not be predicted.
+     */
+    default List<String> runInference(List<String> datasets, List<String> destinations) {
+        if (datasets.size() != destinations.size()) {
+            throw new IllegalArgumentException("Every dataset needs exactly one destination");
+        }
+        List<String> resultPaths = new ArrayList<>();
+        for (int i = 0; i < datasets.size(); i++) {
+            resultPaths.add(runInference(datasets.get(i), destinations.get(i)));
+        }
+        return resultPaths;
+    }
+
+    /**
+     * Frees all resources held by the backend, e.g. running processes.
+     * Does nothing by default.
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,14 @@
+package com.github.ciselab.lampion.guided.inference;
+
+/**
+ * The inference backend could not predict a dataset, e.g. because code2vec failed on it in all its tries.
+ * The individual of the dataset then gets a penalty fitness, the search itself goes on.
+ */
+public class InferenceException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InferenceException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
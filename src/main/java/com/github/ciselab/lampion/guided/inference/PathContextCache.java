@@ -0,0 +1,107 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * This class keeps the extracted path contexts of source files, addressed by the content of the file.
+ * Most files of an individual are unaltered copies of the initial dataset, or were already printed the same way
+ * for an earlier individual, so their lines of the .c2v file are only extracted once.
+ * <p>
+ * The key is a SHA-256 over the settings of the extractor and the content of the file,
+ * so the same file with other settings (e.g. path length or seed) is extracted again.
+ * At most "capacity" files are kept, the least recently used is evicted first. A capacity of 0 disables the cache.
+ */
+public class PathContextCache {
+
+    private final int capacity;
+    private final Map<String, List<String>> lines;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param capacity how many files are kept at most, 0 to disable the cache.
+     */
+    public PathContextCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity of the path context cache cannot be negative");
+        }
+        this.capacity = capacity;
+        this.lines = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                return size() > PathContextCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Creates the key of a file.
+     *
+     * @param settings everything besides the content that the extracted lines depend on.
+     * @param content  the content of the file.
+     * @return the hex SHA-256 of settings and content.
+     */
+    public static String key(String settings, byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(settings.getBytes(StandardCharsets.UTF_8));
+            // Separates the settings from the content, so that no two pairs give the same input
+            digest.update((byte) 0);
+            return HexFormat.of().formatHex(digest.digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every java platform has to support SHA-256", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    public synchronized int size() {
+        return lines.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @param key the key of a file, see {@link #key(String, byte[])}.
+     * @return the lines extracted from the file, empty if the file is not known.
+     */
+    public synchronized Optional<List<String>> get(String key) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        List<String> known = lines.get(key);
+        if (known == null) {
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        return Optional.of(known);
+    }
+
+    /**
+     * Keeps the lines extracted from a file.
+     *
+     * @param key       the key of the file, see {@link #key(String, byte[])}.
+     * @param extracted the lines of the .c2v file for the file, in order.
+     */
+    public synchronized void put(String key, List<String> extracted) {
+        if (isEnabled()) {
+            lines.put(key, List.copyOf(extracted));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * This class holds the settings of code2vec's preprocessing for the path contexts extracted in java,
+ * and pads the lines of the JavaExtractor as preprocess.py does.
+ * <p>
+ * The original preprocessing samples with the vocabulary of the training data and an unseeded random,
+ * here the sample is seeded, so the same method always gets the same line.
+ * Hence, the lines of files extracted before can be taken from a {@link PathContextCache}.
+ */
+public class PathContextExtractor {
+
+    /**
+     * Where the path contexts come from, to be chosen in the configuration.
+     */
+    public enum Kind {
+        // The preprocess.sh of code2vec, i.e. the JavaExtractor on the written files
+        PREPROCESS,
+        // The JavaExtractor of code2vec inside this JVM, on the written files
+        JAVAEXTRACTOR
+    }
+
+    // The settings of code2vec's preprocess.sh
+    public static final int MAX_PATH_LENGTH = 8;
+    public static final int MAX_PATH_WIDTH = 2;
+    public static final int MAX_CONTEXTS = 200;
+
+    private final int maxContexts;
+    private final long seed;
+
+    /**
+     * Creates an extractor with the settings of code2vec's preprocessing.
+     *
+     * @param seed the seed for sampling the paths of large methods.
+     */
+    public PathContextExtractor(long seed) {
+        this(MAX_CONTEXTS, seed);
+    }
+
+    /**
+     * @param maxContexts how many paths are kept per method.
+     * @param seed        the seed for sampling the paths of large methods.
+     */
+    public PathContextExtractor(int maxContexts, long seed) {
+        if (maxContexts < 1) {
+            throw new IllegalArgumentException("Contexts must be positive");
+        }
+        this.maxContexts = maxContexts;
+        this.seed = seed;
+    }
+
+    /**
+     * Pads a line of the JavaExtractor to maxContexts paths, or takes a seeded sample of maxContexts of its paths,
+     * as preprocess.py does for the lines of the JavaExtractor.
+     *
+     * @param extracted a line of the JavaExtractor, i.e. the method name and its paths, separated by spaces.
+     * @return the line as in the .c2v file, or null if the method has no paths.
+     */
+    public String pad(String extracted) {
+        String[] parts = extracted.trim().split(" +");
+        String[] contexts = Arrays.copyOfRange(parts, 1, parts.length);
+        if (contexts.length == 0)
+            return null;
+        if (contexts.length > maxContexts) {
+            SplittableRandom random = new SplittableRandom(seed ^ (31L * parts[0].hashCode() + contexts.length));
+            for (int i = 0; i < maxContexts; i++) {
+                int chosen = random.nextInt(i, contexts.length);
+                String swap = contexts[i];
+                contexts[i] = contexts[chosen];
+                contexts[chosen] = swap;
+            }
+            contexts = Arrays.copyOf(contexts, maxContexts);
+        }
+        return parts[0] + " " + String.join(" ", contexts) + " ".repeat(maxContexts - contexts.length);
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * This class keeps the predictions of code2vec per method, addressed by the line of the method in the .c2v file.
+ * The prediction of a method only depends on its path contexts, and most methods of an individual
+ * are not altered by its transformations, so only the altered methods have to be predicted again.
+ * <p>
+ * Code2Vec skips methods without any known path context, which is kept as well, as an empty list of entries.
+ * At most "capacity" methods are kept, the least recently used is evicted first. A capacity of 0 disables the cache.
+ */
+public class PredictionCache {
+
+    private final int capacity;
+    private final Map<String, List<ResultFiles.Entry>> predictions;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param capacity how many methods are kept at most, 0 to disable the cache.
+     */
+    public PredictionCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity of the prediction cache cannot be negative");
+        }
+        this.capacity = capacity;
+        this.predictions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<ResultFiles.Entry>> eldest) {
+                return size() > PredictionCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @param line the line of a method in the .c2v file.
+     * @return the key of the method, a SHA-256 of its line.
+     */
+    public static String key(String line) {
+        return PathContextCache.key("c2v", line.strip().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    public synchronized int size() {
+        return predictions.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @param key the key of a method, see {@link #key(String)}.
+     * @return the entry of the method in the result files (none if code2vec skipped it), empty if it is not known.
+     */
+    public synchronized Optional<List<ResultFiles.Entry>> get(String key) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        List<ResultFiles.Entry> known = predictions.get(key);
+        if (known == null) {
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        return Optional.of(known);
+    }
+
+    /**
+     * Keeps the prediction of a method.
+     *
+     * @param key     the key of the method, see {@link #key(String)}.
+     * @param entries the entry of the method in the result files, none if code2vec skipped the method.
+     */
+    public synchronized void put(String key, List<ResultFiles.Entry> entries) {
+        if (isEnabled()) {
+            predictions.put(key, List.copyOf(entries));
+        }
+    }
+}
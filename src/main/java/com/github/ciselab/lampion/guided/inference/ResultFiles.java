@@ -0,0 +1,229 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class knows the format of the result files as they are written by code2vec,
+ * and can write them for a list of predictions.
+ * <p>
+ * The files contain one line per method (except for the F1 log):
+ * <ul>
+ *     <li>results.txt: "Original: a|b, predicted 1st: a|b, score: 1.0" if the first prediction was correct,
+ *     "\t\t predicted correctly at rank: 3, score: 1.0" if a later prediction was correct and
+ *     "No results for predicting: a|b" otherwise</li>
+ *     <li>predicted_words.txt: "Original: a|b, predicted: c|d" with the first prediction</li>
+ *     <li>F1_score_log.txt: the top-10 accuracy, precision, recall and F1 of the subtokens</li>
+ * </ul>
+ */
+public class ResultFiles {
+
+    public static final String RESULTS = "results.txt";
+    public static final String PREDICTED_WORDS = "predicted_words.txt";
+    public static final String F1_LOG = "F1_score_log.txt";
+
+    public static final int TOP_K = 10;
+
+    /**
+     * A single prediction for a method.
+     *
+     * @param original  the real method name, subtokens separated by "|"
+     * @param predicted the first prediction, subtokens separated by "|"
+     * @param rank      the rank at which the real name was predicted (1 to TOP_K), 0 if it was not predicted
+     * @param score     the score of the correct prediction
+     */
+    public record Prediction(String original, String predicted, int rank, double score) {
+    }
+
+    /**
+     * The lines of a single method, as read from the result files.
+     *
+     * @param resultLines        the lines of the method in results.txt, usually exactly one
+     * @param predictedWordsLine the line of the method in predicted_words.txt
+     * @param prediction         the prediction parsed from these lines
+     */
+    public record Entry(List<String> resultLines, String predictedWordsLine, Prediction prediction) {
+    }
+
+    private ResultFiles() {
+    }
+
+    /**
+     * Writes all three result files for the predictions to the given directory.
+     *
+     * @param directory   the directory to write the files to, is created if it does not exist.
+     * @param predictions the predictions, in the order of the methods.
+     * @throws IOException if a file could not be written.
+     */
+    public static void write(Path directory, List<Prediction> predictions) throws IOException {
+        Files.createDirectories(directory);
+        try (BufferedWriter results = Files.newBufferedWriter(directory.resolve(RESULTS));
+             BufferedWriter words = Files.newBufferedWriter(directory.resolve(PREDICTED_WORDS))) {
+            for (Prediction prediction : predictions) {
+                results.write(resultLine(prediction));
+                results.newLine();
+                words.write(predictedWordsLine(prediction));
+                words.newLine();
+            }
+        }
+        Files.writeString(directory.resolve(F1_LOG), f1Line(predictions) + System.lineSeparator());
+    }
+
+    /**
+     * Writes the lines of the entries to the result files, as they were read, and an F1 log for their predictions.
+     *
+     * @param directory the directory to write the files to, is created if it does not exist.
+     * @param entries   the entries, in the order of the methods.
+     * @throws IOException if a file could not be written.
+     */
+    public static void writeEntries(Path directory, List<Entry> entries) throws IOException {
+        Files.createDirectories(directory);
+        try (BufferedWriter results = Files.newBufferedWriter(directory.resolve(RESULTS));
+             BufferedWriter words = Files.newBufferedWriter(directory.resolve(PREDICTED_WORDS))) {
+            for (Entry entry : entries) {
+                for (String line : entry.resultLines()) {
+                    results.write(line);
+                    results.newLine();
+                }
+                words.write(entry.predictedWordsLine());
+                words.newLine();
+            }
+        }
+        List<Prediction> predictions = entries.stream().map(Entry::prediction).toList();
+        Files.writeString(directory.resolve(F1_LOG), f1Line(predictions) + System.lineSeparator());
+    }
+
+    /**
+     * Reads the results.txt and predicted_words.txt in the given directory, one entry per method.
+     * A method starts with every line of results.txt in one of the three known formats,
+     * any other line is kept with the method before it.
+     *
+     * @param directory the directory containing the result files.
+     * @return the entries, in the order of the methods.
+     * @throws IOException if a file could not be read, or the files do not contain the same methods.
+     */
+    public static List<Entry> read(Path directory) throws IOException {
+        List<String> words = Files.readAllLines(directory.resolve(PREDICTED_WORDS)).stream()
+                .filter(line -> line.startsWith("Original: "))
+                .toList();
+        List<List<String>> resultLines = new ArrayList<>();
+        List<Integer> ranks = new ArrayList<>();
+        List<Double> scores = new ArrayList<>();
+        for (String line : Files.readAllLines(directory.resolve(RESULTS))) {
+            int rank = rankOf(line);
+            if (rank >= 0) {
+                resultLines.add(new ArrayList<>());
+                ranks.add(rank);
+                scores.add(rank == 0 ? 0 : Double.parseDouble(line.substring(line.lastIndexOf("score: ") + 7).trim()));
+            }
+            if (!resultLines.isEmpty()) {
+                resultLines.get(resultLines.size() - 1).add(line);
+            }
+        }
+        if (resultLines.size() != words.size()) {
+            throw new IOException("The result files in " + directory + " have " + resultLines.size() + " and "
+                    + words.size() + " methods");
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            String line = words.get(i);
+            int predicted = line.indexOf(", predicted: ");
+            String original = predicted < 0 ? line.substring(10) : line.substring(10, predicted);
+            String prediction = predicted < 0 ? "" : line.substring(predicted + 13);
+            entries.add(new Entry(List.copyOf(resultLines.get(i)), line,
+                    new Prediction(original, prediction, ranks.get(i), scores.get(i))));
+        }
+        return entries;
+    }
+
+    /**
+     * @return the rank of a method's first line in results.txt, 0 if it was not predicted, -1 for any other line.
+     */
+    private static int rankOf(String line) {
+        if (line.startsWith("Original: ") && line.contains(", predicted 1st: "))
+            return 1;
+        if (line.contains("predicted correctly at rank: "))
+            return Integer.parseInt(line.split("rank: ")[1].split(",")[0].trim());
+        if (line.startsWith("No results for predicting: "))
+            return 0;
+        return -1;
+    }
+
+    public static String resultLine(Prediction prediction) {
+        if (prediction.rank() == 1) {
+            return "Original: " + prediction.original() + ", predicted 1st: " + prediction.predicted()
+                    + ", score: " + (float) prediction.score();
+        } else if (prediction.rank() > 1) {
+            return "\t\t predicted correctly at rank: " + prediction.rank() + ", score: " + (float) prediction.score();
+        }
+        return "No results for predicting: " + prediction.original();
+    }
+
+    public static String predictedWordsLine(Prediction prediction) {
+        return "Original: " + prediction.original() + ", predicted: " + prediction.predicted();
+    }
+
+    /**
+     * Creates the line of the F1_score_log.txt.
+     * Precision and recall are calculated like in code2vec, over the subtokens of the first prediction.
+     *
+     * @param predictions all predictions of a dataset.
+     * @return the line containing top-k accuracy, precision, recall and F1.
+     */
+    public static String f1Line(List<Prediction> predictions) {
+        long truePositives = 0;
+        long falsePositives = 0;
+        long falseNegatives = 0;
+        int[] correctAtRank = new int[TOP_K + 1];
+        for (Prediction prediction : predictions) {
+            List<String> original = subtokens(prediction.original());
+            List<String> predicted = subtokens(prediction.predicted());
+            for (String subtoken : predicted) {
+                if (original.contains(subtoken)) {
+                    truePositives++;
+                } else {
+                    falsePositives++;
+                }
+            }
+            for (String subtoken : original) {
+                if (!predicted.contains(subtoken)) {
+                    falseNegatives++;
+                }
+            }
+            if (prediction.rank() > 0 && prediction.rank() <= TOP_K) {
+                correctAtRank[prediction.rank()]++;
+            }
+        }
+        double precision = truePositives + falsePositives == 0 ? 0 : (double) truePositives / (truePositives + falsePositives);
+        double recall = truePositives + falseNegatives == 0 ? 0 : (double) truePositives / (truePositives + falseNegatives);
+        double f1 = precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+
+        StringBuilder line = new StringBuilder("top" + TOP_K + "_acc: [");
+        int correct = 0;
+        for (int k = 1; k <= TOP_K; k++) {
+            correct += correctAtRank[k];
+            if (k > 1) {
+                line.append(' ');
+            }
+            line.append(predictions.isEmpty() ? 0f : (float) correct / predictions.size());
+        }
+        return line.append("], precision: ").append(precision)
+                .append(", recall: ").append(recall)
+                .append(", F1: ").append(f1)
+                .toString();
+    }
+
+    private static List<String> subtokens(String name) {
+        List<String> result = new ArrayList<>();
+        for (String subtoken : name.split("\\|")) {
+            if (!subtoken.isEmpty()) {
+                result.add(subtoken);
+            }
+        }
+        return result;
+    }
+}
@@ -7,6 +7,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.function.Function;
 
 import org.apache.logging.log4j.LogManager;
@@ -33,6 +34,36 @@ public abstract class Metric implements Function<MetamorphicIndividual, Double>
         UNIMPLEMENTED
     }
 
+    /**
+     * What a metric needs to be calculated, in the order of the evaluation of an individual.
+     * Every step includes the ones before it, so an individual is only evaluated as far as its metrics need.
+     */
+    public enum Requirement {
+        /**
+         * Only the transformers of the individual, nothing is transformed or written.
+         */
+        GENOTYPE,
+        /**
+         * The transformed and printed java files.
+         */
+        SOURCES,
+        /**
+         * The path contexts extracted from the transformed files, as input for code2vec.
+         */
+        EXTRACTION,
+        /**
+         * The result files of the code2vec inference.
+         */
+        INFERENCE;
+
+        /**
+         * @return whether evaluating up to this step also covers the other step.
+         */
+        public boolean includes(Requirement other) {
+            return compareTo(other) >= 0;
+        }
+    }
+
     protected Name name = Name.UNIMPLEMENTED;
 
     protected boolean objective = false; // Whether it should minimize or maximize the metric, true = maximize, false = minimize
@@ -62,6 +93,19 @@ public abstract class Metric implements Function<MetamorphicIndividual, Double>
         this.weight = weight;
     }
 
+    /**
+     * Applies the metric on an individual whose result files are already parsed,
+     * so that all metrics of an individual share one read of its results.
+     * Metrics that do not need the results (e.g. secondary ones) are applied on the individual only.
+     *
+     * @param individual the individual to calculate the metric for.
+     * @param results    the parsed results of the individual, empty if it has no result path.
+     * @return the value of the metric.
+     */
+    public Double apply(MetamorphicIndividual individual, Optional<ParsedResults> results) {
+        return apply(individual);
+    }
+
     /**
      * Read predictions from a particular file path.
      *
@@ -98,6 +142,15 @@ public abstract class Metric implements Function<MetamorphicIndividual, Double>
 
     public abstract boolean isSecondary();
 
+    /**
+     * What this metric needs to be calculated, by default the results of the inference.
+     *
+     * @return how far an individual must be evaluated for this metric.
+     */
+    public Requirement getRequirement() {
+        return Requirement.INFERENCE;
+    }
+
     public abstract boolean canBeBiggerThanOne();
 
     /**
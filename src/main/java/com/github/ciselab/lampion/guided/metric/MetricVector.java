@@ -0,0 +1,114 @@
+package com.github.ciselab.lampion.guided.metric;
+
+import java.util.Arrays;
+
+/**
+ * The values of the metrics of one individual, kept in a plain double array instead of a map of boxed doubles.
+ * Every metric has a fixed slot in all vectors, which is handed out by the
+ * {@link com.github.ciselab.lampion.guided.support.MetricCache}.
+ * <p>
+ * A slot without a value (e.g. of a secondary metric that was not calculated) is empty,
+ * NaN is a value like any other, as metrics return it for missing result files.
+ */
+public final class MetricVector {
+
+    // At most 64 slots, so that the filled slots fit into one long
+    public static final int MAX_SLOTS = Long.SIZE;
+
+    private double[] values;
+    private long filled = 0;
+
+    public MetricVector() {
+        this(0);
+    }
+
+    /**
+     * @param slots how many slots to reserve, the vector grows if a later slot is set.
+     */
+    public MetricVector(int slots) {
+        if (slots < 0 || slots > MAX_SLOTS)
+            throw new IllegalArgumentException("A metric vector has between 0 and " + MAX_SLOTS + " slots");
+        values = new double[slots];
+    }
+
+    /**
+     * Sets the value of a slot.
+     *
+     * @param slot  the slot of the metric, see {@link com.github.ciselab.lampion.guided.support.MetricCache#slotOf(Metric)}.
+     * @param value the value of the metric.
+     */
+    public void set(int slot, double value) {
+        if (slot < 0 || slot >= MAX_SLOTS)
+            throw new IllegalArgumentException("There is no slot " + slot + " in a metric vector");
+        if (slot >= values.length)
+            values = Arrays.copyOf(values, slot + 1);
+        values[slot] = value;
+        filled |= 1L << slot;
+    }
+
+    /**
+     * @return whether the slot has a value.
+     */
+    public boolean has(int slot) {
+        return slot >= 0 && slot < values.length && (filled & (1L << slot)) != 0;
+    }
+
+    /**
+     * @return the value of the slot, NaN if it has none.
+     */
+    public double get(int slot) {
+        return has(slot) ? values[slot] : Double.NaN;
+    }
+
+    /**
+     * @return how many slots have a value.
+     */
+    public int size() {
+        return Long.bitCount(filled);
+    }
+
+    /**
+     * @return the number of slots, with or without value.
+     */
+    public int slots() {
+        return values.length;
+    }
+
+    /**
+     * Sums up the weighted values, skipping slots without value or weight.
+     * The values of flipped slots are used as 1 - value, e.g. for metrics that are maximized.
+     *
+     * @param weights the weight per slot, slots beyond the array have no weight.
+     * @param flipped whether the value of a slot is flipped, as long as the weights.
+     * @return the weighted sum.
+     */
+    public double weightedSum(double[] weights, boolean[] flipped) {
+        double sum = 0;
+        int slots = Math.min(values.length, weights.length);
+        for (int slot = 0; slot < slots; slot++) {
+            if (weights[slot] == 0 || (filled & (1L << slot)) == 0)
+                continue;
+            double value = flipped[slot] ? 1 - values[slot] : values[slot];
+            sum += value * weights[slot];
+        }
+        return sum;
+    }
+
+    public MetricVector copy() {
+        MetricVector copy = new MetricVector(values.length);
+        System.arraycopy(values, 0, copy.values, 0, values.length);
+        copy.filled = filled;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int slot = 0; slot < values.length; slot++) {
+            if (slot > 0)
+                builder.append(", ");
+            builder.append(has(slot) ? String.valueOf(values[slot]) : "-");
+        }
+        return builder.append("]").toString();
+    }
+}
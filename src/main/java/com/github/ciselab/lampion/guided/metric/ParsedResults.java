@@ -0,0 +1,340 @@
+package com.github.ciselab.lampion.guided.metric;
+
+import com.github.ciselab.lampion.guided.metric.metrics.EditDistance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The results of the code2vec inference of one individual, as far as the metrics need them.
+ * Every result file is read once, line by line, and only the sums and counts the metrics are calculated from are kept,
+ * so that all metrics of an individual share one read of its result directory.
+ * <p>
+ * The files are:
+ * <ul>
+ *     <li>results.txt, the rank and score of the correct prediction per method (MRR and Percentage MRR)</li>
+ *     <li>predicted_words.txt, the original and the predicted name per method (Edit Distance and Prediction Length)</li>
+ *     <li>F1_score_log.txt, the precision, recall and F1 score of the whole dataset</li>
+ * </ul>
+ * A missing file is logged, its metrics are NaN (as there is nothing to divide by).
+ * <p>
+ * The files are memory mapped and the lines are taken straight from the mapped bytes,
+ * so the files never end up on the heap as a whole, no matter how many methods the dataset has.
+ * Files bigger than a chunk (64 MiB) are split into chunks at line ends, which are parsed in parallel
+ * and summed up afterwards.
+ */
+public final class ParsedResults {
+
+    public static final String RESULTS_FILE = "results.txt";
+    public static final String PREDICTED_WORDS_FILE = "predicted_words.txt";
+    public static final String F1_FILE = "F1_score_log.txt";
+
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private static final Logger logger = LogManager.getLogger(ParsedResults.class);
+
+    // results.txt, the sums are floats as the MRR always summed up floats
+    private float reciprocalRankSum = 0;
+    private int rankedLines = 0;
+    private double scoreSum = 0;
+    private int scoredLines = 0;
+
+    // predicted_words.txt
+    private int predictedWordsLines = 0;
+    private float editSimilaritySum = 0;
+    private double predictionLengthSum = 0;
+
+    // F1_score_log.txt, the last value in the file counts
+    private double precision = Double.NaN;
+    private double recall = Double.NaN;
+    private double f1 = Double.NaN;
+
+    private ParsedResults() {
+    }
+
+    /**
+     * Reads the result files of an individual.
+     *
+     * @param path the result path of the individual, either the results directory or the directory containing it.
+     * @return the parsed results.
+     */
+    public static ParsedResults read(String path) {
+        return read(path, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param path      the result path of the individual, either the results directory or the directory containing it.
+     * @param chunkSize the size in bytes from which a file is split into chunks that are parsed in parallel.
+     * @return the parsed results.
+     */
+    static ParsedResults read(String path, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size for parsing results must be positive");
+        }
+        if (!path.contains("results"))
+            path = path + File.separator + "results";
+        ParsedResults results = new ParsedResults();
+        results.add(readFile(path + File.separator + RESULTS_FILE, ParsedResults::parseResultLine, chunkSize));
+        results.add(readFile(path + File.separator + PREDICTED_WORDS_FILE, ParsedResults::parsePredictedWordsLine,
+                chunkSize));
+        results.add(readFile(path + File.separator + F1_FILE, ParsedResults::parseF1Line, chunkSize));
+        return results;
+    }
+
+    /**
+     * Parses all lines of a file, chunk by chunk.
+     *
+     * @return the results of the file, empty if it could not be read.
+     */
+    private static ParsedResults readFile(String filePath, BiConsumer<ParsedResults, String> parser, int chunkSize) {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, chunkSize);
+            if (bounds.length == 2)
+                return parseChunk(channel, bounds[0], bounds[1], parser);
+            ParsedResults[] chunks = IntStream.range(0, bounds.length - 1).parallel()
+                    .mapToObj(i -> {
+                        try {
+                            return parseChunk(channel, bounds[i], bounds[i + 1], parser);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .toArray(ParsedResults[]::new);
+            // Summed up in the order of the file, so the last value of a file still counts
+            ParsedResults results = new ParsedResults();
+            for (ParsedResults chunk : chunks)
+                results.add(chunk);
+            return results;
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Couldn't read file of path: " + filePath);
+            return new ParsedResults();
+        }
+    }
+
+    /**
+     * Splits a file into chunks of about the chunk size, every chunk but the last ends after a line break.
+     *
+     * @return the start of every chunk and the end of the file.
+     */
+    private static long[] chunkBounds(FileChannel channel, int chunkSize) throws IOException {
+        long size = channel.size();
+        long[] bounds = new long[(int) ((size + chunkSize - 1) / chunkSize) + 1];
+        int count = 1;
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        long position = chunkSize;
+        while (position < size) {
+            long lineEnd = -1;
+            while (lineEnd < 0 && position < size) {
+                window.clear();
+                int read = channel.read(window, position);
+                for (int i = 0; i < read && lineEnd < 0; i++) {
+                    if (window.get(i) == '\n')
+                        lineEnd = position + i + 1;
+                }
+                position += Math.max(read, 0);
+            }
+            if (lineEnd < 0 || lineEnd >= size)
+                break;
+            bounds[count++] = lineEnd;
+            position = lineEnd + chunkSize;
+        }
+        bounds[count++] = size;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Parses the lines between start and end of the file, the same lines a BufferedReader would give
+     * (without the line breaks, "\r\n" included).
+     */
+    private static ParsedResults parseChunk(FileChannel channel, long start, long end,
+                                            BiConsumer<ParsedResults, String> parser) throws IOException {
+        ParsedResults results = new ParsedResults();
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        byte[] line = new byte[256];
+        int length = 0;
+        int limit = bytes.limit();
+        for (int i = 0; i < limit; i++) {
+            byte b = bytes.get(i);
+            if (b == '\n') {
+                parser.accept(results, decode(line, length));
+                length = 0;
+                continue;
+            }
+            if (length == line.length)
+                line = Arrays.copyOf(line, length * 2);
+            line[length++] = b;
+        }
+        if (length > 0)
+            parser.accept(results, decode(line, length));
+        return results;
+    }
+
+    private static String decode(byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r')
+            length--;
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds the sums and counts of other results, e.g. of a later chunk of a file.
+     * The values that are only kept once are taken from the other results, if they have them.
+     */
+    private void add(ParsedResults other) {
+        reciprocalRankSum += other.reciprocalRankSum;
+        rankedLines += other.rankedLines;
+        scoreSum += other.scoreSum;
+        scoredLines += other.scoredLines;
+        predictedWordsLines += other.predictedWordsLines;
+        editSimilaritySum += other.editSimilaritySum;
+        predictionLengthSum += other.predictionLengthSum;
+        if (!Double.isNaN(other.precision))
+            precision = other.precision;
+        if (!Double.isNaN(other.recall))
+            recall = other.recall;
+        if (!Double.isNaN(other.f1))
+            f1 = other.f1;
+    }
+
+    private void parseResultLine(String line) {
+        if (line.contains("No results for predicting:")) {
+            rankedLines++;
+            scoredLines++;
+            return;
+        }
+        if (line.contains("predicted correctly at rank: ")) {
+            int rank = Integer.parseInt(field(field(line, "rank: ", 1), ",", 0));
+            reciprocalRankSum += (1 / (double) rank);
+            rankedLines++;
+        } else if (line.contains("Original: ")) {
+            reciprocalRankSum += 1;
+            rankedLines++;
+        }
+        if (line.contains("score: ")) {
+            scoreSum += Double.parseDouble(field(line, "score: ", 1)) / 100;
+            scoredLines++;
+        }
+    }
+
+    private void parsePredictedWordsLine(String line) {
+        predictedWordsLines++;
+        // Original: render, predicted: get|logs
+        if (!line.contains("predicted") || !line.contains("Original"))
+            return;
+        // The names are compared in place, as the fields "Original: render" and "predicted: get|logs"
+        int end = line.length();
+        int originalFieldEnd = fieldEnd(line, 0, end, ", ");
+        int predictedFieldStart = fieldStart(line, 0, end, ", ", 1);
+        int predictedFieldEnd = fieldEnd(line, predictedFieldStart, end, ", ");
+        int originalStart = fieldStart(line, 0, originalFieldEnd, ": ", 1);
+        int originalEnd = fieldEnd(line, originalStart, originalFieldEnd, ": ");
+        int predictedStart = fieldStart(line, predictedFieldStart, predictedFieldEnd, ": ", 1);
+        int predictedEnd = fieldEnd(line, predictedStart, predictedFieldEnd, ": ");
+        // when the edit distance is larger the resulting score will be lower
+        editSimilaritySum += 1 / (EditDistance.editDistance(line, originalStart, originalEnd,
+                line, predictedStart, predictedEnd) + 1);
+
+        int predictedWordsStart = fieldStart(line, 0, end, ": ", 2);
+        int predictedWordsEnd = fieldEnd(line, predictedWordsStart, end, ": ");
+        for (int i = predictedWordsStart; i < predictedWordsEnd; i++) {
+            if (line.charAt(i) != '|')
+                predictionLengthSum++;
+        }
+    }
+
+    private void parseF1Line(String line) {
+        if (line.contains("F1"))
+            f1 = Double.parseDouble(field(line, "F1: ", 1));
+        if (line.contains("precision"))
+            precision = Double.parseDouble(field(field(line, "precision: ", 1), ",", 0));
+        if (line.contains("recall"))
+            recall = Double.parseDouble(field(field(line, "recall: ", 1), ",", 0));
+    }
+
+    /**
+     * The same as text.split(separator)[index] for a separator without regex characters,
+     * but without building the array of all fields.
+     *
+     * @throws ArrayIndexOutOfBoundsException if there are not enough fields, as split would.
+     */
+    static String field(String text, String separator, int index) {
+        int start = fieldStart(text, 0, text.length(), separator, index);
+        return text.substring(start, fieldEnd(text, start, text.length(), separator));
+    }
+
+    /**
+     * @return where the field of text.substring(from, to).split(separator)[index] starts in the text.
+     * @throws ArrayIndexOutOfBoundsException if there are not enough fields, as split would.
+     */
+    static int fieldStart(String text, int from, int to, String separator, int index) {
+        int start = from;
+        for (int i = 0; i < index; i++) {
+            int next = text.indexOf(separator, start);
+            if (next < 0 || next + separator.length() > to)
+                throw new ArrayIndexOutOfBoundsException("There is no field " + index + " in \""
+                        + text.substring(from, to) + "\"");
+            start = next + separator.length();
+        }
+        return start;
+    }
+
+    /**
+     * @return where the field that starts at start ends, before the next separator or at to.
+     */
+    static int fieldEnd(String text, int start, int to, String separator) {
+        int end = text.indexOf(separator, start);
+        return end < 0 || end + separator.length() > to ? to : end;
+    }
+
+    /**
+     * @return the mean reciprocal rank of the correct predictions, a method without any prediction counts as 0.
+     */
+    public double getMRR() {
+        return reciprocalRankSum / rankedLines;
+    }
+
+    /**
+     * @return the mean score (as a fraction of 1) of the correct predictions, a method without any prediction counts as 0.
+     */
+    public double getPercentageMRR() {
+        return scoreSum / scoredLines;
+    }
+
+    /**
+     * @return the mean of 1 / (edit distance + 1) between the original and the predicted names.
+     */
+    public double getEditSimilarity() {
+        return editSimilaritySum / predictedWordsLines;
+    }
+
+    /**
+     * @return the mean number of characters of the predicted names, without the separators between the words.
+     */
+    public double getPredictionLength() {
+        return predictionLengthSum / predictedWordsLines;
+    }
+
+    public double getPrecision() {
+        return precision;
+    }
+
+    public double getRecall() {
+        return recall;
+    }
+
+    public double getF1() {
+        return f1;
+    }
+}
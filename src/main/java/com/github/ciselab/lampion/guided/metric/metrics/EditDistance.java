@@ -2,79 +2,142 @@ package com.github.ciselab.lampion.guided.metric.metrics;
 
 import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.ParsedResults;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Optional;
 
 public class EditDistance extends Metric {
 
-    private static final String EXPECTEDFILE = "predicted_words.txt";
-
     public EditDistance() {
         this.name = Name.EDITDIST;
     }
 
-    private double calculateScore(String path) {
-        if (!path.contains("results"))
-            path = path + File.separator + "results";
-        List<String> lines = readPredictions(path + File.separator + EXPECTEDFILE);
-        var scores = new ArrayList<>();
-        float score = 0;
-        for (String i : lines) {
-            if (i.contains("Original") && i.contains("predicted")) {
-                String[] t = i.split(", ");
-                String original = t[0].split(": ")[1];
-                String predicted = t[1].split(": ")[1];
-                float distance = 1 / (editDistance(original, predicted) + 1);
-                score += distance; // when the editdistance is larger the resulting score will be lower.
-                scores.add(distance);
-            }
-        }
-        return score / lines.size();
-    }
+    // Characters below this have a bit mask in the table of the bit-parallel algorithm
+    private static final int ALPHABET = 256;
+
+    // Buffers per thread, so that calculating a distance does not allocate anything
+    private static final ThreadLocal<long[]> MATCH_MASKS = ThreadLocal.withInitial(() -> new long[ALPHABET]);
+    private static final ThreadLocal<int[]> ROWS = ThreadLocal.withInitial(() -> new int[Long.SIZE + 1]);
 
     /**
      * Calculate the edit distance between two strings.
-     * Code gotten from: https://www.programcreek.com/2013/12/edit-distance-in-java/
+     * Names are compared as a whole, with the | between their sub-tokens as a normal character.
      *
      * @param original  the original word.
      * @param predicted the predicted word.
      * @return the edit distance.
      */
     public static float editDistance(String original, String predicted) {
-        int len1 = original.length();
-        int len2 = predicted.length();
-        int[][] dp = new int[len1 + 1][len2 + 1];
+        return editDistance(original, 0, original.length(), predicted, 0, predicted.length());
+    }
+
+    /**
+     * Calculate the edit distance between two parts of char sequences, e.g. two fields of a line of the results.
+     * If the shorter part has at most 64 characters (and only ones below 256) the bit-parallel algorithm of
+     * Myers (in the form of Hyyrö, "Explaining and extending the bit-parallel approximate string matching
+     * algorithm of Myers", 2001) is used, which handles 64 cells of the distance matrix per step.
+     * Otherwise the distance matrix is calculated row by row, keeping only one row.
+     *
+     * @param original       the sequence containing the original word.
+     * @param originalStart  the start of the original word (inclusive).
+     * @param originalEnd    the end of the original word (exclusive).
+     * @param predicted      the sequence containing the predicted word.
+     * @param predictedStart the start of the predicted word (inclusive).
+     * @param predictedEnd   the end of the predicted word (exclusive).
+     * @return the edit distance.
+     */
+    public static float editDistance(CharSequence original, int originalStart, int originalEnd,
+                                     CharSequence predicted, int predictedStart, int predictedEnd) {
+        int originalLength = originalEnd - originalStart;
+        int predictedLength = predictedEnd - predictedStart;
+        // The distance is symmetric, the shorter word is the one that is kept in bits (or in the row)
+        if (predictedLength < originalLength)
+            return editDistance(predicted, predictedStart, predictedEnd, original, originalStart, originalEnd);
+        if (originalLength == 0)
+            return predictedLength;
+        if (originalLength <= Long.SIZE && fitsAlphabet(original, originalStart, originalEnd))
+            return bitParallelDistance(original, originalStart, originalEnd, predicted, predictedStart, predictedEnd);
+        return rowDistance(original, originalStart, originalEnd, predicted, predictedStart, predictedEnd);
+    }
 
-        for (int i = 0; i <= len1; i++) {
-            dp[i][0] = i;
+    private static boolean fitsAlphabet(CharSequence word, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (word.charAt(i) >= ALPHABET)
+                return false;
         }
-        for (int j = 0; j <= len2; j++) {
-            dp[0][j] = j;
+        return true;
+    }
+
+    /**
+     * The distance with one bit per character of the pattern, that is the shorter word of at most 64 characters.
+     * The bits hold the differences between neighbouring cells of a column of the distance matrix.
+     */
+    private static int bitParallelDistance(CharSequence pattern, int patternStart, int patternEnd,
+                                           CharSequence text, int textStart, int textEnd) {
+        long[] matchMasks = MATCH_MASKS.get();
+        int length = patternEnd - patternStart;
+        for (int i = 0; i < length; i++)
+            matchMasks[pattern.charAt(patternStart + i)] |= 1L << i;
+
+        long last = 1L << (length - 1);
+        long positive = -1L;
+        long negative = 0;
+        int distance = length;
+        for (int j = textStart; j < textEnd; j++) {
+            char c = text.charAt(j);
+            long match = c < ALPHABET ? matchMasks[c] : 0;
+            long verticalMatch = match | negative;
+            long horizontalMatch = (((match & positive) + positive) ^ positive) | match;
+            long horizontalPositive = negative | ~(horizontalMatch | positive);
+            long horizontalNegative = positive & horizontalMatch;
+            if ((horizontalPositive & last) != 0)
+                distance++;
+            else if ((horizontalNegative & last) != 0)
+                distance--;
+            // The first row of the matrix grows by one per character of the text
+            horizontalPositive = (horizontalPositive << 1) | 1;
+            horizontalNegative = horizontalNegative << 1;
+            positive = horizontalNegative | ~(verticalMatch | horizontalPositive);
+            negative = horizontalPositive & verticalMatch;
         }
-        for (int i = 0; i < len1; i++) {
-            char charA = original.charAt(i);
-            for (int j = 0; j < len2; j++) {
-                char charB = predicted.charAt(j);
-                if (charA == charB) {
-                    dp[i + 1][j + 1] = dp[i][j];
-                } else {
-                    int replace = dp[i][j] + 1;
-                    int insert = dp[i][j + 1] + 1;
-                    int delete = dp[i + 1][j] + 1;
-
-                    int min = Math.min(replace, insert);
-                    min = Math.min(delete, min);
-                    dp[i + 1][j + 1] = min;
-                }
+
+        // Leave the table empty for the next call of this thread
+        for (int i = patternStart; i < patternEnd; i++)
+            matchMasks[pattern.charAt(i)] = 0;
+        return distance;
+    }
+
+    /**
+     * The distance matrix calculated row by row (one row per character of the longer word), keeping only the
+     * current row over the shorter word.
+     */
+    private static int rowDistance(CharSequence shorter, int shorterStart, int shorterEnd,
+                                   CharSequence longer, int longerStart, int longerEnd) {
+        int columns = shorterEnd - shorterStart;
+        int[] row = ROWS.get();
+        if (row.length <= columns) {
+            row = new int[columns + 1];
+            ROWS.set(row);
+        }
+        for (int j = 0; j <= columns; j++)
+            row[j] = j;
+        for (int i = longerStart; i < longerEnd; i++) {
+            char c = longer.charAt(i);
+            int diagonal = row[0];
+            row[0] = i - longerStart + 1;
+            for (int j = 1; j <= columns; j++) {
+                int above = row[j];
+                if (c == shorter.charAt(shorterStart + j - 1))
+                    row[j] = diagonal;
+                else
+                    row[j] = Math.min(diagonal, Math.min(above, row[j - 1])) + 1;
+                diagonal = above;
             }
         }
-        return dp[len1][len2];
+        return row[columns];
     }
 
-
     @Override
     public boolean isSecondary() {
         return false;
@@ -87,8 +150,13 @@ public class EditDistance extends Metric {
 
     @Override
     public Double apply(MetamorphicIndividual individual) {
-        double score = individual.getResultPath()
-                .map(i -> calculateScore(i))
+        return apply(individual, individual.getResultPath().map(ParsedResults::read));
+    }
+
+    @Override
+    public Double apply(MetamorphicIndividual individual, Optional<ParsedResults> results) {
+        double score = results
+                .map(ParsedResults::getEditSimilarity)
                 .orElse(0.0);
         if (!objective)
             return 1 - score;
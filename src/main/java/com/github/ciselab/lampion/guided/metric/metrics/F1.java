@@ -2,35 +2,21 @@ package com.github.ciselab.lampion.guided.metric.metrics;
 
 import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.ParsedResults;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.io.File;
-import java.util.List;
+import java.util.Optional;
 
 /**
  * The F1_Score metric.
  * This metric is already calculated by the code2vec project and gotten from a file.
  */
 public class F1 extends Metric {
-    private static final String EXPECTEDFILE = "F1_score_log.txt";
 
     public F1() {
         this.name = Name.F1;
     }
 
-    private double calculateScore(String path) {
-        if (!path.contains("results"))
-            path = path + File.separator + "results";
-        List<String> lines = readPredictions(path + File.separator + EXPECTEDFILE);
-        Double score = Double.NaN;
-        for (String i : lines) {
-            if (i.contains("F1")) {
-                score = Double.parseDouble(i.split("F1: ")[1]);
-            }
-        }
-        return score;
-    }
-
     @Override
     public boolean isSecondary() {
         return false;
@@ -38,8 +24,13 @@ public class F1 extends Metric {
 
     @Override
     public Double apply(MetamorphicIndividual individual) {
-        return individual.getResultPath()
-                .map(i -> calculateScore(i))
+        return apply(individual, individual.getResultPath().map(ParsedResults::read));
+    }
+
+    @Override
+    public Double apply(MetamorphicIndividual individual, Optional<ParsedResults> results) {
+        return results
+                .map(ParsedResults::getF1)
                 .orElse(0.0);
     }
 
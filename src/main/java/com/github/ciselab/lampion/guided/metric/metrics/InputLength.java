@@ -4,9 +4,13 @@ import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.guided.metric.Metric;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 public class InputLength extends Metric {
 
@@ -21,22 +25,30 @@ public class InputLength extends Metric {
         return true;
     }
 
+    @Override
+    public Requirement getRequirement() {
+        return Requirement.SOURCES;
+    }
+
     private double calculateScore(String path) {
         var scores = new ArrayList<>();
-        if (dataset != null) {
-            // should read all files not the dataset...
-            int count = 0;
-            try {
-                File file = new File(path + dataset + "/test");
-                for (File i : file.listFiles()) {
-                    List<String> lines = readPredictions(i.getPath());
-                    count += lines.size();
-                    scores.add((float) lines.size());
-                }
-                return count;
-            } catch (NullPointerException e) {
-                logger.debug("Couldn't get files input length set to 0.");
+        // The transformed files, or those of a dataset below them if one is set
+        String root = dataset == null ? path : path + dataset;
+        int count = 0;
+        try {
+            // The files are in folders by package
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(Path.of(root, "test"))) {
+                files = walk.filter(Files::isRegularFile).toList();
+            }
+            for (Path i : files) {
+                List<String> lines = readPredictions(i.toString());
+                count += lines.size();
+                scores.add((float) lines.size());
             }
+            return count;
+        } catch (IOException | UncheckedIOException e) {
+            logger.debug("Couldn't get files input length set to 0.");
         }
         return 0;
     }
@@ -47,7 +59,7 @@ public class InputLength extends Metric {
 
     @Override
     public Double apply(MetamorphicIndividual individual) {
-        return individual.getResultPath()
+        return individual.getJavaPath()
                 .map(i -> calculateScore(i))
                 .orElse(0.0);
     }
@@ -2,13 +2,13 @@ package com.github.ciselab.lampion.guided.metric.metrics;
 
 import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.ParsedResults;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.io.File;
-import java.util.List;
+import java.util.Optional;
+
 
 public class Precision extends Metric {
-    private static final String EXPECTEDFILE = "F1_score_log.txt";
 
     public Precision() {
         this.name = Name.PREC;
@@ -19,23 +19,15 @@ public class Precision extends Metric {
         return false;
     }
 
-    private double calculateScore(String path) {
-        if (!path.contains("results"))
-            path = path + File.separator + "results";
-        List<String> lines = readPredictions(path + File.separator + EXPECTEDFILE);
-        Double score = Double.NaN;
-        for (String i : lines) {
-            if (i.contains("precision")) {
-                score = Double.parseDouble(i.split("precision: ")[1].split(",")[0]);
-            }
-        }
-        return score;
+    @Override
+    public Double apply(MetamorphicIndividual individual) {
+        return apply(individual, individual.getResultPath().map(ParsedResults::read));
     }
 
     @Override
-    public Double apply(MetamorphicIndividual individual) {
-        double score = individual.getResultPath()
-                .map(i -> calculateScore(i))
+    public Double apply(MetamorphicIndividual individual, Optional<ParsedResults> results) {
+        double score = results
+                .map(ParsedResults::getPrecision)
                 .orElse(0.0);
         if (!objective)
             return 1 - score;
@@ -2,16 +2,13 @@ package com.github.ciselab.lampion.guided.metric.metrics;
 
 import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.ParsedResults;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Optional;
 
 public class PredictionLength extends Metric {
 
-    private static final String EXPECTEDFILE = "predicted_words.txt";
-
     public PredictionLength() {
         this.name = Name.PREDLENGTH;
     }
@@ -21,32 +18,15 @@ public class PredictionLength extends Metric {
         return true;
     }
 
-    private double calculateScore(String path) {
-        if (!path.contains("results"))
-            path = path + File.separator + "results";
-        // Original: render, predicted: get|logs
-        List<String> lines = readPredictions(path + File.separator + EXPECTEDFILE);
-        var scores = new ArrayList<>();
-        double score = 0;
-        for (String i : lines) {
-            if (i.contains("predicted") && i.contains("Original")) {
-                String predicted = i.split(": ")[2];
-                for (int j = 0; j < predicted.length(); j++) {
-                    int count = 0;
-                    if (predicted.charAt(j) != '|')
-                        count++;
-                    score += count;
-                    scores.add((float) count);
-                }
-            }
-        }
-        return score / lines.size();
+    @Override
+    public Double apply(MetamorphicIndividual individual) {
+        return apply(individual, individual.getResultPath().map(ParsedResults::read));
     }
 
     @Override
-    public Double apply(MetamorphicIndividual individual) {
-        return individual.getResultPath()
-                .map(i -> calculateScore(i))
+    public Double apply(MetamorphicIndividual individual, Optional<ParsedResults> results) {
+        return results
+                .map(ParsedResults::getPredictionLength)
                 .orElse(0.0);
     }
 
@@ -2,31 +2,18 @@ package com.github.ciselab.lampion.guided.metric.metrics;
 
 import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.ParsedResults;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.io.File;
-import java.util.List;
+import java.util.Optional;
+
 
 public class Recall extends Metric {
-    private static final String EXPECTEDFILE = "F1_score_log.txt";
 
     public Recall() {
         this.name = Name.REC;
     }
 
-    public double calculateScore(String path) {
-        if (!path.contains("results"))
-            path = path + File.separator + "results";
-        List<String> lines = readPredictions(path + File.separator + EXPECTEDFILE);
-        Double score = Double.NaN;
-        for (String i : lines) {
-            if (i.contains("recall")) {
-                score = Double.parseDouble(i.split("recall: ")[1].split(",")[0]);
-            }
-        }
-        return score;
-    }
-
     @Override
     public boolean isSecondary() {
         return false;
@@ -34,8 +21,13 @@ public class Recall extends Metric {
 
     @Override
     public Double apply(MetamorphicIndividual individual) {
-        double score = individual.getResultPath()
-                .map(i -> calculateScore(i))
+        return apply(individual, individual.getResultPath().map(ParsedResults::read));
+    }
+
+    @Override
+    public Double apply(MetamorphicIndividual individual, Optional<ParsedResults> results) {
+        double score = results
+                .map(ParsedResults::getRecall)
                 .orElse(0.0);
         if (!objective)
             return 1 - score;
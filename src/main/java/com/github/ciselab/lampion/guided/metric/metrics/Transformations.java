@@ -15,6 +15,11 @@ public class Transformations extends Metric {
         return true;
     }
 
+    @Override
+    public Requirement getRequirement() {
+        return Requirement.GENOTYPE;
+    }
+
     @Override
     public Double apply(MetamorphicIndividual individual) {
         return (Double) (double) individual.getTransformers().size();
@@ -10,11 +10,15 @@ import spoon.reflect.CtModel;
 import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtElement;
 import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.declaration.ParentNotInitializedException;
+import spoon.reflect.visitor.filter.TypeFilter;
 
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.IntConsumer;
 
 /**
  * This is the engine for the transformations used in this project.
@@ -28,6 +32,7 @@ public class Engine {
     // Used to instantiate the random seeds of the delegated Transformers in the default TransformerRegistry
     public static long globalRandomSeed = 2020;
 
+    long randomSeed = globalRandomSeed;
     Random random = new Random(globalRandomSeed);
 
     Path codeDirectory;
@@ -57,6 +62,13 @@ public class Engine {
 
     private boolean writeJavaOutput = true; // This switch enables/disables pretty printing of altered java files
 
+    // Marks the classes and methods a layered run found before its first layer, with their index
+    static final String UR_CLASS = "lampion.urClass";
+    static final String UR_METHOD = "lampion.urMethod";
+
+    // Qualified names of the top-level types the last run altered, only these need to be printed again
+    private Set<String> touchedTypes = new HashSet<>();
+
     public Engine(String codeDirectory, String outputDirectory, TransformerRegistry registry) {
         // Sanity Checks
         if (codeDirectory == null || codeDirectory.isEmpty() || codeDirectory.isBlank()) {
@@ -104,6 +116,7 @@ public class Engine {
         // Step 2:
         // Apply the Transformations according to distribution
         List<TransformationResult> results = new ArrayList<>();
+        touchedTypes = new HashSet<>();
         // Step 2.1:
         // set the total number of transformations regarding the scope
         long totalTransformationsToDo = switch (scope) {
@@ -130,11 +143,13 @@ public class Engine {
         for (int a = 0; a < totalTransformationsToDo; a++) {
             try {
                 CtElement toAlter = getNextCtElement();
+                touch(codeRoot, toAlter);
 
                 Transformer transformer = registry.getRegisteredTransformers().get(currentTransformer);
 
                 TransformationResult result = transformer.applyAtRandom(toAlter);
                 results.add(result);
+                touch(codeRoot, result);
 
                 if (result != null && !result.equals(new EmptyTransformationResult())) {
                     logger.trace("Successfully applied " + result.getTransformationName() +
@@ -163,6 +178,135 @@ public class Engine {
         }
         // Step 2.4:
         // If enabled, remove all comments (by setting them invisible)
+        removeComments(results);
+        classes.forEach(c -> c.updateAllParentsBelow());
+
+        builder.totalTransformations(totalTransformationsToDo)
+                .transformationFailures(transformationFailures)
+                .transformationResults(results);
+
+        return builder.build();
+    }
+
+    /**
+     * Runs the engine in layers: The registered transformers are applied one after another,
+     * each of them once per item of the scope (once in total for "global", once per class for "perClass" etc.).
+     * This gives as many transformations as run() when the number of transformations per scope
+     * equals the number of registered transformers.
+     * <p>
+     * As in run(), only the ur-elements are altered: the classes and methods found before the first layer.
+     * They are marked in the code (as metadata, which is kept when the model is copied),
+     * so that a run resumed on a copy of the code after k layers picks from the same elements.
+     * Every layer has a random seed of its own. Hence, the code after the first k layers only depends on the
+     * first k transformers, and the code of a shared prefix of transformers can be reused:
+     * Pass the code root after k layers and the first layer k.
+     * <p>
+     * Note: The layers apply the transformers in another order than run() (which alternates between them),
+     * so the code is not the same as the code of run().
+     *
+     * @param codeRoot   the code to transform, with the transformers before firstLayer already applied
+     * @param firstLayer the index of the first transformer to apply
+     * @param afterLayer called with the number of applied transformers after every layer
+     * @return the results of all applied layers
+     */
+    public EngineResult runLayered(CtModel codeRoot, int firstLayer, IntConsumer afterLayer) {
+        List<Transformer> transformers = registry.getRegisteredTransformers();
+        logger.info("Starting layered Engine with Registry " + registry.name + "[" + transformers.size()
+                + " transformers, starting at " + firstLayer + "] reading from " + codeDirectory + " writing to " + outputDirectory);
+
+        EngineResult.Builder builder = new EngineResult.Builder(codeRoot, codeDirectory.toAbsolutePath().toString(), outputDirectory.toAbsolutePath().toString(), registry)
+                .javaOutput(writeJavaOutput)
+                .randomSeed(random);
+
+        List<TransformationResult> results = new ArrayList<>();
+        touchedTypes = new HashSet<>();
+        classes = urElements(codeRoot, CtClass.class, UR_CLASS, firstLayer == 0);
+        methods = urElements(codeRoot, CtMethod.class, UR_METHOD, firstLayer == 0);
+        if (classes.size() == 0 || methods.size() == 0) {
+            logger.error("Either found no classes or no methods - exiting early. " +
+                    "Check your configuration, whether it points to actual files.");
+            return builder.build();
+        }
+        long totalTransformations = 0;
+        long transformationFailures = 0;
+        for (int layer = firstLayer; layer < transformers.size(); layer++) {
+            classIndex = 0;
+            methodIndex = 0;
+            random = new Random(randomSeed ^ (0x9E3779B97F4A7C15L * (layer + 1)));
+
+            long transformationsOfLayer = switch (scope) {
+                case global -> 1;
+                case perMethod, perMethodEach -> methods.size();
+                case perClass, perClassEach -> classes.size();
+            };
+            Transformer transformer = transformers.get(layer);
+            for (long a = 0; a < transformationsOfLayer; a++) {
+                try {
+                    CtElement toAlter = getNextCtElement();
+                    touch(codeRoot, toAlter);
+                    TransformationResult result = transformer.applyAtRandom(toAlter);
+                    results.add(result);
+                    touch(codeRoot, result);
+                    if (result != null && result.equals(new EmptyTransformationResult())) {
+                        logger.debug(transformer + " was not successfully applied.");
+                    }
+                } catch (SpoonException | NullPointerException spoonException) {
+                    transformationFailures++;
+                }
+            }
+            totalTransformations += transformationsOfLayer;
+            afterLayer.accept(layer + 1);
+        }
+
+        // Comments are removed after all layers, so that the code after every layer still has them
+        removeComments(results);
+        classes.forEach(c -> c.updateAllParentsBelow());
+
+        builder.totalTransformations(totalTransformations)
+                .transformationFailures(transformationFailures)
+                .transformationResults(results);
+
+        return builder.build();
+    }
+
+    /**
+     * Gets the ur-elements of a kind for a layered run, in the order they were found.
+     * A run starting at the first layer finds them in the code and marks them with their index,
+     * a resumed run takes the marked elements. Elements that are copies of a marked element
+     * (which have the same mark) are only taken once.
+     *
+     * @param codeRoot the code.
+     * @param kind     the kind of elements, classes or methods.
+     * @param mark     the key of the metadata holding the index of an element.
+     * @param collect  whether to find and mark the elements, otherwise the marked elements are taken.
+     * @return the ur-elements, ordered by their index.
+     */
+    private static <T extends CtElement> List<T> urElements(CtModel codeRoot, Class<T> kind, String mark,
+                                                            boolean collect) {
+        List<T> found = codeRoot.getElements(new TypeFilter<>(kind));
+        if (collect) {
+            for (int i = 0; i < found.size(); i++)
+                found.get(i).putMetadata(mark, i);
+            return found;
+        }
+        TreeMap<Integer, T> marked = new TreeMap<>();
+        for (T element : found) {
+            if (element.getMetadata(mark) instanceof Integer index)
+                marked.putIfAbsent(index, element);
+        }
+        if (marked.isEmpty()) {
+            // The code was not transformed by a layered run before, so all its elements are ur-elements
+            return urElements(codeRoot, kind, mark, true);
+        }
+        return new ArrayList<>(marked.values());
+    }
+
+    /**
+     * If enabled, removes all comments of the classes (by setting them invisible).
+     *
+     * @param results the results of the transformations, the removals are added to.
+     */
+    private void removeComments(List<TransformationResult> results) {
         if (removeAllComments) {
             RemoveAllCommentsTransformer commentRemover = new RemoveAllCommentsTransformer();
             // The Comment-Remover will inherit all compilation problems remaining - hence it does not try to compile
@@ -170,6 +314,7 @@ public class Engine {
             commentRemover.setTryingToCompile(false);
             try {
                 for (var c : classes) {
+                    touchedTypes.add(c.getTopLevelType().getQualifiedName());
                     TransformationResult removeCommentResult = commentRemover.applyAtRandom(c);
                     results.add(removeCommentResult);
                     logger.debug("Removed all Comments from the Java Output files");
@@ -178,13 +323,40 @@ public class Engine {
                 logger.error("Received a SpoonException while removing comments", spoonException);
             }
         }
-        classes.forEach(c -> c.updateAllParentsBelow());
+    }
 
-        builder.totalTransformations(totalTransformationsToDo)
-                .transformationFailures(transformationFailures)
-                .transformationResults(results);
+    /**
+     * The top-level types altered by the last run, by their qualified name.
+     * All other types are printed exactly as they were read.
+     *
+     * @return the qualified names of the altered top-level types.
+     */
+    public Set<String> getTouchedTypes() {
+        return Collections.unmodifiableSet(touchedTypes);
+    }
 
-        return builder.build();
+    private void touch(CtModel codeRoot, TransformationResult result) {
+        if (result != null && !result.equals(new EmptyTransformationResult()) && result.getTransformedElement() != null)
+            touch(codeRoot, result.getTransformedElement());
+    }
+
+    /**
+     * Remembers the top-level type of an element as altered.
+     * If the type can not be found, all types count as altered, so no change is lost.
+     */
+    private void touch(CtModel codeRoot, CtElement element) {
+        if (element == null)
+            return;
+        try {
+            CtType<?> type = element instanceof CtType<?> t ? t : element.getParent(CtType.class);
+            if (type != null) {
+                touchedTypes.add(type.getTopLevelType().getQualifiedName());
+                return;
+            }
+        } catch (ParentNotInitializedException e) {
+            logger.debug("Could not find the type of an altered element", e);
+        }
+        codeRoot.getAllTypes().forEach(t -> touchedTypes.add(t.getQualifiedName()));
     }
 
     /**
@@ -288,6 +460,7 @@ public class Engine {
      * @param seed
      */
     public void setRandomSeed(long seed) {
+        this.randomSeed = seed;
         this.random = new Random(seed);
     }
 }
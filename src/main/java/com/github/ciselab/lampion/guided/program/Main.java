@@ -3,6 +3,7 @@ package com.github.ciselab.lampion.guided.program;
 import com.github.ciselab.lampion.guided.algorithms.GeneticAlgorithm;
 import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.guided.algorithms.MetamorphicPopulation;
+import com.github.ciselab.lampion.guided.algorithms.PopulationEvaluator;
 import com.github.ciselab.lampion.guided.algorithms.RandomAlgorithm;
 import com.github.ciselab.lampion.guided.configuration.ConfigManagement;
 import com.github.ciselab.lampion.guided.configuration.Configuration;
@@ -25,10 +26,8 @@ import org.apache.logging.log4j.Logger;
  * together with the MetamorphicProblem.
  * <p>
  * Important:
- * Due to Code2Vec Logic, there is 1 running file for results.
- * This gets updated for each new individual.
- * Hence, we first have to predict an individual, read all metrics in,
- * store them in java somewhere and then go on.
+ * Every individual has its own folder (data/genX/[hash]) holding its java files and code2vec results.
+ * Code2Vec runs in a scratch directory inside this folder, so individuals do not share any result files.
  */
 public class Main {
 
@@ -65,7 +64,7 @@ public class Main {
 
             config = ConfigManagement.readConfig(args[0]);
             cache = ConfigManagement.initializeMetricCache(args[0]);
-            paretoFront = new ParetoFront(cache);
+            paretoFront = new ParetoFront(cache, config.program.getParetoCapacity());
             genotypeSupport = new GenotypeSupport(cache, config);
 
             config.program.setModelPath(args[1]);
@@ -84,10 +83,35 @@ public class Main {
             return;
         }
 
-        if (config.program.useGA())
-            runSimpleGA();
-        else
-            runRandomAlgo();
+        FitnessStore fitnessStore = openFitnessStore();
+        try {
+            if (config.program.useGA())
+                runSimpleGA();
+            else
+                runRandomAlgo();
+        } finally {
+            genotypeSupport.shutdown();
+            if (fitnessStore != null)
+                fitnessStore.close();
+        }
+    }
+
+    /**
+     * Opens the fitness store, if one is configured, and hands it to the metric cache.
+     * Its context covers the copied initial dataset and the model, so it has to be opened after both are set.
+     *
+     * @return the opened store, null if none is configured.
+     * @throws IOException if the store, the dataset or the model can not be read.
+     */
+    private static FitnessStore openFitnessStore() throws IOException {
+        Optional<Path> file = config.program.getFitnessStore();
+        if (file.isEmpty())
+            return null;
+        Path dataset = config.program.getDataDirectoryPath().resolve(genotypeSupport.getInitialDataset());
+        Path model = config.program.getCode2vecDirectory().toAbsolutePath().resolve(config.program.getModelPath());
+        FitnessStore fitnessStore = FitnessStore.open(file.get(), FitnessStore.contextOf(config, dataset, model));
+        cache.setFitnessStore(fitnessStore);
+        return fitnessStore;
     }
 
 
@@ -99,7 +123,9 @@ public class Main {
         LocalTime start = LocalTime.now();
 
         // Create an initial population
-        try {
+        try (PopulationEvaluator evaluator = new PopulationEvaluator(config.program.getEvaluationThreads(),
+                config.program.useBatchInference())) {
+            algorithm.setPopulationEvaluator(evaluator);
             MetamorphicPopulation myPop =
                     new MetamorphicPopulation(genotypeSupport, 0);
             for (int i = 0; i < config.genetic.getPopSize(); i++) {
@@ -117,6 +143,7 @@ public class Main {
             while (generationCount <= config.genetic.getMaxGeneLength() && timeDiffSmaller(start)) {
                 LocalTime generationStart = LocalTime.now();
                 ArrayList<Double> generationFitness = new ArrayList<>();
+                algorithm.evaluate(myPop);
                 for (int i = 0; i < config.genetic.getPopSize(); i++) {
                     generationFitness.add(myPop.getIndividual(i).get().getFitness());
                     fitnesses.add(myPop.getIndividual(i).get().getFitness());
@@ -126,12 +153,10 @@ public class Main {
                 logger.info("Starting Generation " + generationCount);
 
                 algorithm.checkPareto(myPop);
-                // Write all current individuals to their respective json files
-                for (var individual : myPop.getIndividuals()) {
-                    individual.writeIndividualJSON();
-                }
+                writeIndividualJSONs(myPop);
 
                 myPop = algorithm.nextGeneration(myPop);
+                algorithm.evaluate(myPop);
                 LocalTime generationFinished = LocalTime.now();
 
                 logGenerationInfo(myPop,generationCount,initialFitness,generationStart,generationFinished);
@@ -162,7 +187,9 @@ public class Main {
         boolean converged = false;
 
         // Create an initial population
-        try {
+        try (PopulationEvaluator evaluator = new PopulationEvaluator(config.program.getEvaluationThreads(),
+                config.program.useBatchInference())) {
+            geneticAlgorithm.setPopulationEvaluator(evaluator);
             MetamorphicPopulation myPop =
                     new MetamorphicPopulation(genotypeSupport, 0);
             myPop.initialize(config.genetic.getPopSize(),(int) config.genetic.getGrowthFactor(),random);
@@ -179,9 +206,11 @@ public class Main {
                 LocalTime generationStart = LocalTime.now();
                 generationCount++;
                 logger.info("Starting Generation " + generationCount);
+                // All individuals are evaluated (in parallel) before anything looks at their fitness
+                geneticAlgorithm.evaluate(myPop);
                 if (isFitter(myPop, bestFitness)) {
-                    bestFitness = myPop.getFittest().get().getFitness();
                     best = myPop.getFittest().get();
+                    bestFitness = best.getFitness();
                     steadyGens = 0;
                 } else
                     steadyGens++;
@@ -193,10 +222,10 @@ public class Main {
                 } else {
                     logger.debug("Current Pareto set = " + paretoFront.displayPareto());
                 }
-                // Write all current individuals to their respective json files
-                myPop.getIndividuals().stream().forEach(MetamorphicIndividual::writeIndividualJSON);
+                writeIndividualJSONs(myPop);
 
                 myPop = geneticAlgorithm.evolvePopulation(myPop);
+                geneticAlgorithm.evaluate(myPop);
 
                 var generationFinished = LocalTime.now();
                 logGenerationInfo(myPop,generationCount,initialFitness,generationStart,generationFinished);
@@ -215,15 +244,25 @@ public class Main {
         }
     }
 
+    /**
+     * Write all current individuals to their respective json files.
+     *
+     * @param pop the evaluated population.
+     */
+    static void writeIndividualJSONs(MetamorphicPopulation pop) {
+        pop.getIndividuals().forEach(MetamorphicIndividual::writeIndividualJSON);
+    }
+
     static private void logGenerationInfo(MetamorphicPopulation pop, int generation, double initialFitness, LocalTime start, LocalTime end){
         logger.info("Generation " + generation + " finished after " + Duration.between(start, end).getSeconds() + "s");
-        if (pop.getFittest().isPresent()){
+        Optional<MetamorphicIndividual> fittest = pop.getFittest();
+        if (fittest.isPresent()){
 
-            double gene_fitness = pop.getFittest().get().getFitness();
+            double gene_fitness = fittest.get().getFitness();
             logger.info(String.format("Fittest: %s with %.4f (+/- %.4f)",
-                    pop.getFittest().get().hexHash(),gene_fitness,Math.abs(gene_fitness-initialFitness)) );
+                    fittest.get().hexHash(),gene_fitness,Math.abs(gene_fitness-initialFitness)) );
 
-            logger.debug("Fittest Gene: " + pop.getFittest().toString());
+            logger.debug("Fittest Gene: " + fittest.toString());
         } else {
             logger.warn("Generation " + generation +
                     " had no fittest element, Population had " + pop.getIndividuals().size() +
@@ -1,10 +1,26 @@
 package com.github.ciselab.lampion.guided.support;
 
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import com.github.ciselab.lampion.guided.configuration.ProgramConfiguration;
 import org.apache.logging.log4j.LogManager;
@@ -13,63 +29,201 @@ import org.apache.logging.log4j.Logger;
 /**
  * This class runs all the bash related actions. This is needed for the interaction with code2vec.
  * If you want to use this class make sure that the path_bash is up to date for your own bash executable.
+ * <p>
+ * Commands run asynchronously, stdout and stderr are both drained while the command runs (so a chatty command
+ * cannot block on a full pipe) and their last lines are kept for the error of a failed command.
+ * A failed command is retried with an exponential backoff, a command running longer than the configured timeout
+ * is killed. If all attempts fail, the command fails with a {@link CommandFailedException}.
  */
 public class BashRunner {
 
     private final Logger logger = LogManager.getLogger(BashRunner.class);
 
+    // How many lines of the output are kept for the error of a failed command
+    static final int OUTPUT_TAIL_LINES = 50;
+    static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+    // How long the output is still read after the command exited, e.g. if a background process keeps the pipe open
+    private static final Duration OUTPUT_GRACE = Duration.ofSeconds(10);
+
+    private static final AtomicInteger createdThreads = new AtomicInteger();
+    // Runs the commands and drains their output, daemon threads so that a hanging command does not keep the JVM alive
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "bash-runner-" + createdThreads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
     ProgramConfiguration config;
+    private final Duration initialBackoff;
 
     public BashRunner(ProgramConfiguration config) {
+        this(config, INITIAL_BACKOFF);
+    }
+
+    /**
+     * @param initialBackoff how long to wait before the first retry, every further retry waits twice as long.
+     */
+    BashRunner(ProgramConfiguration config, Duration initialBackoff) {
         this.config = config;
+        this.initialBackoff = initialBackoff;
     }
 
     /**
-     * This method runs a command from the code2vec directory.
+     * This method runs a command from the code2vec directory and waits for it.
      *
      * @param comm the command to be run.
+     * @throws CommandFailedException if the command did not succeed after all retries.
+     */
+    public void runCommand(String comm) throws CommandFailedException {
+        runCommand(comm, config.getCode2vecDirectory());
+    }
+
+    /**
+     * This method runs a command from the given working directory and waits for it.
+     *
+     * @param comm             the command to be run.
+     * @param workingDirectory the directory to run the command in.
+     * @throws CommandFailedException if the command did not succeed after all retries.
+     */
+    public void runCommand(String comm, Path workingDirectory) throws CommandFailedException {
+        try {
+            runAsync(comm, workingDirectory).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CommandFailedException failed)
+                throw failed;
+            throw e;
+        }
+    }
+
+    /**
+     * This method runs a command from the given working directory, without waiting for it.
+     *
+     * @param command          the command to be run in bash.
+     * @param workingDirectory the directory to run the command in.
+     * @return a future that completes once the command succeeded,
+     * or completes exceptionally with a {@link CommandFailedException} once all retries failed.
+     */
+    public CompletableFuture<Void> runAsync(String command, Path workingDirectory) {
+        return attempt(command, workingDirectory, 0);
+    }
+
+    private CompletableFuture<Void> attempt(String command, Path workingDirectory, int attempt) {
+        Executor delayed = attempt == 0
+                ? executor
+                : CompletableFuture.delayedExecutor(backoff(attempt).toMillis(), TimeUnit.MILLISECONDS, executor);
+        return CompletableFuture.runAsync(() -> runBashCommand(command, workingDirectory), delayed)
+                .handle((success, failure) -> {
+                    if (failure == null)
+                        return CompletableFuture.<Void>completedFuture(null);
+                    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                    boolean interrupted = cause instanceof CommandFailedException failed
+                            && failed.getReason() == CommandFailedException.Reason.INTERRUPTED;
+                    if (attempt < config.getBashRetries() && !interrupted) {
+                        logger.debug(cause.getMessage() + ", retrying in " + backoff(attempt + 1).toMillis() + "ms");
+                        return attempt(command, workingDirectory, attempt + 1);
+                    }
+                    logger.error("The command: " + command + "\n did not succeed after " + (attempt + 1) + " tries");
+                    return CompletableFuture.<Void>failedFuture(cause);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * @return how long to wait before the given retry, doubling with every retry.
      */
-    public void runCommand(String comm) {
-        runBashCommand(comm, 0);
+    Duration backoff(int attempt) {
+        Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempt - 1, 20));
+        return backoff.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff;
     }
 
     /**
-     * This method runs a given command in git bash and prints the results.
+     * This method runs a given command in bash once and waits for it.
      *
-     * @param command the command to be run in git bash.
+     * @param command          the command to be run in bash.
+     * @param workingDirectory the directory to run the command in.
+     * @throws CompletionException with a {@link CommandFailedException} if the command failed.
      */
-    private void runBashCommand(String command, Integer countFailed) {
+    private void runBashCommand(String command, Path workingDirectory) {
+        OutputTail output = new OutputTail();
+        Process process;
         try {
             ProcessBuilder processBuilder = new ProcessBuilder();
-            processBuilder.directory(new File(config.getCode2vecDirectory().toAbsolutePath().toString()));
+            processBuilder.directory(workingDirectory.toAbsolutePath().toFile());
             processBuilder.command(config.getBashPath().toAbsolutePath().toString(), "-c", command);
+            process = processBuilder.start();
+        } catch (IOException e) {
+            throw failure(command, CommandFailedException.Reason.NOT_STARTED, null, output, e);
+        }
+        CompletableFuture<Void> stdout = CompletableFuture.runAsync(() -> output.drain(process.getInputStream()), executor);
+        CompletableFuture<Void> stderr = CompletableFuture.runAsync(() -> output.drain(process.getErrorStream()), executor);
 
-            Process process = processBuilder.start();
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(
-                    process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Can be used for debugging the code2vec commands.
-                logger.debug(line);
+        try {
+            int timeout = config.getBashTimeout();
+            boolean exited = timeout > 0 ? process.waitFor(timeout, TimeUnit.SECONDS) : process.waitFor() >= 0;
+            if (!exited) {
+                kill(process);
+                throw failure(command, CommandFailedException.Reason.TIMEOUT, null, output, null);
             }
-
-            int exitVal = process.waitFor();
-            if (exitVal == 0) {
-                logger.trace(" --- Command run successfully");
-            } else {
-                if (countFailed < config.getBashRetries()) {
-                    TimeUnit.SECONDS.sleep(1);
-                    runBashCommand(command, countFailed + 1);
-                } else {
-                    logger.debug("The command: " + command + "\n does not succed after " + config.getBashRetries() + " tries, quiting the system.");
-                    System.exit(1);
-                }
+            try {
+                CompletableFuture.allOf(stdout, stderr).get(OUTPUT_GRACE.toSeconds(), TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                logger.debug("Could not read the whole output of: " + command, e);
             }
-        } catch (IOException | InterruptedException e) {
-            logger.debug(" --- Interruption in RunCommand: " + e);
+            int exitVal = process.exitValue();
+            if (exitVal != 0)
+                throw failure(command, CommandFailedException.Reason.EXIT_CODE, exitVal, output, null);
+            logger.trace(" --- Command run successfully");
+        } catch (InterruptedException e) {
+            kill(process);
             // Restore interrupted state
             Thread.currentThread().interrupt();
+            throw failure(command, CommandFailedException.Reason.INTERRUPTED, null, output, e);
+        }
+    }
+
+    /**
+     * Kills the process and everything it started, e.g. the python process of a bash command.
+     */
+    private static void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static CompletionException failure(String command, CommandFailedException.Reason reason, Integer exitCode,
+                                               OutputTail output, Throwable cause) {
+        return new CompletionException(new CommandFailedException(command, reason, exitCode, output.lines(), cause));
+    }
+
+    /**
+     * The last lines a command printed, to stdout or stderr. Every line is logged on debug as well.
+     */
+    private final class OutputTail {
+
+        private final Deque<String> lines = new ArrayDeque<>();
+
+        void drain(InputStream stream) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, Charset.defaultCharset()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // Can be used for debugging the code2vec commands.
+                    logger.debug(line);
+                    add(line);
+                }
+            } catch (IOException e) {
+                // The stream is closed when the process is killed
+                logger.trace("Stopped reading the output of a command", e);
+            }
+        }
+
+        private synchronized void add(String line) {
+            if (lines.size() == OUTPUT_TAIL_LINES)
+                lines.removeFirst();
+            lines.addLast(line);
+        }
+
+        synchronized List<String> lines() {
+            return new ArrayList<>(lines);
         }
     }
 }
@@ -0,0 +1,139 @@
+package com.github.ciselab.lampion.guided.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import spoon.Launcher;
+import spoon.compiler.Environment;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtType;
+import spoon.support.JavaOutputProcessor;
+
+/**
+ * This class writes the java files of a transformed model.
+ * Only the types that were altered are pretty-printed, the files of all other types are linked to their
+ * original files, as printing them would only reformat them. The files are laid out as Spoon prints them,
+ * i.e. in folders by package.
+ * <p>
+ * The altered types can be printed by several threads, each of them with their own printer.
+ */
+public class CodeWriter {
+
+    private final Logger logger = LogManager.getLogger(CodeWriter.class);
+
+    private final int threads;
+
+    /**
+     * @param threads how many threads print the altered types, must be at least 1.
+     */
+    public CodeWriter(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("There must be at least one thread for printing");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Writes the java files of all top-level types of the model to the output directory.
+     *
+     * @param launcher        the launcher holding the model.
+     * @param outputDirectory the directory to write the java files to.
+     * @param touchedTypes    the qualified names of the top-level types that were altered.
+     * @throws IOException if a file could not be written or linked.
+     */
+    public void write(Launcher launcher, Path outputDirectory, Set<String> touchedTypes) throws IOException {
+        launcher.setSourceOutputDirectory(outputDirectory.toFile());
+        Environment environment = launcher.getEnvironment();
+
+        List<CtType<?>> toPrint = new ArrayList<>();
+        int linked = 0;
+        for (CtType<?> type : launcher.getFactory().Type().getAll()) {
+            Path target = environment.getOutputDestinationHandler()
+                    .getOutputPath(type.getPackage().getDeclaringModule(), type.getPackage(), type);
+            // An existing file might be a link to an original, which must not be written through
+            Files.deleteIfExists(target);
+            File original = originalFile(type);
+            if (touchedTypes.contains(type.getQualifiedName()) || original == null) {
+                toPrint.add(type);
+            } else {
+                Files.createDirectories(target.getParent());
+                link(original.toPath(), target);
+                linked++;
+            }
+        }
+        logger.debug("Printing " + toPrint.size() + " altered types, linking " + linked + " unaltered files to " + outputDirectory);
+        print(launcher, toPrint);
+    }
+
+    /**
+     * @return the file the type was read from, if it can be re-used as is, otherwise null.
+     */
+    private static File originalFile(CtType<?> type) {
+        CtCompilationUnit unit = type.getPosition().getCompilationUnit();
+        if (unit == null || unit.getFile() == null || !unit.getFile().isFile())
+            return null;
+        // Spoon prints every top-level type to a file of its own, so files with several types are printed
+        if (unit.getDeclaredTypes().size() != 1)
+            return null;
+        return unit.getFile();
+    }
+
+    /**
+     * Hard-links the original file, if that is not possible (e.g. on another file system) it is copied.
+     */
+    private void link(Path original, Path target) throws IOException {
+        try {
+            Files.createLink(target, original);
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.trace("Could not link " + original + ", copying it instead", e);
+            Files.copy(original, target);
+        }
+    }
+
+    private void print(Launcher launcher, List<CtType<?>> types) throws IOException {
+        if (threads == 1 || types.size() < 2) {
+            printAll(launcher, types, 0, 1);
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, types.size()));
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                final int first = i;
+                running.add(pool.submit(() -> printAll(launcher, types, first, threads)));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while printing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not print the altered types", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Prints every step-th type, starting at first, with a printer of its own.
+     */
+    private static void printAll(Launcher launcher, List<CtType<?>> types, int first, int step) {
+        JavaOutputProcessor printer = new JavaOutputProcessor(launcher.getEnvironment().createPrettyPrinter());
+        printer.setFactory(launcher.getFactory());
+        for (int i = first; i < types.size(); i += step) {
+            printer.createJavaFile(types.get(i));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.ciselab.lampion.guided.support;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.OptionalInt;
+
+/**
+ * A bash command of the {@link BashRunner} did not succeed, after all its retries.
+ * The command either exited with another code than 0, ran into its timeout, could not be started at all
+ * or the thread waiting for it was interrupted.
+ * The last lines the command printed are kept for diagnosis.
+ */
+public class CommandFailedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Why the (last attempt of the) command failed.
+     */
+    public enum Reason {
+        EXIT_CODE,
+        TIMEOUT,
+        NOT_STARTED,
+        INTERRUPTED
+    }
+
+    private final String command;
+    private final Reason reason;
+    private final Integer exitCode;
+    private final List<String> outputTail;
+
+    /**
+     * @param command    the command that failed.
+     * @param reason     why the command failed.
+     * @param exitCode   the exit code of the command, null if it did not exit on its own.
+     * @param outputTail the last lines the command printed to stdout and stderr.
+     * @param cause      the cause, e.g. if the process could not be started, may be null.
+     */
+    public CommandFailedException(String command, Reason reason, Integer exitCode, List<String> outputTail,
+                                  Throwable cause) {
+        super(message(command, reason, exitCode), cause);
+        this.command = command;
+        this.reason = reason;
+        this.exitCode = exitCode;
+        this.outputTail = List.copyOf(outputTail);
+    }
+
+    private static String message(String command, Reason reason, Integer exitCode) {
+        return switch (reason) {
+            case EXIT_CODE -> "The command \"" + command + "\" exited with " + exitCode;
+            case TIMEOUT -> "The command \"" + command + "\" ran into its timeout";
+            case NOT_STARTED -> "The command \"" + command + "\" could not be started";
+            case INTERRUPTED -> "Interrupted while waiting for the command \"" + command + "\"";
+        };
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the exit code of the command, empty if it did not exit on its own.
+     */
+    public OptionalInt getExitCode() {
+        return exitCode == null ? OptionalInt.empty() : OptionalInt.of(exitCode);
+    }
+
+    /**
+     * @return the last lines the command printed, stdout and stderr interleaved.
+     */
+    public List<String> getOutputTail() {
+        return outputTail;
+    }
+}
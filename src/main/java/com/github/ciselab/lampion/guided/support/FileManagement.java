@@ -2,9 +2,16 @@ package com.github.ciselab.lampion.guided.support;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -54,59 +61,56 @@ public class FileManagement {
         }
     }
 
+     */
+    /**
+     * Copies a directory with all its contents. Existing files of the destination are replaced.
+     *
+     * @param sourceDirectoryLocation      the directory to copy.
+     * @param destinationDirectoryLocation the directory to copy to, created if missing.
+     * @throws IOException if the source could not be read or a file could not be copied.
      */
     public static void copyDirectory(String sourceDirectoryLocation, String destinationDirectoryLocation)
             throws IOException {
         logger.debug("Copying " + sourceDirectoryLocation + " to " + destinationDirectoryLocation);
-        //String path = Path.of(sourceDirectoryLocation).toAbsolutePath().toString();
-        File dir = new File(destinationDirectoryLocation);
-        if (!dir.exists()) {
-            if (dir.mkdirs())
-                logger.debug("Created directory (" + destinationDirectoryLocation + ")necessary for the data.");
-        }
+        Path source = Path.of(sourceDirectoryLocation);
+        Path destination = Path.of(destinationDirectoryLocation);
+        Files.createDirectories(destination);
 
-        Files.walk(Paths.get(sourceDirectoryLocation))
-                .forEach(source -> {
-                    Path destination = Paths.get(destinationDirectoryLocation, source.toString()
-                            .substring(sourceDirectoryLocation.length()));
-                    try {
-                        Files.copy(source, destination);
-                    } catch (IOException e) {
-                        logger.error(e);
-                    }
-                });
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : files.toList()) {
+                Path target = destination.resolve(source.relativize(file).toString());
+                if (Files.isDirectory(file))
+                    Files.createDirectories(target);
+                else
+                    Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
     }
 
     /**
      * Create the correct directories for the code2vec application.
      *
      * @param path path to the dataset.
+     * @throws IOException if a directory could not be created.
      */
-    public static boolean createDirs(String path) {
-        File valDir = new File(path + "/validation");
-        File trainingDir = new File(path + "/training");
-        boolean val = valDir.mkdir();
-        boolean train = trainingDir.mkdir();
-        return val && train;
+    public static void createDirs(Path path) throws IOException {
+        Files.createDirectories(path.resolve("validation"));
+        Files.createDirectories(path.resolve("training"));
     }
 
     /**
-     * Moves all files from subdirectories to the main target directory.
+     * Moves a file, replacing an existing target.
+     * The file is moved atomically if the file system supports it, e.g. so that no reader sees a half-written target.
      *
-     * @param toDir   the main target directory.
-     * @param currDir the directory we are currently in.
+     * @param source the file to move.
+     * @param target the new path of the file.
+     * @throws IOException if the file could not be moved.
      */
-    public static void removeSubDirs(File toDir, File currDir) {
-        File[] files = currDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    removeSubDirs(toDir, file);
-                    file.delete();
-                } else {
-                    file.renameTo(new File(toDir, file.getName()));
-                }
-            }
+    public static void moveFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
@@ -114,30 +118,69 @@ public class FileManagement {
      * Remove previously used directories.
      */
     public static void removeOtherDirs(String dataDir) {
-        File toDelete = new File(dataDir);
-        File[] entries = toDelete.listFiles();
-        if (entries != null) {
-            for (File entry : entries) {
-                if (!entry.getName().equals("generation_0")) {
-                    deleteDirectory(entry);
+        Path directory = Path.of(dataDir);
+        if (!Files.isDirectory(directory))
+            return;
+        try (Stream<Path> entries = Files.list(directory)) {
+            for (Path entry : entries.toList()) {
+                if (!entry.getFileName().toString().equals("generation_0")) {
+                    removeDirectory(entry);
                 }
             }
+        } catch (IOException e) {
+            logger.warn("Could not remove the directories of " + dataDir, e);
         }
     }
 
     /**
-     * Delete directory and all its contents.
+     * Creates a scratch directory that looks like the given directory:
+     * All entries of the original directory are symlinked into the scratch directory, except for the excluded ones.
+     * This way, a tool that writes into its working directory (like code2vec) can run several times at once.
+     * Existing entries of the scratch directory are kept.
      *
-     * @param directoryToBeDeleted the directory to be deleted.
+     * @param original the directory to mirror.
+     * @param scratch  the directory to create, e.g. inside of an individual's folder.
+     * @param excluded names of entries that are not linked, as the scratch directory needs its own.
+     * @throws IOException if the directory or a link could not be created.
      */
-    private static void deleteDirectory(File directoryToBeDeleted) {
-        File[] allContents = directoryToBeDeleted.listFiles();
-        if (allContents != null) {
-            for (File file : allContents) {
-                deleteDirectory(file);
+    public static void createLinkedDirectory(Path original, Path scratch, Set<String> excluded) throws IOException {
+        Files.createDirectories(scratch);
+        try (Stream<Path> entries = Files.list(original)) {
+            for (Path entry : entries.toList()) {
+                String name = entry.getFileName().toString();
+                Path link = scratch.resolve(name);
+                if (excluded.contains(name) || Files.exists(link, LinkOption.NOFOLLOW_LINKS))
+                    continue;
+                Files.createSymbolicLink(link, entry.toAbsolutePath());
             }
         }
-        directoryToBeDeleted.delete();
+    }
+
+    /**
+     * Deletes a directory with all its contents.
+     * Symbolic links are deleted, but never followed, so the targets of links stay untouched.
+     *
+     * @param directory the directory to delete.
+     * @throws IOException if something could not be deleted.
+     */
+    public static void removeDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS))
+            return;
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null)
+                    throw exc;
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
     }
 
 }
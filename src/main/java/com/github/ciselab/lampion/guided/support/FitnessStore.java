@@ -0,0 +1,345 @@
+package com.github.ciselab.lampion.guided.support;
+
+import com.github.ciselab.lampion.core.transformations.Transformer;
+import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
+import com.github.ciselab.lampion.guided.configuration.Configuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * This class keeps the metric results of evaluated genotypes on disk, so that later runs can re-use them
+ * instead of transforming and inferring the same genotypes again (e.g. over the seeds and configurations of an
+ * experiment grid).
+ * <p>
+ * The results are only valid for the same evaluation context: the content of the initial dataset, the model files,
+ * and the settings that change the transformed code or the predictions. The context is hashed into every record,
+ * records of other contexts in the same file are ignored.
+ * <p>
+ * The store is an append-only log with one record per line:
+ * {@code context \t genotype \t metric=value,... \t crc32}.
+ * Records are only appended (under a file lock, so several runs can share the file) and never changed.
+ * A record that was not written completely, e.g. because a run crashed, fails its checksum and is skipped.
+ * The index of the records of the current context is kept in memory and is brought up to date with the records
+ * other runs appended whenever a genotype is not found.
+ */
+public class FitnessStore implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(FitnessStore.class);
+
+    private final Path file;
+    private final String context;
+    private final FileChannel channel;
+
+    private final Map<String, Map<String, Double>> index = new ConcurrentHashMap<>();
+    // Up to where the log was read into the index, always after a line break
+    private long indexed = 0;
+
+    private FitnessStore(Path file, String context, FileChannel channel) {
+        this.file = file;
+        this.context = context;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the store, creating the file if it does not exist, and reads the records of the context.
+     *
+     * @param file    the log file of the store.
+     * @param context the evaluation context, see {@link #contextOf(Configuration, Path, Path)}.
+     * @return the opened store.
+     * @throws IOException if the file can not be opened or read.
+     */
+    public static FitnessStore open(Path file, String context) throws IOException {
+        if (context == null || context.isEmpty() || context.contains("\t") || context.contains("\n")) {
+            throw new IllegalArgumentException("The context of the fitness store must be a single word");
+        }
+        if (file.toAbsolutePath().getParent() != null)
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FitnessStore store = new FitnessStore(file, context, channel);
+        store.refresh();
+        logger.info("Opened the fitness store " + file + " with " + store.size() + " known genotypes");
+        return store;
+    }
+
+    /**
+     * Looks up the metric results of a genotype, including those other runs stored since the last look-up.
+     *
+     * @param genotype the canonical genotype, see {@link #genotypeOf(MetamorphicIndividual)}.
+     * @return the value per metric name, empty if the genotype was not evaluated in this context.
+     */
+    public Optional<Map<String, Double>> get(String genotype) {
+        Map<String, Double> metrics = index.get(genotype);
+        if (metrics == null) {
+            try {
+                refresh();
+            } catch (IOException e) {
+                logger.warn("Could not read the new records of the fitness store " + file, e);
+            }
+            metrics = index.get(genotype);
+        }
+        return Optional.ofNullable(metrics);
+    }
+
+    /**
+     * Appends the metric results of a genotype to the log.
+     * Failing to write is logged only, as the store just saves work for later runs.
+     *
+     * @param genotype the canonical genotype, see {@link #genotypeOf(MetamorphicIndividual)}.
+     * @param metrics  the value per metric name.
+     */
+    public void put(String genotype, Map<String, Double> metrics) {
+        if (metrics.isEmpty())
+            return;
+        index.put(genotype, Map.copyOf(metrics));
+        byte[] record = encode(genotype, metrics).getBytes(StandardCharsets.UTF_8);
+        try {
+            append(record);
+        } catch (IOException e) {
+            logger.error("Could not write the metrics of " + genotype + " to the fitness store " + file, e);
+        }
+    }
+
+    /**
+     * @return how many genotypes of the context are known.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getContext() {
+        return context;
+    }
+
+    /**
+     * Appends a record under an exclusive lock of the file, after completing a torn last line of a crashed run.
+     * Synchronized over all stores, as a JVM can only hold one lock of a file at once.
+     */
+    private void append(byte[] record) throws IOException {
+        synchronized (FitnessStore.class) {
+            appendLocked(record);
+        }
+    }
+
+    private void appendLocked(byte[] record) throws IOException {
+        try (FileLock lock = channel.lock()) {
+            long end = channel.size();
+            ByteBuffer buffer;
+            if (end > 0 && !endsWithLineBreak(end)) {
+                buffer = ByteBuffer.allocate(record.length + 1);
+                buffer.put((byte) '\n');
+            } else {
+                buffer = ByteBuffer.allocate(record.length);
+            }
+            buffer.put(record).flip();
+            while (buffer.hasRemaining())
+                end += channel.write(buffer, end);
+            channel.force(false);
+        }
+    }
+
+    private boolean endsWithLineBreak(long end) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        return channel.read(last, end - 1) == 1 && last.get(0) == '\n';
+    }
+
+    /**
+     * Reads the complete lines appended since the last refresh into the index.
+     */
+    private synchronized void refresh() throws IOException {
+        long size = channel.size();
+        if (size <= indexed)
+            return;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - indexed, 1 << 20));
+        byte[] line = new byte[256];
+        int length = 0;
+        long position = indexed;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0)
+                break;
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    index(new String(line, 0, length, StandardCharsets.UTF_8));
+                    length = 0;
+                    indexed = position + i + 1;
+                    continue;
+                }
+                if (length == line.length)
+                    line = Arrays.copyOf(line, length * 2);
+                line[length++] = b;
+            }
+            position += read;
+        }
+        // A line without line break is still being written (or torn), it is read again on the next refresh
+    }
+
+    private void index(String line) {
+        String[] fields = line.split("\t");
+        if (fields.length != 4 || !checksum(fields[0] + "\t" + fields[1] + "\t" + fields[2]).equals(fields[3])) {
+            if (!line.isEmpty())
+                logger.warn("Skipping a broken record of the fitness store " + file);
+            return;
+        }
+        if (!fields[0].equals(context))
+            return;
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        try {
+            for (String metric : fields[2].split(",")) {
+                int separator = metric.indexOf('=');
+                metrics.put(metric.substring(0, separator), Double.parseDouble(metric.substring(separator + 1)));
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Skipping a broken record of the fitness store " + file);
+            return;
+        }
+        index.put(fields[1], Map.copyOf(metrics));
+    }
+
+    private String encode(String genotype, Map<String, Double> metrics) {
+        StringBuilder values = new StringBuilder();
+        metrics.forEach((name, value) -> {
+            if (values.length() > 0)
+                values.append(',');
+            values.append(name).append('=').append(value);
+        });
+        String record = context + "\t" + genotype + "\t" + values;
+        return record + "\t" + checksum(record) + "\n";
+    }
+
+    private static String checksum(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * The canonical form of a genotype: its transformers with their seeds, in their order.
+     * Two individuals with the same canonical form are equal, in any run.
+     *
+     * @param individual the individual.
+     * @return the canonical genotype.
+     */
+    public static String genotypeOf(MetamorphicIndividual individual) {
+        StringBuilder genotype = new StringBuilder("[");
+        for (Transformer transformer : individual.getTransformers()) {
+            if (genotype.length() > 1)
+                genotype.append(';');
+            genotype.append(transformer.getClass().getSimpleName()).append(':').append(transformer.getSeed());
+        }
+        return genotype.append(']').toString();
+    }
+
+    /**
+     * Hashes everything the metric results of a genotype depend on, besides the genotype:
+     * the files of the initial dataset and of the model (by content), and the settings that change the
+     * transformed code, the extracted path contexts or the predictions.
+     *
+     * @param config  the configuration of the run.
+     * @param dataset the directory of the initial dataset.
+     * @param model   the model, the files of the model are the ones starting with its file name.
+     * @return the context, a hex-encoded SHA-256 hash.
+     * @throws IOException if the files can not be read.
+     */
+    public static String contextOf(Configuration config, Path dataset, Path model) throws IOException {
+        MessageDigest digest = sha256();
+        // The seed of the run is left out, with a store the transformed code and the predictions only depend on the genotype
+        // With the prefix cache, the layered engine applies the transformers in another order and gives other code
+        digest.update(("scope=" + config.lampion.getTransformationScope()
+                + ";layered=" + (config.program.getPrefixCacheSize() > 0)
+                + ";removeAllComments=" + config.lampion.isRemoveAllComments()
+                + ";extractor=" + config.program.getExtractor()
+                + ";backend=" + config.program.getInferenceBackend()).getBytes(StandardCharsets.UTF_8));
+        digest.update(hashFiles(dataset, filesBelow(dataset)));
+        List<Path> modelFiles = modelFiles(model);
+        if (modelFiles.isEmpty()) {
+            logger.warn("Found no model files for " + model + ", the fitness store only knows the model by its name");
+            digest.update(model.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+        } else {
+            digest.update(hashFiles(model.toAbsolutePath().getParent(), modelFiles));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static List<Path> filesBelow(Path directory) throws IOException {
+        if (!Files.isDirectory(directory))
+            return List.of();
+        try (Stream<Path> walk = Files.walk(directory)) {
+            return walk.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+
+    private static List<Path> modelFiles(Path model) throws IOException {
+        Path directory = model.toAbsolutePath().getParent();
+        if (directory == null || !Files.isDirectory(directory))
+            return List.of();
+        String name = model.getFileName().toString();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(f -> f.getFileName().toString().startsWith(name))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Hashes the names (relative to the root) and the contents of the files.
+     */
+    private static byte[] hashFiles(Path root, List<Path> files) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[1 << 16];
+        for (Path file : files) {
+            digest.update(root.toAbsolutePath().relativize(file.toAbsolutePath()).toString()
+                    .getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            try (InputStream input = Files.newInputStream(file)) {
+                int read;
+                while ((read = input.read(buffer)) > 0)
+                    digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
@@ -5,15 +5,27 @@ import com.github.ciselab.lampion.core.transformations.Transformer;
 import com.github.ciselab.lampion.core.transformations.TransformerRegistry;
 import com.github.ciselab.lampion.core.transformations.transformers.*;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.random.RandomGenerator;
 
 import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.guided.configuration.Configuration;
+import com.github.ciselab.lampion.guided.inference.Code2VecBackend;
+import com.github.ciselab.lampion.guided.inference.FakeInferenceBackend;
+import com.github.ciselab.lampion.guided.inference.InProcessJavaExtractor;
+import com.github.ciselab.lampion.guided.inference.InferenceBackend;
+import com.github.ciselab.lampion.guided.inference.InferenceException;
+import com.github.ciselab.lampion.guided.inference.PathContextCache;
+import com.github.ciselab.lampion.guided.metric.Metric;
 import com.github.ciselab.lampion.guided.program.Engine;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -27,37 +39,72 @@ import spoon.reflect.CtModel;
  * and then evaluates the pre-trained code2vec model.
  */
 public class GenotypeSupport {
+    // The seed of the engine and the sampling of path contexts, if a fitness store shares the results across seeds
+    static final long SHARED_SEED = 2022;
+
     private final String initialDataset = "initialDataset";
 
     private Configuration config;
     private final BashRunner bashRunner;
     private final MetricCache metricCache;
+    private InferenceBackend inferenceBackend;
+    // The initial dataset is the input of nearly every transformation, so it is parsed only once
+    private ParsedDataset parsedInitialDataset;
+    private final TransformationCache transformationCache;
+    private final CodeWriter codeWriter;
+    private final PathContextCache pathContextCache;
+    // Loaded on first use, stays null if the jar could not be loaded
+    private InProcessJavaExtractor javaExtractor;
+    private boolean javaExtractorLoaded = false;
 
     private final Logger logger = LogManager.getLogger(GenotypeSupport.class);
 
-    private long totalCode2vecTime = 0;
-    private long totalTransformationTime = 0;
+    private final AtomicLong totalCode2vecTime = new AtomicLong();
+    private final AtomicLong totalTransformationTime = new AtomicLong();
 
     public GenotypeSupport(MetricCache cache, Configuration config) {
         metricCache = cache;
         this.config = config;
         this.bashRunner = new BashRunner(config.program);
+        this.transformationCache = new TransformationCache(config.program.getPrefixCacheSize());
+        this.codeWriter = new CodeWriter(config.program.getPrintThreads());
+        this.pathContextCache = new PathContextCache(config.program.getPathContextCacheSize());
+        this.inferenceBackend = switch (config.program.getInferenceBackend()) {
+            case CODE2VEC -> new Code2VecBackend(config, bashRunner);
+            case FAKE -> new FakeInferenceBackend();
+        };
     }
 
     public MetricCache getMetricCache() {
         return metricCache;
     }
 
+    public InferenceBackend getInferenceBackend() {
+        return inferenceBackend;
+    }
+
+    public void setInferenceBackend(InferenceBackend inferenceBackend) {
+        this.inferenceBackend = inferenceBackend;
+    }
+
+    public TransformationCache getTransformationCache() {
+        return transformationCache;
+    }
+
+    public PathContextCache getPathContextCache() {
+        return pathContextCache;
+    }
+
     public String getInitialDataset() {
         return initialDataset;
     }
 
     public long getTotalCode2vevTime() {
-        return totalCode2vecTime;
+        return totalCode2vecTime.get();
     }
 
     public long getTotalTransformationTime() {
-        return totalTransformationTime;
+        return totalTransformationTime.get();
     }
 
     /**
@@ -98,17 +145,75 @@ public class GenotypeSupport {
         return constructors.get(index).apply(seed);
     }
 
+    /**
+     * Creates a new transformer of the same type and seed.
+     * Transformers keep their random state while they are applied, and they are shared between individuals
+     * after crossover. Applying a fresh copy makes the transformation of an individual independent
+     * of what was transformed before, which is needed to evaluate individuals in parallel.
+     *
+     * @param transformer the transformer to copy.
+     * @return a new transformer with the same seed, or the transformer itself if it can not be copied.
+     */
+    Transformer freshCopy(Transformer transformer) {
+        try {
+            return transformer.getClass().getConstructor(long.class).newInstance(transformer.getSeed());
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Could not copy transformer " + transformer.getClass().getSimpleName() + ", re-using it", e);
+            return transformer;
+        }
+    }
+
+    /**
+     * The seed of the engine for a genotype. Without a fitness store, this is the seed of the run.
+     * With a fitness store, the results of a genotype are re-used by runs with other seeds,
+     * so the code must only depend on the genotype: The engine of Lampion is seeded by the transformers,
+     * the layered engine by a fixed seed, as the code of a layer must not depend on the transformers after it.
+     *
+     * @param genes   the transformers of the individual.
+     * @param layered whether the genes are applied by the layered engine.
+     * @return the seed for picking the elements the transformers are applied to.
+     */
+    long engineSeed(List<Transformer> genes, boolean layered) {
+        if (config.program.getFitnessStore().isEmpty())
+            return config.program.getSeed();
+        return layered ? SHARED_SEED : genotypeSeed(genes);
+    }
+
+    /**
+     * The seed for sampling the paths of large methods, fixed if the results are re-used by runs with other seeds.
+     */
+    private long samplingSeed() {
+        return config.program.getFitnessStore().isPresent() ? SHARED_SEED : config.program.getSeed();
+    }
+
+    /**
+     * @param genes the transformers of an individual.
+     * @return a seed made of the kinds and seeds of the transformers, in their order.
+     */
+    static long genotypeSeed(List<Transformer> genes) {
+        long seed = 17;
+        for (Transformer gene : genes) {
+            seed = 31 * seed + 31L * gene.getClass().getName().hashCode() + gene.getSeed();
+        }
+        return seed;
+    }
+
     /**
      * Write the ast to file.
+     * Only the altered types are pretty-printed, all other files are linked to their originals.
      *
      * @param engineResult the engine result that we write to file.
      * @param launcher     the launcher.
+     * @param touchedTypes the qualified names of the altered top-level types.
      */
-    private void writeAST(EngineResult engineResult, Launcher launcher) {
+    private void writeAST(EngineResult engineResult, Launcher launcher, Set<String> touchedTypes) {
         if (engineResult.getWriteJavaOutput()) {
             logger.debug("Starting to pretty-print the altered files to " + engineResult.getOutputDirectory());
-            launcher.setSourceOutputDirectory(engineResult.getOutputDirectory());
-            launcher.prettyprint();
+            try {
+                codeWriter.write(launcher, Path.of(engineResult.getOutputDirectory()), touchedTypes);
+            } catch (IOException e) {
+                logger.error("Could not write the altered files to " + engineResult.getOutputDirectory(), e);
+            }
         } else {
             logger.info("Writing the java files has been disabled for this run.");
         }
@@ -118,6 +223,10 @@ public class GenotypeSupport {
      * This method creates an engine and runs the transformations on the input directory.
      * This is done by first creating all transformers in a TransformerRegistry and then creating a new Engine.
      * With this engine we can our CtModel that is created with a spoon launcher.
+     * The initial dataset is parsed only once, every transformation of it works on a copy of its model.
+     * If the transformation cache is enabled, the transformers are applied one after another (in layers) and
+     * the code after the first transformers is kept, so individuals sharing these transformers only apply their
+     * remaining ones. Otherwise, the transformers are applied as by the engine of Lampion.
      *
      * @param individual a genotype, used here mostly for the represented transformers
      * @param input      the input directory.
@@ -127,23 +236,15 @@ public class GenotypeSupport {
         long start = System.currentTimeMillis();
         TransformerRegistry registry = new TransformerRegistry("fromGA");
         for (Transformer i : individual.getTransformers()) {
-            if (i instanceof BaseTransformer bt)
+            Transformer transformer = freshCopy(i);
+            if (transformer instanceof BaseTransformer bt)
                 bt.setTryingToCompile(false);
 
-            registry.registerTransformer(i);
-        }
-        String dir = individual.getGeneration() == -1 ? "initialGen" : "gen" + individual.getGeneration();
-        Path generationDirectory = Path.of(config.program.getDataDirectoryPath().toAbsolutePath().toString(), dir);
-        try {
-            if (!Files.isDirectory(generationDirectory)) {
-                logger.debug("There was no Folder for Generation " + individual.getGeneration() + " creating one at " + generationDirectory.toString());
-                Files.createDirectory(generationDirectory);
-            }
-        } catch (IOException e) {
-            logger.error(e);
+            registry.registerTransformer(transformer);
         }
+        Path generationDirectory = generationDirectory(individual.getGeneration());
         String individualHash = individual.hexHash();
-        Path outputDir = Path.of(generationDirectory.toAbsolutePath().toString(), individualHash);
+        Path outputDir = reserveOutputDirectory(generationDirectory, individualHash);
 
         logger.debug("Received an Individual (" + individualHash + ") from Generation " + individual.getGeneration());
         logger.debug("Writing changed files to " + outputDir.toAbsolutePath());
@@ -156,85 +257,267 @@ public class GenotypeSupport {
         Engine engine = new Engine(engineInputPath.toAbsolutePath().toString(), engineOutputPath.toAbsolutePath().toString(), registry);
 
         engine.setNumberOfTransformationsPerScope(individual.getTransformers().size(), config.lampion.getTransformationScope());
-        engine.setRandomSeed(config.program.getSeed());
         engine.setRemoveAllComments(config.lampion.isRemoveAllComments());
 
-        Launcher launcher = new spoon.Launcher();
-        launcher.addInputResource(engine.getCodeDirectory());
+        List<Transformer> genes = List.copyOf(individual.getTransformers());
+        boolean fromInitialDataset = input.equals(initialDataset);
+        // Only the layered engine can reuse prefixes, it transforms in another order than the engine of Lampion
+        boolean layered = fromInitialDataset && transformationCache.isEnabled();
+        engine.setRandomSeed(engineSeed(genes, layered));
+        Optional<TransformationCache.Prefix> prefix = layered
+                ? transformationCache.longestPrefix(genes)
+                : Optional.empty();
+        Launcher launcher;
+        if (prefix.isPresent()) {
+            logger.debug("Re-using the transformed code of the first " + prefix.get().length() + " genes");
+            launcher = prefix.get().launcher();
+        } else {
+            launcher = fromInitialDataset
+                    ? getParsedInitialDataset().newLauncher()
+                    : ParsedDataset.parse(engineInputPath.toAbsolutePath());
+        }
         // The CodeRoot is the highest level of available information regarding the AST
-        CtModel codeRoot = launcher.buildModel();
-        // With the imports set to true, on second application the import will disappear, making Lambdas uncompilable.
-        launcher.getFactory().getEnvironment().setAutoImports(true);
+        CtModel codeRoot = launcher.getModel();
         //Further steps are in the method below.
-        EngineResult result = engine.run(codeRoot);
-        writeAST(result, launcher);
+        Set<String> touchedByPrefix = prefix.map(TransformationCache.Prefix::touchedTypes).orElse(Set.of());
+        EngineResult result;
+        if (layered) {
+            // The genes are applied one after another, so the code after every gene can be kept for genotypes sharing it
+            result = engine.runLayered(codeRoot, prefix.map(TransformationCache.Prefix::length).orElse(0),
+                    applied -> transformationCache.put(genes.subList(0, applied), launcher.getFactory(),
+                            touchedTypes(touchedByPrefix, engine)));
+        } else {
+            result = engine.run(codeRoot);
+        }
+        Set<String> touched = touchedTypes(touchedByPrefix, engine);
+        writeAST(result, launcher, touched);
+        Path c2vFile = outputDir.resolve(outputDir.getFileName() + ".test.c2v");
+        // The path contexts are only extracted if a metric needs more than the written files
+        if (metricCache.getRequirement().includes(Metric.Requirement.EXTRACTION)) {
+            switch (config.program.getExtractor()) {
+                case JAVAEXTRACTOR -> runJavaExtractor(engineOutputPath, c2vFile);
+                case PREPROCESS -> {
+                    // The files are preprocessed by the inference backend
+                }
+            }
+        }
 
         long diff = (System.currentTimeMillis() - start) / 1000;
-        totalTransformationTime += diff;
+        totalTransformationTime.addAndGet(diff);
         logger.info("Transformations of this individual took: " + diff + " seconds");
         return outputDir.toAbsolutePath().toString();
     }
 
     /**
-     * Run all scripts from the code2vec project.
-     * This includes first preprocessing the code files and then evaluating the model.
-     * <p>
-     * Due to Code2Vec Logic, always the same file-names are re-used.
-     * Invoking this method twice will overwrite existing results.
-     * The result-files are copied to a "safe" location, which is (later) stored in the individual.
+     * Gets the folder of a generation in the data directory, which is created if it does not exist yet.
+     *
+     * @param generation the generation, -1 for the initial one.
+     * @return the folder of the generation.
+     */
+    Path generationDirectory(int generation) {
+        String dir = generation == -1 ? "initialGen" : "gen" + generation;
+        Path generationDirectory = Path.of(config.program.getDataDirectoryPath().toAbsolutePath().toString(), dir);
+        try {
+            if (!Files.isDirectory(generationDirectory)) {
+                logger.debug("There was no Folder for Generation " + generation + " creating one at " + generationDirectory.toString());
+                // Several individuals of a generation can be transformed at once, so the folder might appear meanwhile
+                Files.createDirectories(generationDirectory);
+            }
+        } catch (IOException e) {
+            logger.error(e);
+        }
+        return generationDirectory;
+    }
+
+    /**
+     * Creates the JSON file of an individual that was neither transformed nor inferred,
+     * as its metrics only need its genotype. The file is put in the folder of its generation,
+     * named by the hash of the individual, with a counter appended if another individual has that file already.
+     *
+     * @param individual the individual.
+     * @return the created JSON file, which no other individual uses.
+     */
+    public Path reserveGenotypeFile(MetamorphicIndividual individual) {
+        Path generationDirectory = generationDirectory(individual.getGeneration()).toAbsolutePath();
+        Path file = generationDirectory.resolve(individual.hexHash() + ".json");
+        for (int suffix = 1; ; suffix++) {
+            try {
+                return Files.createFile(file);
+            } catch (FileAlreadyExistsException e) {
+                file = generationDirectory.resolve(individual.hexHash() + "_" + suffix + ".json");
+            } catch (IOException e) {
+                logger.error("Could not create the file " + file, e);
+                return file;
+            }
+        }
+    }
+
+    /**
+     * Creates the folder of an individual in the folder of its generation, named by the hash of the individual.
+     * The hash is short, so two genotypes can share it. As individuals are transformed and inferred in parallel,
+     * every individual gets a folder of its own: if the folder exists already, a counter is appended to its name.
+     *
+     * @param generationDirectory the folder of the generation.
+     * @param individualHash      the hash of the individual.
+     * @return the created folder, which no other individual uses.
+     */
+    Path reserveOutputDirectory(Path generationDirectory, String individualHash) {
+        Path outputDir = generationDirectory.toAbsolutePath().resolve(individualHash);
+        for (int suffix = 1; ; suffix++) {
+            try {
+                // Creating the folder is atomic, so only one of several threads gets it
+                return Files.createDirectory(outputDir);
+            } catch (FileAlreadyExistsException e) {
+                outputDir = generationDirectory.toAbsolutePath().resolve(individualHash + "_" + suffix);
+            } catch (IOException e) {
+                logger.error("Could not create the folder " + outputDir, e);
+                return outputDir;
+            }
+        }
+    }
+
+    /**
+     * Writes the path contexts of the written files with the in-process JavaExtractor.
+     * If the JavaExtractor is not available, nothing is written and the inference backend preprocesses the files.
+     *
+     * @param codeDirectory the directory with the written java files.
+     * @param c2vFile       the file to write the path contexts to.
+     */
+    private void runJavaExtractor(Path codeDirectory, Path c2vFile) {
+        InProcessJavaExtractor extractor = getJavaExtractor();
+        if (extractor == null)
+            return;
+        try {
+            extractor.write(codeDirectory, c2vFile);
+        } catch (IOException e) {
+            logger.error("Could not write the path contexts of " + codeDirectory + " to " + c2vFile, e);
+        }
+    }
+
+    /**
+     * @return the in-process JavaExtractor, loaded on first use, or null if it could not be loaded.
+     */
+    synchronized InProcessJavaExtractor getJavaExtractor() {
+        if (!javaExtractorLoaded) {
+            javaExtractorLoaded = true;
+            Path jar = config.program.getCode2vecDirectory().resolve(InProcessJavaExtractor.JAR);
+            try {
+                javaExtractor = new InProcessJavaExtractor(jar, config.program.getExtractorThreads(),
+                        samplingSeed(), pathContextCache);
+            } catch (IOException e) {
+                logger.error("Could not load the JavaExtractor, falling back to the preprocessing of code2vec", e);
+            }
+        }
+        return javaExtractor;
+    }
+
+    private static Set<String> touchedTypes(Set<String> touchedByPrefix, Engine engine) {
+        Set<String> touched = new HashSet<>(touchedByPrefix);
+        touched.addAll(engine.getTouchedTypes());
+        return touched;
+    }
+
+    /**
+     * @return the parsed model of the initial dataset, parsed on first use.
+     */
+    synchronized ParsedDataset getParsedInitialDataset() {
+        if (parsedInitialDataset == null) {
+            parsedInitialDataset = new ParsedDataset(
+                    Path.of(config.program.getDataDirectoryPath().toAbsolutePath().toString(), initialDataset));
+        }
+        return parsedInitialDataset;
+    }
+
+    /**
+     * Sets the parsed model of the initial dataset, e.g. to share one parse between several supports.
+     * Spoon does not resolve all references the same in every parse, so only copies of one parse
+     * are guaranteed to print the same code.
+     *
+     * @param parsedInitialDataset the parsed initial dataset.
+     */
+    synchronized void setParsedInitialDataset(ParsedDataset parsedInitialDataset) {
+        this.parsedInitialDataset = parsedInitialDataset;
+    }
+
+    /**
+     * Runs the inference backend on the transformed files of a dataset.
+     * For the default backend, this runs all scripts of the code2vec project.
      *
      * @param dataset     The name of the dataset
      * @param destination the path to where the results will be stored
      * @return the path to the directory containing the copied result-files
+     * @throws InferenceException if the inference backend could not predict the dataset
      */
-    public String runCode2vec(String dataset, String destination) {
-        logger.debug("Starting code2vec inference");
+    public String runInference(String dataset, String destination) {
+        logger.debug("Starting inference");
         logger.debug("Dataset " + dataset + " -> " + destination);
         long start = System.currentTimeMillis();
-        Path path = Path.of(dataset);
-        logger.debug("Creating directory at " + path.toAbsolutePath());
-        FileManagement.removeSubDirs(new File(path.toAbsolutePath() + "/test"), new File(path.toAbsolutePath() + "/test"));
-        FileManagement.createDirs(path.toAbsolutePath().toString());
-        // Preprocessing file.
-        String[] datasetArray = dataset.split("/");
-        String data = datasetArray[datasetArray.length - 1];
-        String preprocess = "source preprocess.sh " + path.toAbsolutePath() + " " + data;
-        bashRunner.runCommand(preprocess);
-
-        if (!dataset.contains("initialDataset")) {
-            // move preprocessed files to correct folder
-            String move = "mv  "
-                    + config.program.getDataDirectoryPath().toAbsolutePath() + "/" + data + "/* "
-                    + dataset + "/";
-            bashRunner.runCommand(move);
-            String del = "rmdir " + config.program.getDataDirectoryPath() + "/" + data;
-            bashRunner.runCommand(del);
-        }
-
-        // Evaluating code2vec model with preprocessed files.
-        Path testDataPath = Path.of(dataset + "/" + data + ".test.c2v");
-        String eval = "python3 code2vec.py --load " + config.program.getModelPath() + " --test " + testDataPath + " --logs-path eval_log.txt";
-        bashRunner.runCommand(eval);
-        // The evaluation writes to the result.txt file
+
+        String resultPath = inferenceBackend.runInference(dataset, destination);
 
         long diff = (System.currentTimeMillis() - start) / 1000;
-        totalCode2vecTime += diff;
-        logger.info("Code2vec inference of individual took: " + diff + " seconds");
+        totalCode2vecTime.addAndGet(diff);
+        logger.info("Inference of individual took: " + diff + " seconds");
+        return resultPath;
+    }
 
-        Path resolvedDestination = Path.of(destination);
+    /**
+     * Prepares the inference of a transformed dataset, e.g. its preprocessing, see {@link #runInference(List)}.
+     *
+     * @param dataset the path to the transformed dataset.
+     */
+    public void prepareInference(String dataset) {
+        long start = System.currentTimeMillis();
+        inferenceBackend.prepare(dataset);
+        totalCode2vecTime.addAndGet((System.currentTimeMillis() - start) / 1000);
+    }
 
-        bashRunner.runCommand("mkdir -p " + resolvedDestination);
+    /**
+     * Runs the inference backend on the transformed files of several individuals at once.
+     * Their results are stored in the "results" folder of their transformed files, as for a single individual,
+     * and the result paths of the individuals are set.
+     * If the batch fails, no result path is set, so every individual runs its inference on its own
+     * once its fitness is requested, and only the failing ones get the penalty fitness.
+     *
+     * @param individuals the transformed individuals, i.e. with a java path.
+     */
+    public void runInference(List<MetamorphicIndividual> individuals) {
+        if (individuals.isEmpty())
+            return;
+        List<String> datasets = individuals.stream().map(i -> i.getJavaPath().orElseThrow()).toList();
+        List<String> destinations = datasets.stream().map(d -> d + "/results/").toList();
+        logger.debug("Starting inference of " + individuals.size() + " individuals at once");
+        long start = System.currentTimeMillis();
 
-        String[] resultFiles =
-                new String[]{"./predicted_words.txt", "./F1_score_log.txt", "./results.txt"};
-        for (String file : resultFiles) {
-            String copy = "cp  " + file + " " + resolvedDestination;
-            bashRunner.runCommand(copy);
+        List<String> resultPaths;
+        try {
+            resultPaths = inferenceBackend.runInference(datasets, destinations);
+        } catch (InferenceException e) {
+            logger.warn("The inference of " + individuals.size() + " individuals at once failed, "
+                    + "they are inferred one by one", e);
+            return;
+        }
+        for (int i = 0; i < individuals.size(); i++) {
+            individuals.get(i).setResultPath(resultPaths.get(i));
         }
 
-        logger.debug("Copied results from code2vec to " + resolvedDestination.toAbsolutePath());
+        long diff = (System.currentTimeMillis() - start) / 1000;
+        totalCode2vecTime.addAndGet(diff);
+        logger.info("Inference of " + individuals.size() + " individuals took: " + diff + " seconds");
+    }
 
-        return path.toAbsolutePath().toString();
+    /**
+     * Stops the inference backend, e.g. the code2vec worker, and the in-process JavaExtractor.
+     * Should be called once the search is finished.
+     */
+    public void shutdown() {
+        inferenceBackend.close();
+        synchronized (this) {
+            if (javaExtractor != null)
+                javaExtractor.close();
+            javaExtractor = null;
+            javaExtractorLoaded = false;
+        }
     }
 
 }
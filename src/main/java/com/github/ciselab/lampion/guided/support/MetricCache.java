@@ -4,12 +4,16 @@ import com.github.ciselab.lampion.core.transformations.Transformer;
 import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.core.transformations.transformers.BaseTransformer;
 import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.MetricVector;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,8 +25,18 @@ public class MetricCache {
     List<Metric> metricList = new ArrayList<>(); // Any at all, including secondary
     List<Metric> activeMetrics = new ArrayList<>(); // Metrics that Guide Fitness
 
-    private final Map<MetamorphicIndividual, String> fileLookup = new HashMap<>();
-    private final Map<MetamorphicIndividual, Map<Metric, Double>> lookup = new HashMap<>();
+    // Concurrent, as individuals of a population are evaluated in parallel
+    private final Map<MetamorphicIndividual, String> fileLookup = new ConcurrentHashMap<>();
+    private final Map<MetamorphicIndividual, MetricVector> lookup = new ConcurrentHashMap<>();
+
+    // The slot of every metric in the metric vectors, by identity, as several (stub) metrics can share a name
+    private final Map<Metric, Integer> slots = new IdentityHashMap<>();
+    private final List<Metric> slotMetrics = new ArrayList<>();
+    // The weights of the fitness per slot, rebuilt when the active metrics or their weights change
+    private volatile FitnessWeights fitnessWeights =
+            new FitnessWeights(new Metric[0], new double[0], new double[0], new boolean[0], 0);
+    // Keeps the metric results across runs, if set
+    private volatile FitnessStore fitnessStore = null;
 
     private final Logger logger = LogManager.getLogger(MetricCache.class);
 
@@ -34,13 +48,175 @@ public class MetricCache {
         return activeMetrics;
     }
 
+    /**
+     * How far individuals must be evaluated, which is as far as the active metrics need.
+     * If no metric is active (yet), all metrics are considered, and without any metric individuals are evaluated fully.
+     *
+     * @return the furthest requirement of the metrics.
+     */
+    public Metric.Requirement getRequirement() {
+        List<Metric> considered = activeMetrics.isEmpty() ? metricList : activeMetrics;
+        if (considered.isEmpty())
+            return Metric.Requirement.INFERENCE;
+        Metric.Requirement requirement = Metric.Requirement.GENOTYPE;
+        for (Metric metric : considered) {
+            if (metric.getRequirement().compareTo(requirement) > 0)
+                requirement = metric.getRequirement();
+        }
+        return requirement;
+    }
+
     public void addMetric(Metric metric) {
         metricList.add(metric);
+        slotOf(metric);
         if (metric.getWeight() != 0) {
             activeMetrics.add(metric);
         }
     }
 
+    /**
+     * Get the slot of a metric in the metric vectors, a metric that is not known yet gets the next free slot.
+     *
+     * @param metric the metric.
+     * @return the index of the metric in every metric vector.
+     */
+    public synchronized int slotOf(Metric metric) {
+        Integer slot = slots.get(metric);
+        if (slot != null)
+            return slot;
+        if (slotMetrics.size() == MetricVector.MAX_SLOTS)
+            throw new IllegalStateException("There can be at most " + MetricVector.MAX_SLOTS + " metrics");
+        slots.put(metric, slotMetrics.size());
+        slotMetrics.add(metric);
+        return slotMetrics.size() - 1;
+    }
+
+    /**
+     * Creates an empty metric vector with a slot for every known metric.
+     *
+     * @return the metric vector.
+     */
+    public synchronized MetricVector newMetricVector() {
+        return new MetricVector(slotMetrics.size());
+    }
+
+    /**
+     * Converts metric results to a metric vector.
+     *
+     * @param metricResults the value per metric.
+     * @return the metric vector with the same values.
+     */
+    public MetricVector toVector(Map<Metric, Double> metricResults) {
+        MetricVector vector = newMetricVector();
+        metricResults.forEach((metric, value) -> vector.set(slotOf(metric), value));
+        return vector;
+    }
+
+    /**
+     * Converts a metric vector to metric results, e.g. for printing them.
+     *
+     * @param vector the metric vector.
+     * @return the value per metric, for all slots with a value, in the order of the slots.
+     */
+    public synchronized Map<Metric, Double> toMap(MetricVector vector) {
+        Map<Metric, Double> results = new LinkedHashMap<>();
+        for (int slot = 0; slot < slotMetrics.size(); slot++) {
+            if (vector.has(slot))
+                results.put(slotMetrics.get(slot), vector.get(slot));
+        }
+        return results;
+    }
+
+    /**
+     * Calculate the fitness of metric results, with the weights of the active metrics.
+     * Metrics that can be bigger than 1 are ignored, metrics with a negative weight are maximized,
+     * so their value is flipped to 1 - value.
+     *
+     * @param vector the metric results.
+     * @return the fitness.
+     */
+    public double fitness(MetricVector vector) {
+        FitnessWeights weights = currentFitnessWeights();
+        return vector.weightedSum(weights.fitnessWeights(), weights.flipped());
+    }
+
+    /**
+     * The values the fitness is made of, for a multi-objective search on them.
+     * These are the values of the active metrics that count for the fitness, in the order of their slots,
+     * flipped to 1 - value where the fitness flips them, so that bigger is better for all of them.
+     * A metric without a value (or NaN) is the worst possible, negative infinity.
+     *
+     * @param vector the metric results.
+     * @return one value per objective.
+     */
+    public double[] objectives(MetricVector vector) {
+        FitnessWeights weights = currentFitnessWeights();
+        double[] perSlot = weights.fitnessWeights();
+        double[] objectives = new double[weights.objectives()];
+        int objective = 0;
+        for (int slot = 0; slot < perSlot.length; slot++) {
+            if (perSlot[slot] == 0)
+                continue;
+            double value = vector.get(slot);
+            if (Double.isNaN(value))
+                objectives[objective++] = Double.NEGATIVE_INFINITY;
+            else
+                objectives[objective++] = weights.flipped()[slot] ? 1 - value : value;
+        }
+        return objectives;
+    }
+
+    /**
+     * The active metrics can be changed through their list and their weights through the metrics themselves,
+     * so the weights are compared to the ones they were built from (without allocating) and rebuilt if they changed.
+     */
+    private FitnessWeights currentFitnessWeights() {
+        FitnessWeights weights = fitnessWeights;
+        if (weights.matches(activeMetrics))
+            return weights;
+        synchronized (this) {
+            Metric[] metrics = activeMetrics.toArray(new Metric[0]);
+            double[] metricWeights = new double[metrics.length];
+            double[] perSlot = new double[slotMetrics.size() + metrics.length];
+            boolean[] flipped = new boolean[perSlot.length];
+            for (int i = 0; i < metrics.length; i++) {
+                metricWeights[i] = metrics[i].getWeight();
+                int slot = slotOf(metrics[i]);
+                if (slot >= perSlot.length) {
+                    perSlot = Arrays.copyOf(perSlot, slot + 1);
+                    flipped = Arrays.copyOf(flipped, slot + 1);
+                }
+                if (!metrics[i].canBeBiggerThanOne()) {
+                    perSlot[slot] = abs(metricWeights[i]);
+                    flipped[slot] = metricWeights[i] < 0;
+                }
+            }
+            int objectives = (int) Arrays.stream(perSlot).filter(weight -> weight != 0).count();
+            weights = new FitnessWeights(metrics, metricWeights, perSlot, flipped, objectives);
+            fitnessWeights = weights;
+            return weights;
+        }
+    }
+
+    /**
+     * The weights of the fitness per slot, and the active metrics and weights they were built from.
+     * The objectives are the number of slots with a weight.
+     */
+    private record FitnessWeights(Metric[] metrics, double[] metricWeights, double[] fitnessWeights, boolean[] flipped,
+                                  int objectives) {
+
+        boolean matches(List<Metric> activeMetrics) {
+            if (activeMetrics.size() != metrics.length)
+                return false;
+            for (int i = 0; i < metrics.length; i++) {
+                Metric metric = activeMetrics.get(i);
+                if (metric != metrics[i] || metric.getWeight() != metricWeights[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
     /**
      * Put a new transformer list and file combination into the fileLookup map.
      *
@@ -64,16 +240,106 @@ public class MetricCache {
 
     /**
      * Create a key value pair of an individual and the corresponding fitness.
+     * Results with a metric that could not be read (NaN, e.g. as result files were missing) are not added to the
+     * fitness store, so later runs evaluate the individual again.
      *
      * @param individual    the individual.
      * @param metricResults the fitness score.
      */
-    public void storeMetricResults(MetamorphicIndividual individual, Map<Metric, Double> metricResults) {
+    public void storeMetricResults(MetamorphicIndividual individual, MetricVector metricResults) {
         lookup.put(individual, metricResults);
+        FitnessStore store = fitnessStore;
+        if (store != null)
+            toStoredResults(metricResults)
+                    .filter(r -> r.values().stream().noneMatch(v -> v.isNaN()))
+                    .ifPresent(r -> store.put(FitnessStore.genotypeOf(individual), r));
+    }
+
+    public void storeMetricResults(MetamorphicIndividual individual, Map<Metric, Double> metricResults) {
+        storeMetricResults(individual, toVector(metricResults));
+    }
+
+    /**
+     * Get the metric results of an individual, from the fitness store of earlier runs if they are not in memory.
+     *
+     * @param individual the individual.
+     * @return the metric results, empty if the individual was not evaluated yet.
+     */
+    public Optional<MetricVector> getMetricVector(MetamorphicIndividual individual) {
+        MetricVector vector = lookup.get(individual);
+        FitnessStore store = fitnessStore;
+        if (vector == null && store != null) {
+            vector = store.get(FitnessStore.genotypeOf(individual)).flatMap(this::fromStoredResults).orElse(null);
+            if (vector != null)
+                lookup.putIfAbsent(individual, vector);
+        }
+        return Optional.ofNullable(vector);
     }
 
     public Optional<Map<Metric, Double>> getMetricResults(MetamorphicIndividual individual) {
-        return Optional.ofNullable(lookup.get(individual));
+        return getMetricVector(individual).map(this::toMap);
+    }
+
+    public Optional<FitnessStore> getFitnessStore() {
+        return Optional.ofNullable(fitnessStore);
+    }
+
+    /**
+     * Sets the store that keeps the metric results across runs.
+     * Individuals found in it are not evaluated again, and the results of new evaluations are added to it.
+     *
+     * @param fitnessStore the store, or null to not keep the results.
+     */
+    public void setFitnessStore(FitnessStore fitnessStore) {
+        this.fitnessStore = fitnessStore;
+    }
+
+    /**
+     * The metrics an evaluation calculates, which are the ones within the requirement of the active metrics.
+     * They are stored by name, so metrics sharing a name with another metric (e.g. stubs) can not be stored.
+     *
+     * @return the slot of each calculated metric by its name, empty if there are none or any name is not unique.
+     */
+    private synchronized Optional<Map<String, Integer>> storedSlots() {
+        Metric.Requirement requirement = getRequirement();
+        Map<String, Integer> stored = new LinkedHashMap<>();
+        for (Metric metric : metricList) {
+            if (!requirement.includes(metric.getRequirement()))
+                continue;
+            for (int slot = 0; slot < slotMetrics.size(); slot++) {
+                if (slotMetrics.get(slot) != metric && slotMetrics.get(slot).getName().equals(metric.getName()))
+                    return Optional.empty();
+            }
+            stored.put(metric.getName(), slotOf(metric));
+        }
+        return stored.isEmpty() ? Optional.empty() : Optional.of(stored);
+    }
+
+    private Optional<Map<String, Double>> toStoredResults(MetricVector vector) {
+        return storedSlots().map(slotsByName -> {
+            Map<String, Double> results = new LinkedHashMap<>();
+            slotsByName.forEach((name, slot) -> {
+                if (vector.has(slot))
+                    results.put(name, vector.get(slot));
+            });
+            return results;
+        });
+    }
+
+    /**
+     * Converts stored results to a metric vector, if they hold every metric an evaluation would calculate now.
+     */
+    private Optional<MetricVector> fromStoredResults(Map<String, Double> results) {
+        return storedSlots().flatMap(slotsByName -> {
+            MetricVector vector = newMetricVector();
+            for (Map.Entry<String, Integer> entry : slotsByName.entrySet()) {
+                Double value = results.get(entry.getKey());
+                if (value == null)
+                    return Optional.empty();
+                vector.set(entry.getValue(), value);
+            }
+            return Optional.of(vector);
+        });
     }
 
 
@@ -86,7 +352,7 @@ public class MetricCache {
      */
     public void storeFiles(MetamorphicIndividual genotype, String fileName, Map<Metric, Double> scores) {
         fileLookup.put(genotype, fileName);
-        lookup.put(genotype, scores);
+        lookup.put(genotype, toVector(scores));
     }
 
     /**
@@ -124,10 +390,14 @@ public class MetricCache {
         }
     }
 
-    public void putMetricResults(MetamorphicIndividual i, Map<Metric, Double> inferMetrics) {
+    public void putMetricResults(MetamorphicIndividual i, MetricVector inferMetrics) {
         this.lookup.put(i, inferMetrics);
     }
 
+    public void putMetricResults(MetamorphicIndividual i, Map<Metric, Double> inferMetrics) {
+        putMetricResults(i, toVector(inferMetrics));
+    }
+
     /*
     Returns true if AT LEAST one metric has negative weight.
     In case of multiple positive weights and one negative, the result will be true.
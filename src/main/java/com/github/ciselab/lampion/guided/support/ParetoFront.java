@@ -1,10 +1,11 @@
 package com.github.ciselab.lampion.guided.support;
 
 import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
+import com.github.ciselab.lampion.guided.algorithms.NonDominatedSorting;
 import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.MetricVector;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * This class implements the maintenance for the Pareto front.
@@ -14,83 +15,243 @@ import java.util.stream.Collectors;
  * Note: We opted for a Pareto Front that can hold multiple elements if they have identical metrics.
  * That is, we consider dominance as "not being worse than anything else in the frontier".
  * <p>
+ * The individuals are compared on the metric vectors they got when they were evaluated,
+ * so maintaining the front does not apply any metric (which would read the result files again).
+ * The members are kept sorted by their first metric: only members that are at least as good in it
+ * can dominate a new solution, and only members that are at most as good in it can be dominated by it,
+ * so an insertion only looks at the members on the right side of the new solution.
+ * <p>
+ * The front can be bounded, once it holds more members than its capacity the most crowded member is dropped
+ * (the one with the smallest crowding distance, as in NSGA-II), so that the front keeps its spread.
+ * Insertions are synchronized, so individuals can be added from several threads.
+ * <p>
  * For more explanation on the Pareto front you can take a look at
  * https://en.wikipedia.org/wiki/Pareto_front
  */
 public class ParetoFront {
 
-    private Set<MetamorphicIndividual> frontier = new HashSet<>();
-    private List<Metric> metrics;
+    private final MetricCache cache;
+    private final List<Metric> metrics;
+    private final int capacity;
+
+    private final Map<MetamorphicIndividual, Member> members = new HashMap<>();
+    // Members sorted by their first metric, descending
+    private final List<Member> sorted = new ArrayList<>();
+    // Members without a first metric (NaN), these can not be sorted and are always compared
+    private final List<Member> unsorted = new ArrayList<>();
+    // The slots of the metrics the objectives of the members were taken from
+    private int[] slots = new int[0];
+
+    /**
+     * A member of the front, with its metrics and the values of the compared metrics (NaN if it has none).
+     */
+    private record Member(MetamorphicIndividual individual, MetricVector metrics, double[] objectives) {
+    }
 
+    /**
+     * Creates an unbounded Pareto front.
+     *
+     * @param cache the metric cache, the individuals are compared on all its metrics.
+     */
     public ParetoFront(MetricCache cache) {
-        metrics = cache.getMetrics();
+        this(cache, 0);
+    }
+
+    /**
+     * @param cache    the metric cache, the individuals are compared on all its metrics.
+     * @param capacity how many individuals the front holds at most, 0 for no limit.
+     */
+    public ParetoFront(MetricCache cache, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity of the Pareto front cannot be negative");
+        }
+        this.cache = cache;
+        this.metrics = cache.getMetrics();
+        this.capacity = capacity;
     }
 
-    public Set<MetamorphicIndividual> getFrontier() {
-        return this.frontier;
+    /**
+     * @return a snapshot of the individuals in the front.
+     */
+    public synchronized Set<MetamorphicIndividual> getFrontier() {
+        return new HashSet<>(members.keySet());
+    }
+
+    public synchronized int size() {
+        return members.size();
     }
 
     /**
      * Add to the Pareto set if no solution dominates the current solution.
      * Elements that are dominated by the new solution are removed.
      *
-     * @param solution the current solution.
+     * @param solution the current solution, evaluated if it is not yet.
      */
     public void addToParetoOptimum(MetamorphicIndividual solution) {
-        // Exit early if Element is already saved
-        if (this.frontier.contains(solution))
+        // Evaluating happens outside the lock, it might run the inference
+        MetricVector solutionMetrics = solution.getMetricVector();
+        // Exit early if the inference of the Element failed, it has no metrics to compare
+        if (solutionMetrics.size() == 0)
             return;
-        // Exit early if Element is not Pareto Dominant to anything
-        for (var individual : frontier) {
-            boolean isDominated = paretoDominant(individual, solution, metrics);
-            if (isDominated) {
+        synchronized (this) {
+            // Exit early if Element is already saved
+            if (members.containsKey(solution))
                 return;
+            updateSlots();
+            Member candidate = new Member(solution, solutionMetrics, objectives(solutionMetrics, slots));
+            double first = first(candidate);
+            // Exit early if Element is dominated by anything
+            int dominators = Double.isNaN(first) ? sorted.size() : endOfAtLeast(first);
+            for (int i = 0; i < dominators; i++) {
+                if (NonDominatedSorting.dominates(sorted.get(i).objectives(), candidate.objectives()))
+                    return;
             }
+            for (Member member : unsorted) {
+                if (NonDominatedSorting.dominates(member.objectives(), candidate.objectives()))
+                    return;
+            }
+            // if solution is dominant over a member then delete the member
+            int dominated = Double.isNaN(first) ? 0 : startOfAtMost(first);
+            sorted.subList(dominated, sorted.size()).removeIf(member -> removeIfDominatedBy(member, candidate));
+            unsorted.removeIf(member -> removeIfDominatedBy(member, candidate));
+            insert(candidate);
+            if (capacity > 0 && members.size() > capacity)
+                prune();
         }
+    }
 
-        List<MetamorphicIndividual> toRemove = new ArrayList<>();
-        for (MetamorphicIndividual i : frontier) {
-            // if solution is dominant over i then delete i
-            if (paretoDominant(solution, i, metrics)) {
-                toRemove.add(i);
-            }
+    private boolean removeIfDominatedBy(Member member, Member candidate) {
+        if (!NonDominatedSorting.dominates(candidate.objectives(), member.objectives()))
+            return false;
+        members.remove(member.individual());
+        return true;
+    }
+
+    private void insert(Member member) {
+        members.put(member.individual(), member);
+        double first = first(member);
+        if (Double.isNaN(first))
+            unsorted.add(member);
+        else
+            sorted.add(endOfAtLeast(first), member);
+    }
+
+    private static double first(Member member) {
+        return member.objectives().length == 0 ? Double.NaN : member.objectives()[0];
+    }
+
+    /**
+     * @return the index of the first sorted member with a first metric smaller than the value.
+     */
+    private int endOfAtLeast(double value) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (first(sorted.get(mid)) >= value)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first sorted member with a first metric smaller than or equal to the value.
+     */
+    private int startOfAtMost(double value) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (first(sorted.get(mid)) > value)
+                low = mid + 1;
+            else
+                high = mid;
         }
-        toRemove.forEach(frontier::remove);
-        frontier.add(solution);
+        return low;
     }
 
     /**
-     * Check if a is Pareto dominant over b.
+     * The metrics of the cache can still change (e.g. in tests), in that case the members are compared anew.
+     */
+    private void updateSlots() {
+        int[] current = slotsOf(metrics);
+        if (Arrays.equals(current, slots))
+            return;
+        slots = current;
+        List<Member> previous = new ArrayList<>(members.values());
+        members.clear();
+        sorted.clear();
+        unsorted.clear();
+        for (Member member : previous)
+            insert(new Member(member.individual(), member.metrics(), objectives(member.metrics(), slots)));
+    }
+
+    /**
+     * Drops the most crowded member, that is the one with the smallest crowding distance.
+     */
+    private void prune() {
+        List<Member> all = new ArrayList<>(members.values());
+        double[][] points = new double[all.size()][];
+        for (int i = 0; i < points.length; i++)
+            points[i] = all.get(i).objectives();
+        double[] distances = NonDominatedSorting.crowdingDistances(points);
+        int mostCrowded = 0;
+        for (int i = 1; i < distances.length; i++) {
+            if (distances[i] < distances[mostCrowded])
+                mostCrowded = i;
+        }
+        Member dropped = all.get(mostCrowded);
+        members.remove(dropped.individual());
+        sorted.remove(dropped);
+        unsorted.remove(dropped);
+    }
+
+    private int[] slotsOf(List<Metric> metrics) {
+        int[] slots = new int[metrics.size()];
+        for (int i = 0; i < slots.length; i++)
+            slots[i] = cache.slotOf(metrics.get(i));
+        return slots;
+    }
+
+    private static double[] objectives(MetricVector vector, int[] slots) {
+        double[] objectives = new double[slots.length];
+        for (int i = 0; i < slots.length; i++)
+            objectives[i] = vector.get(slots[i]);
+        return objectives;
+    }
+
+    /**
+     * Check if a is Pareto dominant over b, on the metrics they got when they were evaluated.
      * Pareto Dominance is the case if for any metris A is better than B,
      * if A is not worse in any other metrics.
      *
-     * @param a an individual.
-     * @param b an individual.
+     * @param a       an individual.
+     * @param b       an individual.
+     * @param metrics the metrics to compare the individuals on.
      * @return whether a is pareto dominant over b.
      */
-    public static boolean paretoDominant(
-            MetamorphicIndividual a, MetamorphicIndividual b,
-            List<Metric> metrics) {
+    public boolean paretoDominant(MetamorphicIndividual a, MetamorphicIndividual b, List<Metric> metrics) {
         // Error Cases: Exit early with no-dominance.
         if (a == null || b == null || metrics == null || metrics.isEmpty() || a.equals(b)) {
             return false;
         }
+        return paretoDominant(a.getMetricVector(), b.getMetricVector(), slotsOf(metrics));
+    }
 
-        boolean allEqual = true;
-        for (Metric m : metrics) {
-            // Case 1: Is worse in any?
-            var aVal = m.apply(a);
-            var bVal = m.apply(b);
-            if (aVal < bVal)
-                return false;
-            // Double Equality is difficult, so we check for the difference to be super duper small
-            allEqual = allEqual && Math.abs(aVal - bVal) < 0.00001;
-        }
-        // Case 2: All "as good"?
-        if (allEqual)
-            return false;
-        // Case 3: Default Return True
-        return true;
+    /**
+     * Check if the metrics a are Pareto dominant over the metrics b.
+     * Metrics without a value (or NaN) in either of the vectors, e.g. of an individual whose inference failed,
+     * are not compared.
+     *
+     * @param a     the metrics of an individual.
+     * @param b     the metrics of an individual.
+     * @param slots the slots of the metrics to compare.
+     * @return whether a is pareto dominant over b.
+     */
+    public static boolean paretoDominant(MetricVector a, MetricVector b, int[] slots) {
+        return NonDominatedSorting.dominates(objectives(a, slots), objectives(b, slots));
     }
 
     public String displayPareto() {
@@ -0,0 +1,139 @@
+package com.github.ciselab.lampion.guided.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import spoon.Launcher;
+import spoon.reflect.code.CtJavaDoc;
+import spoon.reflect.code.CtJavaDocTag;
+import spoon.reflect.declaration.CtCompilationUnit;
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.visitor.CtScanner;
+import spoon.reflect.visitor.filter.TypeFilter;
+import spoon.support.SerializationModelStreamer;
+import spoon.support.reflect.code.CtCommentImpl;
+
+/**
+ * This class holds the Spoon model of a code directory, which is parsed only once.
+ * Every transformation needs its own model to alter, so this class hands out copies of the parsed model.
+ * <p>
+ * The model is kept serialized, and every copy is read from these bytes, which is a lot cheaper than parsing
+ * the java files again. A copy prints exactly the same files as a freshly parsed model.
+ */
+public class ParsedDataset {
+
+    private final Logger logger = LogManager.getLogger(ParsedDataset.class);
+
+    private final Path codeDirectory;
+    private byte[] serializedModel;
+
+    /**
+     * @param codeDirectory the directory with the java files to parse.
+     */
+    public ParsedDataset(Path codeDirectory) {
+        this.codeDirectory = codeDirectory;
+    }
+
+    public Path getCodeDirectory() {
+        return codeDirectory;
+    }
+
+    /**
+     * Creates a launcher with its own copy of the model, which can be altered and printed
+     * independently of all other copies.
+     * The model is parsed on the first call.
+     * If the model can not be copied, the files are parsed again.
+     *
+     * @return a launcher whose model is built and ready to be transformed.
+     */
+    public Launcher newLauncher() {
+        try {
+            return copyOf(getSerializedModel());
+        } catch (IOException e) {
+            logger.warn("Could not copy the parsed model of " + codeDirectory + " - parsing it again", e);
+            return parse(codeDirectory);
+        }
+    }
+
+    private synchronized byte[] getSerializedModel() throws IOException {
+        if (serializedModel == null) {
+            long start = System.currentTimeMillis();
+            serializedModel = serialize(parse(codeDirectory).getFactory());
+            logger.info("Parsed " + codeDirectory + " once in " + (System.currentTimeMillis() - start) + "ms, "
+                    + "keeping " + serializedModel.length / 1024 + "kB of model");
+        }
+        return serializedModel;
+    }
+
+    /**
+     * Parses the java files of a directory without keeping the model.
+     *
+     * @param codeDirectory the directory with the java files to parse.
+     * @return a launcher whose model is built and ready to be transformed.
+     */
+    public static Launcher parse(Path codeDirectory) {
+        Launcher launcher = new Launcher();
+        launcher.addInputResource(codeDirectory.toString());
+        launcher.buildModel();
+        // With the imports set to true, on second application the import will disappear, making Lambdas uncompilable.
+        launcher.getEnvironment().setAutoImports(true);
+        return launcher;
+    }
+
+    /**
+     * @param factory the factory holding the model to keep.
+     * @return the serialized model, to create copies from.
+     */
+    static byte[] serialize(Factory factory) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new SerializationModelStreamer().save(factory, bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param serializedModel a model serialized by serialize().
+     * @return a launcher with a new copy of the model.
+     */
+    static Launcher copyOf(byte[] serializedModel) throws IOException {
+        Factory factory = new SerializationModelStreamer().load(new ByteArrayInputStream(serializedModel));
+        restoreTransientState(factory);
+        Launcher launcher = new Launcher(factory);
+        launcher.getEnvironment().setAutoImports(true);
+        return launcher;
+    }
+
+    /**
+     * Spoon does not serialize some of its state, which is needed for printing.
+     * The compilation units are not part of the model, so they do not get the new factory.
+     * The parsed javadoc is transient, setting the content again parses it, but also rewrites content and tags.
+     */
+    private static void restoreTransientState(Factory factory) {
+        CtScanner setFactory = new CtScanner() {
+            @Override
+            protected void enter(CtElement e) {
+                e.setFactory(factory);
+            }
+        };
+        for (CtType<?> type : factory.Type().getAll()) {
+            CtCompilationUnit unit = type.getPosition().getCompilationUnit();
+            if (unit != null) {
+                setFactory.scan(unit);
+            }
+        }
+        for (CtJavaDoc javadoc : factory.getModel().getElements(new TypeFilter<>(CtJavaDoc.class))) {
+            String content = javadoc.getContent();
+            List<CtJavaDocTag> tags = new ArrayList<>(javadoc.getTags());
+            javadoc.setContent(content);
+            javadoc.setTags(tags);
+            ((CtCommentImpl) javadoc)._setRawContent(content);
+        }
+    }
+}
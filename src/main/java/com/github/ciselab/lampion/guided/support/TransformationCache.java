@@ -0,0 +1,135 @@
+package com.github.ciselab.lampion.guided.support;
+
+import com.github.ciselab.lampion.core.transformations.Transformer;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import spoon.Launcher;
+import spoon.reflect.factory.Factory;
+
+/**
+ * This class keeps the transformed models of genotype prefixes, i.e. of the first transformers of a genotype.
+ * Children of crossover and mutation mostly share their first transformers with a parent,
+ * so their transformation can start from the model of the longest known prefix and only apply their remaining genes.
+ * <p>
+ * The models are kept serialized, at most "capacity" of them. The least recently used model is evicted first.
+ * A capacity of 0 disables the cache.
+ */
+public class TransformationCache {
+
+    private final Logger logger = LogManager.getLogger(TransformationCache.class);
+
+    /**
+     * A model of the initial dataset with the first "length" genes applied, which altered the touched types.
+     */
+    public record Prefix(int length, Launcher launcher, Set<String> touchedTypes) {
+    }
+
+    private record Entry(byte[] model, Set<String> touchedTypes) {
+    }
+
+    private final int capacity;
+    private final Map<List<Transformer>, Entry> models;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param capacity how many prefix models are kept at most, 0 to disable the cache.
+     */
+    public TransformationCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity of the transformation cache cannot be negative");
+        }
+        this.capacity = capacity;
+        this.models = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Transformer>, Entry> eldest) {
+                return size() > TransformationCache.this.capacity;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    public synchronized int size() {
+        return models.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Looks for the longest prefix of the genes which has a known model.
+     *
+     * @param genes the transformers of a genotype, in order.
+     * @return a copy of the model of the longest cached prefix, empty if no prefix is cached.
+     */
+    public Optional<Prefix> longestPrefix(List<Transformer> genes) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        int length = 0;
+        Entry entry = null;
+        synchronized (this) {
+            for (int i = genes.size(); i > 0; i--) {
+                entry = models.get(List.copyOf(genes.subList(0, i)));
+                if (entry != null) {
+                    length = i;
+                    break;
+                }
+            }
+            if (entry == null) {
+                misses++;
+                return Optional.empty();
+            }
+            hits++;
+        }
+        try {
+            return Optional.of(new Prefix(length, ParsedDataset.copyOf(entry.model()), entry.touchedTypes()));
+        } catch (IOException e) {
+            logger.warn("Could not copy the cached model of a prefix with " + length + " genes", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Keeps the model of a prefix, unless it is already known.
+     *
+     * @param prefix       the transformers applied to the model, in order.
+     * @param factory      the factory holding the model.
+     * @param touchedTypes the qualified names of the top-level types altered by these transformers.
+     */
+    public void put(List<Transformer> prefix, Factory factory, Set<String> touchedTypes) {
+        if (!isEnabled()) {
+            return;
+        }
+        List<Transformer> key = List.copyOf(prefix);
+        synchronized (this) {
+            if (models.containsKey(key)) {
+                return;
+            }
+        }
+        try {
+            Entry entry = new Entry(ParsedDataset.serialize(factory), Set.copyOf(touchedTypes));
+            synchronized (this) {
+                models.put(key, entry);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not keep the model of a prefix with " + prefix.size() + " genes", e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+"""
+Long-lived code2vec inference worker used by Guided-MT-Code2Vec.
+
+The worker loads the model (given by --load) exactly once and then evaluates .c2v test files
+that are requested over stdin. This avoids paying python startup and the TensorFlow model load per individual.
+It has to be started with the code2vec directory as working directory and on the PYTHONPATH.
+
+Protocol (one request per line, fields separated by tabs):
+    EVAL <path to .c2v test file> <working directory for the result files>
+    QUIT
+Every request is answered with exactly one line on stdout that starts with the marker:
+    @@GUIDED-MT@@ OK
+    @@GUIDED-MT@@ ERROR <message>
+Once the model is loaded, the worker announces itself with "@@GUIDED-MT@@ READY".
+Anything else on stdout is regular code2vec output and can be ignored by the caller.
+"""
+import os
+import shutil
+import sys
+import traceback
+
+MARKER = '@@GUIDED-MT@@'
+
+
+def respond(message):
+    print(MARKER + ' ' + message, flush=True)
+
+
+def keep_loaded_weights(model):
+    # code2vec (re-)loads the weights from disk at the start of every evaluate() if --load is given.
+    # After the first evaluation the weights are in the session already, so later evaluations skip that step.
+    for name in ('_initialize_session_variables', '_load_inner_model'):
+        if hasattr(model, name):
+            setattr(model, name, lambda *args, **kwargs: None)
+
+
+def main():
+    from config import Config
+    from code2vec import load_model_dynamically
+
+    config = Config(set_defaults=True, load_from_args=True, verify=True)
+    # The test path given on startup is used as a fixed "mailbox",
+    # so the evaluation graph that is built on the first request can be re-used for all later requests.
+    mailbox = config.TEST_DATA_PATH
+    base_dir = os.getcwd()
+    model = load_model_dynamically(config)
+    respond('READY')
+
+    for line in sys.stdin:
+        parts = line.rstrip('\n').split('\t')
+        if not parts or parts[0] == '':
+            continue
+        if parts[0] == 'QUIT':
+            break
+        if parts[0] != 'EVAL' or len(parts) < 2:
+            respond('ERROR unknown request: ' + line.strip())
+            continue
+        working_dir = parts[2] if len(parts) > 2 else base_dir
+        try:
+            shutil.copyfile(parts[1], mailbox)
+            os.chdir(working_dir)
+            results = model.evaluate()
+            if results is not None:
+                config.log(str(results).replace('topk', 'top{}'.format(config.TOP_K_WORDS_CONSIDERED_DURING_PREDICTION)))
+            keep_loaded_weights(model)
+            respond('OK')
+        except Exception as e:
+            traceback.print_exc(file=sys.stderr)
+            respond('ERROR ' + str(e).replace('\n', ' '))
+        finally:
+            os.chdir(base_dir)
+            sys.stdout.flush()
+
+    model.close_session()
+
+
+if __name__ == '__main__':
+    main()
@@ -15,6 +15,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
 import java.util.SplittableRandom;
 import java.util.stream.IntStream;
@@ -793,4 +794,179 @@ public class GeneticAlgorithmTest {
 
         assertTrue(result.isEmpty());
     }
+
+    private static MetamorphicIndividual storeTwoMetrics(GenotypeSupport support, MetricCache cache, Random r,
+                                                         StubMetric stub1, double value1,
+                                                         StubMetric stub2, double value2) {
+        MetamorphicIndividual individual = new MetamorphicIndividual(support,0);
+        individual.populateIndividual(r,5);
+        var metrics = cache.newMetricVector();
+        metrics.set(cache.slotOf(stub1),value1);
+        metrics.set(cache.slotOf(stub2),value2);
+        cache.putMetricResults(individual,metrics);
+        return individual;
+    }
+
+    @Tag("Integration")
+    @Test
+    public void testSelectSurvivors_NSGA2_keepsFirstFrontOverLastGeneration(){
+        Random r = new Random(5);
+        var config = new Configuration();
+        config.genetic.setPopSize(3);
+        config.genetic.setSelection(GeneticAlgorithm.Selection.NSGA2);
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        StubMetric stub1 = new StubMetric();
+        stub1.setWeight(0.5);
+        StubMetric stub2 = new StubMetric();
+        stub2.setWeight(0.5);
+        cache.addMetric(stub1);
+        cache.addMetric(stub2);
+        GeneticAlgorithm ga = new GeneticAlgorithm(config.genetic,support,new ParetoFront(cache),r);
+
+        MetamorphicPopulation first = new MetamorphicPopulation(support);
+        var extremeA = storeTwoMetrics(support,cache,r,stub1,1.0,stub2,0.0);
+        var extremeB = storeTwoMetrics(support,cache,r,stub1,0.0,stub2,1.0);
+        var dominated = storeTwoMetrics(support,cache,r,stub1,0.2,stub2,0.2);
+        first.saveIndividual(extremeA);
+        first.saveIndividual(extremeB);
+        first.saveIndividual(dominated);
+        ga.selectSurvivors(first);
+
+        MetamorphicPopulation second = new MetamorphicPopulation(support);
+        var middle = storeTwoMetrics(support,cache,r,stub1,0.5,stub2,0.5);
+        second.saveIndividual(middle);
+        second.saveIndividual(storeTwoMetrics(support,cache,r,stub1,0.1,stub2,0.1));
+        second.saveIndividual(storeTwoMetrics(support,cache,r,stub1,0.0,stub2,0.0));
+
+        var survivors = ga.selectSurvivors(second);
+
+        assertEquals(3,survivors.size());
+        assertTrue(survivors.getIndividuals().containsAll(List.of(extremeA,extremeB,middle)));
+    }
+
+    @Tag("Integration")
+    @Test
+    public void testEvolvePopulation_NSGA2_createsFullPopulation(){
+        Random r = new Random(5);
+        var config = new Configuration();
+        config.genetic.setPopSize(6);
+        config.genetic.setTournamentSize(2);
+        config.genetic.setSelection(GeneticAlgorithm.Selection.NSGA2);
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        StubMetric stub1 = new StubMetric();
+        stub1.setWeight(0.5);
+        StubMetric stub2 = new StubMetric();
+        stub2.setWeight(-0.5);
+        cache.addMetric(stub1);
+        cache.addMetric(stub2);
+        GeneticAlgorithm ga = new GeneticAlgorithm(config.genetic,support,new ParetoFront(cache),r);
+
+        MetamorphicPopulation pop = new MetamorphicPopulation(support);
+        for (int i = 0; i < 6; i++)
+            pop.saveIndividual(storeTwoMetrics(support,cache,r,stub1,r.nextDouble(),stub2,r.nextDouble()));
+
+        var next = ga.evolvePopulation(pop);
+
+        assertEquals(6,next.size());
+    }
+
+    @Tag("Integration")
+    @Test
+    public void testEvolvePopulation_withElitism_carriesFittestOverWithEvaluation(){
+        Random r = new Random(5);
+        var config = new Configuration();
+        config.genetic.setPopSize(4);
+        config.genetic.setTournamentSize(2);
+        config.genetic.setElitismRate(0.25);
+        // Every other individual is mutated, the elite must not be
+        config.genetic.setMutationRate(1);
+        config.genetic.setIncreaseSizeRate(1);
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        StubMetric stub = new StubMetric();
+        stub.setWeight(1);
+
+        MetamorphicPopulation pop = new MetamorphicPopulation(support);
+        double[] values = {0.5,0.9,0.3,0.1};
+        for (double value : values) {
+            MetamorphicIndividual individual = new MetamorphicIndividual(support,0);
+            individual.populateIndividual(r,3);
+            storeIndividualForCaching(individual,cache,stub,value);
+            pop.saveIndividual(individual);
+        }
+        MetamorphicIndividual fittest = pop.getIndividual(1).get();
+        fittest.setJavaPath("./gen0/fittest");
+        fittest.setResultPath("./results/fittest");
+        GeneticAlgorithm ga = new GeneticAlgorithm(config.genetic,support,new ParetoFront(cache),r);
+
+        var next = ga.evolvePopulation(pop);
+
+        assertEquals(4,next.size());
+        MetamorphicIndividual elite = next.getIndividual(0).get();
+        assertNotSame(fittest,elite);
+        assertEquals(fittest,elite);
+        assertEquals(1,elite.getGeneration());
+        assertTrue(elite.isEvaluated());
+        assertEquals(fittest.getFitness(),elite.getFitness());
+        assertEquals(fittest.getJavaPath(),elite.getJavaPath());
+        assertEquals(fittest.getResultPath(),elite.getResultPath());
+    }
+
+    @Test
+    public void testSelectElites_noElitism_isEmpty(){
+        Random r = new Random(5);
+        var config = new Configuration();
+        config.genetic.setPopSize(4);
+        config.genetic.setElitismRate(0);
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        StubMetric stub = new StubMetric();
+        stub.setWeight(1);
+        GeneticAlgorithm ga = new GeneticAlgorithm(config.genetic,support,new ParetoFront(cache),r);
+
+        MetamorphicPopulation pop = new MetamorphicPopulation(support);
+        for (int i = 0; i < 4; i++) {
+            MetamorphicIndividual individual = new MetamorphicIndividual(support,0);
+            individual.populateIndividual(r,3);
+            storeIndividualForCaching(individual,cache,stub,0.1 * i);
+            pop.saveIndividual(individual);
+        }
+
+        assertTrue(ga.selectElites(pop,null).isEmpty());
+    }
+
+    @Test
+    public void testSelectElites_NSGA2_picksFirstFront(){
+        Random r = new Random(5);
+        var config = new Configuration();
+        config.genetic.setPopSize(4);
+        config.genetic.setElitismRate(0.5);
+        config.genetic.setSelection(GeneticAlgorithm.Selection.NSGA2);
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        StubMetric stub1 = new StubMetric();
+        stub1.setWeight(0.5);
+        StubMetric stub2 = new StubMetric();
+        stub2.setWeight(0.5);
+        cache.addMetric(stub1);
+        cache.addMetric(stub2);
+        GeneticAlgorithm ga = new GeneticAlgorithm(config.genetic,support,new ParetoFront(cache),r);
+
+        MetamorphicPopulation pop = new MetamorphicPopulation(support);
+        var dominated = storeTwoMetrics(support,cache,r,stub1,0.2,stub2,0.2);
+        var extremeA = storeTwoMetrics(support,cache,r,stub1,1.0,stub2,0.0);
+        var alsoDominated = storeTwoMetrics(support,cache,r,stub1,0.1,stub2,0.1);
+        var extremeB = storeTwoMetrics(support,cache,r,stub1,0.0,stub2,1.0);
+        pop.saveIndividual(dominated);
+        pop.saveIndividual(extremeA);
+        pop.saveIndividual(alsoDominated);
+        pop.saveIndividual(extremeB);
+
+        var elites = ga.selectElites(pop,ga.rank(pop));
+
+        assertEquals(2,elites.size());
+        assertTrue(elites.containsAll(List.of(extremeA,extremeB)));
+    }
 }
@@ -7,16 +7,26 @@ import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.guided.configuration.Configuration;
 import com.github.ciselab.lampion.guided.helpers.StubMetric;
 import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.metrics.MRR;
+import com.github.ciselab.lampion.guided.metric.metrics.Transformations;
 import com.github.ciselab.lampion.guided.support.GenotypeSupport;
 import com.github.ciselab.lampion.guided.support.MetricCache;
 
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.Optional;
 import java.util.Random;
 import java.util.random.RandomGenerator;
 
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
@@ -25,6 +35,9 @@ import static org.junit.jupiter.api.Assertions.*;
 
 public class MetamorphicIndividualTest {
 
+    @TempDir
+    Path tempDir;
+
     @Test
     public void testPopulateIndividual_with3Transformers_shouldHave3Transformations(){
         RandomGenerator r = new Random(5);
@@ -499,4 +512,120 @@ public class MetamorphicIndividualTest {
         assertTrue(a.hexHash().startsWith("00"));
     }
 
+    @Test
+    public void testGetFitness_onlyGenotypeMetricActive_isNotTransformedNorInferred(){
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        Metric transformations = new Transformations();
+        transformations.setWeight(1);
+        Metric mrr = new MRR();
+        cache.addMetric(transformations);
+        cache.addMetric(mrr);
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        MetamorphicIndividual a = new MetamorphicIndividual(support,0);
+        a.populateIndividual(new Random(5),3);
+
+        a.getFitness();
+
+        assertTrue(a.getJavaPath().isEmpty());
+        assertTrue(a.getResultPath().isEmpty());
+        assertEquals(3.0, a.getMetricVector().get(cache.slotOf(transformations)));
+        assertFalse(a.getMetricVector().has(cache.slotOf(mrr)));
+    }
+
+    @Tag("File")
+    @Test
+    public void testCopyInto_writtenElite_ageOfJSONIncreases() throws IOException, ParseException {
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        Metric transformations = new Transformations();
+        transformations.setWeight(1);
+        cache.addMetric(transformations);
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        MetamorphicIndividual a = new MetamorphicIndividual(support,1);
+        a.populateIndividual(new Random(5),2);
+        a.setResultPath(tempDir.resolve("results").toString());
+        a.getFitness();
+        a.writeIndividualJSON();
+
+        MetamorphicIndividual elite = a.copyInto(2);
+        elite.writeIndividualJSON();
+
+        try (FileReader reader = new FileReader(tempDir.resolve("results.json").toFile())) {
+            JSONObject json = (JSONObject) new JSONParser().parse(reader);
+            assertEquals(2L, json.get("age"));
+            assertEquals(1L, json.get("introduced_generation"));
+        }
+    }
+
+    @Test
+    public void testAdoptEvaluation_doesNotTakeJSON(){
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        Metric transformations = new Transformations();
+        transformations.setWeight(1);
+        cache.addMetric(transformations);
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        MetamorphicIndividual a = new MetamorphicIndividual(support,1);
+        a.addGene(new IfTrueTransformer(5));
+        a.jsonPath = Optional.of("a.json");
+        MetamorphicIndividual b = new MetamorphicIndividual(support,1);
+        b.addGene(new IfTrueTransformer(5));
+
+        b.adoptEvaluation(a);
+
+        assertTrue(b.jsonPath.isEmpty());
+        assertEquals(Optional.of("a.json"), a.copyInto(2).jsonPath);
+    }
+
+    @Tag("File")
+    @Test
+    public void testWriteIndividualJSON_onlyGenotypeMetricActive_isNotTransformedNorInferred()
+            throws IOException, ParseException {
+        var config = new Configuration();
+        config.program.setDataDirectoryPath(tempDir.toString());
+        MetricCache cache = makeEmptyCache();
+        Metric transformations = new Transformations();
+        transformations.setWeight(1);
+        cache.addMetric(transformations);
+        cache.addMetric(new MRR());
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        MetamorphicIndividual a = new MetamorphicIndividual(support,1);
+        a.populateIndividual(new Random(5),3);
+        a.getFitness();
+
+        a.writeIndividualJSON();
+        a.writeIndividualJSON();
+
+        assertTrue(a.getJavaPath().isEmpty());
+        assertTrue(a.getResultPath().isEmpty());
+        Path file = tempDir.resolve("gen1").resolve(a.hexHash() + ".json");
+        try (FileReader reader = new FileReader(file.toFile())) {
+            JSONObject json = (JSONObject) new JSONParser().parse(reader);
+            assertEquals(3.0, json.get(transformations.getName()));
+            assertEquals(2L, json.get("age"));
+        }
+    }
+
+    @Test
+    public void testDecrease_evaluatedIndividual_isNotEvaluatedAnymore(){
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        Metric transformations = new Transformations();
+        transformations.setWeight(1);
+        cache.addMetric(transformations);
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        MetamorphicIndividual a = new MetamorphicIndividual(support,0);
+        a.populateIndividual(new Random(5),3);
+        a.setJavaPath("java");
+        a.setResultPath("results");
+        a.getFitness();
+
+        a.decrease(new Random(5));
+
+        assertFalse(a.isEvaluated());
+        assertTrue(a.getJavaPath().isEmpty());
+        assertTrue(a.getResultPath().isEmpty());
+        assertEquals(2.0, a.getMetricVector().get(cache.slotOf(transformations)));
+    }
 }
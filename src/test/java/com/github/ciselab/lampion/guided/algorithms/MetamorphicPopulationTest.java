@@ -1021,4 +1021,77 @@ public class MetamorphicPopulationTest {
 
         assertTrue(testObject.getAverageSize()>1);
     }
+
+    @Test
+    public void testSaveIndividual_manyIndividuals_allAccessibleByIndex(){
+        Random r = new Random(5);
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+
+        MetamorphicPopulation testObject = new MetamorphicPopulation(support);
+        MetamorphicIndividual last = null;
+        for (int i = 0; i < 40; i++) {
+            last = new MetamorphicIndividual(support,0);
+            last.populateIndividual(r,2);
+            testObject.saveIndividual(last);
+        }
+
+        assertEquals(40,testObject.size());
+        assertSame(last,testObject.getIndividual(39).get());
+        assertSame(last,testObject.getIndividuals().get(39));
+        assertTrue(testObject.getIndividual(40).isEmpty());
+        assertTrue(testObject.getIndividual(-1).isEmpty());
+    }
+
+    @Test
+    public void testGetIndividuals_cannotBeModified(){
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+
+        MetamorphicPopulation testObject = new MetamorphicPopulation(support);
+
+        assertThrows(UnsupportedOperationException.class,
+                () -> testObject.getIndividuals().add(new MetamorphicIndividual(support,0)));
+    }
+
+    @Tag("Integration")
+    @Test
+    public void testGetFittest_fittestChangesItsGenotype_isSearchedAgain(){
+        Random r = new Random(5);
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+
+        StubMetric stub = new StubMetric();
+        stub.setWeight(1);
+        cache.addMetric(stub);
+
+        MetamorphicIndividual a = new MetamorphicIndividual(support,0);
+        a.populateIndividual(r,5);
+        MetamorphicIndividual b = new MetamorphicIndividual(support,0);
+        b.populateIndividual(r,3);
+        HashMap<Metric,Double> aMetrics = new HashMap<>();
+        aMetrics.put(stub,0.9);
+        cache.putMetricResults(a,aMetrics);
+        HashMap<Metric,Double> bMetrics = new HashMap<>();
+        bMetrics.put(stub,0.5);
+        cache.putMetricResults(b,bMetrics);
+
+        MetamorphicPopulation testObject = new MetamorphicPopulation(support);
+        testObject.saveIndividual(a);
+        testObject.saveIndividual(b);
+        assertEquals(a,testObject.getFittest().get());
+        assertEquals(0.9,testObject.getFitness(0),0.0001);
+
+        a.addGene(b.getGene(0));
+        HashMap<Metric,Double> changedMetrics = new HashMap<>();
+        changedMetrics.put(stub,0.1);
+        cache.putMetricResults(a,changedMetrics);
+
+        assertEquals(0.1,testObject.getFitness(0),0.0001);
+        assertEquals(b,testObject.getFittest().get());
+        assertTrue(testObject.isFitter(1,0));
+    }
 }
@@ -0,0 +1,112 @@
+package com.github.ciselab.lampion.guided.algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class NonDominatedSortingTest {
+
+    @Test
+    public void testDominates_betterInOneNotWorseInOther_dominates() {
+        assertTrue(NonDominatedSorting.dominates(new double[]{0.5, 0.5}, new double[]{0.5, 0.4}));
+        assertFalse(NonDominatedSorting.dominates(new double[]{0.5, 0.4}, new double[]{0.5, 0.5}));
+    }
+
+    @Test
+    public void testDominates_equalPoints_doNotDominate() {
+        double[] point = {0.5, Double.NEGATIVE_INFINITY};
+
+        assertFalse(NonDominatedSorting.dominates(point, point.clone()));
+    }
+
+    @Test
+    public void testDominates_NaN_isNotCompared() {
+        assertTrue(NonDominatedSorting.dominates(new double[]{0.5, Double.NaN}, new double[]{0.4, 0.9}));
+        assertFalse(NonDominatedSorting.dominates(new double[]{Double.NaN}, new double[]{0.4}));
+    }
+
+    @Test
+    public void testRanks_threeFronts() {
+        double[][] points = {
+                {0.1, 0.1},
+                {1.0, 0.0},
+                {0.5, 0.5},
+                {0.0, 1.0},
+                {0.4, 0.4},
+        };
+
+        assertArrayEquals(new int[]{2, 0, 0, 0, 1}, NonDominatedSorting.ranks(points));
+    }
+
+    @Test
+    public void testRanks_noPoints_isEmpty() {
+        assertEquals(0, NonDominatedSorting.ranks(new double[0][]).length);
+    }
+
+    @Test
+    public void testCrowdingDistances_extremesAreInfinite_middleIsSumOfNeighbourDistances() {
+        double[][] points = {
+                {0.0, 1.0},
+                {0.4, 0.6},
+                {0.5, 0.5},
+                {1.0, 0.0},
+        };
+
+        double[] distances = NonDominatedSorting.crowdingDistances(points);
+
+        assertEquals(Double.POSITIVE_INFINITY, distances[0]);
+        assertEquals(1.0, distances[1], 0.0001);
+        assertEquals(1.2, distances[2], 0.0001);
+        assertEquals(Double.POSITIVE_INFINITY, distances[3]);
+    }
+
+    @Test
+    public void testSort_order_betterFrontFirstThenLessCrowded() {
+        double[][] points = {
+                {0.4, 0.4},
+                {0.0, 1.0},
+                {0.4, 0.6},
+                {0.5, 0.5},
+                {1.0, 0.0},
+        };
+
+        var ranking = NonDominatedSorting.sort(points);
+        int[] order = ranking.order();
+
+        // The extremes of the first front, then the less crowded of its middle, then the second front
+        assertEquals(3, order[2]);
+        assertEquals(2, order[3]);
+        assertEquals(0, order[4]);
+        assertTrue(ranking.better(3, 2));
+        assertTrue(ranking.better(2, 0));
+    }
+
+    @Test
+    public void testRanks_randomPoints_matchBruteForce() {
+        Random random = new Random(5);
+        double[][] points = new double[200][3];
+        for (double[] point : points) {
+            for (int o = 0; o < point.length; o++)
+                point[o] = random.nextInt(6) / 5.0;
+        }
+
+        int[] ranks = NonDominatedSorting.ranks(points);
+
+        // A point is in front k if it is only dominated by points of fronts < k, and by at least one of front k - 1
+        for (int i = 0; i < points.length; i++) {
+            int highestDominator = -1;
+            for (int j = 0; j < points.length; j++) {
+                if (NonDominatedSorting.dominates(points[j], points[i])) {
+                    assertTrue(ranks[j] < ranks[i]);
+                    highestDominator = Math.max(highestDominator, ranks[j]);
+                }
+            }
+            assertEquals(highestDominator + 1, ranks[i]);
+        }
+    }
+}
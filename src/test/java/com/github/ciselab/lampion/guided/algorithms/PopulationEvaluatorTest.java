@@ -0,0 +1,269 @@
+package com.github.ciselab.lampion.guided.algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.ciselab.lampion.guided.configuration.Configuration;
+import com.github.ciselab.lampion.guided.inference.FakeInferenceBackend;
+import com.github.ciselab.lampion.guided.inference.InferenceBackend;
+import com.github.ciselab.lampion.guided.inference.InferenceException;
+import com.github.ciselab.lampion.guided.metric.metrics.MRR;
+import com.github.ciselab.lampion.guided.support.FileManagement;
+import com.github.ciselab.lampion.guided.support.GenotypeSupport;
+import com.github.ciselab.lampion.guided.support.MetricCache;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PopulationEvaluatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * An individual that does not touch the file system, but counts and delays its evaluation.
+     */
+    private static class CountingIndividual extends MetamorphicIndividual {
+        final AtomicInteger evaluations;
+        final AtomicInteger running;
+        final AtomicInteger maxRunning;
+        private boolean evaluated = false;
+
+        CountingIndividual(GenotypeSupport support, AtomicInteger evaluations, AtomicInteger running, AtomicInteger maxRunning) {
+            super(support, 0);
+            this.evaluations = evaluations;
+            this.running = running;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        public synchronized double getFitness() {
+            if (!evaluated) {
+                evaluations.incrementAndGet();
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                evaluated = true;
+            }
+            return getLength();
+        }
+
+        @Override
+        public synchronized boolean isEvaluated() {
+            return evaluated;
+        }
+    }
+
+    private List<MetamorphicIndividual> makeIndividuals(GenotypeSupport support, int amount,
+                                                        AtomicInteger evaluations, AtomicInteger maxRunning) {
+        var random = new SplittableRandom(5);
+        var running = new AtomicInteger();
+        List<MetamorphicIndividual> individuals = new ArrayList<>();
+        for (int i = 0; i < amount; i++) {
+            var individual = new CountingIndividual(support, evaluations, running, maxRunning);
+            individual.populateIndividual(random, 3);
+            individuals.add(individual);
+        }
+        return individuals;
+    }
+
+    @Test
+    public void testConstructor_noThreads_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> new PopulationEvaluator(0));
+    }
+
+    @Test
+    public void testConstructor_notBatchedByDefault() {
+        try (var testObject = new PopulationEvaluator(2)) {
+            assertFalse(testObject.isBatched());
+        }
+    }
+
+    @Test
+    public void testEvaluate_emptyPopulation_evaluatesNothing() {
+        var support = new GenotypeSupport(new MetricCache(), new Configuration());
+        try (var testObject = new PopulationEvaluator(4)) {
+            assertEquals(0, testObject.evaluate(new MetamorphicPopulation(support)));
+        }
+    }
+
+    @Test
+    public void testEvaluate_everyIndividualIsEvaluatedOnce() {
+        var support = new GenotypeSupport(new MetricCache(), new Configuration());
+        var evaluations = new AtomicInteger();
+        var individuals = makeIndividuals(support, 8, evaluations, new AtomicInteger());
+
+        try (var testObject = new PopulationEvaluator(4)) {
+            assertEquals(8, testObject.evaluate(individuals));
+            assertEquals(0, testObject.evaluate(individuals));
+        }
+
+        assertEquals(8, evaluations.get());
+        assertTrue(individuals.stream().allMatch(MetamorphicIndividual::isEvaluated));
+    }
+
+    @Test
+    public void testEvaluate_multipleThreads_runsConcurrently() {
+        var support = new GenotypeSupport(new MetricCache(), new Configuration());
+        var maxRunning = new AtomicInteger();
+        var individuals = makeIndividuals(support, 8, new AtomicInteger(), maxRunning);
+
+        try (var testObject = new PopulationEvaluator(4)) {
+            testObject.evaluate(individuals);
+        }
+
+        assertTrue(maxRunning.get() > 1);
+        assertTrue(maxRunning.get() <= 4);
+    }
+
+    @Test
+    public void testEvaluate_singleThread_runsOneAtATime() {
+        var support = new GenotypeSupport(new MetricCache(), new Configuration());
+        var maxRunning = new AtomicInteger();
+        var individuals = makeIndividuals(support, 4, new AtomicInteger(), maxRunning);
+
+        try (var testObject = new PopulationEvaluator(1)) {
+            testObject.evaluate(individuals);
+        }
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void testEvaluate_duplicates_areEvaluatedOnce() {
+        var support = new GenotypeSupport(new MetricCache(), new Configuration());
+        var evaluations = new AtomicInteger();
+        var individuals = makeIndividuals(support, 3, evaluations, new AtomicInteger());
+        var duplicate = new MetamorphicIndividual(support, 0);
+        individuals.get(0).getTransformers().forEach(duplicate::addGene);
+        individuals.add(duplicate);
+
+        try (var testObject = new PopulationEvaluator(2)) {
+            assertEquals(3, testObject.evaluate(individuals));
+        }
+
+        assertEquals(3, evaluations.get());
+        assertTrue(duplicate.isEvaluated());
+        assertEquals(individuals.get(0).getFitness(), duplicate.getFitness());
+    }
+
+    @Tag("Slow")
+    @Tag("File")
+    @Tag("Integration")
+    @Test
+    public void testEvaluate_parallelAndSequential_giveSameFitness() throws IOException {
+        List<Double> sequential = evaluateWithFakeBackend(tempDir.resolve("sequential"), 1);
+        List<Double> parallel = evaluateWithFakeBackend(tempDir.resolve("parallel"), 4);
+
+        assertEquals(sequential, parallel);
+    }
+
+    @Tag("Slow")
+    @Tag("File")
+    @Tag("Integration")
+    @Test
+    public void testEvaluate_batched_givesSameFitnessWithOneInference() throws IOException {
+        var backend = new BatchCountingBackend();
+        List<Double> sequential = evaluateWithFakeBackend(tempDir.resolve("sequential"), 1);
+        List<Double> batched = evaluateWithBackend(tempDir.resolve("batched"), new PopulationEvaluator(2, true), backend);
+
+        assertEquals(sequential, batched);
+        assertEquals(1, backend.batches.get());
+    }
+
+    @Tag("Slow")
+    @Tag("File")
+    @Tag("Integration")
+    @Test
+    public void testEvaluate_failingInference_onlyFailingIndividualGetsPenalty() throws IOException {
+        var backend = new FailingBackend();
+        List<Double> sequential = evaluateWithFakeBackend(tempDir.resolve("sequential"), 1);
+        List<Double> failing = evaluateWithBackend(tempDir.resolve("failing"), new PopulationEvaluator(2, true), backend);
+
+        assertEquals(1, backend.failures.get());
+        assertTrue(failing.contains(MetamorphicIndividual.PENALTY_FITNESS));
+        int differing = 0;
+        for (int i = 0; i < sequential.size(); i++) {
+            if (!sequential.get(i).equals(failing.get(i)))
+                differing++;
+        }
+        assertTrue(differing <= 1);
+    }
+
+    /**
+     * The fake backend, failing for batches and for the first dataset it is asked for on its own.
+     */
+    private static class FailingBackend extends FakeInferenceBackend {
+        final AtomicInteger failures = new AtomicInteger();
+        private String failing;
+
+        @Override
+        public synchronized String runInference(String dataset, String destination) {
+            if (failing == null)
+                failing = dataset;
+            if (failing.equals(dataset)) {
+                failures.incrementAndGet();
+                throw new InferenceException("Cannot predict " + dataset, null);
+            }
+            return super.runInference(dataset, destination);
+        }
+
+        @Override
+        public List<String> runInference(List<String> datasets, List<String> destinations) {
+            throw new InferenceException("Cannot predict a batch", null);
+        }
+    }
+
+    /**
+     * The fake backend, counting how often it is asked for several datasets at once.
+     */
+    private static class BatchCountingBackend extends FakeInferenceBackend {
+        final AtomicInteger batches = new AtomicInteger();
+
+        @Override
+        public List<String> runInference(List<String> datasets, List<String> destinations) {
+            batches.incrementAndGet();
+            return super.runInference(datasets, destinations);
+        }
+    }
+
+    private List<Double> evaluateWithFakeBackend(Path dataDirectory, int threads) throws IOException {
+        return evaluateWithBackend(dataDirectory, new PopulationEvaluator(threads), new FakeInferenceBackend());
+    }
+
+    private List<Double> evaluateWithBackend(Path dataDirectory, PopulationEvaluator evaluator,
+                                             InferenceBackend backend) throws IOException {
+        FileManagement.copyDirectory("./src/test/resources/code_files",
+                dataDirectory.resolve("initialDataset").resolve("test").toString());
+        var config = new Configuration();
+        config.program.setDataDirectoryPath(dataDirectory.toString());
+        var cache = new MetricCache();
+        var mrr = new MRR();
+        mrr.setWeight(1);
+        cache.addMetric(mrr);
+        cache.initWeights();
+        var support = new GenotypeSupport(cache, config);
+        support.setInferenceBackend(backend);
+
+        var population = new MetamorphicPopulation(support, 0);
+        population.initialize(4, 3, new SplittableRandom(42));
+
+        try (var testObject = evaluator) {
+            testObject.evaluate(population);
+        }
+        return population.getIndividuals().stream().map(MetamorphicIndividual::getFitness).toList();
+    }
+}
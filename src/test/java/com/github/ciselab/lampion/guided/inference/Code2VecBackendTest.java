@@ -0,0 +1,380 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.github.ciselab.lampion.guided.configuration.Configuration;
+import com.github.ciselab.lampion.guided.support.BashRunner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs the code2vec backend against a fake code2vec project,
+ * which writes its files relative to the working directory just like the real one.
+ */
+public class Code2VecBackendTest {
+
+    // Writes data/<name>/<name>.test.c2v relative to the working directory, like the real preprocess.sh
+    private static final String FAKE_PREPROCESS = """
+            mkdir -p data/$2
+            echo "preprocessed $1" > data/$2/$2.test.c2v
+            echo "raw" > $2.test.raw.txt
+            """;
+
+    // Writes the result files into the working directory, like the real code2vec.py
+    private static final String FAKE_CODE2VEC = """
+            import sys
+            test = sys.argv[sys.argv.index('--test') + 1]
+            with open(test) as f:
+                content = f.read().strip()
+            with open('results.txt', 'w') as f:
+                f.write('Original: ' + content + ', predicted 1st: x, score: 1.0\\n')
+            with open('predicted_words.txt', 'w') as f:
+                f.write('Original: a, predicted: a\\n')
+            with open('F1_score_log.txt', 'w') as f:
+                f.write('top10_acc: [1.0], precision: 1.0, recall: 1.0, F1: 1.0\\n')
+            """;
+
+    // Predicts every method of the test file correctly, except for methods named "unknown" or with a "skip" context,
+    // which it skips
+    private static final String FAKE_BATCH_CODE2VEC = """
+            import sys
+            test = sys.argv[sys.argv.index('--test') + 1]
+            with open(test) as f:
+                methods = [line.split() for line in f if line.strip()]
+            names = [m[0] for m in methods if m[0] != 'unknown' and 'skip' not in m[1:]]
+            with open('results.txt', 'w') as f:
+                for name in names:
+                    f.write('Original: ' + name + ', predicted 1st: ' + name + ', score: 1.0\\n')
+            with open('predicted_words.txt', 'w') as f:
+                for name in names:
+                    f.write('Original: ' + name + ', predicted: ' + name + '\\n')
+            with open('F1_score_log.txt', 'w') as f:
+                f.write('top10_acc: [1.0], precision: 1.0, recall: 1.0, F1: 1.0\\n')
+            with open(sys.argv[0] + '.runs', 'a') as f:
+                f.write(' '.join([test] + names) + '\\n')
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    Configuration config;
+    Path code2vec;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        code2vec = tempDir.resolve("code2vec");
+        Files.createDirectories(code2vec.resolve("data"));
+        Files.writeString(code2vec.resolve("preprocess.sh"), FAKE_PREPROCESS);
+        Files.writeString(code2vec.resolve("code2vec.py"), FAKE_CODE2VEC);
+        Files.writeString(code2vec.resolve("results.txt"), "shared results of somebody else");
+
+        config = new Configuration();
+        config.program.setCode2vecDirectory(code2vec.toString());
+        config.program.setDataDirectoryPath(code2vec.resolve("data").toString());
+        config.program.setUseInferenceWorker(false);
+    }
+
+    private Path createDataset(String name) throws IOException {
+        Path dataset = code2vec.resolve("data").resolve("gen1").resolve(name);
+        Files.createDirectories(dataset.resolve("test"));
+        return dataset;
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_writesResultsToDestination() throws IOException {
+        Path dataset = createDataset("abc123");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        String result = testObject.runInference(dataset.toString(), dataset.resolve("results").toString());
+
+        assertEquals(dataset.toAbsolutePath().toString(), result);
+        assertTrue(Files.exists(dataset.resolve("abc123.test.c2v")));
+        assertTrue(Files.readString(dataset.resolve("results").resolve(ResultFiles.RESULTS)).contains("preprocessed"));
+        assertTrue(Files.exists(dataset.resolve("results").resolve(ResultFiles.PREDICTED_WORDS)));
+        assertTrue(Files.exists(dataset.resolve("results").resolve(ResultFiles.F1_LOG)));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_javaFilesStayInTheirPackageFolders() throws IOException {
+        Path dataset = createDataset("abc123");
+        Path file = Files.createDirectories(dataset.resolve("test").resolve("org").resolve("example")).resolve("A.java");
+        Files.writeString(file, "class A {}");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        testObject.runInference(dataset.toString(), dataset.resolve("results").toString());
+
+        assertTrue(Files.exists(file));
+        assertTrue(Files.isDirectory(dataset.resolve("training")));
+        assertTrue(Files.isDirectory(dataset.resolve("validation")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_sharedFilesAreUntouched() throws IOException {
+        Path dataset = createDataset("abc123");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        testObject.runInference(dataset.toString(), dataset.resolve("results").toString());
+
+        assertEquals("shared results of somebody else", Files.readString(code2vec.resolve("results.txt")));
+        assertFalse(Files.exists(code2vec.resolve("data").resolve("abc123")));
+        assertFalse(Files.exists(code2vec.resolve("abc123.test.raw.txt")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_workspaceIsRemoved_codeIsKept() throws IOException {
+        Path dataset = createDataset("abc123");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        testObject.runInference(dataset.toString(), dataset.resolve("results").toString());
+
+        assertFalse(Files.exists(dataset.resolve(Code2VecBackend.WORKSPACE)));
+        assertTrue(Files.exists(code2vec.resolve("preprocess.sh")));
+        assertTrue(Files.exists(code2vec.resolve("code2vec.py")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_extractedPathContexts_skipPreprocessing() throws IOException {
+        config.program.setExtractor(PathContextExtractor.Kind.JAVAEXTRACTOR);
+        Path dataset = createDataset("abc123");
+        Files.writeString(dataset.resolve("abc123.test.c2v"), "extracted");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        testObject.runInference(dataset.toString(), dataset.resolve("results").toString());
+
+        assertEquals("extracted", Files.readString(dataset.resolve("abc123.test.c2v")));
+        assertTrue(Files.readString(dataset.resolve("results").resolve(ResultFiles.RESULTS)).contains("extracted"));
+        assertFalse(Files.exists(dataset.resolve(Code2VecBackend.WORKSPACE)));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_noExtractedPathContexts_preprocesses() throws IOException {
+        config.program.setExtractor(PathContextExtractor.Kind.JAVAEXTRACTOR);
+        Path dataset = createDataset("abc123");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        testObject.runInference(dataset.toString(), dataset.resolve("results").toString());
+
+        assertTrue(Files.readString(dataset.resolve("abc123.test.c2v")).contains("preprocessed"));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_concurrentEvaluations_doNotInterfere() throws Exception {
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+        List<Path> datasets = List.of(createDataset("aaaaaa"), createDataset("bbbbbb"),
+                createDataset("cccccc"), createDataset("dddddd"));
+
+        var pool = Executors.newFixedThreadPool(datasets.size());
+        try {
+            List<Future<String>> futures = datasets.stream()
+                    .map(d -> pool.submit(() -> testObject.runInference(d.toString(), d.resolve("results").toString())))
+                    .toList();
+            for (Future<String> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        for (Path dataset : datasets) {
+            String results = Files.readString(dataset.resolve("results").resolve(ResultFiles.RESULTS));
+            assertTrue(results.contains(dataset.toAbsolutePath().toString()));
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_batch_runsCode2vecOnceAndSplitsResults() throws IOException {
+        Files.writeString(code2vec.resolve("code2vec.py"), FAKE_BATCH_CODE2VEC);
+        config.program.setExtractor(PathContextExtractor.Kind.JAVAEXTRACTOR);
+        Path first = createDataset("aaaaaa");
+        Path second = createDataset("bbbbbb");
+        Files.writeString(first.resolve("aaaaaa.test.c2v"), "get|value a,1,b\nunknown a,2,b\nclose a,3,b\n");
+        Files.writeString(second.resolve("bbbbbb.test.c2v"), "close a,4,b\n");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        List<String> resultPaths = testObject.runInference(List.of(first.toString(), second.toString()),
+                List.of(first.resolve("results").toString(), second.resolve("results").toString()));
+
+        assertEquals(List.of(first.toAbsolutePath().toString(), second.toAbsolutePath().toString()), resultPaths);
+        assertEquals(List.of("Original: get|value, predicted: get|value", "Original: close, predicted: close"),
+                Files.readAllLines(first.resolve("results").resolve(ResultFiles.PREDICTED_WORDS)));
+        assertEquals(List.of("Original: close, predicted 1st: close, score: 1.0"),
+                Files.readAllLines(second.resolve("results").resolve(ResultFiles.RESULTS)));
+        assertTrue(Files.exists(second.resolve("results").resolve(ResultFiles.F1_LOG)));
+        assertEquals(1, Files.readAllLines(code2vec.resolve("code2vec.py.runs")).size());
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_batch_removesBatchDirectory() throws IOException {
+        Files.writeString(code2vec.resolve("code2vec.py"), FAKE_BATCH_CODE2VEC);
+        config.program.setExtractor(PathContextExtractor.Kind.JAVAEXTRACTOR);
+        Path first = createDataset("aaaaaa");
+        Path second = createDataset("bbbbbb");
+        Files.writeString(first.resolve("aaaaaa.test.c2v"), "foo a,1,b\n");
+        Files.writeString(second.resolve("bbbbbb.test.c2v"), "bar a,1,b\n");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        testObject.runInference(List.of(first.toString(), second.toString()),
+                List.of(first.resolve("results").toString(), second.resolve("results").toString()));
+
+        try (var entries = Files.list(first.getParent())) {
+            assertTrue(entries.noneMatch(p -> p.getFileName().toString().startsWith(Code2VecBackend.BATCH_PREFIX)));
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_batchWithoutPathContexts_preprocessesFirst() throws IOException {
+        Path first = createDataset("aaaaaa");
+        Path second = createDataset("bbbbbb");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        testObject.runInference(List.of(first.toString(), second.toString()),
+                List.of(first.resolve("results").toString(), second.resolve("results").toString()));
+
+        assertTrue(Files.readString(first.resolve("aaaaaa.test.c2v")).contains("preprocessed"));
+        assertTrue(Files.readString(second.resolve("bbbbbb.test.c2v")).contains("preprocessed"));
+        assertTrue(Files.exists(second.resolve("results").resolve(ResultFiles.RESULTS)));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_predictionCache_onlyAlteredMethodsArePredicted() throws IOException {
+        Files.writeString(code2vec.resolve("code2vec.py"), FAKE_BATCH_CODE2VEC);
+        config.program.setExtractor(PathContextExtractor.Kind.JAVAEXTRACTOR);
+        config.program.setPredictionCacheSize(10);
+        Path first = createDataset("aaaaaa");
+        Path second = createDataset("bbbbbb");
+        Files.writeString(first.resolve("aaaaaa.test.c2v"), "foo a,1,b\nbar a,2,b\n");
+        Files.writeString(second.resolve("bbbbbb.test.c2v"), "foo a,1,b\nbaz a,3,b\n");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        testObject.runInference(first.toString(), first.resolve("results").toString());
+        testObject.runInference(second.toString(), second.resolve("results").toString());
+
+        List<String> runs = Files.readAllLines(code2vec.resolve("code2vec.py.runs"));
+        assertEquals(2, runs.size());
+        assertTrue(runs.get(1).endsWith(" baz"));
+        assertEquals(List.of("Original: foo, predicted: foo", "Original: baz, predicted: baz"),
+                Files.readAllLines(second.resolve("results").resolve(ResultFiles.PREDICTED_WORDS)));
+        assertTrue(Files.exists(second.resolve("results").resolve(ResultFiles.F1_LOG)));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_predictionCache_knownDatasetIsNotPredictedAgain() throws IOException {
+        Files.writeString(code2vec.resolve("code2vec.py"), FAKE_BATCH_CODE2VEC);
+        config.program.setExtractor(PathContextExtractor.Kind.JAVAEXTRACTOR);
+        config.program.setPredictionCacheSize(10);
+        Path dataset = createDataset("aaaaaa");
+        Files.writeString(dataset.resolve("aaaaaa.test.c2v"), "foo a,1,b\nunknown a,2,b\nbar a,3,b\n");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        testObject.runInference(dataset.toString(), dataset.resolve("first").toString());
+        testObject.runInference(dataset.toString(), dataset.resolve("second").toString());
+
+        assertEquals(1, Files.readAllLines(code2vec.resolve("code2vec.py.runs")).size());
+        // The skipped method is known as well, and stays out of the results
+        assertEquals(3, testObject.getPredictionCache().size());
+        for (String file : List.of(ResultFiles.RESULTS, ResultFiles.PREDICTED_WORDS, ResultFiles.F1_LOG)) {
+            assertEquals(Files.readAllLines(dataset.resolve("first").resolve(file)),
+                    Files.readAllLines(dataset.resolve("second").resolve(file)));
+        }
+        assertEquals(2, Files.readAllLines(dataset.resolve("second").resolve(ResultFiles.PREDICTED_WORDS)).size());
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_batchWithPredictionCache_predictsEveryMethodOnce() throws IOException {
+        Files.writeString(code2vec.resolve("code2vec.py"), FAKE_BATCH_CODE2VEC);
+        config.program.setExtractor(PathContextExtractor.Kind.JAVAEXTRACTOR);
+        config.program.setPredictionCacheSize(10);
+        Path first = createDataset("aaaaaa");
+        Path second = createDataset("bbbbbb");
+        Files.writeString(first.resolve("aaaaaa.test.c2v"), "foo a,1,b\nbar a,2,b\n");
+        Files.writeString(second.resolve("bbbbbb.test.c2v"), "foo a,1,b\nbar a,2,b\n");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        testObject.runInference(List.of(first.toString(), second.toString()),
+                List.of(first.resolve("results").toString(), second.resolve("results").toString()));
+
+        List<String> runs = Files.readAllLines(code2vec.resolve("code2vec.py.runs"));
+        assertEquals(1, runs.size());
+        assertTrue(runs.get(0).endsWith(" foo bar"));
+        assertEquals(Files.readAllLines(first.resolve("results").resolve(ResultFiles.RESULTS)),
+                Files.readAllLines(second.resolve("results").resolve(ResultFiles.RESULTS)));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_predictionCache_skippedMethodWithSameName_isNotCached() throws IOException {
+        Files.writeString(code2vec.resolve("code2vec.py"), FAKE_BATCH_CODE2VEC);
+        config.program.setExtractor(PathContextExtractor.Kind.JAVAEXTRACTOR);
+        config.program.setPredictionCacheSize(10);
+        Path dataset = createDataset("aaaaaa");
+        Files.writeString(dataset.resolve("aaaaaa.test.c2v"), "foo skip\nfoo a,1,b\nbar a,2,b\n");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        testObject.runInference(dataset.toString(), dataset.resolve("results").toString());
+
+        // The prediction of foo could belong to either method, so the whole file is evaluated instead
+        assertEquals(0, testObject.getPredictionCache().size());
+        assertEquals(2, Files.readAllLines(code2vec.resolve("code2vec.py.runs")).size());
+        assertEquals(List.of("Original: foo, predicted: foo", "Original: bar, predicted: bar"),
+                Files.readAllLines(dataset.resolve("results").resolve(ResultFiles.PREDICTED_WORDS)));
+    }
+
+    @Test
+    public void testMatchEntries_skippedMethods_areLeftOut() throws IOException {
+        int[] lines = Code2VecBackend.matchEntries(List.of("foo", "bar", "baz", "foo"), List.of("bar", "foo"));
+
+        assertArrayEquals(new int[]{1, 3}, lines);
+    }
+
+    @Test
+    public void testMatchEntries_skippedMethodWithSameName_throwsIOException() {
+        assertThrows(IOException.class,
+                () -> Code2VecBackend.matchEntries(List.of("foo", "bar", "foo"), List.of("foo")));
+        assertThrows(IOException.class,
+                () -> Code2VecBackend.matchEntries(List.of("foo", "foo", "bar"), List.of("foo", "bar")));
+    }
+
+    @Test
+    public void testMatchEntries_unknownMethod_throwsIOException() {
+        assertThrows(IOException.class, () -> Code2VecBackend.matchEntries(List.of("foo", "bar"), List.of("baz")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_failingCode2vec_throwsInferenceException() throws IOException {
+        Files.writeString(code2vec.resolve("code2vec.py"), "import sys\nsys.exit(1)\n");
+        config.program.setBashRetries(0);
+        Path dataset = createDataset("abc123");
+        var testObject = new Code2VecBackend(config, new BashRunner(config.program));
+
+        assertThrows(InferenceException.class,
+                () -> testObject.runInference(dataset.toString(), dataset.resolve("results").toString()));
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.github.ciselab.lampion.guided.configuration.ProgramConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class Code2VecWorkerTest {
+
+    // Behaves like the python worker: announces itself and answers every EVAL by touching results.txt
+    private static final String FAKE_WORKER =
+            "echo 'loading model'; echo '@@GUIDED-MT@@ READY'; "
+                    + "while IFS=$'\\t' read -r cmd file dir; do "
+                    + "  if [ \"$cmd\" == \"QUIT\" ]; then exit 0; fi; "
+                    + "  echo 'some code2vec output'; "
+                    + "  echo \"$file\" > \"$dir/results.txt\"; "
+                    + "  echo '@@GUIDED-MT@@ OK'; "
+                    + "done";
+
+    @TempDir
+    Path tempDir;
+
+    ProgramConfiguration config;
+
+    @BeforeEach
+    public void setup() {
+        config = new ProgramConfiguration();
+        config.setCode2vecDirectory(tempDir.toString());
+    }
+
+    @Tag("File")
+    @Test
+    public void testEvaluate_withWorkingWorker_writesResultsInWorkingDirectory() throws IOException {
+        try (var testObject = new Code2VecWorker(config, List.of("/bin/bash", "-c", FAKE_WORKER))) {
+            testObject.evaluate(Path.of("some.test.c2v"), tempDir);
+
+            assertTrue(Files.exists(tempDir.resolve("results.txt")));
+            assertTrue(Files.readString(tempDir.resolve("results.txt")).contains("some.test.c2v"));
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testEvaluate_multipleRequests_usesOneWorker() throws IOException {
+        try (var testObject = new Code2VecWorker(config, List.of("/bin/bash", "-c", FAKE_WORKER))) {
+            testObject.evaluate(Path.of("first.test.c2v"), tempDir);
+            testObject.evaluate(Path.of("second.test.c2v"), tempDir);
+            testObject.evaluate(Path.of("third.test.c2v"), tempDir);
+
+            assertTrue(testObject.isRunning());
+            assertEquals(0, testObject.getRestarts());
+            assertTrue(Files.readString(tempDir.resolve("results.txt")).contains("third.test.c2v"));
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testEvaluate_workerCrashesOnce_isRestartedAndRetried() throws IOException {
+        // The first worker dies on its first request, every later worker works fine
+        String crashingOnce = "if [ ! -f crashed ]; then touch crashed; "
+                + "echo '@@GUIDED-MT@@ READY'; read -r line; exit 3; fi; " + FAKE_WORKER;
+
+        try (var testObject = new Code2VecWorker(config, List.of("/bin/bash", "-c", crashingOnce))) {
+            testObject.evaluate(Path.of("some.test.c2v"), tempDir);
+
+            assertTrue(Files.exists(tempDir.resolve("results.txt")));
+            assertEquals(1, testObject.getRestarts());
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testEvaluate_workerAlwaysCrashes_throwsIOException() {
+        String alwaysCrashing = "echo '@@GUIDED-MT@@ READY'; read -r line; exit 3";
+
+        try (var testObject = new Code2VecWorker(config, List.of("/bin/bash", "-c", alwaysCrashing))) {
+            assertThrows(IOException.class, () -> testObject.evaluate(Path.of("some.test.c2v"), tempDir));
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testEvaluate_workerReportsError_throwsIOException() {
+        String failing = "echo '@@GUIDED-MT@@ READY'; "
+                + "while read -r line; do "
+                + "  if [ \"$line\" == \"QUIT\" ]; then exit 0; fi; "
+                + "  echo '@@GUIDED-MT@@ ERROR file not found'; "
+                + "done";
+
+        try (var testObject = new Code2VecWorker(config, List.of("/bin/bash", "-c", failing))) {
+            assertThrows(IOException.class, () -> testObject.evaluate(Path.of("some.test.c2v"), tempDir));
+            // An error answer is not a crash, the worker stays alive
+            assertTrue(testObject.isRunning());
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testClose_stopsWorker() throws IOException {
+        var testObject = new Code2VecWorker(config, List.of("/bin/bash", "-c", FAKE_WORKER));
+        testObject.evaluate(Path.of("some.test.c2v"), tempDir);
+
+        testObject.close();
+
+        assertFalse(testObject.isRunning());
+        assertThrows(IllegalStateException.class, () -> testObject.evaluate(Path.of("some.test.c2v"), tempDir));
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
+import com.github.ciselab.lampion.guided.configuration.Configuration;
+import com.github.ciselab.lampion.guided.metric.metrics.F1;
+import com.github.ciselab.lampion.guided.metric.metrics.MRR;
+import com.github.ciselab.lampion.guided.support.FileManagement;
+import com.github.ciselab.lampion.guided.support.GenotypeSupport;
+import com.github.ciselab.lampion.guided.support.MetricCache;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FakeInferenceBackendTest {
+
+    private static final String SOURCE = """
+            package example;
+
+            public class Example {
+
+                private int counter = 0;
+
+                public int getCounter() {
+                    return counter;
+                }
+
+                public void increaseCounter(int by) {
+                    if (by > 0) {
+                        counter += by;
+                    } else if (by < 0) {
+                        throw new IllegalArgumentException("no negative {values}");
+                    }
+                }
+
+                public static String toUpperCase(String input) throws Exception {
+                    Runnable r = new Runnable() {
+                        public void run() {
+                        }
+                    };
+                    return input.toUpperCase();
+                }
+            }
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testPredict_findsAllTopLevelMethods() {
+        var testObject = new FakeInferenceBackend();
+
+        var predictions = testObject.predict(SOURCE);
+
+        assertEquals(3, predictions.size());
+        assertEquals("get|counter", predictions.get(0).original());
+        assertEquals("increase|counter", predictions.get(1).original());
+        assertEquals("to|upper|case", predictions.get(2).original());
+    }
+
+    @Test
+    public void testPredict_sameSourceTwice_isDeterministic() {
+        var testObject = new FakeInferenceBackend();
+
+        assertEquals(testObject.predict(SOURCE), testObject.predict(SOURCE));
+    }
+
+    @Test
+    public void testPredict_correctAtFirstRank_predictsOriginal() {
+        var testObject = new FakeInferenceBackend();
+
+        for (var prediction : testObject.predict(SOURCE)) {
+            if (prediction.rank() == 1)
+                assertEquals(prediction.original(), prediction.predicted());
+            else
+                assertNotEquals(prediction.original(), prediction.predicted());
+        }
+    }
+
+    @Test
+    public void testSubtokens_camelCase_isSplitAndLowerCased() {
+        assertEquals(List.of("get", "xml", "parser"), FakeInferenceBackend.subtokens("getXMLParser"));
+        assertEquals(List.of("to", "string"), FakeInferenceBackend.subtokens("to_string"));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_writesAllResultFiles() throws IOException {
+        Path dataset = tempDir.resolve("dataset");
+        Files.createDirectories(dataset.resolve("test"));
+        Files.writeString(dataset.resolve("test").resolve("Example.java"), SOURCE);
+        var testObject = new FakeInferenceBackend();
+
+        String resultPath = testObject.runInference(dataset.toString(), dataset.resolve("results").toString());
+
+        assertEquals(dataset.toAbsolutePath().toString(), resultPath);
+        assertEquals(3, Files.readAllLines(dataset.resolve("results").resolve(ResultFiles.RESULTS)).size());
+        assertEquals(3, Files.readAllLines(dataset.resolve("results").resolve(ResultFiles.PREDICTED_WORDS)).size());
+        assertTrue(Files.readString(dataset.resolve("results").resolve(ResultFiles.F1_LOG)).contains("F1: "));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunInference_noDataset_throwsInferenceException() {
+        var testObject = new FakeInferenceBackend();
+
+        assertThrows(InferenceException.class, () -> testObject.runInference(
+                tempDir.resolve("missing").toString(), tempDir.resolve("results").toString()));
+    }
+
+    @Tag("File")
+    @Tag("Integration")
+    @Test
+    public void testRunInference_metricsCanBeReadFromResults() throws IOException {
+        Path dataset = tempDir.resolve("dataset");
+        FileManagement.copyDirectory("./src/test/resources/code_files", dataset.resolve("test").toString());
+        var config = new Configuration();
+        var support = new GenotypeSupport(new MetricCache(), config);
+        support.setInferenceBackend(new FakeInferenceBackend());
+        var individual = new MetamorphicIndividual(support, 0);
+
+        individual.setResultPath(support.runInference(dataset.toString(), dataset.resolve("results").toString()));
+
+        var mrr = new MRR();
+        mrr.setObjective(true);
+        double mrrValue = mrr.apply(individual);
+        double f1Value = new F1().apply(individual);
+        assertTrue(mrrValue > 0 && mrrValue < 1);
+        assertTrue(f1Value > 0 && f1Value < 1);
+        assertFalse(Double.isNaN(f1Value));
+    }
+}
@@ -0,0 +1,204 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class InProcessJavaExtractorTest {
+
+    // A stand-in for the JavaExtractor, which prints one method per file, named after the file
+    private static final String ARGUMENTS = """
+            package JavaExtractor.Common;
+            public class CommandLineValues {
+                public int MaxPathLength;
+                public CommandLineValues(String... args) {
+                    for (int i = 0; i < args.length - 1; i++)
+                        if (args[i].equals("--max_path_length"))
+                            MaxPathLength = Integer.parseInt(args[i + 1]);
+                }
+            }
+            """;
+    private static final String TASK = """
+            package JavaExtractor;
+            import java.nio.file.Path;
+            import JavaExtractor.Common.CommandLineValues;
+            class ExtractFeaturesTask {
+                private final CommandLineValues values;
+                private final Path path;
+                ExtractFeaturesTask(CommandLineValues values, Path path) {
+                    this.values = values;
+                    this.path = path;
+                }
+                public void processFile() {
+                    String name = path.getFileName().toString().replace(".java", "").toLowerCase();
+                    if (name.equals("broken"))
+                        throw new IllegalStateException("Cannot parse " + path);
+                    System.out.println(name + " a,1,b a," + values.MaxPathLength + ",c");
+                    System.out.println("empty");
+                }
+            }
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    private Path extractorJar() throws IOException {
+        Path sources = Files.createDirectories(tempDir.resolve("extractor"));
+        Path arguments = Files.createDirectories(sources.resolve("JavaExtractor/Common")).resolve("CommandLineValues.java");
+        Path task = sources.resolve("JavaExtractor/ExtractFeaturesTask.java");
+        Files.writeString(arguments, ARGUMENTS);
+        Files.writeString(task, TASK);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, arguments.toString(), task.toString()));
+
+        Path jar = tempDir.resolve("JavaExtractor.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> files = Files.walk(sources)) {
+            for (Path file : files.filter(p -> p.toString().endsWith(".class")).toList()) {
+                out.putNextEntry(new JarEntry(sources.relativize(file).toString().replace('\\', '/')));
+                out.write(Files.readAllBytes(file));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private Path codeDirectory(String... classes) throws IOException {
+        Path directory = Files.createDirectories(tempDir.resolve("code/test/pkg"));
+        for (String name : classes) {
+            Files.writeString(directory.resolve(name + ".java"), "class " + name + " {}");
+        }
+        return tempDir.resolve("code");
+    }
+
+    private static String padded(String line) {
+        return line + " ".repeat(PathContextExtractor.MAX_CONTEXTS - 2);
+    }
+
+    @Test
+    public void testConstructor_noThreads_throwsException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new InProcessJavaExtractor(tempDir.resolve("JavaExtractor.jar"), 0, 1));
+    }
+
+    @Tag("File")
+    @Test
+    public void testConstructor_missingJar_throwsIOException() {
+        assertThrows(IOException.class, () -> new InProcessJavaExtractor(tempDir.resolve("JavaExtractor.jar"), 1, 1));
+    }
+
+    @Tag("File")
+    @Test
+    public void testConstructor_jarWithoutExtractor_throwsIOException() throws IOException {
+        Path jar = tempDir.resolve("Other.jar");
+        try (OutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.flush();
+        }
+
+        assertThrows(IOException.class, () -> new InProcessJavaExtractor(jar, 1, 1));
+    }
+
+    @Tag("File")
+    @Test
+    public void testExtract_linesArePaddedAndOrderedByFile() throws IOException {
+        Path code = codeDirectory("B", "A");
+
+        try (var testObject = new InProcessJavaExtractor(extractorJar(), 1, 1)) {
+            List<String> lines = testObject.extract(code);
+
+            // The max path length is passed as in preprocess.sh, methods without paths are dropped
+            assertEquals(List.of(padded("a a,1,b a,8,c"), padded("b a,1,b a,8,c")), lines);
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testExtract_failingFile_isSkipped() throws IOException {
+        Path code = codeDirectory("A", "Broken", "C");
+
+        try (var testObject = new InProcessJavaExtractor(extractorJar(), 2, 1)) {
+            List<String> lines = testObject.extract(code);
+
+            assertEquals(List.of(padded("a a,1,b a,8,c"), padded("c a,1,b a,8,c")), lines);
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testExtract_manyThreads_outputIsNotMixed() throws IOException {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            names.add(String.format("Class%02d", i));
+        }
+        Path code = codeDirectory(names.toArray(new String[0]));
+
+        try (var testObject = new InProcessJavaExtractor(extractorJar(), 4, 1)) {
+            List<String> lines = testObject.extract(code);
+
+            assertEquals(names.size(), lines.size());
+            for (int i = 0; i < names.size(); i++) {
+                assertEquals(padded(names.get(i).toLowerCase() + " a,1,b a,8,c"), lines.get(i));
+            }
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testWrite_writesTheC2vFile() throws IOException {
+        Path code = codeDirectory("A");
+        Path c2v = tempDir.resolve("data.test.c2v");
+
+        try (var testObject = new InProcessJavaExtractor(extractorJar(), 1, 1)) {
+            testObject.write(code, c2v);
+        }
+
+        assertEquals(List.of(padded("a a,1,b a,8,c")), Files.readAllLines(c2v));
+    }
+
+    @Tag("File")
+    @Test
+    public void testExtract_withCache_sameContentIsExtractedOnce() throws IOException {
+        Path code = codeDirectory("A", "B");
+        var cache = new PathContextCache(10);
+
+        try (var testObject = new InProcessJavaExtractor(extractorJar(), 2, 1, cache)) {
+            List<String> first = testObject.extract(code);
+            List<String> second = testObject.extract(code);
+
+            assertEquals(first, second);
+            assertEquals(2, cache.size());
+            assertEquals(2, cache.getHits());
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testExtract_withCache_changedFileIsExtractedAgain() throws IOException {
+        Path code = codeDirectory("A");
+        var cache = new PathContextCache(10);
+
+        try (var testObject = new InProcessJavaExtractor(extractorJar(), 1, 1, cache)) {
+            testObject.extract(code);
+            Files.writeString(code.resolve("test/pkg/A.java"), "class A { int a; }");
+            testObject.extract(code);
+
+            assertEquals(0, cache.getHits());
+            assertEquals(2, cache.size());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+public class PathContextCacheTest {
+
+    private static final byte[] CONTENT = "class A { int foo() { return 1; } }".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testConstructor_negativeCapacity_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> new PathContextCache(-1));
+    }
+
+    @Test
+    public void testKey_sameSettingsAndContent_sameKey() {
+        assertEquals(PathContextCache.key("javaextractor,8", CONTENT), PathContextCache.key("javaextractor,8", CONTENT.clone()));
+    }
+
+    @Test
+    public void testKey_otherSettings_otherKey() {
+        assertNotEquals(PathContextCache.key("javaextractor,8", CONTENT), PathContextCache.key("javaextractor,9", CONTENT));
+    }
+
+    @Test
+    public void testKey_otherContent_otherKey() {
+        byte[] other = "class B { }".getBytes(StandardCharsets.UTF_8);
+
+        assertNotEquals(PathContextCache.key("javaextractor,8", CONTENT), PathContextCache.key("javaextractor,8", other));
+    }
+
+    @Test
+    public void testGet_keptLines_areReturned() {
+        var testObject = new PathContextCache(2);
+        String key = PathContextCache.key("javaextractor", CONTENT);
+
+        assertEquals(Optional.empty(), testObject.get(key));
+        testObject.put(key, List.of("foo a,1,b"));
+
+        assertEquals(Optional.of(List.of("foo a,1,b")), testObject.get(key));
+        assertEquals(1, testObject.getHits());
+        assertEquals(1, testObject.getMisses());
+    }
+
+    @Test
+    public void testPut_overCapacity_evictsLeastRecentlyUsed() {
+        var testObject = new PathContextCache(2);
+        testObject.put("a", List.of("a"));
+        testObject.put("b", List.of("b"));
+        testObject.get("a");
+
+        testObject.put("c", List.of("c"));
+
+        assertEquals(2, testObject.size());
+        assertTrue(testObject.get("a").isPresent());
+        assertFalse(testObject.get("b").isPresent());
+    }
+
+    @Test
+    public void testPut_disabled_keepsNothing() {
+        var testObject = new PathContextCache(0);
+
+        testObject.put("a", List.of("a"));
+
+        assertFalse(testObject.isEnabled());
+        assertEquals(0, testObject.size());
+        assertFalse(testObject.get("a").isPresent());
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class PathContextExtractorTest {
+
+    @Test
+    public void testConstructor_noContexts_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> new PathContextExtractor(0, 1));
+    }
+
+    @Test
+    public void testPad_fewContexts_arePaddedWithSpaces() {
+        var testObject = new PathContextExtractor(4, 1);
+
+        assertEquals("foo a,1,b a,2,c  ", testObject.pad("foo a,1,b a,2,c"));
+    }
+
+    @Test
+    public void testPad_noContexts_isNull() {
+        assertNull(new PathContextExtractor(1).pad("foo"));
+    }
+
+    @Test
+    public void testPad_manyContexts_keepsSeededSample() {
+        var testObject = new PathContextExtractor(2, 1);
+        String extracted = "foo a,1,b a,2,c a,3,d a,4,e";
+
+        String line = testObject.pad(extracted);
+
+        String[] fields = line.split(" ", -1);
+        assertEquals(3, fields.length);
+        assertEquals("foo", fields[0]);
+        assertTrue(extracted.contains(fields[1]) && extracted.contains(fields[2]));
+        assertEquals(line, testObject.pad(extracted));
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+public class PredictionCacheTest {
+
+    private static final ResultFiles.Entry ENTRY = new ResultFiles.Entry(
+            List.of("Original: foo, predicted 1st: foo, score: 1.0"), "Original: foo, predicted: foo",
+            new ResultFiles.Prediction("foo", "foo", 1, 1.0));
+
+    @Test
+    public void testConstructor_negativeCapacity_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> new PredictionCache(-1));
+    }
+
+    @Test
+    public void testKey_trailingPadding_sameKey() {
+        assertEquals(PredictionCache.key("foo a,1,b"), PredictionCache.key("foo a,1,b   "));
+    }
+
+    @Test
+    public void testKey_otherContexts_otherKey() {
+        assertNotEquals(PredictionCache.key("foo a,1,b"), PredictionCache.key("foo a,2,b"));
+    }
+
+    @Test
+    public void testGet_keptEntries_areReturned() {
+        var testObject = new PredictionCache(2);
+        String key = PredictionCache.key("foo a,1,b");
+
+        assertEquals(Optional.empty(), testObject.get(key));
+        testObject.put(key, List.of(ENTRY));
+
+        assertEquals(Optional.of(List.of(ENTRY)), testObject.get(key));
+        assertEquals(1, testObject.getHits());
+        assertEquals(1, testObject.getMisses());
+    }
+
+    @Test
+    public void testGet_skippedMethod_isKnownWithoutEntries() {
+        var testObject = new PredictionCache(2);
+        String key = PredictionCache.key("unknown a,1,b");
+
+        testObject.put(key, List.of());
+
+        assertEquals(Optional.of(List.of()), testObject.get(key));
+    }
+
+    @Test
+    public void testPut_overCapacity_evictsLeastRecentlyUsed() {
+        var testObject = new PredictionCache(2);
+        testObject.put("a", List.of(ENTRY));
+        testObject.put("b", List.of(ENTRY));
+        testObject.get("a");
+
+        testObject.put("c", List.of(ENTRY));
+
+        assertEquals(2, testObject.size());
+        assertTrue(testObject.get("a").isPresent());
+        assertFalse(testObject.get("b").isPresent());
+    }
+
+    @Test
+    public void testPut_disabled_keepsNothing() {
+        var testObject = new PredictionCache(0);
+
+        testObject.put("a", List.of(ENTRY));
+
+        assertFalse(testObject.isEnabled());
+        assertEquals(0, testObject.size());
+        assertFalse(testObject.get("a").isPresent());
+    }
+}
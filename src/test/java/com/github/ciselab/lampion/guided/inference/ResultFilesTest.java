@@ -0,0 +1,162 @@
+package com.github.ciselab.lampion.guided.inference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
+import com.github.ciselab.lampion.guided.configuration.Configuration;
+import com.github.ciselab.lampion.guided.metric.metrics.F1;
+import com.github.ciselab.lampion.guided.metric.metrics.MRR;
+import com.github.ciselab.lampion.guided.metric.metrics.Precision;
+import com.github.ciselab.lampion.guided.metric.metrics.Recall;
+import com.github.ciselab.lampion.guided.support.GenotypeSupport;
+import com.github.ciselab.lampion.guided.support.MetricCache;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ResultFilesTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testResultLine_firstRank_hasOriginalAndPrediction() {
+        var prediction = new ResultFiles.Prediction("get|value", "get|value", 1, 12.5);
+
+        assertEquals("Original: get|value, predicted 1st: get|value, score: 12.5", ResultFiles.resultLine(prediction));
+    }
+
+    @Test
+    public void testResultLine_laterRank_hasRank() {
+        var prediction = new ResultFiles.Prediction("get|value", "set|value", 3, 2.0);
+
+        assertEquals("\t\t predicted correctly at rank: 3, score: 2.0", ResultFiles.resultLine(prediction));
+    }
+
+    @Test
+    public void testResultLine_noRank_hasNoResults() {
+        var prediction = new ResultFiles.Prediction("get|value", "set|value", 0, 0);
+
+        assertEquals("No results for predicting: get|value", ResultFiles.resultLine(prediction));
+    }
+
+    @Test
+    public void testF1Line_subtokenPrecisionAndRecall() {
+        // tp = 1 (get), fp = 1 (size), fn = 1 (value)
+        var predictions = List.of(new ResultFiles.Prediction("get|value", "get|size", 0, 0));
+
+        String line = ResultFiles.f1Line(predictions);
+
+        assertTrue(line.contains("precision: 0.5"));
+        assertTrue(line.contains("recall: 0.5"));
+        assertTrue(line.endsWith("F1: 0.5"));
+    }
+
+    @Test
+    public void testF1Line_allCorrect_accuracyIsOne() {
+        var predictions = List.of(
+                new ResultFiles.Prediction("get|value", "get|value", 1, 1),
+                new ResultFiles.Prediction("close", "close", 1, 1));
+
+        String line = ResultFiles.f1Line(predictions);
+
+        assertTrue(line.startsWith("top10_acc: [1.0 1.0"));
+        assertTrue(line.endsWith("F1: 1.0"));
+    }
+
+    @Test
+    public void testF1Line_noPredictions_isZero() {
+        String line = ResultFiles.f1Line(List.of());
+
+        assertTrue(line.endsWith("precision: 0.0, recall: 0.0, F1: 0.0"));
+    }
+
+    @Tag("File")
+    @Test
+    public void testWrite_metricsReadWrittenFiles() throws IOException {
+        var predictions = List.of(
+                new ResultFiles.Prediction("get|value", "get|value", 1, 10),
+                new ResultFiles.Prediction("close", "open", 2, 5),
+                new ResultFiles.Prediction("read|fully", "read", 0, 0),
+                new ResultFiles.Prediction("reset", "get", 0, 0));
+        ResultFiles.write(tempDir.resolve("results"), predictions);
+
+        var support = new GenotypeSupport(new MetricCache(), new Configuration());
+        var individual = new MetamorphicIndividual(support, 0);
+        individual.setResultPath(tempDir.toString());
+
+        var mrr = new MRR();
+        mrr.setObjective(true);
+        var precision = new Precision();
+        precision.setObjective(true);
+        var recall = new Recall();
+        recall.setObjective(true);
+        assertEquals((1 + 0.5) / 4, mrr.apply(individual), 0.0001);
+        // tp: get, value, read = 3, fp: open, get = 2, fn: close, fully, reset = 3
+        assertEquals(3.0 / 5, precision.apply(individual), 0.0001);
+        assertEquals(3.0 / 6, recall.apply(individual), 0.0001);
+        assertEquals(2 * 0.6 * 0.5 / 1.1, new F1().apply(individual), 0.0001);
+    }
+
+    @Tag("File")
+    @Test
+    public void testRead_writtenFiles_giveSamePredictions() throws IOException {
+        var predictions = List.of(
+                new ResultFiles.Prediction("get|value", "get|value", 1, 10),
+                new ResultFiles.Prediction("close", "open", 2, 5),
+                new ResultFiles.Prediction("reset", "get", 0, 0));
+        ResultFiles.write(tempDir, predictions);
+
+        List<ResultFiles.Entry> entries = ResultFiles.read(tempDir);
+
+        assertEquals(predictions, entries.stream().map(ResultFiles.Entry::prediction).toList());
+        assertEquals(List.of("\t\t predicted correctly at rank: 2, score: 5.0"), entries.get(1).resultLines());
+        assertEquals("Original: reset, predicted: get", entries.get(2).predictedWordsLine());
+    }
+
+    @Tag("File")
+    @Test
+    public void testRead_unknownLines_stayWithTheirMethod() throws IOException {
+        Files.writeString(tempDir.resolve(ResultFiles.RESULTS),
+                "Original: close, predicted 1st: close, score: 1.0\n\t(0.5) predicted: open\n");
+        Files.writeString(tempDir.resolve(ResultFiles.PREDICTED_WORDS), "Original: close, predicted: close\n");
+
+        List<ResultFiles.Entry> entries = ResultFiles.read(tempDir);
+
+        assertEquals(1, entries.size());
+        assertEquals(2, entries.get(0).resultLines().size());
+    }
+
+    @Tag("File")
+    @Test
+    public void testRead_differentMethods_throwsIOException() throws IOException {
+        Files.writeString(tempDir.resolve(ResultFiles.RESULTS), "No results for predicting: close\n");
+        Files.writeString(tempDir.resolve(ResultFiles.PREDICTED_WORDS), "");
+
+        assertThrows(IOException.class, () -> ResultFiles.read(tempDir));
+    }
+
+    @Tag("File")
+    @Test
+    public void testWriteEntries_keepsLinesAndWritesF1Log() throws IOException {
+        var predictions = List.of(
+                new ResultFiles.Prediction("get|value", "get|value", 1, 10),
+                new ResultFiles.Prediction("close", "open", 0, 0));
+        ResultFiles.write(tempDir.resolve("all"), predictions);
+        List<ResultFiles.Entry> entries = ResultFiles.read(tempDir.resolve("all"));
+
+        ResultFiles.writeEntries(tempDir.resolve("copy"), entries);
+
+        for (String file : List.of(ResultFiles.RESULTS, ResultFiles.PREDICTED_WORDS, ResultFiles.F1_LOG)) {
+            assertEquals(Files.readString(tempDir.resolve("all").resolve(file)),
+                    Files.readString(tempDir.resolve("copy").resolve(file)));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.ciselab.lampion.guided.metric;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class MetricVectorTest {
+
+    @Test
+    public void testSet_laterSlot_growsVector() {
+        var testObject = new MetricVector(1);
+
+        testObject.set(3, 0.5);
+
+        assertEquals(4, testObject.slots());
+        assertEquals(1, testObject.size());
+        assertEquals(0.5, testObject.get(3));
+    }
+
+    @Test
+    public void testSet_beyondMaxSlots_throwsException() {
+        var testObject = new MetricVector();
+
+        assertThrows(IllegalArgumentException.class, () -> testObject.set(MetricVector.MAX_SLOTS, 0.5));
+    }
+
+    @Test
+    public void testHas_unsetSlot_isEmpty() {
+        var testObject = new MetricVector(2);
+        testObject.set(1, Double.NaN);
+
+        assertFalse(testObject.has(0));
+        assertTrue(Double.isNaN(testObject.get(0)));
+        // NaN is a value like any other
+        assertTrue(testObject.has(1));
+    }
+
+    @Test
+    public void testWeightedSum_skipsEmptyAndUnweightedSlots() {
+        var testObject = new MetricVector(4);
+        testObject.set(0, 0.5);
+        testObject.set(1, Double.NaN);
+        testObject.set(3, 0.25);
+
+        double sum = testObject.weightedSum(new double[]{0.5, 0, 0.25, 0.25}, new boolean[4]);
+
+        assertEquals(0.5 * 0.5 + 0.25 * 0.25, sum, 0.0001);
+    }
+
+    @Test
+    public void testWeightedSum_flippedSlot_usesOneMinusValue() {
+        var testObject = new MetricVector(2);
+        testObject.set(0, 0.2);
+        testObject.set(1, 0.2);
+
+        double sum = testObject.weightedSum(new double[]{0.5, 0.5}, new boolean[]{true, false});
+
+        assertEquals(0.5 * 0.8 + 0.5 * 0.2, sum, 0.0001);
+    }
+
+    @Test
+    public void testCopy_isIndependent() {
+        var testObject = new MetricVector(1);
+        testObject.set(0, 0.5);
+
+        MetricVector copy = testObject.copy();
+        copy.set(0, 0.75);
+
+        assertEquals(0.5, testObject.get(0));
+        assertEquals(0.75, copy.get(0));
+    }
+}
@@ -0,0 +1,188 @@
+package com.github.ciselab.lampion.guided.metric;
+
+import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
+import com.github.ciselab.lampion.guided.configuration.Configuration;
+import com.github.ciselab.lampion.guided.metric.metrics.*;
+import com.github.ciselab.lampion.guided.support.GenotypeSupport;
+import com.github.ciselab.lampion.guided.support.MetricCache;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParsedResultsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Tag("File")
+    @Test
+    public void testRead_knownFiles_givesKnownValues() {
+        var results = ParsedResults.read("./src/test/resources/metric_files");
+
+        assertEquals(0.5185185185185185, results.getPrecision());
+        assertEquals(0.4666666666666667, results.getRecall());
+        assertEquals(0.4912280701754386, results.getF1());
+        assertEquals(0.4568965435028076, results.getMRR(), 0.0000001);
+        assertEquals(0.1265721370689655, results.getPercentageMRR(), 0.0000001);
+        assertEquals(0.480855256319046, results.getEditSimilarity(), 0.0000001);
+        assertEquals(9.241379310344827, results.getPredictionLength(), 0.0000001);
+    }
+
+    @Tag("File")
+    @Test
+    public void testRead_resultsDirectoryItself_isTheSame() {
+        var fromParent = ParsedResults.read("./src/test/resources/metric_files");
+        var fromResults = ParsedResults.read("./src/test/resources/metric_files/results");
+
+        assertEquals(fromParent.getMRR(), fromResults.getMRR());
+        assertEquals(fromParent.getEditSimilarity(), fromResults.getEditSimilarity());
+        assertEquals(fromParent.getF1(), fromResults.getF1());
+    }
+
+    @Tag("File")
+    @Test
+    public void testRead_missingFiles_givesNaN() {
+        var results = ParsedResults.read("./src/test/resources/known_metric_files");
+
+        assertEquals(0.5, results.getMRR());
+        assertTrue(Double.isNaN(results.getF1()));
+        assertTrue(Double.isNaN(results.getPrecision()));
+        assertTrue(Double.isNaN(results.getEditSimilarity()));
+        assertTrue(Double.isNaN(results.getPredictionLength()));
+    }
+
+    @Tag("File")
+    @Test
+    public void testApply_withParsedResults_isSameAsReadingPerMetric() {
+        var config = new Configuration();
+        MetricCache cache = new MetricCache();
+        GenotypeSupport support = new GenotypeSupport(cache, config);
+        MetamorphicIndividual individual = new MetamorphicIndividual(support, 0);
+        individual.setResultPath("./src/test/resources/metric_files");
+        var results = Optional.of(ParsedResults.read("./src/test/resources/metric_files"));
+
+        List<Metric> metrics = List.of(new MRR(), new PercentageMRR(), new F1(), new Precision(), new Recall(),
+                new EditDistance(), new PredictionLength(), new Transformations());
+        for (Metric metric : metrics) {
+            assertEquals(metric.apply(individual), metric.apply(individual, results), metric.getName());
+        }
+    }
+
+    @Test
+    public void testApply_withoutResults_isZero() {
+        var config = new Configuration();
+        MetricCache cache = new MetricCache();
+        GenotypeSupport support = new GenotypeSupport(cache, config);
+        MetamorphicIndividual individual = new MetamorphicIndividual(support, 0);
+        Metric metric = new F1();
+
+        assertEquals(0.0, metric.apply(individual, Optional.empty()));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '#', value = {
+            "'Original: render, predicted: get|logs' # ': ' # 0",
+            "'Original: render, predicted: get|logs' # ': ' # 1",
+            "'Original: render, predicted: get|logs' # ': ' # 2",
+            "'Original: render, predicted: get|logs' # ', ' # 1",
+            "'a: b' # ': ' # 0",
+            "': b' # ': ' # 0",
+            "': b' # ': ' # 1",
+    })
+    public void testField_isSameAsSplit(String text, String separator, int index) {
+        assertEquals(text.split(separator)[index], ParsedResults.field(text, separator, index));
+    }
+
+    @Test
+    public void testField_notEnoughFields_throwsLikeSplit() {
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> ParsedResults.field("F1 0.5", "F1: ", 1));
+    }
+
+    @Tag("File")
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 100, 4096})
+    public void testRead_inChunks_isSameAsInOnePiece(int chunkSize) throws IOException {
+        Path results = writeResults(tempDir, 2000, "\n");
+
+        var whole = ParsedResults.read(results.toString());
+        var chunked = ParsedResults.read(results.toString(), chunkSize);
+
+        assertEquals(whole.getMRR(), chunked.getMRR(), 0.0001);
+        assertEquals(whole.getPercentageMRR(), chunked.getPercentageMRR(), 0.0000001);
+        assertEquals(whole.getEditSimilarity(), chunked.getEditSimilarity(), 0.0001);
+        assertEquals(whole.getPredictionLength(), chunked.getPredictionLength(), 0.0000001);
+        assertEquals(whole.getF1(), chunked.getF1());
+        assertEquals(whole.getPrecision(), chunked.getPrecision());
+    }
+
+    @Tag("File")
+    @Test
+    public void testRead_windowsLineBreaks_isSameAsUnixLineBreaks() throws IOException {
+        var unix = ParsedResults.read(writeResults(tempDir.resolve("unix"), 50, "\n").toString());
+        var windows = ParsedResults.read(writeResults(tempDir.resolve("windows"), 50, "\r\n").toString());
+
+        assertEquals(unix.getMRR(), windows.getMRR());
+        assertEquals(unix.getPercentageMRR(), windows.getPercentageMRR());
+        assertEquals(unix.getEditSimilarity(), windows.getEditSimilarity());
+        assertEquals(unix.getPredictionLength(), windows.getPredictionLength());
+        assertEquals(unix.getF1(), windows.getF1());
+    }
+
+    @Tag("File")
+    @Test
+    public void testRead_lastLineWithoutLineBreak_isParsed() throws IOException {
+        Path results = Files.createDirectories(tempDir.resolve("results"));
+        Files.writeString(results.resolve(ParsedResults.RESULTS_FILE),
+                "No results for predicting: get|name\nOriginal: close, predicted 1st: close, score: 50.0");
+
+        var parsed = ParsedResults.read(results.toString());
+
+        assertEquals(0.5, parsed.getMRR());
+        assertEquals(0.25, parsed.getPercentageMRR());
+    }
+
+    @Test
+    public void testRead_chunkSizeZero_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> ParsedResults.read("./src/test/resources/metric_files", 0));
+    }
+
+    /**
+     * Writes random result files, as code2vec would, for as many methods as given.
+     *
+     * @return the results directory.
+     */
+    private static Path writeResults(Path directory, int methods, String lineBreak) throws IOException {
+        Random random = new Random(5);
+        Path results = Files.createDirectories(directory.resolve("results"));
+        StringBuilder ranks = new StringBuilder();
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < methods; i++) {
+            switch (random.nextInt(3)) {
+                case 0 -> ranks.append("No results for predicting: get|name").append(lineBreak);
+                case 1 -> ranks.append("Original: get|name, predicted 1st: get|name, score: ")
+                        .append(random.nextInt(10000) / 100.0).append(lineBreak);
+                default -> ranks.append("get|name predicted correctly at rank: ").append(random.nextInt(10) + 1)
+                        .append(", score: ").append(random.nextInt(10000) / 100.0).append(lineBreak);
+            }
+            words.append("Original: get|name, predicted: ").append(random.nextBoolean() ? "get|value" : "set|name|to")
+                    .append(lineBreak);
+        }
+        Files.writeString(results.resolve(ParsedResults.RESULTS_FILE), ranks);
+        Files.writeString(results.resolve(ParsedResults.PREDICTED_WORDS_FILE), words);
+        Files.writeString(results.resolve(ParsedResults.F1_FILE),
+                "top10_acc: [0.4 0.5]," + lineBreak + " precision: 0.5, recall: 0.25, F1: 0.3333" + lineBreak);
+        return results;
+    }
+}
@@ -9,6 +9,10 @@ import com.github.ciselab.lampion.guided.support.GenotypeSupport;
 import com.github.ciselab.lampion.guided.support.MetricCache;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -121,4 +125,84 @@ public class EditDistanceTest {
         assertNotEquals(a.hashCode(),b.hashCode());
     }
 
+    @ParameterizedTest
+    @CsvSource({
+            "kitten, sitting, 3",
+            "get|wrapped|stream, get|input|stream, 6",
+            "get|tmp|buf, get|bytes, 7",
+            "close, close, 0",
+            "'', get, 3",
+            "get, '', 3",
+            "'', '', 0",
+    })
+    public void testEditDistance_knownValues(String original, String predicted, int expected){
+        assertEquals(expected, EditDistance.editDistance(original, predicted));
+    }
+
+    @Test
+    public void testEditDistance_randomWords_isSameAsFullMatrix(){
+        Random r = new Random(5);
+        // Up to 100 characters, so both the bit-parallel and the row by row calculation are used
+        for (int i = 0; i < 2000; i++) {
+            String original = randomWord(r, r.nextInt(100));
+            String predicted = randomWord(r, r.nextInt(100));
+            assertEquals(fullMatrixDistance(original, predicted), EditDistance.editDistance(original, predicted),
+                    original + " / " + predicted);
+        }
+    }
+
+    @Test
+    public void testEditDistance_charactersAbove255_isSameAsFullMatrix(){
+        assertEquals(fullMatrixDistance("get|\u00fcber|\u4e2d", "get|uber|\u4e2d\u6587"),
+                EditDistance.editDistance("get|\u00fcber|\u4e2d", "get|uber|\u4e2d\u6587"));
+        assertEquals(fullMatrixDistance("get|name", "\u4e2d|name"),
+                EditDistance.editDistance("get|name", "\u4e2d|name"));
+    }
+
+    @Test
+    public void testEditDistance_exactly64Characters_isSameAsFullMatrix(){
+        Random r = new Random(7);
+        String original = randomWord(r, 64);
+        String predicted = randomWord(r, 70);
+        assertEquals(fullMatrixDistance(original, predicted), EditDistance.editDistance(original, predicted));
+    }
+
+    @Test
+    public void testEditDistance_onPartsOfALine_isSameAsOnTheWords(){
+        String line = "Original: get|wrapped|stream, predicted: get|input|stream";
+
+        assertEquals(EditDistance.editDistance("get|wrapped|stream", "get|input|stream"),
+                EditDistance.editDistance(line, 10, 28, line, 41, line.length()));
+    }
+
+    private static String randomWord(Random r, int length) {
+        // Few letters, so that the words have a lot in common
+        String letters = "abcde|";
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            word.append(letters.charAt(r.nextInt(letters.length())));
+        return word.toString();
+    }
+
+    /**
+     * The edit distance over the full matrix, as it was calculated before, to compare against.
+     */
+    private static float fullMatrixDistance(String original, String predicted) {
+        int len1 = original.length();
+        int len2 = predicted.length();
+        int[][] dp = new int[len1 + 1][len2 + 1];
+        for (int i = 0; i <= len1; i++)
+            dp[i][0] = i;
+        for (int j = 0; j <= len2; j++)
+            dp[0][j] = j;
+        for (int i = 0; i < len1; i++) {
+            for (int j = 0; j < len2; j++) {
+                if (original.charAt(i) == predicted.charAt(j))
+                    dp[i + 1][j + 1] = dp[i][j];
+                else
+                    dp[i + 1][j + 1] = Math.min(dp[i][j], Math.min(dp[i][j + 1], dp[i + 1][j])) + 1;
+            }
+        }
+        return dp[len1][len2];
+    }
 }
@@ -18,7 +18,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -562,4 +564,174 @@ public class EngineTest {
     void testConstructor_NullRegistry_shouldThrowException(){
         assertThrows(UnsupportedOperationException.class, () ->  new Engine(pathToTestFileFolder,outputTestFolder,null));
     }
+
+    private static CtModel buildModel(String codeDirectory) {
+        Launcher launcher = new spoon.Launcher();
+        launcher.addInputResource(codeDirectory);
+        CtModel codeRoot = launcher.buildModel();
+        launcher.getFactory().getEnvironment().setAutoImports(false);
+        return codeRoot;
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRunLayered_perClassEachScope_ShouldApplyEveryTransformerOncePerClass(){
+        String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_perMethodEach";
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfFalseElseTransformer(1));
+        registry.registerTransformer(new IfTrueTransformer(2));
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(2, com.github.ciselab.lampion.core.program.Engine.TransformationScope.perClassEach);
+
+        EngineResult result = testObject.runLayered(buildModel(testObject.getCodeDirectory()), 0, layer -> {});
+
+        // 2 Transformers on 2 Classes
+        assertEquals(4,result.getTransformationResults().size());
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRunLayered_perMethodEachScope_ShouldApplyEveryTransformerOncePerMethod(){
+        String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_perMethodEach";
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfFalseElseTransformer(1));
+        registry.registerTransformer(new IfTrueTransformer(2));
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(2, com.github.ciselab.lampion.core.program.Engine.TransformationScope.perMethodEach);
+
+        EngineResult result = testObject.runLayered(buildModel(testObject.getCodeDirectory()), 0, layer -> {});
+
+        // 2 Transformers on 4 Methods
+        assertEquals(8,result.getTransformationResults().size());
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRunLayered_globalScope_ShouldApplyEveryTransformerOnce(){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfFalseElseTransformer(1));
+        registry.registerTransformer(new IfTrueTransformer(2));
+        registry.registerTransformer(new IfTrueTransformer(3));
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(3, com.github.ciselab.lampion.core.program.Engine.TransformationScope.global);
+
+        EngineResult result = testObject.runLayered(buildModel(testObject.getCodeDirectory()), 0, layer -> {});
+
+        assertEquals(3,result.getTransformationResults().size());
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRunLayered_firstLayer_ShouldReportRemainingLayers(){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfFalseElseTransformer(1));
+        registry.registerTransformer(new IfTrueTransformer(2));
+        registry.registerTransformer(new IfTrueTransformer(3));
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(3, com.github.ciselab.lampion.core.program.Engine.TransformationScope.global);
+
+        List<Integer> layers = new ArrayList<>();
+        EngineResult result = testObject.runLayered(buildModel(testObject.getCodeDirectory()), 1, layers::add);
+
+        assertEquals(List.of(2, 3), layers);
+        assertEquals(2,result.getTransformationResults().size());
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRunLayered_resumedAfterPrefix_ShouldGiveSameCode(){
+        String pathToTestFileFolder = "./src/test/resources/input_test/test";
+        // Transformers keep their random state, so every engine gets new ones
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfFalseElseTransformer(1));
+        registry.registerTransformer(new IfTrueTransformer(2));
+        TransformerRegistry prefixRegistry = new TransformerRegistry("Prefix");
+        prefixRegistry.registerTransformer(new IfFalseElseTransformer(1));
+        TransformerRegistry resumedRegistry = new TransformerRegistry("Resumed");
+        resumedRegistry.registerTransformer(new IfFalseElseTransformer(1));
+        resumedRegistry.registerTransformer(new IfTrueTransformer(2));
+
+        Engine complete = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        complete.setNumberOfTransformationsPerScope(2, com.github.ciselab.lampion.core.program.Engine.TransformationScope.perMethod);
+        complete.setRandomSeed(5);
+        CtModel completeRoot = buildModel(complete.getCodeDirectory());
+        complete.runLayered(completeRoot, 0, layer -> {});
+
+        Engine prefix = new Engine(pathToTestFileFolder,outputTestFolder,prefixRegistry);
+        prefix.setNumberOfTransformationsPerScope(1, com.github.ciselab.lampion.core.program.Engine.TransformationScope.perMethod);
+        prefix.setRandomSeed(5);
+        CtModel resumedRoot = buildModel(prefix.getCodeDirectory());
+        prefix.runLayered(resumedRoot, 0, layer -> {});
+        Engine resumed = new Engine(pathToTestFileFolder,outputTestFolder,resumedRegistry);
+        resumed.setNumberOfTransformationsPerScope(2, com.github.ciselab.lampion.core.program.Engine.TransformationScope.perMethod);
+        resumed.setRandomSeed(5);
+        resumed.runLayered(resumedRoot, 1, layer -> {});
+
+        assertEquals(completeRoot.getAllTypes().stream().map(Object::toString).collect(Collectors.toList()),
+                resumedRoot.getAllTypes().stream().map(Object::toString).collect(Collectors.toList()));
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRun_perClassEachScope_ShouldTouchAllClasses(){
+        String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_perMethodEach";
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfFalseElseTransformer(1));
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(1, com.github.ciselab.lampion.core.program.Engine.TransformationScope.perClassEach);
+
+        CtModel codeRoot = buildModel(testObject.getCodeDirectory());
+        testObject.run(codeRoot);
+
+        assertEquals(codeRoot.getAllTypes().stream().map(t -> t.getQualifiedName()).collect(Collectors.toSet()),
+                testObject.getTouchedTypes());
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRunLayered_globalScope_ShouldTouchOneClass(){
+        String pathToTestFileFolder = "./src/test/resources/javafiles/javafiles_perMethodEach";
+        TransformerRegistry registry = new TransformerRegistry("Test");
+        registry.registerTransformer(new IfFalseElseTransformer(1));
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(1, com.github.ciselab.lampion.core.program.Engine.TransformationScope.global);
+
+        testObject.runLayered(buildModel(testObject.getCodeDirectory()), 0, layer -> {});
+
+        assertEquals(1, testObject.getTouchedTypes().size());
+    }
+
+    @Tag("System")
+    @Tag("File")
+    @Test
+    void testRunLayered_noTransformers_ShouldTouchNothing(){
+        TransformerRegistry registry = new TransformerRegistry("Test");
+
+        Engine testObject = new Engine(pathToTestFileFolder,outputTestFolder,registry);
+        testObject.setWriteJavaOutput(false);
+        testObject.setNumberOfTransformationsPerScope(0, com.github.ciselab.lampion.core.program.Engine.TransformationScope.global);
+
+        testObject.runLayered(buildModel(testObject.getCodeDirectory()), 0, layer -> {});
+
+        assertTrue(testObject.getTouchedTypes().isEmpty());
+    }
 }
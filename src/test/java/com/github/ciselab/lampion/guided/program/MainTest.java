@@ -1,18 +1,37 @@
 package com.github.ciselab.lampion.guided.program;
 
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
+import com.github.ciselab.lampion.guided.algorithms.MetamorphicPopulation;
 import com.github.ciselab.lampion.guided.configuration.Configuration;
+import com.github.ciselab.lampion.guided.inference.InferenceBackend;
+import com.github.ciselab.lampion.guided.inference.InferenceException;
 import com.github.ciselab.lampion.guided.metric.Metric;
 import com.github.ciselab.lampion.guided.metric.metrics.F1;
+import com.github.ciselab.lampion.guided.metric.metrics.MRR;
 import com.github.ciselab.lampion.guided.program.Main;
 import com.github.ciselab.lampion.guided.support.FileManagement;
 
+import com.github.ciselab.lampion.guided.support.GenotypeSupport;
 import com.github.ciselab.lampion.guided.support.MetricCache;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class MainTest {
 
+    @TempDir
+    Path tempDir;
+
     @AfterEach
     public void after() {
         FileManagement.removeOtherDirs(FileManagement.dataDir);
@@ -37,7 +56,55 @@ public class MainTest {
 
         Main.runSimpleGA();
     }
-    
+
      */
 
+    @Tag("File")
+    @Tag("Integration")
+    @Test
+    public void testWriteIndividualJSONs_inferenceFailed_writesPenalty() throws IOException, ParseException {
+        GenotypeSupport support = supportFor(new MRR());
+        support.setInferenceBackend(new InferenceBackend() {
+            @Override
+            public String runInference(String dataset, String destination) {
+                throw new InferenceException("code2vec failed on " + dataset, new IOException());
+            }
+        });
+        MetamorphicPopulation population = new MetamorphicPopulation(support, 1);
+        for (int seed = 1; seed <= 2; seed++) {
+            MetamorphicIndividual individual = new MetamorphicIndividual(support, 1);
+            individual.addGene(support.createTransformers(1, seed));
+            population.saveIndividual(individual);
+        }
+        population.getIndividuals().forEach(MetamorphicIndividual::getFitness);
+
+        Main.writeIndividualJSONs(population);
+
+        for (MetamorphicIndividual individual : population.getIndividuals()) {
+            assertTrue(individual.hasFailedInference());
+            assertTrue(individual.getResultPath().isEmpty());
+            JSONObject json = readJSON(Path.of(individual.getJavaPath().get() + ".json"));
+            assertEquals(true, json.get("inference_failed"));
+            assertEquals(MetamorphicIndividual.PENALTY_FITNESS, json.get("fitness"));
+            assertEquals(1L, json.get("age"));
+        }
+    }
+
+    private GenotypeSupport supportFor(Metric metric) throws IOException {
+        FileManagement.copyDirectory("src/test/resources/javafiles/javafiles_perMethodEach",
+                tempDir.resolve("initialDataset").resolve("test").toString());
+        Configuration config = new Configuration();
+        config.program.setDataDirectoryPath(tempDir.toString());
+        MetricCache cache = new MetricCache();
+        metric.setWeight(1);
+        cache.addMetric(metric);
+        cache.initWeights();
+        return new GenotypeSupport(cache, config);
+    }
+
+    private static JSONObject readJSON(Path file) throws IOException, ParseException {
+        try (FileReader reader = new FileReader(file.toFile())) {
+            return (JSONObject) new JSONParser().parse(reader);
+        }
+    }
 }
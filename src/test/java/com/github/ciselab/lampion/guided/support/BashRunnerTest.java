@@ -0,0 +1,114 @@
+package com.github.ciselab.lampion.guided.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.github.ciselab.lampion.guided.configuration.ProgramConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BashRunnerTest {
+
+    @TempDir
+    Path tempDir;
+
+    ProgramConfiguration config;
+    BashRunner testObject;
+
+    @BeforeEach
+    public void setup() {
+        config = new ProgramConfiguration();
+        config.setBashRetries(2);
+        testObject = new BashRunner(config, Duration.ofMillis(1));
+    }
+
+    @Test
+    public void testBackoff_doublesUpToAMinute() {
+        var runner = new BashRunner(config);
+
+        assertEquals(Duration.ofSeconds(1), runner.backoff(1));
+        assertEquals(Duration.ofSeconds(4), runner.backoff(3));
+        assertEquals(Duration.ofMinutes(1), runner.backoff(40));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunCommand_success_runsInWorkingDirectory() throws IOException {
+        testObject.runCommand("echo hi > out.txt", tempDir);
+
+        assertEquals("hi", Files.readString(tempDir.resolve("out.txt")).strip());
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunCommand_failing_isRetriedAndThrowsWithOutput() throws IOException {
+        var failure = assertThrows(CommandFailedException.class,
+                () -> testObject.runCommand("echo try >> tries.txt; echo broken >&2; exit 3", tempDir));
+
+        assertEquals(CommandFailedException.Reason.EXIT_CODE, failure.getReason());
+        assertEquals(OptionalInt.of(3), failure.getExitCode());
+        assertEquals(List.of("broken"), failure.getOutputTail());
+        // The first try and two retries
+        assertEquals(3, Files.readAllLines(tempDir.resolve("tries.txt")).size());
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunCommand_failingOnce_succeedsOnRetry() throws IOException {
+        testObject.runCommand("if [ -f tried ]; then echo ok > out.txt; else touch tried; exit 1; fi", tempDir);
+
+        assertEquals("ok", Files.readString(tempDir.resolve("out.txt")).strip());
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunCommand_overTimeout_isKilled() {
+        config.setBashRetries(0);
+        config.setBashTimeout(1);
+        long start = System.currentTimeMillis();
+
+        var failure = assertThrows(CommandFailedException.class, () -> testObject.runCommand("sleep 30", tempDir));
+
+        assertEquals(CommandFailedException.Reason.TIMEOUT, failure.getReason());
+        assertFalse(failure.getExitCode().isPresent());
+        assertTrue(System.currentTimeMillis() - start < 20_000);
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunCommand_muchOutputOnStderr_doesNotBlock() {
+        config.setBashRetries(0);
+        config.setBashTimeout(60);
+
+        var failure = assertThrows(CommandFailedException.class, () -> testObject.runCommand(
+                "for i in $(seq 1 20000); do echo \"line $i\" >&2; done; exit 1", tempDir));
+
+        assertEquals(CommandFailedException.Reason.EXIT_CODE, failure.getReason());
+        assertEquals(BashRunner.OUTPUT_TAIL_LINES, failure.getOutputTail().size());
+        assertEquals("line 20000", failure.getOutputTail().get(BashRunner.OUTPUT_TAIL_LINES - 1));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRunAsync_completesExceptionallyWithCommandFailure() {
+        config.setBashRetries(0);
+
+        CompletableFuture<Void> future = testObject.runAsync("exit 2", tempDir);
+
+        var failure = assertThrows(CompletionException.class, future::join);
+        assertTrue(failure.getCause() instanceof CommandFailedException);
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.ciselab.lampion.guided.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.Launcher;
+
+public class CodeWriterTest {
+
+    private static final List<String> FILES = List.of("AuthenticationRequestWrapper.java",
+            "TestMultithreadedMapper.java", "IncludePublicAnnotationsStandardDoclet.java");
+    private static final String TOUCHED = "org.apache.hadoop.mapreduce.lib.map.TestMultithreadedMapper";
+    private static final Path TOUCHED_FILE = Path.of("org", "apache", "hadoop", "mapreduce", "lib", "map", "TestMultithreadedMapper.java");
+    private static final Path UNTOUCHED_FILE = Path.of("org", "apache", "hadoop", "fs", "swift", "auth", "AuthenticationRequestWrapper.java");
+
+    @TempDir
+    Path tempDir;
+
+    Path codeDirectory;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        codeDirectory = tempDir.resolve("code");
+        Files.createDirectories(codeDirectory);
+        for (String file : FILES) {
+            Files.copy(Path.of("src/test/resources/code_files", file), codeDirectory.resolve(file));
+        }
+    }
+
+    private static Map<Path, String> readFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).collect(Collectors.toMap(directory::relativize, f -> {
+                try {
+                    return Files.readString(f);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+    }
+
+    @Test
+    public void testConstructor_noThreads_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> new CodeWriter(0));
+    }
+
+    @Tag("File")
+    @Test
+    public void testWrite_everyTypeHasAFile() throws IOException {
+        var testObject = new CodeWriter(1);
+
+        testObject.write(ParsedDataset.parse(codeDirectory), tempDir.resolve("out"), Set.of(TOUCHED));
+
+        assertEquals(FILES.size(), readFiles(tempDir.resolve("out")).size());
+    }
+
+    @Tag("File")
+    @Test
+    public void testWrite_touchedTypeIsPrinted_othersAreOriginals() throws IOException {
+        var testObject = new CodeWriter(1);
+        testObject.write(ParsedDataset.parse(codeDirectory), tempDir.resolve("out"), Set.of(TOUCHED));
+
+        var printed = readFiles(tempDir.resolve("out"));
+        assertEquals(Files.readString(codeDirectory.resolve("AuthenticationRequestWrapper.java")), printed.get(UNTOUCHED_FILE));
+        assertTrue(Files.isSameFile(codeDirectory.resolve("AuthenticationRequestWrapper.java"),
+                tempDir.resolve("out").resolve(UNTOUCHED_FILE)));
+        assertNotEquals(Files.readString(codeDirectory.resolve("TestMultithreadedMapper.java")), printed.get(TOUCHED_FILE));
+    }
+
+    @Tag("File")
+    @Test
+    public void testWrite_allTouched_sameAsPrettyPrint() throws IOException {
+        var testObject = new CodeWriter(1);
+        Launcher launcher = ParsedDataset.parse(codeDirectory);
+        Set<String> all = launcher.getModel().getAllTypes().stream().map(t -> t.getQualifiedName()).collect(Collectors.toSet());
+
+        testObject.write(launcher, tempDir.resolve("out"), all);
+        Launcher reference = ParsedDataset.parse(codeDirectory);
+        reference.setSourceOutputDirectory(tempDir.resolve("reference").toFile());
+        reference.prettyprint();
+
+        assertEquals(readFiles(tempDir.resolve("reference")), readFiles(tempDir.resolve("out")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testWrite_multipleThreads_sameAsOneThread() throws IOException {
+        Launcher launcher = ParsedDataset.parse(codeDirectory);
+        Set<String> all = launcher.getModel().getAllTypes().stream().map(t -> t.getQualifiedName()).collect(Collectors.toSet());
+
+        new CodeWriter(1).write(launcher, tempDir.resolve("sequential"), all);
+        new CodeWriter(3).write(ParsedDataset.parse(codeDirectory), tempDir.resolve("parallel"), all);
+
+        assertEquals(readFiles(tempDir.resolve("sequential")), readFiles(tempDir.resolve("parallel")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testWrite_overLinkedFiles_originalsAreUnchanged() throws IOException {
+        var testObject = new CodeWriter(1);
+        String original = Files.readString(codeDirectory.resolve("AuthenticationRequestWrapper.java"));
+        testObject.write(ParsedDataset.parse(codeDirectory), tempDir.resolve("out"), Set.of());
+
+        Launcher launcher = ParsedDataset.parse(codeDirectory);
+        Set<String> all = launcher.getModel().getAllTypes().stream().map(t -> t.getQualifiedName()).collect(Collectors.toSet());
+        testObject.write(launcher, tempDir.resolve("out"), all);
+
+        assertEquals(original, Files.readString(codeDirectory.resolve("AuthenticationRequestWrapper.java")));
+        assertFalse(Files.isSameFile(codeDirectory.resolve("AuthenticationRequestWrapper.java"),
+                tempDir.resolve("out").resolve(UNTOUCHED_FILE)));
+    }
+}
@@ -6,8 +6,13 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
 
+import com.github.ciselab.lampion.guided.algorithms.GeneticAlgorithm;
 import com.github.ciselab.lampion.guided.configuration.ConfigManagement;
+import com.github.ciselab.lampion.guided.inference.InferenceBackend;
+import com.github.ciselab.lampion.guided.inference.PathContextExtractor;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
@@ -79,6 +84,20 @@ public class ConfigManagerTest {
         boolean matchesEitherPath = receivedPath.equals(windowsPath) || receivedPath.equals(linuxPath);
 
         assertTrue(matchesEitherPath);
+        assertFalse(config.program.useInferenceWorker());
+        assertEquals(InferenceBackend.Kind.FAKE, config.program.getInferenceBackend());
+        assertEquals(4, config.program.getEvaluationThreads());
+        assertTrue(config.program.useBatchInference());
+        assertEquals(8, config.program.getPrefixCacheSize());
+        assertEquals(2, config.program.getPrintThreads());
+        assertEquals(PathContextExtractor.Kind.JAVAEXTRACTOR, config.program.getExtractor());
+        assertEquals(3, config.program.getExtractorThreads());
+        assertEquals(500, config.program.getPathContextCacheSize());
+        assertEquals(20000, config.program.getPredictionCacheSize());
+        assertEquals(100, config.program.getParetoCapacity());
+        assertEquals(Optional.of(Path.of("stores/fitness.log")), config.program.getFitnessStore());
+        assertEquals(5, config.program.getBashRetries());
+        assertEquals(600, config.program.getBashTimeout());
     }
 
 
@@ -99,6 +118,7 @@ public class ConfigManagerTest {
         assertEquals(12, config.genetic.getPopSize());
         assertEquals(6, config.genetic.getTournamentSize());
         assertEquals(4, config.genetic.getMaxSteadyGenerations());
+        assertEquals(GeneticAlgorithm.Selection.NSGA2, config.genetic.getSelection());
     }
 
     @Tag("File")
@@ -7,6 +7,10 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
 
 import com.github.ciselab.lampion.guided.configuration.Configuration;
 import com.github.ciselab.lampion.guided.support.FileManagement;
@@ -15,6 +19,7 @@ import com.github.ciselab.lampion.guided.support.MetricCache;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class FileManagementTest {
 
@@ -76,4 +81,115 @@ public class FileManagementTest {
     }
 
      */
+
+    @TempDir
+    Path tempDir;
+
+    @Tag("File")
+    @Test
+    public void testCreateLinkedDirectory_linksAllButExcluded() throws IOException {
+        Path original = tempDir.resolve("original");
+        Files.createDirectories(original.resolve("data"));
+        Files.createDirectories(original.resolve("models"));
+        Files.writeString(original.resolve("script.sh"), "echo hi");
+        Files.writeString(original.resolve("results.txt"), "results");
+        Path scratch = tempDir.resolve("scratch");
+
+        FileManagement.createLinkedDirectory(original, scratch, Set.of("data", "results.txt"));
+
+        assertTrue(Files.isSymbolicLink(scratch.resolve("models")));
+        assertTrue(Files.isSymbolicLink(scratch.resolve("script.sh")));
+        assertEquals("echo hi", Files.readString(scratch.resolve("script.sh")));
+        assertFalse(Files.exists(scratch.resolve("data")));
+        assertFalse(Files.exists(scratch.resolve("results.txt")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testCreateLinkedDirectory_calledTwice_keepsExistingEntries() throws IOException {
+        Path original = tempDir.resolve("original");
+        Files.createDirectories(original);
+        Files.writeString(original.resolve("script.sh"), "echo hi");
+        Path scratch = tempDir.resolve("scratch");
+
+        FileManagement.createLinkedDirectory(original, scratch, Set.of());
+        FileManagement.createLinkedDirectory(original, scratch, Set.of());
+
+        assertTrue(Files.isSymbolicLink(scratch.resolve("script.sh")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRemoveDirectory_withLinks_keepsLinkTargets() throws IOException {
+        Path original = tempDir.resolve("original");
+        Files.createDirectories(original.resolve("models"));
+        Files.writeString(original.resolve("models").resolve("model.bin"), "model");
+        Path scratch = tempDir.resolve("scratch");
+        FileManagement.createLinkedDirectory(original, scratch, Set.of());
+        Files.writeString(scratch.resolve("log.txt"), "log");
+
+        FileManagement.removeDirectory(scratch);
+
+        assertFalse(Files.exists(scratch));
+        assertTrue(Files.exists(original.resolve("models").resolve("model.bin")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRemoveDirectory_notExisting_doesNothing() throws IOException {
+        FileManagement.removeDirectory(tempDir.resolve("not_there"));
+
+        assertTrue(Files.exists(tempDir));
+    }
+
+    @Tag("File")
+    @Test
+    public void testCopyDirectory_copiesNestedFilesAndReplacesExisting() throws IOException {
+        Path source = tempDir.resolve("source");
+        Files.createDirectories(source.resolve("org").resolve("example"));
+        Files.writeString(source.resolve("org").resolve("example").resolve("A.java"), "class A {}");
+        Path destination = tempDir.resolve("destination");
+        Files.createDirectories(destination.resolve("org").resolve("example"));
+        Files.writeString(destination.resolve("org").resolve("example").resolve("A.java"), "old");
+
+        FileManagement.copyDirectory(source.toString(), destination.toString());
+
+        assertEquals("class A {}", Files.readString(destination.resolve("org").resolve("example").resolve("A.java")));
+        assertTrue(Files.exists(source.resolve("org").resolve("example").resolve("A.java")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testCreateDirs_createsTrainingAndValidation() throws IOException {
+        FileManagement.createDirs(tempDir);
+        FileManagement.createDirs(tempDir);
+
+        assertTrue(Files.isDirectory(tempDir.resolve("training")));
+        assertTrue(Files.isDirectory(tempDir.resolve("validation")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testMoveFile_replacesTarget() throws IOException {
+        Path source = Files.writeString(tempDir.resolve("new.c2v"), "new");
+        Path target = Files.writeString(tempDir.resolve("data.c2v"), "old");
+
+        FileManagement.moveFile(source, target);
+
+        assertFalse(Files.exists(source));
+        assertEquals("new", Files.readString(target));
+    }
+
+    @Tag("File")
+    @Test
+    public void testRemoveOtherDirs_keepsFirstGeneration() throws IOException {
+        Files.createDirectories(tempDir.resolve("generation_0"));
+        Files.createDirectories(tempDir.resolve("gen1").resolve("abc"));
+        Files.writeString(tempDir.resolve("gen1").resolve("abc").resolve("A.java"), "class A {}");
+
+        FileManagement.removeOtherDirs(tempDir.toString());
+
+        assertTrue(Files.exists(tempDir.resolve("generation_0")));
+        assertFalse(Files.exists(tempDir.resolve("gen1")));
+    }
 }
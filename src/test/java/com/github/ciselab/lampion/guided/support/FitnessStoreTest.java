@@ -0,0 +1,273 @@
+package com.github.ciselab.lampion.guided.support;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+
+import com.github.ciselab.lampion.core.transformations.transformers.IfFalseElseTransformer;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
+import com.github.ciselab.lampion.guided.configuration.Configuration;
+import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.MetricVector;
+import com.github.ciselab.lampion.guided.metric.metrics.MRR;
+import com.github.ciselab.lampion.guided.metric.metrics.Transformations;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FitnessStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Tag("File")
+    @Test
+    public void testPut_reopened_isFound() throws IOException {
+        Path file = tempDir.resolve("store.log");
+        try (FitnessStore store = FitnessStore.open(file, "context")) {
+            store.put("[IfTrueTransformer:5]", Map.of("MRR", 0.5, "F1", Double.NaN));
+        }
+
+        try (FitnessStore store = FitnessStore.open(file, "context")) {
+            assertEquals(1, store.size());
+            Map<String, Double> metrics = store.get("[IfTrueTransformer:5]").orElseThrow();
+            assertEquals(0.5, metrics.get("MRR"));
+            assertTrue(Double.isNaN(metrics.get("F1")));
+            assertEquals(Optional.empty(), store.get("[IfTrueTransformer:6]"));
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testGet_otherContext_isIgnored() throws IOException {
+        Path file = tempDir.resolve("store.log");
+        try (FitnessStore store = FitnessStore.open(file, "first")) {
+            store.put("[IfTrueTransformer:5]", Map.of("MRR", 0.5));
+        }
+
+        try (FitnessStore store = FitnessStore.open(file, "second")) {
+            assertEquals(0, store.size());
+            assertEquals(Optional.empty(), store.get("[IfTrueTransformer:5]"));
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testOpen_tornAndCorruptRecords_areSkipped() throws IOException {
+        Path file = tempDir.resolve("store.log");
+        try (FitnessStore store = FitnessStore.open(file, "context")) {
+            store.put("[IfTrueTransformer:1]", Map.of("MRR", 0.1));
+        }
+        // A record with a wrong checksum, and a record that was torn by a crash
+        Files.writeString(file, "context\t[IfTrueTransformer:2]\tMRR=0.2\t0\n"
+                + "context\t[IfTrueTransformer:3]\tMR", StandardOpenOption.APPEND);
+
+        try (FitnessStore store = FitnessStore.open(file, "context")) {
+            assertEquals(1, store.size());
+            assertEquals(Optional.empty(), store.get("[IfTrueTransformer:2]"));
+            assertEquals(Optional.empty(), store.get("[IfTrueTransformer:3]"));
+
+            store.put("[IfTrueTransformer:4]", Map.of("MRR", 0.4));
+        }
+
+        try (FitnessStore store = FitnessStore.open(file, "context")) {
+            assertEquals(2, store.size());
+            assertEquals(0.4, store.get("[IfTrueTransformer:4]").orElseThrow().get("MRR"));
+        }
+        assertTrue(Files.readString(file, StandardCharsets.UTF_8).endsWith("\n"));
+    }
+
+    @Tag("File")
+    @Test
+    public void testGet_recordOfOtherStoreOnSameFile_isFound() throws IOException {
+        Path file = tempDir.resolve("store.log");
+        try (FitnessStore first = FitnessStore.open(file, "context");
+             FitnessStore second = FitnessStore.open(file, "context")) {
+            first.put("[IfTrueTransformer:5]", Map.of("MRR", 0.5));
+            second.put("[IfTrueTransformer:6]", Map.of("MRR", 0.6));
+
+            assertEquals(0.5, second.get("[IfTrueTransformer:5]").orElseThrow().get("MRR"));
+            assertEquals(0.6, first.get("[IfTrueTransformer:6]").orElseThrow().get("MRR"));
+        }
+    }
+
+    @Test
+    public void testOpen_contextWithTab_throwsException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> FitnessStore.open(tempDir.resolve("store.log"), "a\tb"));
+    }
+
+    @Test
+    public void testGenotypeOf_equalIndividuals_isEqual() {
+        GenotypeSupport support = new GenotypeSupport(new MetricCache(), new Configuration());
+        MetamorphicIndividual a = new MetamorphicIndividual(support, 0);
+        a.addGene(new IfTrueTransformer(5));
+        a.addGene(new IfFalseElseTransformer(7));
+        MetamorphicIndividual b = new MetamorphicIndividual(support, 3);
+        b.addGene(new IfTrueTransformer(5));
+        b.addGene(new IfFalseElseTransformer(7));
+        MetamorphicIndividual c = new MetamorphicIndividual(support, 0);
+        c.addGene(new IfFalseElseTransformer(7));
+        c.addGene(new IfTrueTransformer(5));
+
+        assertEquals(FitnessStore.genotypeOf(a), FitnessStore.genotypeOf(b));
+        assertNotEquals(FitnessStore.genotypeOf(a), FitnessStore.genotypeOf(c));
+    }
+
+    @Tag("File")
+    @Test
+    public void testContextOf_changedDataset_isDifferent() throws IOException {
+        Configuration config = new Configuration();
+        Path dataset = Files.createDirectories(tempDir.resolve("dataset"));
+        Files.writeString(dataset.resolve("A.java"), "class A {}");
+        Path model = tempDir.resolve("model.release");
+        Files.writeString(tempDir.resolve("model.release.data"), "weights");
+
+        String before = FitnessStore.contextOf(config, dataset, model);
+        assertEquals(before, FitnessStore.contextOf(config, dataset, model));
+
+        Files.writeString(dataset.resolve("A.java"), "class A { }");
+        String changedDataset = FitnessStore.contextOf(config, dataset, model);
+        assertNotEquals(before, changedDataset);
+
+        Files.writeString(tempDir.resolve("model.release.data"), "other weights");
+        assertNotEquals(changedDataset, FitnessStore.contextOf(config, dataset, model));
+    }
+
+    @Tag("File")
+    @Test
+    public void testContextOf_otherSeed_isSame() throws IOException {
+        Configuration config = new Configuration();
+        Path dataset = Files.createDirectories(tempDir.resolve("dataset"));
+        Path model = tempDir.resolve("model.release");
+
+        String before = FitnessStore.contextOf(config, dataset, model);
+        config.program.setSeed(config.program.getSeed() + 1);
+
+        assertEquals(before, FitnessStore.contextOf(config, dataset, model));
+    }
+
+    @Tag("File")
+    @Test
+    public void testContextOf_withPrefixCache_isDifferent() throws IOException {
+        Configuration config = new Configuration();
+        Path dataset = Files.createDirectories(tempDir.resolve("dataset"));
+        Path model = tempDir.resolve("model.release");
+
+        String before = FitnessStore.contextOf(config, dataset, model);
+        config.program.setPrefixCacheSize(8);
+
+        assertNotEquals(before, FitnessStore.contextOf(config, dataset, model));
+    }
+
+    @Tag("File")
+    @Tag("Integration")
+    @Test
+    public void testMetricCache_withStore_findsResultsOfOtherRun() throws IOException {
+        Path file = tempDir.resolve("store.log");
+        try (FitnessStore store = FitnessStore.open(file, "context")) {
+            MetamorphicIndividual evaluated = individualWithStore(store, new Transformations());
+            evaluated.addGene(new IfTrueTransformer(5));
+            double fitness = evaluated.getFitness();
+
+            try (FitnessStore other = FitnessStore.open(file, "context")) {
+                MetamorphicIndividual next = individualWithStore(other, new Transformations());
+                next.addGene(new IfTrueTransformer(5));
+
+                assertTrue(next.isEvaluated());
+                assertEquals(fitness, next.getFitness());
+            }
+        }
+    }
+
+    @Tag("File")
+    @Tag("Integration")
+    @Test
+    public void testMetricCache_storeMissesActiveMetric_isNotEvaluated() throws IOException {
+        Path file = tempDir.resolve("store.log");
+        try (FitnessStore store = FitnessStore.open(file, "context")) {
+            MetamorphicIndividual evaluated = individualWithStore(store, new Transformations());
+            evaluated.addGene(new IfTrueTransformer(5));
+            evaluated.getFitness();
+
+            MetamorphicIndividual next = individualWithStore(store, new MRR());
+            next.addGene(new IfTrueTransformer(5));
+
+            assertFalse(next.isEvaluated());
+        }
+    }
+
+    @Tag("File")
+    @Tag("Integration")
+    @Test
+    public void testWriteIndividualJSON_storeHit_isNotTransformedNorInferred() throws IOException, ParseException {
+        Path file = tempDir.resolve("store.log");
+        try (FitnessStore store = FitnessStore.open(file, "context")) {
+            MetricCache cache = new MetricCache();
+            Metric mrr = new MRR();
+            mrr.setWeight(1);
+            cache.addMetric(mrr);
+            cache.initWeights();
+            cache.setFitnessStore(store);
+            Configuration config = new Configuration();
+            config.program.setDataDirectoryPath(tempDir.toString());
+            GenotypeSupport support = new GenotypeSupport(cache, config);
+            support.setInferenceBackend((dataset, destination) -> fail("The stored individual was inferred"));
+            MetamorphicIndividual individual = new MetamorphicIndividual(support, 0);
+            individual.addGene(new IfTrueTransformer(5));
+            store.put(FitnessStore.genotypeOf(individual), Map.of(mrr.getName(), 0.5));
+
+            individual.writeIndividualJSON();
+
+            // The transformations would have set the java path
+            assertTrue(individual.getJavaPath().isEmpty());
+            assertTrue(individual.getResultPath().isEmpty());
+            Path json = tempDir.resolve("gen0").resolve(individual.hexHash() + ".json");
+            try (FileReader reader = new FileReader(json.toFile())) {
+                assertEquals(0.5, ((JSONObject) new JSONParser().parse(reader)).get(mrr.getName()));
+            }
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testMetricCache_unreadMetric_isNotStored() throws IOException {
+        Path file = tempDir.resolve("store.log");
+        try (FitnessStore store = FitnessStore.open(file, "context")) {
+            MetricCache cache = new MetricCache();
+            Metric transformations = new Transformations();
+            transformations.setWeight(1);
+            cache.addMetric(transformations);
+            cache.initWeights();
+            cache.setFitnessStore(store);
+            MetamorphicIndividual individual = new MetamorphicIndividual(new GenotypeSupport(cache, new Configuration()), 0);
+            individual.addGene(new IfTrueTransformer(5));
+            MetricVector unread = cache.newMetricVector();
+            unread.set(cache.slotOf(transformations), Double.NaN);
+
+            cache.storeMetricResults(individual, unread);
+
+            assertEquals(0, store.size());
+        }
+    }
+
+    private static MetamorphicIndividual individualWithStore(FitnessStore store, Metric metric) {
+        MetricCache cache = new MetricCache();
+        metric.setWeight(1);
+        cache.addMetric(metric);
+        cache.initWeights();
+        cache.setFitnessStore(store);
+        return new MetamorphicIndividual(new GenotypeSupport(cache, new Configuration()), 0);
+    }
+}
@@ -5,6 +5,7 @@ import com.github.ciselab.lampion.core.transformations.transformers.BaseTransfor
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
@@ -17,11 +18,15 @@ import com.github.ciselab.lampion.guided.support.MetricCache;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class GenotypeSupportTest {
 
+    @TempDir
+    Path tempDir;
+
     @AfterEach
     public void after() {
 
@@ -75,8 +80,76 @@ public class GenotypeSupportTest {
             }
         }
         String name = support.runTransformations(testObject, "code_files");
-        support.runCode2vec(name,name+"/results/");
+        support.runInference(name,name+"/results/");
 
         assertTrue(support.getTotalCode2vevTime() > 0);
     }
+
+    @Tag("File")
+    @Test
+    public void reserveOutputDirectory_sameHash_givesSeparateFolders() {
+        var support = new GenotypeSupport(new MetricCache(), new Configuration());
+
+        Path first = support.reserveOutputDirectory(tempDir, "abcdef");
+        Path second = support.reserveOutputDirectory(tempDir, "abcdef");
+
+        assertNotEquals(first, second);
+        assertTrue(Files.isDirectory(first));
+        assertTrue(Files.isDirectory(second));
+        assertEquals("abcdef", first.getFileName().toString());
+        assertTrue(second.getFileName().toString().startsWith("abcdef"));
+    }
+
+    @Tag("File")
+    @Test
+    public void reserveGenotypeFile_sameIndividual_givesSeparateFiles() {
+        var config = new Configuration();
+        config.program.setDataDirectoryPath(tempDir.toString());
+        var support = new GenotypeSupport(new MetricCache(), config);
+        var individual = new MetamorphicIndividual(support, 2);
+
+        Path first = support.reserveGenotypeFile(individual);
+        Path second = support.reserveGenotypeFile(individual);
+
+        assertNotEquals(first, second);
+        assertTrue(Files.isRegularFile(first));
+        assertTrue(Files.isRegularFile(second));
+        assertEquals(tempDir.resolve("gen2").resolve(individual.hexHash() + ".json").toAbsolutePath(), first);
+    }
+
+    @Test
+    public void genotypeSeed_dependsOnlyOnTransformers() {
+        var support = new GenotypeSupport(new MetricCache(), new Configuration());
+        List<Transformer> genes = List.of(support.createTransformers(0, 1), support.createTransformers(2, 2));
+
+        assertEquals(GenotypeSupport.genotypeSeed(genes), GenotypeSupport.genotypeSeed(
+                List.of(support.createTransformers(0, 1), support.createTransformers(2, 2))));
+        assertNotEquals(GenotypeSupport.genotypeSeed(genes), GenotypeSupport.genotypeSeed(
+                List.of(support.createTransformers(0, 1), support.createTransformers(2, 3))));
+        assertNotEquals(GenotypeSupport.genotypeSeed(genes), GenotypeSupport.genotypeSeed(
+                List.of(support.createTransformers(2, 2), support.createTransformers(0, 1))));
+    }
+
+    @Test
+    public void engineSeed_withoutFitnessStore_isSeedOfRun() {
+        var config = new Configuration();
+        config.program.setSeed(5);
+        var support = new GenotypeSupport(new MetricCache(), config);
+        List<Transformer> genes = List.of(support.createTransformers(0, 1));
+
+        assertEquals(5, support.engineSeed(genes, false));
+        assertEquals(5, support.engineSeed(genes, true));
+    }
+
+    @Test
+    public void engineSeed_withFitnessStore_doesNotDependOnSeedOfRun() {
+        var config = new Configuration();
+        config.program.setSeed(5);
+        config.program.setFitnessStore(tempDir.resolve("store.log").toString());
+        var support = new GenotypeSupport(new MetricCache(), config);
+        List<Transformer> genes = List.of(support.createTransformers(0, 1));
+
+        assertEquals(GenotypeSupport.genotypeSeed(genes), support.engineSeed(genes, false));
+        assertEquals(GenotypeSupport.SHARED_SEED, support.engineSeed(genes, true));
+    }
 }
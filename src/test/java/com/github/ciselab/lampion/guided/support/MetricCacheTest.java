@@ -13,6 +13,9 @@ import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.guided.configuration.ConfigManagement;
 import com.github.ciselab.lampion.guided.configuration.Configuration;
 import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.metrics.InputLength;
+import com.github.ciselab.lampion.guided.metric.metrics.MRR;
+import com.github.ciselab.lampion.guided.metric.metrics.Transformations;
 import com.github.ciselab.lampion.guided.support.FileManagement;
 import com.github.ciselab.lampion.guided.support.GenotypeSupport;
 import com.github.ciselab.lampion.guided.support.MetricCache;
@@ -440,4 +443,141 @@ public class MetricCacheTest {
         assertEquals(returnValue,testObject.getMetricResults(a).get().get(stub),0.001);
     }
 
+    @Test
+    public void testSlotOf_sameMetric_sameSlot_otherMetric_otherSlot(){
+        MetricCache testObject = new MetricCache();
+        StubMetric stub1 = new StubMetric();
+        StubMetric stub2 = new StubMetric();
+
+        int slot = testObject.slotOf(stub1);
+
+        assertEquals(slot, testObject.slotOf(stub1));
+        assertNotEquals(slot, testObject.slotOf(stub2));
+    }
+
+    @Test
+    public void testFitness_weightsActiveMetricsAndFlipsNegativeWeights(){
+        MetricCache testObject = new MetricCache();
+        StubMetric minimized = new StubMetric();
+        minimized.setWeight(0.5);
+        StubMetric maximized = new StubMetric();
+        maximized.setWeight(-0.5);
+        StubMetric unbounded = new StubMetric();
+        unbounded.setWeight(0.5);
+        unbounded.canBeBiggerThanOne = true;
+        testObject.addMetric(minimized);
+        testObject.addMetric(maximized);
+        testObject.addMetric(unbounded);
+
+        var vector = testObject.newMetricVector();
+        vector.set(testObject.slotOf(minimized), 0.2);
+        vector.set(testObject.slotOf(maximized), 0.2);
+        vector.set(testObject.slotOf(unbounded), 7);
+
+        assertEquals(0.5 * 0.2 + 0.5 * 0.8, testObject.fitness(vector), 0.0001);
+    }
+
+    @Test
+    public void testFitness_weightChangedAfterAdding_usesNewWeight(){
+        MetricCache testObject = new MetricCache();
+        StubMetric stub = new StubMetric();
+        stub.setWeight(1);
+        testObject.addMetric(stub);
+        var vector = testObject.newMetricVector();
+        vector.set(testObject.slotOf(stub), 0.5);
+        assertEquals(0.5, testObject.fitness(vector), 0.0001);
+
+        stub.setWeight(0.5);
+
+        assertEquals(0.25, testObject.fitness(vector), 0.0001);
+    }
+
+    @Test
+    public void testToMap_isInverseOfToVector(){
+        MetricCache testObject = new MetricCache();
+        StubMetric stub1 = new StubMetric();
+        StubMetric stub2 = new StubMetric();
+        Map<Metric,Double> results = new HashMap<>();
+        results.put(stub1,0.3);
+        results.put(stub2,0.7);
+
+        assertEquals(results, testObject.toMap(testObject.toVector(results)));
+    }
+
+    @Test
+    public void testObjectives_flipsNegativeWeights_missingIsWorst_skipsUnweighted(){
+        MetricCache testObject = new MetricCache();
+        StubMetric minimized = new StubMetric();
+        minimized.setWeight(0.5);
+        StubMetric maximized = new StubMetric();
+        maximized.setWeight(-0.5);
+        StubMetric unbounded = new StubMetric();
+        unbounded.setWeight(0.5);
+        unbounded.canBeBiggerThanOne = true;
+        StubMetric missing = new StubMetric();
+        missing.setWeight(0.5);
+        testObject.addMetric(minimized);
+        testObject.addMetric(maximized);
+        testObject.addMetric(unbounded);
+        testObject.addMetric(missing);
+
+        var vector = testObject.newMetricVector();
+        vector.set(testObject.slotOf(minimized), 0.2);
+        vector.set(testObject.slotOf(maximized), 0.2);
+        vector.set(testObject.slotOf(unbounded), 7);
+
+        double[] objectives = testObject.objectives(vector);
+
+        assertEquals(3, objectives.length);
+        assertEquals(0.2, objectives[0], 0.0001);
+        assertEquals(0.8, objectives[1], 0.0001);
+        assertEquals(Double.NEGATIVE_INFINITY, objectives[2]);
+    }
+
+    @Test
+    public void testGetRequirement_noMetrics_isInference(){
+        MetricCache testObject = new MetricCache();
+
+        assertEquals(Metric.Requirement.INFERENCE, testObject.getRequirement());
+    }
+
+    @Test
+    public void testGetRequirement_onlyActiveMetricsCount(){
+        MetricCache testObject = new MetricCache();
+        Metric transformations = new Transformations();
+        transformations.setWeight(1);
+        Metric mrr = new MRR();
+        testObject.addMetric(transformations);
+        testObject.addMetric(mrr);
+
+        assertEquals(Metric.Requirement.GENOTYPE, testObject.getRequirement());
+    }
+
+    @Test
+    public void testGetRequirement_isFurthestOfActiveMetrics(){
+        MetricCache testObject = new MetricCache();
+        Metric transformations = new Transformations();
+        transformations.setWeight(0.5);
+        Metric inputLength = new InputLength();
+        inputLength.setWeight(0.5);
+        testObject.addMetric(transformations);
+        testObject.addMetric(inputLength);
+
+        assertEquals(Metric.Requirement.SOURCES, testObject.getRequirement());
+
+        Metric mrr = new MRR();
+        mrr.setWeight(0.5);
+        testObject.addMetric(mrr);
+
+        assertEquals(Metric.Requirement.INFERENCE, testObject.getRequirement());
+    }
+
+    @Test
+    public void testGetRequirement_noActiveMetrics_considersAllMetrics(){
+        MetricCache testObject = new MetricCache();
+        testObject.addMetric(new Transformations());
+        testObject.addMetric(new InputLength());
+
+        assertEquals(Metric.Requirement.SOURCES, testObject.getRequirement());
+    }
 }
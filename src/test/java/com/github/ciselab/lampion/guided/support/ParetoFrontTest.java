@@ -4,15 +4,18 @@ import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
 import com.github.ciselab.lampion.guided.configuration.Configuration;
 import com.github.ciselab.lampion.guided.helpers.StubMetric;
 import com.github.ciselab.lampion.guided.metric.Metric;
+import com.github.ciselab.lampion.guided.metric.MetricVector;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import static com.github.ciselab.lampion.guided.helpers.Utils.makeEmptyCache;
 import static com.github.ciselab.lampion.guided.helpers.Utils.storeIndividualForCaching;
@@ -215,7 +218,8 @@ public class ParetoFrontTest {
         MetamorphicIndividual b = new MetamorphicIndividual(support,0);
         b.populateIndividual(r,10);
 
-        boolean dominant = ParetoFront.paretoDominant(a,b,new ArrayList<>());
+        ParetoFront pareto = new ParetoFront(cache);
+        boolean dominant = pareto.paretoDominant(a,b,new ArrayList<>());
 
         assertFalse(dominant);
     }
@@ -236,8 +240,9 @@ public class ParetoFrontTest {
         MetamorphicIndividual a = new MetamorphicIndividual(support,0);
         a.populateIndividual(r,5);
 
-        assertFalse(ParetoFront.paretoDominant(a,null,metrics));
-        assertFalse(ParetoFront.paretoDominant(null,a,metrics));
+        ParetoFront pareto = new ParetoFront(cache);
+        assertFalse(pareto.paretoDominant(a,null,metrics));
+        assertFalse(pareto.paretoDominant(null,a,metrics));
     }
 
 
@@ -258,11 +263,12 @@ public class ParetoFrontTest {
         MetamorphicIndividual b = new MetamorphicIndividual(support,0);
         b.populateIndividual(r,9);
 
-        stub.valuesToReturn.put(a,0.5);
-        stub.valuesToReturn.put(b,0.6);
+        storeMetric(cache,stub,a,0.5);
+        storeMetric(cache,stub,b,0.6);
 
-        assertFalse(ParetoFront.paretoDominant(a,b,metrics));
-        assertTrue(ParetoFront.paretoDominant(b,a,metrics));
+        ParetoFront pareto = new ParetoFront(cache);
+        assertFalse(pareto.paretoDominant(a,b,metrics));
+        assertTrue(pareto.paretoDominant(b,a,metrics));
     }
 
     @Test
@@ -282,11 +288,12 @@ public class ParetoFrontTest {
         MetamorphicIndividual b = new MetamorphicIndividual(support,0);
         b.populateIndividual(r,9);
 
-        stub.valuesToReturn.put(a,0.8);
-        stub.valuesToReturn.put(b,0.4);
+        storeMetric(cache,stub,a,0.8);
+        storeMetric(cache,stub,b,0.4);
 
-        assertTrue(ParetoFront.paretoDominant(a,b,metrics));
-        assertFalse(ParetoFront.paretoDominant(b,a,metrics));
+        ParetoFront pareto = new ParetoFront(cache);
+        assertTrue(pareto.paretoDominant(a,b,metrics));
+        assertFalse(pareto.paretoDominant(b,a,metrics));
     }
 
 
@@ -308,13 +315,14 @@ public class ParetoFrontTest {
         MetamorphicIndividual b = new MetamorphicIndividual(support,0);
         b.populateIndividual(r,9);
 
-        stub1.valuesToReturn.put(a,0.8);
-        stub1.valuesToReturn.put(b,0.4);
-        stub2.valuesToReturn.put(a,0.8);
-        stub2.valuesToReturn.put(b,0.4);
+        storeMetric(cache,stub1,a,0.8);
+        storeMetric(cache,stub1,b,0.4);
+        storeMetric(cache,stub2,a,0.8);
+        storeMetric(cache,stub2,b,0.4);
 
-        assertTrue(ParetoFront.paretoDominant(a,b,metrics));
-        assertFalse(ParetoFront.paretoDominant(b,a,metrics));
+        ParetoFront pareto = new ParetoFront(cache);
+        assertTrue(pareto.paretoDominant(a,b,metrics));
+        assertFalse(pareto.paretoDominant(b,a,metrics));
     }
 
     @Test
@@ -335,13 +343,14 @@ public class ParetoFrontTest {
         MetamorphicIndividual b = new MetamorphicIndividual(support,0);
         b.populateIndividual(r,9);
 
-        stub1.valuesToReturn.put(a,0.8);
-        stub1.valuesToReturn.put(b,0.0);
-        stub2.valuesToReturn.put(a,0.0);
-        stub2.valuesToReturn.put(b,0.8);
+        storeMetric(cache,stub1,a,0.8);
+        storeMetric(cache,stub1,b,0.0);
+        storeMetric(cache,stub2,a,0.0);
+        storeMetric(cache,stub2,b,0.8);
 
-        assertFalse(ParetoFront.paretoDominant(a,b,metrics));
-        assertFalse(ParetoFront.paretoDominant(b,a,metrics));
+        ParetoFront pareto = new ParetoFront(cache);
+        assertFalse(pareto.paretoDominant(a,b,metrics));
+        assertFalse(pareto.paretoDominant(b,a,metrics));
     }
 
 
@@ -365,14 +374,15 @@ public class ParetoFrontTest {
         MetamorphicIndividual b = new MetamorphicIndividual(support,0);
         b.populateIndividual(r,9);
 
-        stub1.valuesToReturn.put(a,0.8);
-        stub2.valuesToReturn.put(a,0.8);
+        storeMetric(cache,stub1,a,0.8);
+        storeMetric(cache,stub2,a,0.8);
 
-        stub1.valuesToReturn.put(b,0.0);
-        stub2.valuesToReturn.put(b,0.8);
+        storeMetric(cache,stub1,b,0.0);
+        storeMetric(cache,stub2,b,0.8);
 
-        assertTrue(ParetoFront.paretoDominant(a,b,metrics));
-        assertFalse(ParetoFront.paretoDominant(b,a,metrics));
+        ParetoFront pareto = new ParetoFront(cache);
+        assertTrue(pareto.paretoDominant(a,b,metrics));
+        assertFalse(pareto.paretoDominant(b,a,metrics));
     }
 
     @Test
@@ -395,14 +405,15 @@ public class ParetoFrontTest {
         MetamorphicIndividual b = new MetamorphicIndividual(support,0);
         b.populateIndividual(r,9);
 
-        stub1.valuesToReturn.put(a,0.8);
-        stub2.valuesToReturn.put(a,0.8);
+        storeMetric(cache,stub1,a,0.8);
+        storeMetric(cache,stub2,a,0.8);
 
-        stub1.valuesToReturn.put(b,0.8);
-        stub2.valuesToReturn.put(b,0.0);
+        storeMetric(cache,stub1,b,0.8);
+        storeMetric(cache,stub2,b,0.0);
 
-        assertTrue(ParetoFront.paretoDominant(a,b,metrics));
-        assertFalse(ParetoFront.paretoDominant(b,a,metrics));
+        ParetoFront pareto = new ParetoFront(cache);
+        assertTrue(pareto.paretoDominant(a,b,metrics));
+        assertFalse(pareto.paretoDominant(b,a,metrics));
     }
 
     @Test
@@ -420,7 +431,8 @@ public class ParetoFrontTest {
 
         storeIndividualForCaching(a,cache,stub,0.5);
 
-        boolean dominant = ParetoFront.paretoDominant(a,a,new ArrayList<>());
+        ParetoFront pareto = new ParetoFront(cache);
+        boolean dominant = pareto.paretoDominant(a,a,new ArrayList<>());
 
         assertFalse(dominant);
     }
@@ -441,11 +453,176 @@ public class ParetoFrontTest {
         List<Metric> metrics = new ArrayList<>();
         metrics.add(stub);
 
-        stub.valuesToReturn.put(a,fitness);
-        stub.valuesToReturn.put(b,fitness);
+        storeMetric(cache,stub,a,fitness);
+        storeMetric(cache,stub,b,fitness);
 
-        assertFalse(ParetoFront.paretoDominant(a,b,metrics));
-        assertFalse(ParetoFront.paretoDominant(b,a,metrics));
+        ParetoFront pareto = new ParetoFront(cache);
+        assertFalse(pareto.paretoDominant(a,b,metrics));
+        assertFalse(pareto.paretoDominant(b,a,metrics));
     }
 
+    @Tag("Integration")
+    @Test
+    public void testAddToPareto_usesStoredMetrics_doesNotApplyMetrics(){
+        Random r = new Random(5);
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+
+        StubMetric stub = new StubMetric() {
+            @Override
+            public Double apply(MetamorphicIndividual individual) {
+                throw new AssertionError("The metric should not be applied again");
+            }
+        };
+        stub.setWeight(1);
+        cache.addMetric(stub);
+
+        MetamorphicIndividual a = new MetamorphicIndividual(support,0);
+        a.populateIndividual(r,5);
+        MetamorphicIndividual b = new MetamorphicIndividual(support,0);
+        b.populateIndividual(r,3);
+        storeMetric(cache,stub,a,0.4);
+        storeMetric(cache,stub,b,0.6);
+
+        ParetoFront pareto = new ParetoFront(cache);
+        pareto.addToParetoOptimum(a);
+        pareto.addToParetoOptimum(b);
+
+        assertEquals(Set.of(b),pareto.getFrontier());
+    }
+
+    @Tag("Integration")
+    @Test
+    public void testAddToPareto_individualWithoutMetrics_isNotAdded(){
+        Random r = new Random(5);
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+
+        StubMetric stub = new StubMetric();
+        stub.setWeight(1);
+        cache.addMetric(stub);
+
+        MetamorphicIndividual a = new MetamorphicIndividual(support,0);
+        a.populateIndividual(r,5);
+        // e.g. an individual whose inference failed
+        cache.putMetricResults(a,cache.newMetricVector());
+
+        ParetoFront pareto = new ParetoFront(cache);
+        pareto.addToParetoOptimum(a);
+
+        assertTrue(pareto.getFrontier().isEmpty());
+    }
+
+    @Test
+    public void testInitialize_negativeCapacity_throwsException(){
+        var cache = new MetricCache();
+        assertThrows(IllegalArgumentException.class, () -> new ParetoFront(cache,-1));
+    }
+
+    @Tag("Integration")
+    @Test
+    public void testAddToPareto_manyElements_keepsExactlyTheNonDominated(){
+        Random r = new Random(5);
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        List<Metric> metrics = List.of(new StubMetric(),new StubMetric(),new StubMetric());
+        metrics.forEach(cache::addMetric);
+
+        ParetoFront pareto = new ParetoFront(cache);
+        List<MetamorphicIndividual> added = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            MetamorphicIndividual a = new MetamorphicIndividual(support,0);
+            a.populateIndividual(r,8);
+            // Values in steps of 0.1, so that there are many ties
+            for (Metric metric : metrics)
+                storeMetric(cache,metric,a,r.nextInt(11) / 10.0);
+            pareto.addToParetoOptimum(a);
+            added.add(a);
+        }
+
+        Set<MetamorphicIndividual> expected = new HashSet<>();
+        for (var a : added) {
+            if (added.stream().noneMatch(b -> pareto.paretoDominant(b,a,metrics)))
+                expected.add(a);
+        }
+        assertEquals(expected,pareto.getFrontier());
+    }
+
+    @Tag("Integration")
+    @Test
+    public void testAddToPareto_overCapacity_dropsMostCrowded(){
+        Random r = new Random(5);
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        StubMetric stub1 = new StubMetric();
+        StubMetric stub2 = new StubMetric();
+        cache.addMetric(stub1);
+        cache.addMetric(stub2);
+
+        ParetoFront pareto = new ParetoFront(cache,3);
+        List<MetamorphicIndividual> added = new ArrayList<>();
+        // All on one line, none dominates another, (0.4,0.6) is the closest to its neighbours
+        double[] firstValues = {0.0,0.4,0.5,1.0};
+        for (double first : firstValues) {
+            MetamorphicIndividual a = new MetamorphicIndividual(support,0);
+            a.populateIndividual(r,5);
+            storeMetric(cache,stub1,a,first);
+            storeMetric(cache,stub2,a,1 - first);
+            pareto.addToParetoOptimum(a);
+            added.add(a);
+        }
+
+        assertEquals(3,pareto.size());
+        assertEquals(Set.of(added.get(0),added.get(2),added.get(3)),pareto.getFrontier());
+    }
+
+    @Tag("Integration")
+    @Test
+    public void testAddToPareto_fromSeveralThreads_sameFrontAsSequential() throws InterruptedException {
+        Random r = new Random(5);
+        var config = new Configuration();
+        MetricCache cache = makeEmptyCache();
+        GenotypeSupport support = new GenotypeSupport(cache,config);
+        StubMetric stub1 = new StubMetric();
+        StubMetric stub2 = new StubMetric();
+        cache.addMetric(stub1);
+        cache.addMetric(stub2);
+
+        List<MetamorphicIndividual> individuals = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            MetamorphicIndividual a = new MetamorphicIndividual(support,0);
+            a.populateIndividual(r,8);
+            storeMetric(cache,stub1,a,r.nextDouble());
+            storeMetric(cache,stub2,a,r.nextDouble());
+            individuals.add(a);
+        }
+        ParetoFront sequential = new ParetoFront(cache);
+        individuals.forEach(sequential::addToParetoOptimum);
+
+        ParetoFront concurrent = new ParetoFront(cache);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = offset; i < individuals.size(); i += 4)
+                    concurrent.addToParetoOptimum(individuals.get(i));
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(sequential.getFrontier(),concurrent.getFrontier());
+    }
+
+    private static void storeMetric(MetricCache cache, Metric metric, MetamorphicIndividual individual, double value) {
+        MetricVector metrics = cache.getMetricVector(individual).orElseGet(cache::newMetricVector);
+        metrics.set(cache.slotOf(metric), value);
+        cache.putMetricResults(individual, metrics);
+    }
 }
@@ -0,0 +1,105 @@
+package com.github.ciselab.lampion.guided.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spoon.Launcher;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+public class ParsedDatasetTest {
+
+    // Small files, with javadoc, lambdas and imports to print
+    private static final List<String> FILES = List.of("AuthenticationRequestWrapper.java",
+            "TestMultithreadedMapper.java", "IncludePublicAnnotationsStandardDoclet.java");
+
+    @TempDir
+    Path tempDir;
+
+    Path codeDirectory;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        codeDirectory = tempDir.resolve("code");
+        Files.createDirectories(codeDirectory);
+        for (String file : FILES) {
+            Files.copy(Path.of("src/test/resources/code_files", file), codeDirectory.resolve(file));
+        }
+    }
+
+    private static List<String> print(Launcher launcher, Path output) throws IOException {
+        launcher.setSourceOutputDirectory(output.toFile());
+        launcher.prettyprint();
+        try (Stream<Path> files = Files.walk(output)) {
+            return files.filter(Files::isRegularFile).sorted().map(f -> {
+                try {
+                    return output.relativize(f) + "\n" + Files.readString(f);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }).toList();
+        }
+    }
+
+    @Tag("File")
+    @Test
+    public void testNewLauncher_printsSameAsParsedFiles() throws IOException {
+        var testObject = new ParsedDataset(codeDirectory);
+
+        List<String> copy = print(testObject.newLauncher(), tempDir.resolve("copy"));
+        List<String> parsed = print(ParsedDataset.parse(codeDirectory), tempDir.resolve("parsed"));
+
+        assertEquals(FILES.size(), copy.size());
+        assertEquals(parsed, copy);
+    }
+
+    @Tag("File")
+    @Test
+    public void testNewLauncher_copiesAreIndependent() throws IOException {
+        var testObject = new ParsedDataset(codeDirectory);
+
+        Launcher altered = testObject.newLauncher();
+        Launcher untouched = testObject.newLauncher();
+        assertNotSame(altered.getModel(), untouched.getModel());
+        for (CtMethod<?> method : altered.getModel().getElements(new TypeFilter<>(CtMethod.class))) {
+            method.setSimpleName("altered" + method.getSimpleName());
+        }
+
+        assertTrue(print(altered, tempDir.resolve("altered")).stream().allMatch(f -> f.contains("altered")));
+        assertFalse(print(untouched, tempDir.resolve("untouched")).stream().anyMatch(f -> f.contains("altered")));
+    }
+
+    @Tag("File")
+    @Test
+    public void testNewLauncher_parsesOnlyOnce() throws IOException {
+        var testObject = new ParsedDataset(codeDirectory);
+        testObject.newLauncher();
+
+        // Without the files, only the kept model can provide the classes
+        for (String file : FILES) {
+            Files.delete(codeDirectory.resolve(file));
+        }
+
+        assertEquals(FILES.size(), testObject.newLauncher().getModel().getAllTypes().size());
+    }
+
+    @Tag("File")
+    @Test
+    public void testNewLauncher_autoImportsAreSet() {
+        var testObject = new ParsedDataset(codeDirectory);
+
+        assertTrue(testObject.newLauncher().getEnvironment().isAutoImports());
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.ciselab.lampion.guided.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.ciselab.lampion.core.transformations.Transformer;
+import com.github.ciselab.lampion.core.transformations.transformers.IfTrueTransformer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.github.ciselab.lampion.guided.algorithms.MetamorphicIndividual;
+import com.github.ciselab.lampion.guided.configuration.Configuration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import spoon.Launcher;
+import spoon.reflect.factory.Factory;
+
+public class TransformationCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final Transformer A = new IfTrueTransformer(1);
+    private static final Transformer B = new IfTrueTransformer(2);
+    private static final Transformer C = new IfTrueTransformer(3);
+
+    private static Factory model() {
+        return ParsedDataset.parse(Path.of("src/test/resources/javafiles/javafiles_simple")).getFactory();
+    }
+
+    @Test
+    public void testConstructor_negativeCapacity_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> new TransformationCache(-1));
+    }
+
+    @Test
+    public void testLongestPrefix_disabled_isEmpty() {
+        var testObject = new TransformationCache(0);
+        testObject.put(List.of(A), model(), Set.of());
+
+        assertFalse(testObject.isEnabled());
+        assertEquals(0, testObject.size());
+        assertTrue(testObject.longestPrefix(List.of(A, B)).isEmpty());
+    }
+
+    @Test
+    public void testLongestPrefix_nothingCached_isEmpty() {
+        var testObject = new TransformationCache(4);
+
+        assertTrue(testObject.longestPrefix(List.of(A, B)).isEmpty());
+        assertEquals(1, testObject.getMisses());
+    }
+
+    @Test
+    public void testLongestPrefix_returnsLongestCachedPrefix() {
+        var testObject = new TransformationCache(4);
+        testObject.put(List.of(A), model(), Set.of());
+        testObject.put(List.of(A, B), model(), Set.of());
+        testObject.put(List.of(A, B, C, C), model(), Set.of());
+
+        var prefix = testObject.longestPrefix(List.of(A, B, C));
+
+        assertTrue(prefix.isPresent());
+        assertEquals(2, prefix.get().length());
+        assertEquals(1, testObject.getHits());
+    }
+
+    @Test
+    public void testLongestPrefix_otherFirstGene_isEmpty() {
+        var testObject = new TransformationCache(4);
+        testObject.put(List.of(A, B), model(), Set.of());
+
+        assertTrue(testObject.longestPrefix(List.of(B, A)).isEmpty());
+    }
+
+    @Test
+    public void testLongestPrefix_returnsCopies() {
+        var testObject = new TransformationCache(4);
+        testObject.put(List.of(A), model(), Set.of());
+
+        Launcher first = testObject.longestPrefix(List.of(A)).get().launcher();
+        first.getModel().getAllTypes().forEach(t -> t.setSimpleName("Altered"));
+        Launcher second = testObject.longestPrefix(List.of(A)).get().launcher();
+
+        assertTrue(second.getModel().getAllTypes().stream().noneMatch(t -> t.getSimpleName().equals("Altered")));
+    }
+
+    @Test
+    public void testPut_overCapacity_evictsLeastRecentlyUsed() {
+        var testObject = new TransformationCache(2);
+        testObject.put(List.of(A), model(), Set.of());
+        testObject.put(List.of(B), model(), Set.of());
+        // Using A makes B the least recently used
+        testObject.longestPrefix(List.of(A));
+        testObject.put(List.of(C), model(), Set.of());
+
+        assertEquals(2, testObject.size());
+        assertTrue(testObject.longestPrefix(List.of(A)).isPresent());
+        assertTrue(testObject.longestPrefix(List.of(B)).isEmpty());
+        assertTrue(testObject.longestPrefix(List.of(C)).isPresent());
+    }
+
+    private static Map<String, String> readFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).collect(Collectors.toMap(
+                    f -> directory.relativize(f).toString(), f -> {
+                        try {
+                            return Files.readString(f);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }));
+        }
+    }
+
+    private Map<String, String> transform(Path dataDirectory, ParsedDataset dataset, int cacheSize,
+                                          List<List<Transformer>> genotypes) throws IOException {
+        return transform(dataDirectory, dataset, cacheSize, new Configuration(), genotypes);
+    }
+
+    private Map<String, String> transform(Path dataDirectory, ParsedDataset dataset, int cacheSize,
+                                          Configuration config, List<List<Transformer>> genotypes) throws IOException {
+        FileManagement.copyDirectory(dataset.getCodeDirectory().toString(),
+                dataDirectory.resolve("initialDataset").toString());
+        config.program.setDataDirectoryPath(dataDirectory.toString());
+        config.program.setPrefixCacheSize(cacheSize);
+        var support = new GenotypeSupport(new MetricCache(), config);
+        support.setParsedInitialDataset(dataset);
+
+        String last = null;
+        for (List<Transformer> genes : genotypes) {
+            var individual = new MetamorphicIndividual(support, 0);
+            genes.forEach(individual::addGene);
+            last = support.runTransformations(individual, support.getInitialDataset());
+        }
+        if (cacheSize > 0) {
+            assertEquals(genotypes.size() - 1, support.getTransformationCache().getHits());
+        }
+        return readFiles(Path.of(last));
+    }
+
+    @Tag("File")
+    @Tag("Integration")
+    @ParameterizedTest
+    @ValueSource(ints = {0, 8})
+    public void testRunTransformations_afterPrefix_sameFilesAsColdRun(int cacheSize) throws IOException {
+        var support = new GenotypeSupport(new MetricCache(), new Configuration());
+        List<Transformer> parent = List.of(support.createTransformers(0, 1), support.createTransformers(2, 2));
+        List<Transformer> child = List.of(support.createTransformers(0, 1), support.createTransformers(2, 2),
+                support.createTransformers(3, 3));
+
+        // Both share one parse, as Spoon does not resolve all references (and hence imports) the same in every parse
+        var dataset = new ParsedDataset(Path.of("./src/test/resources/code_files"));
+
+        var resumed = transform(tempDir.resolve("resumed"), dataset, cacheSize, List.of(parent, child));
+        var cold = transform(tempDir.resolve("cold"), dataset, cacheSize, List.of(child));
+
+        assertFalse(resumed.isEmpty());
+        assertEquals(cold, resumed);
+    }
+
+    @Tag("File")
+    @Tag("Integration")
+    @ParameterizedTest
+    @ValueSource(ints = {0, 8})
+    public void testRunTransformations_withFitnessStore_otherRunSeed_sameFiles(int cacheSize) throws IOException {
+        var support = new GenotypeSupport(new MetricCache(), new Configuration());
+        List<Transformer> genes = List.of(support.createTransformers(0, 1), support.createTransformers(2, 2));
+        var dataset = new ParsedDataset(Path.of("./src/test/resources/code_files"));
+
+        var first = transform(tempDir.resolve("first"), dataset, cacheSize, sharedConfig(1), List.of(genes));
+        var second = transform(tempDir.resolve("second"), dataset, cacheSize, sharedConfig(2), List.of(genes));
+
+        assertFalse(first.isEmpty());
+        assertEquals(first, second);
+    }
+
+    private Configuration sharedConfig(long seed) {
+        var config = new Configuration();
+        config.program.setSeed(seed);
+        config.program.setFitnessStore(tempDir.resolve("store.log").toString());
+        return config;
+    }
+}